@@ -12,6 +12,7 @@ dependencies {
     implementation(Libs.slf4j_simple)
     implementation(Libs.kotlinx_coroutines_core)
     implementation(Libs.kotlinx_serialization_json)
+    implementation(Libs.guava)
     api(Libs.sarif4k)
 
     testImplementation(testFixtures(project(":jacodb-core")))
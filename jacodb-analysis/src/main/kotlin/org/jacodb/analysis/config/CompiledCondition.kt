@@ -0,0 +1,235 @@
+/*
+ *  Copyright 2022 UnitTestBot contributors (utbot.org)
+ * <p>
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ * <p>
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+
+package org.jacodb.analysis.config
+
+import org.jacodb.analysis.ifds.AccessPath
+import org.jacodb.analysis.ifds.ElementAccessor
+import org.jacodb.analysis.ifds.Maybe
+import org.jacodb.analysis.ifds.onSome
+import org.jacodb.analysis.ifds.toPath
+import org.jacodb.analysis.taint.Tainted
+import org.jacodb.api.cfg.JcValue
+import org.jacodb.taint.configuration.And
+import org.jacodb.taint.configuration.AnnotationType
+import org.jacodb.taint.configuration.Condition
+import org.jacodb.taint.configuration.ConditionVisitor
+import org.jacodb.taint.configuration.ConstantEq
+import org.jacodb.taint.configuration.ConstantGt
+import org.jacodb.taint.configuration.ConstantLt
+import org.jacodb.taint.configuration.ConstantMatches
+import org.jacodb.taint.configuration.ConstantTrue
+import org.jacodb.taint.configuration.ContainsMark
+import org.jacodb.taint.configuration.IsConstant
+import org.jacodb.taint.configuration.IsType
+import org.jacodb.taint.configuration.Not
+import org.jacodb.taint.configuration.Or
+import org.jacodb.taint.configuration.PositionResolver
+import org.jacodb.taint.configuration.SourceFunctionMatches
+import org.jacodb.taint.configuration.TaintMark
+import org.jacodb.taint.configuration.TypeMatches
+
+/**
+ * [Condition] specialized for the particular position resolver (i.e., call site) by [ConditionCompiler].
+ *
+ * All fact-independent checks are already evaluated, so only [ContainsMark] checks are left.
+ * Evaluates to the same result as [FactAwareConditionEvaluator] for the same resolver and fact.
+ */
+sealed interface CompiledCondition {
+    fun test(fact: Tainted): Boolean
+
+    /**
+     * whether condition doesn't depend on the fact and is always false, i.e. rule can be skipped
+     */
+    val isAlwaysFalse: Boolean get() = this === CompiledFalse
+}
+
+object CompiledTrue : CompiledCondition {
+    override fun test(fact: Tainted): Boolean = true
+}
+
+object CompiledFalse : CompiledCondition {
+    override fun test(fact: Tainted): Boolean = false
+}
+
+class CompiledNot(internal val arg: CompiledCondition) : CompiledCondition {
+    override fun test(fact: Tainted): Boolean = !arg.test(fact)
+}
+
+class CompiledAnd(internal val args: Array<CompiledCondition>) : CompiledCondition {
+    override fun test(fact: Tainted): Boolean = args.all { it.test(fact) }
+}
+
+class CompiledOr(internal val args: Array<CompiledCondition>) : CompiledCondition {
+    override fun test(fact: Tainted): Boolean = args.any { it.test(fact) }
+}
+
+class CompiledContainsMark(
+    internal val mark: TaintMark,
+    internal val path: AccessPath,
+) : CompiledCondition {
+
+    // FIXME: Adhoc for arrays (same as in FactAwareConditionEvaluator)
+    private val pathWithoutStars = path.removeTrailingElementAccessors()
+
+    override fun test(fact: Tainted): Boolean {
+        return fact.mark == mark && fact.variable.removeTrailingElementAccessors() == pathWithoutStars
+    }
+}
+
+/**
+ * Fact-independent check which follows some fact-dependent ones in [And] or [Or], so it is evaluated
+ * only when a fact reaches it, as in the short-circuit evaluation. The result is computed once and reused.
+ */
+class CompiledDeferred(
+    private val condition: Condition,
+    private val evaluator: BasicConditionEvaluator,
+) : CompiledCondition {
+
+    @Volatile
+    private var result: Boolean? = null
+
+    override fun test(fact: Tainted): Boolean {
+        return result ?: condition.accept(evaluator).also { result = it }
+    }
+}
+
+/**
+ * Facts checked by the [CompiledContainsMark] leaves of the condition.
+ */
+internal fun CompiledCondition.markedFacts(): List<Tainted> = when (this) {
+    CompiledTrue, CompiledFalse -> emptyList()
+    is CompiledDeferred -> emptyList()
+    is CompiledNot -> arg.markedFacts()
+    is CompiledAnd -> args.flatMap { it.markedFacts() }
+    is CompiledOr -> args.flatMap { it.markedFacts() }
+    is CompiledContainsMark -> listOf(Tainted(path, mark))
+}
+
+/**
+ * Compiles conditions for the position resolver of the single call site or entry point.
+ * Compiled conditions are supposed to be cached and reused for all facts reaching that point.
+ */
+class ConditionCompiler(
+    private val positionResolver: PositionResolver<Maybe<JcValue>>,
+) : ConditionVisitor<CompiledCondition> {
+
+    private val basicEvaluator = BasicConditionEvaluator(positionResolver)
+
+    fun compile(condition: Condition): CompiledCondition = condition.accept(this)
+
+    // whether the current argument of [And] or [Or] follows a fact-dependent one
+    private var isDeferred = false
+
+    private fun evaluated(condition: Condition): CompiledCondition {
+        if (isDeferred) {
+            return CompiledDeferred(condition, basicEvaluator)
+        }
+        return if (condition.accept(basicEvaluator)) CompiledTrue else CompiledFalse
+    }
+
+    override fun visit(condition: ConstantTrue): CompiledCondition = CompiledTrue
+
+    override fun visit(condition: Not): CompiledCondition {
+        return when (val arg = condition.arg.accept(this)) {
+            CompiledTrue -> CompiledFalse
+            CompiledFalse -> CompiledTrue
+            else -> CompiledNot(arg)
+        }
+    }
+
+    override fun visit(condition: And): CompiledCondition {
+        val args = mutableListOf<CompiledCondition>()
+        val wasDeferred = isDeferred
+        try {
+            for (arg in condition.args) {
+                when (val compiled = arg.accept(this)) {
+                    CompiledFalse -> return CompiledFalse
+                    CompiledTrue -> continue
+                    else -> {
+                        args += compiled
+                        isDeferred = true
+                    }
+                }
+            }
+        } finally {
+            isDeferred = wasDeferred
+        }
+        return when (args.size) {
+            0 -> CompiledTrue
+            1 -> args.single()
+            else -> CompiledAnd(args.toTypedArray())
+        }
+    }
+
+    override fun visit(condition: Or): CompiledCondition {
+        val args = mutableListOf<CompiledCondition>()
+        val wasDeferred = isDeferred
+        try {
+            for (arg in condition.args) {
+                when (val compiled = arg.accept(this)) {
+                    CompiledTrue -> return CompiledTrue
+                    CompiledFalse -> continue
+                    else -> {
+                        args += compiled
+                        isDeferred = true
+                    }
+                }
+            }
+        } finally {
+            isDeferred = wasDeferred
+        }
+        return when (args.size) {
+            0 -> CompiledFalse
+            1 -> args.single()
+            else -> CompiledOr(args.toTypedArray())
+        }
+    }
+
+    override fun visit(condition: IsConstant): CompiledCondition = evaluated(condition)
+
+    override fun visit(condition: IsType): CompiledCondition = evaluated(condition)
+
+    override fun visit(condition: AnnotationType): CompiledCondition = evaluated(condition)
+
+    override fun visit(condition: ConstantEq): CompiledCondition = evaluated(condition)
+
+    override fun visit(condition: ConstantLt): CompiledCondition = evaluated(condition)
+
+    override fun visit(condition: ConstantGt): CompiledCondition = evaluated(condition)
+
+    override fun visit(condition: ConstantMatches): CompiledCondition = evaluated(condition)
+
+    override fun visit(condition: SourceFunctionMatches): CompiledCondition = evaluated(condition)
+
+    override fun visit(condition: TypeMatches): CompiledCondition = evaluated(condition)
+
+    override fun visit(condition: ContainsMark): CompiledCondition {
+        positionResolver.resolve(condition.position).onSome { value ->
+            return CompiledContainsMark(condition.mark, value.toPath())
+        }
+        return CompiledFalse
+    }
+}
+
+internal fun AccessPath.removeTrailingElementAccessors(): AccessPath {
+    var path = this
+    while (path.lastAccessor is ElementAccessor) {
+        path = path.parent!!
+    }
+    return path
+}
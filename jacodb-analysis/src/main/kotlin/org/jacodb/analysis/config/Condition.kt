@@ -16,8 +16,6 @@
 
 package org.jacodb.analysis.config
 
-import org.jacodb.analysis.ifds.AccessPath
-import org.jacodb.analysis.ifds.ElementAccessor
 import org.jacodb.analysis.ifds.Maybe
 import org.jacodb.analysis.ifds.onSome
 import org.jacodb.analysis.ifds.toPath
@@ -174,12 +172,4 @@ class FactAwareConditionEvaluator(
         }
         return false
     }
-
-    private fun AccessPath.removeTrailingElementAccessors(): AccessPath {
-        val accesses = accesses.toMutableList()
-        while (accesses.lastOrNull() is ElementAccessor) {
-            accesses.removeLast()
-        }
-        return AccessPath(value, accesses)
-    }
 }
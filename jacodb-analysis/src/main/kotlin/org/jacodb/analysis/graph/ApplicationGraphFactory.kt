@@ -22,19 +22,21 @@ import kotlinx.coroutines.DelicateCoroutinesApi
 import kotlinx.coroutines.GlobalScope
 import kotlinx.coroutines.future.future
 import org.jacodb.api.JcClasspath
+import org.jacodb.api.JcMethod
 import org.jacodb.api.analysis.JcApplicationGraph
 import org.jacodb.impl.features.usagesExt
 import java.util.concurrent.CompletableFuture
 
 /**
  * Creates an instance of [SimplifiedJcApplicationGraph], see its docs for more info.
+ * Returned graph is [indexed][JcIndexedApplicationGraph].
  */
 suspend fun JcClasspath.newApplicationGraphForAnalysis(bannedPackagePrefixes: List<String>? = null): JcApplicationGraph {
     val mainGraph = JcApplicationGraphImpl(this, usagesExt())
     return if (bannedPackagePrefixes != null) {
-        SimplifiedJcApplicationGraph(mainGraph, bannedPackagePrefixes)
+        SimplifiedJcApplicationGraph(mainGraph, bannedPackagePrefixes).indexed()
     } else {
-        SimplifiedJcApplicationGraph(mainGraph, defaultBannedPackagePrefixes)
+        SimplifiedJcApplicationGraph(mainGraph, defaultBannedPackagePrefixes).indexed()
     }
 }
 
@@ -51,6 +53,48 @@ fun JcClasspath.newApplicationGraphForAnalysisAsync(
         newApplicationGraphForAnalysis(bannedPackagePrefixes)
     }
 
+/**
+ * Builds [JcCallGraph] by Rapid Type Analysis from [entryPoints], see [RtaCallGraphBuilder] for more info.
+ */
+fun JcClasspath.newRtaCallGraph(
+    entryPoints: List<JcMethod>,
+    bannedPackagePrefixes: List<String>? = null,
+    refineByLocalTypes: Boolean = true,
+): JcCallGraph {
+    return RtaCallGraphBuilder(
+        this,
+        bannedPackagePrefixes ?: defaultBannedPackagePrefixes,
+        refineByLocalTypes
+    ).build(entryPoints)
+}
+
+/**
+ * Creates an instance of [SimplifiedJcApplicationGraph] with calls resolved by precomputed [callGraph].
+ * Unlike [newApplicationGraphForAnalysis] without call graph, `Usages` feature is not required.
+ */
+fun JcClasspath.newApplicationGraphForAnalysis(
+    callGraph: JcCallGraph,
+    bannedPackagePrefixes: List<String>? = null,
+): JcApplicationGraph {
+    require(callGraph.classpath == this) { "Call graph is built for another classpath" }
+    return SimplifiedJcApplicationGraph(
+        JcCallGraphApplicationGraph(callGraph),
+        bannedPackagePrefixes ?: defaultBannedPackagePrefixes,
+        resolveVirtualCalls = false
+    ).indexed()
+}
+
+/**
+ * Builds RTA call graph from [entryPoints] and creates application graph for analysis based on it.
+ */
+fun JcClasspath.newRtaApplicationGraphForAnalysis(
+    entryPoints: List<JcMethod>,
+    bannedPackagePrefixes: List<String>? = null,
+): JcApplicationGraph {
+    val callGraph = newRtaCallGraph(entryPoints, bannedPackagePrefixes)
+    return newApplicationGraphForAnalysis(callGraph, bannedPackagePrefixes)
+}
+
 val defaultBannedPackagePrefixes: List<String> = listOf(
     "kotlin.",
     "java.",
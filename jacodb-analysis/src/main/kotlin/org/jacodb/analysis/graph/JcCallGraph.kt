@@ -0,0 +1,145 @@
+/*
+ *  Copyright 2022 UnitTestBot contributors (utbot.org)
+ * <p>
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ * <p>
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package org.jacodb.analysis.graph
+
+import org.jacodb.api.JcClassOrInterface
+import org.jacodb.api.JcClasspath
+import org.jacodb.api.JcMethod
+import org.jacodb.api.cfg.JcInst
+import java.io.DataInputStream
+import java.io.DataOutputStream
+import java.io.InputStream
+import java.io.OutputStream
+
+/**
+ * Precomputed call graph.
+ *
+ * Methods and call sites are indexed by ints and edges are kept as adjacency arrays:
+ * call site with index `i` is located in method `callSiteMethods[i]` at instruction `callSiteIndices[i]`
+ * and calls methods `callees[i]`.
+ *
+ * Call graph can be [saved][save] and [loaded][load] back for the same classpath.
+ */
+class JcCallGraph internal constructor(
+    val classpath: JcClasspath,
+    private val methods: List<JcMethod>,
+    private val callSiteMethods: IntArray,
+    private val callSiteIndices: IntArray,
+    private val callees: Array<IntArray>,
+) {
+
+    private val methodIds: Map<JcMethod, Int> = HashMap<JcMethod, Int>(methods.size).also { ids ->
+        methods.forEachIndexed { id, method -> ids[method] = id }
+    }
+
+    private val callSiteIds: Map<Long, Int> = HashMap<Long, Int>(callSiteMethods.size).also { ids ->
+        for (site in callSiteMethods.indices) {
+            ids[callSiteKey(callSiteMethods[site], callSiteIndices[site])] = site
+        }
+    }
+
+    // method -> call sites calling it
+    private val callers: Array<IntArray> by lazy {
+        val counts = IntArray(methods.size)
+        callees.forEach { targets -> targets.forEach { counts[it]++ } }
+        val result = Array(methods.size) { IntArray(counts[it]) }
+        counts.fill(0)
+        callees.forEachIndexed { site, targets ->
+            targets.forEach { result[it][counts[it]++] = site }
+        }
+        result
+    }
+
+    /**
+     * all methods reachable from entry points
+     */
+    val reachableMethods: List<JcMethod> get() = methods
+
+    val callSitesCount: Int get() = callSiteMethods.size
+
+    fun isReachable(method: JcMethod): Boolean = method in methodIds
+
+    /**
+     * @return callees of [callSite] or `null` if [callSite] is not known to this call graph,
+     * i.e. it is located in method which was not analyzed
+     */
+    fun callees(callSite: JcInst): Sequence<JcMethod>? {
+        val methodId = methodIds[callSite.location.method] ?: return null
+        val site = callSiteIds[callSiteKey(methodId, callSite.location.index)] ?: return null
+        return callees[site].asSequence().map { methods[it] }
+    }
+
+    fun callers(method: JcMethod): Sequence<JcInst> {
+        val methodId = methodIds[method] ?: return emptySequence()
+        return callers[methodId].asSequence().map { site ->
+            methods[callSiteMethods[site]].instList[callSiteIndices[site]]
+        }
+    }
+
+    fun save(output: OutputStream) {
+        val out = DataOutputStream(output.buffered())
+        out.writeInt(MAGIC)
+        out.writeInt(methods.size)
+        methods.forEach {
+            out.writeUTF(it.enclosingClass.name)
+            out.writeUTF(it.name)
+            out.writeUTF(it.description)
+        }
+        out.writeInt(callSiteMethods.size)
+        for (site in callSiteMethods.indices) {
+            out.writeInt(callSiteMethods[site])
+            out.writeInt(callSiteIndices[site])
+            out.writeInt(callees[site].size)
+            callees[site].forEach { out.writeInt(it) }
+        }
+        out.flush()
+    }
+
+    companion object {
+
+        private const val MAGIC = 0x4a434731 // JCG1
+
+        private fun callSiteKey(methodId: Int, instIndex: Int): Long =
+            (methodId.toLong() shl 32) or (instIndex.toLong() and 0xFFFFFFFFL)
+
+        /**
+         * Loads call graph previously [saved][save] for the same [classpath].
+         */
+        fun load(classpath: JcClasspath, input: InputStream): JcCallGraph {
+            val inp = DataInputStream(input.buffered())
+            check(inp.readInt() == MAGIC) { "Stream does not contain call graph" }
+            val methods = List(inp.readInt()) {
+                val className = inp.readUTF()
+                val name = inp.readUTF()
+                val desc = inp.readUTF()
+                val jcClass: JcClassOrInterface = classpath.findClassOrNull(className)
+                    ?: error("Class $className not found in classpath")
+                jcClass.declaredMethods.firstOrNull { it.name == name && it.description == desc }
+                    ?: error("Method $className#$name$desc not found in classpath")
+            }
+            val sitesCount = inp.readInt()
+            val callSiteMethods = IntArray(sitesCount)
+            val callSiteIndices = IntArray(sitesCount)
+            val callees = Array(sitesCount) { site ->
+                callSiteMethods[site] = inp.readInt()
+                callSiteIndices[site] = inp.readInt()
+                IntArray(inp.readInt()) { inp.readInt() }
+            }
+            return JcCallGraph(classpath, methods, callSiteMethods, callSiteIndices, callees)
+        }
+    }
+}
@@ -0,0 +1,263 @@
+/*
+ *  Copyright 2022 UnitTestBot contributors (utbot.org)
+ * <p>
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ * <p>
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+
+package org.jacodb.analysis.graph
+
+import org.jacodb.api.JcMethod
+import org.jacodb.api.analysis.JcApplicationGraph
+import org.jacodb.api.cfg.JcInst
+import org.jacodb.api.cfg.JcSimpleValue
+import org.jacodb.api.cfg.values
+import org.jacodb.api.ext.cfg.callExpr
+import java.util.BitSet
+import java.util.concurrent.ConcurrentHashMap
+
+/**
+ * [JcApplicationGraph] which computes [JcMethodTable] once per method and answers all intraprocedural
+ * queries of [graph] from it. Runners and analyzers may use tables directly via [tableOf] and instruction indices.
+ */
+class JcIndexedApplicationGraph(
+    val graph: JcApplicationGraph,
+) : JcApplicationGraph by graph {
+
+    init {
+        require(graph !is JcIndexedApplicationGraph)
+    }
+
+    private val tables = ConcurrentHashMap<JcMethod, JcMethodTable>()
+
+    fun tableOf(method: JcMethod): JcMethodTable {
+        return tables.computeIfAbsent(method) { JcMethodTable(it, graph) }
+    }
+
+    fun tableOf(inst: JcInst): JcMethodTable = tableOf(graph.methodOf(inst))
+
+    override fun predecessors(node: JcInst): Sequence<JcInst> {
+        val table = tableOf(node)
+        return table.instsOf(table.predecessors(table.indexOf(node)))
+    }
+
+    override fun successors(node: JcInst): Sequence<JcInst> {
+        val table = tableOf(node)
+        return table.instsOf(table.successors(table.indexOf(node)))
+    }
+
+    override fun callees(node: JcInst): Sequence<JcMethod> {
+        val table = tableOf(node)
+        return table.callees(table.indexOf(node)).asSequence()
+    }
+
+    override fun entryPoints(method: JcMethod): Sequence<JcInst> {
+        val table = tableOf(method)
+        return table.instsOf(table.entries)
+    }
+
+    override fun exitPoints(method: JcMethod): Sequence<JcInst> {
+        val table = tableOf(method)
+        return table.instsOf(table.exits)
+    }
+}
+
+/**
+ * Precomputed view of [graph] for single [method].
+ *
+ * Nodes are indexed: instructions of method flow graph keep their indices, synthetic nodes of [graph]
+ * (i.e. [JcNoopInst] at the method start) follow them. Callees are resolved once per call site on first request.
+ */
+class JcMethodTable internal constructor(
+    val method: JcMethod,
+    private val graph: JcApplicationGraph,
+) {
+    private val insts: Array<JcInst>
+    private val instructionsCount: Int
+    private val flags: ByteArray
+    private val successors: Array<IntArray>
+    private val predecessors: Array<IntArray>
+
+    private val callees: Array<List<JcMethod>?>
+
+    val entries: IntArray
+    val exits: IntArray
+
+    val size: Int get() = insts.size
+
+    init {
+        val instructions = try {
+            method.flowGraph().instructions
+        } catch (e: Throwable) {
+            // instructions list can't be built, graph has no nodes for method except synthetic ones
+            emptyList()
+        }
+        instructionsCount = instructions.size
+        val nodes = ArrayList<JcInst>(instructions.size + 1)
+        nodes.addAll(instructions)
+        val entryNodes = graph.entryPoints(method).toList()
+        val exitNodes = graph.exitPoints(method).toList()
+        val indices = HashMap<JcInst, Int>(nodes.size * 2)
+        nodes.forEachIndexed { index, inst -> indices[inst] = index }
+
+        fun indexOrAdd(inst: JcInst): Int = indices.getOrPut(inst) {
+            nodes.add(inst)
+            nodes.lastIndex
+        }
+
+        val entryIndices = entryNodes.map { indexOrAdd(it) }
+        val exitIndices = exitNodes.map { indexOrAdd(it) }
+
+        val successorsList = arrayListOf<IntArray>()
+        val predecessorsList = arrayListOf<IntArray>()
+        // synthetic nodes may be added while edges are computed
+        var index = 0
+        while (index < nodes.size) {
+            val inst = nodes[index]
+            successorsList.add(graph.successors(inst).map { indexOrAdd(it) }.toList().toIntArray())
+            predecessorsList.add(graph.predecessors(inst).map { indexOrAdd(it) }.toList().toIntArray())
+            index++
+        }
+
+        insts = nodes.toTypedArray()
+        successors = successorsList.toTypedArray()
+        predecessors = predecessorsList.toTypedArray()
+        entries = entryIndices.toIntArray()
+        exits = exitIndices.toIntArray()
+        flags = ByteArray(insts.size) { if (insts[it].callExpr != null) CALL else 0 }
+        entries.forEach { flags[it] = (flags[it].toInt() or ENTRY.toInt()).toByte() }
+        exits.forEach { flags[it] = (flags[it].toInt() or EXIT.toInt()).toByte() }
+        callees = arrayOfNulls(insts.size)
+    }
+
+    /**
+     * @return index of [inst] in this table
+     * @throws IllegalArgumentException if [inst] is not a node of graph of [method]
+     */
+    fun indexOf(inst: JcInst): Int {
+        val index = inst.location.index
+        if (index in 0 until instructionsCount && insts[index] == inst) {
+            return index
+        }
+        for (synthetic in instructionsCount until insts.size) {
+            if (insts[synthetic] == inst) {
+                return synthetic
+            }
+        }
+        throw IllegalArgumentException("$inst is not a node of $method")
+    }
+
+    fun inst(index: Int): JcInst = insts[index]
+
+    fun isCall(index: Int): Boolean = flags[index].toInt() and CALL.toInt() != 0
+    fun isEntry(index: Int): Boolean = flags[index].toInt() and ENTRY.toInt() != 0
+    fun isExit(index: Int): Boolean = flags[index].toInt() and EXIT.toInt() != 0
+
+    /**
+     * successors including exceptional ones
+     */
+    fun successors(index: Int): IntArray = successors[index]
+
+    /**
+     * predecessors including exceptional ones
+     */
+    fun predecessors(index: Int): IntArray = predecessors[index]
+
+    fun callees(index: Int): List<JcMethod> {
+        if (!isCall(index)) {
+            return emptyList()
+        }
+        // benign race: callees of the same call site are the same
+        return callees[index] ?: graph.callees(insts[index]).toList().also { callees[index] = it }
+    }
+
+    internal fun instsOf(indices: IntArray): Sequence<JcInst> = indices.asSequence().map { insts[it] }
+
+    // Instructions mentioning each simple value, built on the first sparse query
+    private val mentions: Map<JcSimpleValue, BitSet> by lazy(LazyThreadSafetyMode.PUBLICATION) {
+        val result = hashMapOf<JcSimpleValue, BitSet>()
+        for (index in insts.indices) {
+            for (value in insts[index].values) {
+                if (value is JcSimpleValue) {
+                    result.getOrPut(value) { BitSet(insts.size) }.set(index)
+                }
+            }
+        }
+        result
+    }
+
+    private val nearestRelevantByBase = ConcurrentHashMap<JcSimpleValue, Array<IntArray?>>()
+
+    private fun isRelevant(index: Int, uses: BitSet?): Boolean {
+        return flags[index].toInt() and (CALL.toInt() or EXIT.toInt()) != 0 || uses?.get(index) == true
+    }
+
+    /**
+     * Returns the nearest instructions, starting from [index] itself, which may change facts on [base]:
+     * the ones mentioning [base], calls and exits. All instructions in between pass such facts unchanged.
+     */
+    fun nearestRelevant(index: Int, base: JcSimpleValue): IntArray {
+        val cache = nearestRelevantByBase.computeIfAbsent(base) { arrayOfNulls(insts.size) }
+        // benign race: the result is the same for all threads
+        cache[index]?.let { return it }
+
+        val uses = mentions[base]
+        val result = if (isRelevant(index, uses)) {
+            intArrayOf(index)
+        } else {
+            val found = BitSet(insts.size)
+            val visited = BitSet(insts.size)
+            val stack = ArrayDeque<Int>()
+            visited.set(index)
+            stack.add(index)
+            while (stack.isNotEmpty()) {
+                for (next in successors[stack.removeLast()]) {
+                    if (visited.get(next)) continue
+                    visited.set(next)
+                    if (isRelevant(next, uses)) {
+                        found.set(next)
+                    } else {
+                        stack.add(next)
+                    }
+                }
+            }
+            found.stream().toArray()
+        }
+        cache[index] = result
+        return result
+    }
+
+    private companion object {
+        const val CALL: Byte = 1
+        const val ENTRY: Byte = 2
+        const val EXIT: Byte = 4
+    }
+}
+
+/**
+ * @return [this] if it is already indexed or new [JcIndexedApplicationGraph] over it
+ */
+fun JcApplicationGraph.indexed(): JcIndexedApplicationGraph {
+    return this as? JcIndexedApplicationGraph ?: JcIndexedApplicationGraph(this)
+}
+
+/**
+ * Checks whether [inst] is exit point of its method without scanning all exit points when graph is indexed.
+ */
+fun JcApplicationGraph.isExitPoint(inst: JcInst): Boolean {
+    if (this is JcIndexedApplicationGraph) {
+        val table = tableOf(inst)
+        return table.isExit(table.indexOf(inst))
+    }
+    return inst in exitPoints(methodOf(inst))
+}
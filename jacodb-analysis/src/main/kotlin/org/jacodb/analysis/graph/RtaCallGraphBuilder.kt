@@ -0,0 +1,198 @@
+/*
+ *  Copyright 2022 UnitTestBot contributors (utbot.org)
+ * <p>
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ * <p>
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package org.jacodb.analysis.graph
+
+import org.jacodb.api.JcClassOrInterface
+import org.jacodb.api.JcClassType
+import org.jacodb.api.JcClasspath
+import org.jacodb.api.JcMethod
+import org.jacodb.api.cfg.JcAssignInst
+import org.jacodb.api.cfg.JcInst
+import org.jacodb.api.cfg.JcLambdaExpr
+import org.jacodb.api.cfg.JcLocal
+import org.jacodb.api.cfg.JcNewExpr
+import org.jacodb.api.cfg.JcVirtualCallExpr
+import org.jacodb.api.ext.cfg.callExpr
+import org.jacodb.api.ext.findMethodOrNull
+import org.jacodb.api.ext.isSubClassOf
+import org.jacodb.impl.features.classpaths.dispatchTables
+
+private val logger = mu.KotlinLogging.logger {}
+
+/**
+ * Builds [JcCallGraph] by Rapid Type Analysis: virtual call is resolved only to implementations
+ * in classes instantiated (by `new`) in methods reachable from entry points.
+ *
+ * If [refineByLocalTypes] is set, receiver types are additionally refined by simple intraprocedural
+ * variable type analysis: if all definitions of local variable are `new` expressions,
+ * then only allocated classes are considered as its possible types.
+ *
+ * Bodies of methods matching [bannedPackagePrefixes] are not analyzed, so classes instantiated there
+ * are not taken into account. Virtual call sites without any resolved callee keep their declared callee.
+ */
+class RtaCallGraphBuilder(
+    private val classpath: JcClasspath,
+    private val bannedPackagePrefixes: List<String> = defaultBannedPackagePrefixes,
+    private val refineByLocalTypes: Boolean = true,
+) {
+
+    private class VirtualCallSite(
+        val id: Int,
+        val receiver: JcClassOrInterface,
+        val name: String,
+        val description: String,
+        val allowedTypes: Set<JcClassOrInterface>?,
+    )
+
+    private val dispatchTables = classpath.dispatchTables
+
+    private val methods = ArrayList<JcMethod>()
+    private val methodIds = HashMap<JcMethod, Int>()
+    private val workList = ArrayDeque<JcMethod>()
+
+    private val callSiteMethods = ArrayList<Int>()
+    private val callSiteIndices = ArrayList<Int>()
+    private val callees = ArrayList<LinkedHashSet<Int>>()
+    private val staticCallees = ArrayList<JcMethod>()
+
+    private val instantiated = LinkedHashSet<JcClassOrInterface>()
+    private val virtualCallSites = ArrayList<VirtualCallSite>()
+
+    fun build(entryPoints: List<JcMethod>): JcCallGraph {
+        entryPoints.forEach { reach(it) }
+        do {
+            while (workList.isNotEmpty()) {
+                process(workList.removeFirst())
+            }
+            // call sites without resolved callees (e.g. receivers are created in library code)
+            callees.forEachIndexed { site, targets ->
+                if (targets.isEmpty()) {
+                    targets.add(reach(staticCallees[site]))
+                }
+            }
+        } while (workList.isNotEmpty())
+        logger.info {
+            "Call graph is built: ${methods.size} methods, ${callees.size} call sites, " +
+                "${instantiated.size} instantiated classes"
+        }
+        return JcCallGraph(
+            classpath,
+            methods.toList(),
+            callSiteMethods.toIntArray(),
+            callSiteIndices.toIntArray(),
+            Array(callees.size) { callees[it].toIntArray() }
+        )
+    }
+
+    private fun reach(method: JcMethod): Int {
+        return methodIds.getOrPut(method) {
+            methods.add(method)
+            if (bannedPackagePrefixes.none { method.enclosingClass.name.startsWith(it) }) {
+                workList.add(method)
+            }
+            methods.size - 1
+        }
+    }
+
+    private fun process(method: JcMethod) {
+        val methodId = methodIds.getValue(method)
+        val instructions = try {
+            method.instList.instructions
+        } catch (e: Exception) {
+            logger.trace(e) { "Can't get instructions of $method" }
+            return
+        }
+        val localTypes = if (refineByLocalTypes) allocatedTypes(instructions) else emptyMap()
+        for (inst in instructions) {
+            if (inst is JcAssignInst) {
+                val rhv = inst.rhv
+                if (rhv is JcNewExpr) {
+                    (rhv.type as? JcClassType)?.jcClass?.let { instantiate(it) }
+                }
+            }
+            val callExpr = inst.callExpr ?: continue
+            if (callExpr is JcLambdaExpr) {
+                reach(callExpr.actualMethod.method.method)
+            }
+            val callee = callExpr.method.method
+            val site = newCallSite(methodId, inst, callee)
+            if (callExpr is JcVirtualCallExpr) {
+                val receiver = (callExpr.instance.type as? JcClassType)?.jcClass ?: callee.enclosingClass
+                val virtualSite = VirtualCallSite(
+                    id = site,
+                    receiver = receiver,
+                    name = callee.name,
+                    description = callee.description,
+                    allowedTypes = (callExpr.instance as? JcLocal)?.let { localTypes[it] }
+                )
+                virtualCallSites.add(virtualSite)
+                instantiated.forEach { resolve(virtualSite, it) }
+            } else {
+                callees[site].add(reach(callee))
+            }
+        }
+    }
+
+    private fun newCallSite(methodId: Int, inst: JcInst, staticCallee: JcMethod): Int {
+        callSiteMethods.add(methodId)
+        callSiteIndices.add(inst.location.index)
+        callees.add(LinkedHashSet())
+        staticCallees.add(staticCallee)
+        return callees.size - 1
+    }
+
+    private fun instantiate(jcClass: JcClassOrInterface) {
+        if (jcClass.isInterface || jcClass.isAbstract || !instantiated.add(jcClass)) {
+            return
+        }
+        jcClass.declaredMethods.firstOrNull { it.isClassInitializer }?.let { reach(it) }
+        virtualCallSites.forEach { resolve(it, jcClass) }
+    }
+
+    private fun resolve(site: VirtualCallSite, jcClass: JcClassOrInterface) {
+        if (site.allowedTypes != null && jcClass !in site.allowedTypes) {
+            return
+        }
+        if (!(jcClass isSubClassOf site.receiver)) {
+            return
+        }
+        val target = dispatchTables?.resolve(jcClass, site.name, site.description)
+            ?: jcClass.findMethodOrNull(site.name, site.description)
+            ?: return
+        if (!target.isAbstract) {
+            callees[site.id].add(reach(target))
+        }
+    }
+
+    // local -> classes allocated into it, only for locals which are defined by `new` expressions only
+    private fun allocatedTypes(instructions: List<JcInst>): Map<JcLocal, Set<JcClassOrInterface>> {
+        val result = hashMapOf<JcLocal, MutableSet<JcClassOrInterface>>()
+        val unknown = hashSetOf<JcLocal>()
+        for (inst in instructions) {
+            if (inst !is JcAssignInst) continue
+            val local = inst.lhv as? JcLocal ?: continue
+            val allocated = ((inst.rhv as? JcNewExpr)?.type as? JcClassType)?.jcClass
+            if (allocated == null) {
+                unknown.add(local)
+            } else {
+                result.getOrPut(local) { hashSetOf() }.add(allocated)
+            }
+        }
+        result.keys.removeAll(unknown)
+        return result
+    }
+}
@@ -17,6 +17,7 @@
 package org.jacodb.analysis.graph
 
 import kotlinx.coroutines.runBlocking
+import org.jacodb.api.JcClassOrInterface
 import org.jacodb.api.JcClassType
 import org.jacodb.api.JcMethod
 import org.jacodb.api.analysis.JcApplicationGraph
@@ -25,7 +26,9 @@ import org.jacodb.api.cfg.JcVirtualCallExpr
 import org.jacodb.api.ext.cfg.callExpr
 import org.jacodb.api.ext.isSubClassOf
 import org.jacodb.impl.cfg.JcInstLocationImpl
+import org.jacodb.impl.features.classpaths.dispatchTables
 import org.jacodb.impl.features.hierarchyExt
+import java.util.concurrent.ConcurrentHashMap
 
 /**
  * This is adopted specially for IFDS [JcApplicationGraph] that
@@ -33,10 +36,14 @@ import org.jacodb.impl.features.hierarchyExt
  *  2. In [callers] returns only call sites that were visited before
  *  3. Adds a special [JcNoopInst] instruction to the beginning of each method
  *    (because backward analysis may want for method to start with neutral instruction)
+ *  4. Resolves virtual calls by CHA over dispatch tables if
+ *    [JcDispatchTables][org.jacodb.impl.features.classpaths.JcDispatchTables] is installed into classpath.
+ *    Virtual calls are not widened at all if [resolveVirtualCalls] is false (i.e., callees are already precise)
  */
 internal class SimplifiedJcApplicationGraph(
     private val graph: JcApplicationGraph,
     private val bannedPackagePrefixes: List<String>,
+    private val resolveVirtualCalls: Boolean = true,
 ) : JcApplicationGraph by graph {
     private val hierarchyExtension = runBlocking {
         classpath.hierarchyExt()
@@ -46,11 +53,19 @@ internal class SimplifiedJcApplicationGraph(
 
     private val cache: MutableMap<JcMethod, List<JcMethod>> = mutableMapOf()
 
+    private val dispatchTables = classpath.dispatchTables
+
+    private val concreteSubClasses: MutableMap<JcClassOrInterface, List<JcClassOrInterface>> = mutableMapOf()
+
+    private val startInsts = ConcurrentHashMap<JcMethod, JcNoopInst>()
+
     // For backward analysis we may want for method to start with "neutral" operation =>
     //  we add noop to the beginning of every method
     private fun getStartInst(method: JcMethod): JcNoopInst {
-        val lineNumber = method.flowGraph().entries.firstOrNull()?.lineNumber?.let { it - 1 } ?: -1
-        return JcNoopInst(JcInstLocationImpl(method, -1, lineNumber))
+        return startInsts.getOrPut(method) {
+            val lineNumber = method.flowGraph().entries.firstOrNull()?.lineNumber?.let { it - 1 } ?: -1
+            JcNoopInst(JcInstLocationImpl(method, -1, lineNumber))
+        }
     }
 
     override fun predecessors(node: JcInst): Sequence<JcInst> {
@@ -98,9 +113,15 @@ internal class SimplifiedJcApplicationGraph(
             bannedPackagePrefixes.any { callee.enclosingClass.name.startsWith(it) }
         }
 
+        if (!resolveVirtualCalls) return callees
+
         val callExpr = node.callExpr as? JcVirtualCallExpr ?: return callees
         val instanceClass = (callExpr.instance.type as? JcClassType)?.jcClass ?: return callees
 
+        if (dispatchTables != null) {
+            return callees.flatMap { callee -> dispatchTargets(instanceClass, callee) }
+        }
+
         return callees
             .flatMap { callee ->
                 val allOverrides = getOverrides(callee)
@@ -115,6 +136,20 @@ internal class SimplifiedJcApplicationGraph(
             }
     }
 
+    private fun dispatchTargets(instanceClass: JcClassOrInterface, callee: JcMethod): Sequence<JcMethod> {
+        val tables = dispatchTables ?: return sequenceOf(callee)
+        val subClasses = concreteSubClasses.getOrPut(instanceClass) {
+            hierarchyExtension.findSubClasses(instanceClass, allHierarchy = true, includeOwn = true)
+                .filterNot { it.isAbstract || it.isInterface }
+                .toList()
+        }
+        val targets = subClasses.mapNotNullTo(linkedSetOf()) {
+            tables.resolve(it, callee.name, callee.description)
+        }
+        // no implementations are known (i.e., library interface), so keep the declared callee
+        return if (targets.isEmpty()) sequenceOf(callee) else targets.asSequence()
+    }
+
     override fun callees(node: JcInst): Sequence<JcMethod> {
         return calleesUnmarked(node).also {
             it.forEach { method ->
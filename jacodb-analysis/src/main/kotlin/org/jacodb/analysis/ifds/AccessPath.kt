@@ -16,6 +16,8 @@
 
 package org.jacodb.analysis.ifds
 
+import com.google.common.cache.Cache
+import com.google.common.cache.CacheBuilder
 import org.jacodb.api.JcField
 import org.jacodb.api.cfg.JcArrayAccess
 import org.jacodb.api.cfg.JcCastExpr
@@ -23,41 +25,67 @@ import org.jacodb.api.cfg.JcExpr
 import org.jacodb.api.cfg.JcFieldRef
 import org.jacodb.api.cfg.JcSimpleValue
 import org.jacodb.api.cfg.JcValue
+import java.util.concurrent.ConcurrentHashMap
 
 /**
  * This class is used to represent an access path that is needed for problems
  * where dataflow facts could be correlated with variables/values
  * (such as NPE, uninitialized variable, etc.)
+ *
+ * Access paths are hash-consed: each path is a node of the global trie of accessors rooted at [value],
+ * so equal paths are the same instance. Thus [equals] is a reference check and [hashCode] is precomputed.
+ * Extending a path with [div] returns the cached child node.
  */
-data class AccessPath internal constructor(
+class AccessPath private constructor(
     val value: JcSimpleValue?, // null for static field
-    val accesses: List<Accessor>,
+    private val prefix: AccessPath?,
+    private val accessor: Accessor?,
 ) {
-    init {
-        if (value == null) {
-            require(accesses.isNotEmpty())
-            val a = accesses[0]
-            require(a is FieldAccessor)
-            require(a.field.isStatic)
+    private val depth: Int = if (prefix == null) 0 else prefix.depth + 1
+
+    private val hash: Int = if (prefix == null) value.hashCode() else 31 * prefix.hash + accessor.hashCode()
+
+    // created with the first child: most of the paths are leaves
+    @Volatile
+    private var children: ConcurrentHashMap<Accessor, AccessPath>? = null
+
+    /**
+     * path without the last accessor or null for paths without accesses and top-level static fields
+     */
+    val parent: AccessPath?
+        get() = prefix?.takeIf { it !== staticRoot }
+
+    val lastAccessor: Accessor?
+        get() = accessor
+
+    val accesses: List<Accessor> by lazy(LazyThreadSafetyMode.PUBLICATION) {
+        val result = arrayOfNulls<Accessor>(depth)
+        var current = this
+        while (current.prefix != null) {
+            result[current.depth - 1] = current.accessor
+            current = current.prefix!!
         }
+        @Suppress("UNCHECKED_CAST")
+        (result as Array<Accessor>).asList()
     }
 
     val isOnHeap: Boolean
-        get() = accesses.isNotEmpty()
+        get() = depth > 0
 
     val isStatic: Boolean
         get() = value == null
 
-    fun limit(n: Int): AccessPath = AccessPath(value, accesses.take(n))
-
-    operator fun div(accesses: List<Accessor>): AccessPath {
-        for (accessor in accesses) {
-            if (accessor is FieldAccessor && accessor.field.isStatic) {
-                throw IllegalArgumentException("Unexpected static field: ${accessor.field}")
-            }
+    fun limit(n: Int): AccessPath {
+        require(n > 0 || !isStatic) { "Static field access can't be dropped from $this" }
+        var current = this
+        while (current.depth > n) {
+            current = current.prefix!!
         }
+        return current
+    }
 
-        return AccessPath(value, this.accesses + accesses)
+    operator fun div(accesses: List<Accessor>): AccessPath {
+        return accesses.fold(this) { path, accessor -> path / accessor }
     }
 
     operator fun div(accessor: Accessor): AccessPath {
@@ -65,25 +93,63 @@ data class AccessPath internal constructor(
             throw IllegalArgumentException("Unexpected static field: ${accessor.field}")
         }
 
-        return AccessPath(value, this.accesses + accessor)
+        return child(accessor)
     }
 
     operator fun minus(other: AccessPath): List<Accessor>? {
-        if (value != other.value) return null
-        if (accesses.take(other.accesses.size) != other.accesses) return null
-        return accesses.drop(other.accesses.size)
+        if (!startsWith(other)) return null
+        return accesses.subList(other.depth, depth)
+    }
+
+    fun startsWith(other: AccessPath): Boolean {
+        if (depth < other.depth) return false
+        var current = this
+        while (current.depth > other.depth) {
+            current = current.prefix!!
+        }
+        return current === other
+    }
+
+    /**
+     * Replaces [from] prefix of this path with [to], i.e. computes `to / (this - from)` without building the tail.
+     *
+     * @return null if this path doesn't start with [from]
+     */
+    fun rebase(from: AccessPath, to: AccessPath): AccessPath? {
+        if (depth < from.depth) return null
+        if (depth == from.depth) return if (this === from) to else null
+        return prefix!!.rebase(from, to)?.child(accessor!!)
     }
 
+    private fun child(accessor: Accessor): AccessPath {
+        val map = children ?: synchronized(this) {
+            children ?: ConcurrentHashMap<Accessor, AccessPath>(2).also { children = it }
+        }
+        return map[accessor] ?: map.computeIfAbsent(accessor) { AccessPath(value, this, it) }
+    }
+
+    override fun equals(other: Any?): Boolean = this === other
+
+    override fun hashCode(): Int = hash
+
     override fun toString(): String {
         return value.toString() + accesses.joinToString("") { it.toSuffix() }
     }
 
     companion object {
-        fun from(value: JcSimpleValue): AccessPath = AccessPath(value, emptyList())
+        // common prefix of all static fields paths, it is never exposed and never has children:
+        // static fields paths are interned in [staticRoots] instead, so they don't outlive their fields
+        private val staticRoot = AccessPath(null, null, null)
+
+        // roots are weakly reachable: nodes keep their prefixes, so a root is alive while any of its paths is used
+        private val roots: Cache<JcSimpleValue, AccessPath> = CacheBuilder.newBuilder().weakValues().build()
+        private val staticRoots: Cache<JcField, AccessPath> = CacheBuilder.newBuilder().weakValues().build()
+
+        fun from(value: JcSimpleValue): AccessPath = roots.get(value) { AccessPath(value, null, null) }
 
         fun from(field: JcField): AccessPath {
             require(field.isStatic) { "Expected static field" }
-            return AccessPath(null, listOf(FieldAccessor(field)))
+            return staticRoots.get(field) { AccessPath(null, staticRoot, FieldAccessor(field)) }
         }
     }
 }
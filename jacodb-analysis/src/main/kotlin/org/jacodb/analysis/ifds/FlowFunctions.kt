@@ -18,9 +18,72 @@ package org.jacodb.analysis.ifds
 
 import org.jacodb.api.JcMethod
 import org.jacodb.api.cfg.JcInst
+import org.jacodb.api.cfg.JcSimpleValue
 
 fun interface FlowFunction<Fact> {
     fun compute(fact: Fact): Collection<Fact>
+
+    /**
+     * Writes facts produced from [fact] to [sink]. The same fact may be written several times.
+     */
+    fun computeTo(fact: Fact, sink: FactSink<Fact>) {
+        for (result in compute(fact)) {
+            sink.accept(result)
+        }
+    }
+
+    companion object {
+        /**
+         * Flow function passing every fact through. Runners recognize it by reference and don't call it at all.
+         */
+        @Suppress("UNCHECKED_CAST")
+        fun <Fact> identity(): FlowFunction<Fact> = IdentityFlowFunction as FlowFunction<Fact>
+    }
+}
+
+/**
+ * [FlowFunction] which writes its results directly to the sink provided by the caller,
+ * so that no collection is built per computation.
+ */
+fun interface SinkFlowFunction<Fact> : FlowFunction<Fact> {
+    override fun computeTo(fact: Fact, sink: FactSink<Fact>)
+
+    override fun compute(fact: Fact): Collection<Fact> {
+        val buffer = FactBuffer<Fact>()
+        computeTo(fact, buffer)
+        return buffer.toSet()
+    }
+}
+
+fun interface FactSink<in Fact> {
+    fun accept(fact: Fact)
+}
+
+/**
+ * Reusable [FactSink] collecting facts into the list.
+ */
+class FactBuffer<Fact> : FactSink<Fact> {
+    private val facts = ArrayList<Fact>()
+
+    val size: Int get() = facts.size
+
+    operator fun get(index: Int): Fact = facts[index]
+
+    override fun accept(fact: Fact) {
+        facts.add(fact)
+    }
+
+    fun clear() = facts.clear()
+
+    fun toSet(): Set<Fact> = facts.toSet()
+}
+
+private object IdentityFlowFunction : FlowFunction<Any?> {
+    override fun compute(fact: Any?): Collection<Any?> = listOf(fact)
+
+    override fun computeTo(fact: Any?, sink: FactSink<Any?>) {
+        sink.accept(fact)
+    }
 }
 
 interface FlowFunctions<Fact> {
@@ -106,3 +169,16 @@ interface FlowFunctions<Fact> {
         exitStatement: JcInst,
     ): FlowFunction<Fact>
 }
+
+/**
+ * [FlowFunctions] which allow runners to propagate facts sparsely, i.e. along def-use chains of their base values.
+ *
+ * The sequent flow function must pass the fact unchanged through every statement which does not mention
+ * its [base][obtainSparseBase], and the analyzer must not react on such statements unless they are calls or exits.
+ */
+interface SparseFlowFunctions<Fact> : FlowFunctions<Fact> {
+    /**
+     * @return the base value of the [fact], or `null` if the fact has to be propagated through every statement.
+     */
+    fun obtainSparseBase(fact: Fact): JcSimpleValue?
+}
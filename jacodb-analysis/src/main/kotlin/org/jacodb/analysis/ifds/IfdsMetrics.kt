@@ -0,0 +1,47 @@
+/*
+ *  Copyright 2022 UnitTestBot contributors (utbot.org)
+ * <p>
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ * <p>
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package org.jacodb.analysis.ifds
+
+import org.jacodb.api.JcCounter
+import org.jacodb.api.JcHistogram
+import org.jacodb.api.JcMetrics
+import org.jacodb.api.measureNanos
+
+/**
+ * Handles of IFDS metrics, obtained once per runner from [JcMetrics]
+ * (see [org.jacodb.api.JcDatabase.metrics]), so that hot paths do not look them up by name.
+ */
+class IfdsMetrics(val metrics: JcMetrics) {
+    val isEnabled: Boolean = metrics.isEnabled
+
+    val propagatedEdges: JcCounter = metrics.counter("ifds.edges.propagated")
+    val summaryHits: JcCounter = metrics.counter("ifds.summary.hits")
+    val crossUnitCalls: JcCounter = metrics.counter("ifds.crossUnit.calls")
+    val submittedEdges: JcCounter = metrics.counter("ifds.edges.submitted")
+
+    val workListDepth: JcHistogram = metrics.histogram("ifds.workList.depth")
+    val edgesPerUnit: JcHistogram = metrics.histogram("ifds.unit.edges")
+
+    val sequentFlowLatency: JcHistogram = metrics.histogram("ifds.flow.sequent.nanos")
+    val callToReturnFlowLatency: JcHistogram = metrics.histogram("ifds.flow.callToReturn.nanos")
+    val callToStartFlowLatency: JcHistogram = metrics.histogram("ifds.flow.callToStart.nanos")
+    val exitToReturnFlowLatency: JcHistogram = metrics.histogram("ifds.flow.exitToReturn.nanos")
+
+    inline fun <T> measure(histogram: JcHistogram, body: () -> T): T {
+        return metrics.measureNanos(histogram, body)
+    }
+}
@@ -21,13 +21,16 @@ import kotlinx.coroutines.channels.Channel
 import kotlinx.coroutines.channels.getOrElse
 import kotlinx.coroutines.coroutineScope
 import kotlinx.coroutines.isActive
+import org.jacodb.analysis.graph.JcIndexedApplicationGraph
+import org.jacodb.analysis.graph.JcMethodTable
 import org.jacodb.analysis.graph.JcNoopInst
+import org.jacodb.analysis.graph.indexed
 import org.jacodb.analysis.taint.TaintZeroFact
 import org.jacodb.api.JcMethod
 import org.jacodb.api.analysis.JcApplicationGraph
 import org.jacodb.api.cfg.JcInst
-import org.jacodb.api.ext.cfg.callExpr
 import java.util.concurrent.ConcurrentHashMap
+import java.util.concurrent.atomic.AtomicInteger
 
 private val logger = mu.KotlinLogging.logger {}
 
@@ -37,19 +40,36 @@ interface Runner<Fact> {
     suspend fun run(startMethods: List<JcMethod>)
     fun submitNewEdge(edge: Edge<Fact>, reason: Reason<Fact>)
     fun getIfdsResult(): IfdsResult<Fact>
+
+    /**
+     * Called by the manager once the analysis is finished or stopped, i.e. no more edges are propagated.
+     */
+    fun complete()
 }
 
 class UniRunner<Fact, Event>(
-    private val graph: JcApplicationGraph,
+    graph: JcApplicationGraph,
     private val analyzer: Analyzer<Fact, Event>,
     private val manager: Manager<Fact, Event>,
     private val unitResolver: UnitResolver,
     override val unit: UnitType,
     private val zeroFact: Fact?,
+    private val metrics: IfdsMetrics = IfdsMetrics(graph.classpath.db.metrics),
+    isSparse: Boolean = false,
 ) : Runner<Fact> {
 
+    private val graph: JcIndexedApplicationGraph = graph.indexed()
     private val flowSpace: FlowFunctions<Fact> = analyzer.flowFunctions
+
+    // Non-null in the sparse mode, see [propagateTo]
+    private val sparseFlowSpace: SparseFlowFunctions<Fact>? = if (isSparse) {
+        flowSpace as? SparseFlowFunctions<Fact>
+            ?: error("Sparse propagation requires SparseFlowFunctions, but got $flowSpace")
+    } else {
+        null
+    }
     private val workList: Channel<Edge<Fact>> = Channel(Channel.UNLIMITED)
+    private val workListSize = AtomicInteger()
     private val reasons = ConcurrentHashMap<Edge<Fact>, MutableSet<Reason<Fact>>>()
     internal val pathEdges: MutableSet<Edge<Fact>> = ConcurrentHashMap.newKeySet()
 
@@ -59,19 +79,32 @@ class UniRunner<Fact, Event>(
     private val queueIsEmpty = QueueEmptinessChanged(runner = this, isEmpty = true)
     private val queueIsNotEmpty = QueueEmptinessChanged(runner = this, isEmpty = false)
 
+    /**
+     * Listener of the worklist, set when this runner is driven by [UnitScheduler] instead of [run].
+     */
+    internal var workListener: WorkListener? = null
+
+    internal val hasQueuedEdges: Boolean
+        get() = workListSize.get() > 0
+
     override suspend fun run(startMethods: List<JcMethod>) {
+        addStartMethods(startMethods)
+        tabulationAlgorithm()
+    }
+
+    internal fun addStartMethods(startMethods: List<JcMethod>) {
         for (method in startMethods) {
             addStart(method)
         }
-
-        tabulationAlgorithm()
     }
 
     private fun addStart(method: JcMethod) {
         require(unitResolver.resolve(method) == unit)
         val startFacts = flowSpace.obtainPossibleStartFacts(method)
         for (startFact in startFacts) {
-            for (start in graph.entryPoints(method)) {
+            val table = graph.tableOf(method)
+            for (startIndex in table.entries) {
+                val start = table.inst(startIndex)
                 val vertex = Vertex(start, startFact)
                 val edge = Edge(vertex, vertex) // loop
                 propagate(edge, Reason.Initial)
@@ -80,6 +113,7 @@ class UniRunner<Fact, Event>(
     }
 
     override fun submitNewEdge(edge: Edge<Fact>, reason: Reason<Fact>) {
+        metrics.submittedEdges.increment()
         propagate(edge, reason)
     }
 
@@ -109,7 +143,11 @@ class UniRunner<Fact, Event>(
             }
 
             // Add edge to worklist:
+            workListener?.beforeEdgeQueued()
             workList.trySend(edge).getOrThrow()
+            workListSize.incrementAndGet()
+            metrics.propagatedEdges.increment()
+            workListener?.afterEdgeQueued()
 
             return true
         }
@@ -125,10 +163,61 @@ class UniRunner<Fact, Event>(
                 manager.handleControlEvent(queueIsNotEmpty)
                 edge
             }
+            val depth = workListSize.decrementAndGet()
+            if (metrics.isEnabled) {
+                metrics.workListDepth.record(depth.toLong())
+            }
             tabulationAlgorithmStep(edge, this@coroutineScope)
         }
     }
 
+    /**
+     * Processes at most [limit] edges from the worklist without suspending.
+     *
+     * Note: must not be called concurrently for the same runner.
+     */
+    internal fun processWorkList(limit: Int, scope: CoroutineScope) {
+        repeat(limit) {
+            val edge = workList.tryReceive().getOrNull() ?: return
+            val depth = workListSize.decrementAndGet()
+            if (metrics.isEnabled) {
+                metrics.workListDepth.record(depth.toLong())
+            }
+            tabulationAlgorithmStep(edge, scope)
+            workListener?.afterEdgeProcessed()
+        }
+    }
+
+    // Reused by all flow functions computed in tabulationAlgorithmStep. Summary edges may be handled
+    // from other runners, so handleSummaryEdge uses its own buffers, see [withSummaryFacts].
+    private val stepFacts = FactBuffer<Fact>()
+
+    // Note: handling of a summary edge may re-enter handleSummaryEdge in the same thread
+    //  (through the summaries of other units), so the buffers are pooled instead of being a single field.
+    private val summaryFacts = ThreadLocal.withInitial { ArrayDeque<FactBuffer<Fact>>() }
+
+    private inline fun withSummaryFacts(body: (FactBuffer<Fact>) -> Unit) {
+        val pool = summaryFacts.get()
+        val facts = pool.removeLastOrNull() ?: FactBuffer()
+        try {
+            body(facts)
+        } finally {
+            facts.clear()
+            pool.addLast(facts)
+        }
+    }
+
+    private fun FlowFunction<Fact>.computeFacts(fact: Fact, facts: FactBuffer<Fact>) {
+        facts.clear()
+        if (this === identity) {
+            facts.accept(fact)
+        } else {
+            computeTo(fact, facts)
+        }
+    }
+
+    private val identity = FlowFunction.identity<Fact>()
+
     private val JcMethod.isExtern: Boolean
         get() = unitResolver.resolve(this) != unit
 
@@ -139,33 +228,47 @@ class UniRunner<Fact, Event>(
         val (startVertex, currentVertex) = currentEdge
         val (current, currentFact) = currentVertex
 
-        val currentCallees = graph.callees(current).toList()
-        val currentIsCall = current.callExpr != null
-        val currentIsExit = current in graph.exitPoints(current.location.method)
+        val table = graph.tableOf(current)
+        val index = table.indexOf(current)
+        val currentIsCall = table.isCall(index)
+        val currentIsExit = table.isExit(index)
 
         if (currentIsCall) {
+            val currentCallees = table.callees(index)
+
             // Propagate through the call-to-return-site edge:
-            for (returnSite in graph.successors(current)) {
-                val factsAtReturnSite = flowSpace
-                    .obtainCallToReturnSiteFlowFunction(current, returnSite)
-                    .compute(currentFact)
-                for (returnSiteFact in factsAtReturnSite) {
-                    val returnSiteVertex = Vertex(returnSite, returnSiteFact)
-                    val newEdge = Edge(startVertex, returnSiteVertex)
-                    propagate(newEdge, Reason.Sequent(currentEdge))
+            for (returnSiteIndex in table.successors(index)) {
+                val returnSite = table.inst(returnSiteIndex)
+                val factsAtReturnSite = stepFacts
+                metrics.measure(metrics.callToReturnFlowLatency) {
+                    flowSpace
+                        .obtainCallToReturnSiteFlowFunction(current, returnSite)
+                        .computeFacts(currentFact, factsAtReturnSite)
+                }
+                for (i in 0 until factsAtReturnSite.size) {
+                    val returnSiteFact = factsAtReturnSite[i]
+                    propagateTo(startVertex, table, returnSiteIndex, returnSiteFact, Reason.Sequent(currentEdge))
                 }
             }
 
             // Propagate through the call:
             for (callee in currentCallees) {
-                for (calleeStart in graph.entryPoints(callee)) {
-                    val factsAtCalleeStart = flowSpace
-                        .obtainCallToStartFlowFunction(current, calleeStart)
-                        .compute(currentFact)
-                    for (calleeStartFact in factsAtCalleeStart) {
+                val calleeTable = graph.tableOf(callee)
+                for (calleeStartIndex in calleeTable.entries) {
+                    val calleeStart = calleeTable.inst(calleeStartIndex)
+                    val factsAtCalleeStart = stepFacts
+                    metrics.measure(metrics.callToStartFlowLatency) {
+                        flowSpace
+                            .obtainCallToStartFlowFunction(current, calleeStart)
+                            .computeFacts(currentFact, factsAtCalleeStart)
+                    }
+                    for (i in 0 until factsAtCalleeStart.size) {
+                        val calleeStartFact = factsAtCalleeStart[i]
                         val calleeStartVertex = Vertex(calleeStart, calleeStartFact)
 
                         if (callee.isExtern) {
+                            metrics.crossUnitCalls.increment()
+
                             // Initialize analysis of callee:
                             for (event in analyzer.handleCrossUnitCall(currentVertex, calleeStartVertex)) {
                                 manager.handleEvent(event)
@@ -210,48 +313,100 @@ class UniRunner<Fact, Event>(
             }
 
             // Simple (sequential) propagation to the next instruction:
-            for (next in graph.successors(current)) {
-                val factsAtNext = flowSpace
-                    .obtainSequentFlowFunction(current, next)
-                    .compute(currentFact)
-                for (nextFact in factsAtNext) {
-                    val nextVertex = Vertex(next, nextFact)
-                    val newEdge = Edge(startVertex, nextVertex)
-                    propagate(newEdge, Reason.Sequent(currentEdge))
+            for (nextIndex in table.successors(index)) {
+                val next = table.inst(nextIndex)
+                val factsAtNext = stepFacts
+                metrics.measure(metrics.sequentFlowLatency) {
+                    flowSpace
+                        .obtainSequentFlowFunction(current, next)
+                        .computeFacts(currentFact, factsAtNext)
+                }
+                for (i in 0 until factsAtNext.size) {
+                    val nextFact = factsAtNext[i]
+                    propagateTo(startVertex, table, nextIndex, nextFact, Reason.Sequent(currentEdge))
                 }
             }
         }
     }
 
+    /**
+     * Propagates [fact] to the instruction [index] of the [table].
+     *
+     * In the sparse mode, facts with a base value skip the instructions which do not mention it
+     * and go directly to the nearest relevant ones, see [JcMethodTable.nearestRelevant].
+     */
+    private fun propagateTo(
+        startVertex: Vertex<Fact>,
+        table: JcMethodTable,
+        index: Int,
+        fact: Fact,
+        reason: Reason<Fact>,
+    ) {
+        val base = if (fact != zeroFact) sparseFlowSpace?.obtainSparseBase(fact) else null
+        if (base == null) {
+            propagate(Edge(startVertex, Vertex(table.inst(index), fact)), reason)
+            return
+        }
+        for (target in table.nearestRelevant(index, base)) {
+            propagate(Edge(startVertex, Vertex(table.inst(target), fact)), reason)
+        }
+    }
+
     private fun handleSummaryEdge(
         currentEdge: Edge<Fact>,
         summaryEdge: Edge<Fact>,
     ) {
+        metrics.summaryHits.increment()
         val (startVertex, currentVertex) = currentEdge
         val caller = currentVertex.statement
-        for (returnSite in graph.successors(caller)) {
-            val (exit, exitFact) = summaryEdge.to
-            val finalFacts = flowSpace
-                .obtainExitToReturnSiteFlowFunction(caller, returnSite, exit)
-                .compute(exitFact)
-            for (returnSiteFact in finalFacts) {
-                val returnSiteVertex = Vertex(returnSite, returnSiteFact)
-                val newEdge = Edge(startVertex, returnSiteVertex)
-                propagate(newEdge, Reason.ThroughSummary(currentEdge, summaryEdge))
+        val table = graph.tableOf(caller)
+        val (exit, exitFact) = summaryEdge.to
+        withSummaryFacts { finalFacts ->
+            for (returnSiteIndex in table.successors(table.indexOf(caller))) {
+                val returnSite = table.inst(returnSiteIndex)
+                metrics.measure(metrics.exitToReturnFlowLatency) {
+                    flowSpace
+                        .obtainExitToReturnSiteFlowFunction(caller, returnSite, exit)
+                        .computeFacts(exitFact, finalFacts)
+                }
+                for (i in 0 until finalFacts.size) {
+                    val returnSiteFact = finalFacts[i]
+                    val reason = Reason.ThroughSummary(currentEdge, summaryEdge)
+                    propagateTo(startVertex, table, returnSiteIndex, returnSiteFact, reason)
+                }
             }
         }
     }
 
-    private fun getFinalFacts(): Map<JcInst, Set<Fact>> {
-        val resultFacts: MutableMap<JcInst, MutableSet<Fact>> = hashMapOf()
-        for (edge in pathEdges) {
-            resultFacts.getOrPut(edge.to.statement) { hashSetOf() }.add(edge.to.fact)
-        }
-        return resultFacts
+    @Volatile
+    private var isCompleted: Boolean = false
+    private var frozenResult: IfdsResult<Fact>? = null
+
+    override fun complete() {
+        isCompleted = true
     }
 
+    /**
+     * Returns the result of the analysis of this unit.
+     *
+     * While the analysis is running, the result is a snapshot built anew on each call.
+     * Once the runner is [completed][complete], the result is built exactly once
+     * and shared by all consumers (e.g. trace graph builders).
+     */
+    @Synchronized
     override fun getIfdsResult(): IfdsResult<Fact> {
-        val facts = getFinalFacts()
-        return IfdsResult(pathEdges, facts, reasons, zeroFact)
+        frozenResult?.let { return it }
+
+        val pathEdgesBySink: MutableMap<Vertex<Fact>, MutableList<Edge<Fact>>> = hashMapOf()
+        val facts: MutableMap<JcInst, MutableSet<Fact>> = hashMapOf()
+        for (edge in pathEdges) {
+            pathEdgesBySink.getOrPut(edge.to) { mutableListOf() }.add(edge)
+            facts.getOrPut(edge.to.statement) { hashSetOf() }.add(edge.to.fact)
+        }
+        val result = IfdsResult(pathEdgesBySink, facts, reasons, zeroFact)
+        if (isCompleted) {
+            frozenResult = result
+        }
+        return result
     }
 }
@@ -16,11 +16,17 @@
 
 package org.jacodb.analysis.ifds
 
+import kotlinx.coroutines.channels.Channel
+import kotlinx.coroutines.channels.awaitClose
 import kotlinx.coroutines.flow.Flow
 import kotlinx.coroutines.flow.MutableSharedFlow
 import kotlinx.coroutines.flow.SharedFlow
+import kotlinx.coroutines.flow.buffer
+import kotlinx.coroutines.flow.callbackFlow
 import org.jacodb.api.JcMethod
 import java.util.concurrent.ConcurrentHashMap
+import java.util.concurrent.CopyOnWriteArrayList
+import java.util.concurrent.atomic.AtomicInteger
 
 /**
  * A common interface for anything that should be remembered
@@ -101,3 +107,115 @@ class SummaryStorageImpl<T : Summary> : SummaryStorage<T> {
         return getFacts(method).replayCache
     }
 }
+
+/**
+ * [SummaryStorage] which does not require a coroutine per subscriber.
+ *
+ * Summaries of each method are kept in an append-only array.
+ * Subscribers are plain callbacks, which are invoked synchronously (in the thread calling [add])
+ * for every new summary. Each subscriber keeps its own cursor over the array of its method,
+ * so every summary is delivered to every subscriber exactly once, regardless of whether
+ * it was added before or after the subscription.
+ */
+class SummaryStorageWithSubscriptions<T : Summary> : SummaryStorage<T> {
+    private val summaries = ConcurrentHashMap<JcMethod, MethodSummaries<T>>()
+
+    override val knownMethods: List<JcMethod>
+        get() = summaries.entries.filter { it.value.size > 0 }.map { it.key }
+
+    private fun getSummaries(method: JcMethod): MethodSummaries<T> {
+        return summaries.computeIfAbsent(method) { MethodSummaries() }
+    }
+
+    override fun add(fact: T) {
+        getSummaries(fact.method).add(fact)
+    }
+
+    /**
+     * Registers [handler] for all facts summarized for the given [method].
+     * The handler is immediately invoked for already known facts,
+     * and then for every new fact added to this storage.
+     */
+    fun subscribe(method: JcMethod, handler: (T) -> Unit) {
+        getSummaries(method).subscribe(Subscriber(handler))
+    }
+
+    override fun getFacts(method: JcMethod): Flow<T> = callbackFlow {
+        val methodSummaries = getSummaries(method)
+        val subscriber = Subscriber<T> { trySend(it) }
+        methodSummaries.subscribe(subscriber)
+        awaitClose { methodSummaries.unsubscribe(subscriber) }
+    }.buffer(Channel.UNLIMITED)
+
+    override fun getCurrentFacts(method: JcMethod): List<T> {
+        return summaries[method]?.toList().orEmpty()
+    }
+
+    private class Subscriber<T>(
+        private val handler: (T) -> Unit,
+    ) {
+        private val cursor = AtomicInteger(0)
+
+        /**
+         * Delivers all not yet delivered facts from [summaries] to the [handler].
+         * Several threads may drain the same subscriber concurrently,
+         * each index is claimed by exactly one of them.
+         */
+        fun drain(summaries: MethodSummaries<T>) {
+            while (true) {
+                val index = cursor.get()
+                if (index >= summaries.size) return
+                if (cursor.compareAndSet(index, index + 1)) {
+                    handler(summaries[index])
+                }
+            }
+        }
+    }
+
+    private class MethodSummaries<T> {
+        private val known: MutableSet<T> = ConcurrentHashMap.newKeySet()
+        private val subscribers: MutableList<Subscriber<T>> = CopyOnWriteArrayList()
+
+        @Volatile
+        private var items: Array<Any?> = arrayOfNulls(4)
+
+        // Note: 'size' is written after the corresponding item, so reading 'size' first
+        //  guarantees that all items below it are visible.
+        @Volatile
+        var size: Int = 0
+            private set
+
+        @Suppress("UNCHECKED_CAST")
+        operator fun get(index: Int): T = items[index] as T
+
+        fun add(fact: T) {
+            if (!known.add(fact)) return
+            synchronized(this) {
+                var array = items
+                if (size == array.size) {
+                    array = array.copyOf(size * 2)
+                    items = array
+                }
+                array[size] = fact
+                size += 1
+            }
+            for (subscriber in subscribers) {
+                subscriber.drain(this)
+            }
+        }
+
+        fun subscribe(subscriber: Subscriber<T>) {
+            subscribers.add(subscriber)
+            subscriber.drain(this)
+        }
+
+        fun unsubscribe(subscriber: Subscriber<T>) {
+            subscribers.remove(subscriber)
+        }
+
+        fun toList(): List<T> {
+            val n = size
+            return List(n) { get(it) }
+        }
+    }
+}
@@ -16,6 +16,9 @@
 
 package org.jacodb.analysis.ifds
 
+import kotlin.time.Duration
+import kotlin.time.Duration.Companion.seconds
+
 data class TraceGraph<Fact>(
     val sink: Vertex<Fact>,
     val sources: MutableSet<Vertex<Fact>>,
@@ -24,6 +27,9 @@ data class TraceGraph<Fact>(
 ) {
     /**
      * Returns all traces from [sources] to [sink].
+     *
+     * Note: the number of traces may be exponential in the size of the graph,
+     * consider using [getShortestTraces] when only a few traces are needed.
      */
     fun getAllTraces(): Sequence<List<Vertex<Fact>>> = sequence {
         for (v in sources) {
@@ -48,6 +54,21 @@ data class TraceGraph<Fact>(
         }
     }
 
+    /**
+     * Returns at most [maxTraces] shortest traces from [sources] to [sink],
+     * in order of non-decreasing length.
+     *
+     * The search is bounded: when [timeout] elapses or [maxSteps] vertices are expanded,
+     * only the traces found so far are returned.
+     */
+    fun getShortestTraces(
+        maxTraces: Int,
+        timeout: Duration = DEFAULT_TRACE_SEARCH_TIMEOUT,
+        maxSteps: Int = DEFAULT_TRACE_SEARCH_MAX_STEPS,
+    ): List<List<Vertex<Fact>>> {
+        return TraceSearch(this, timeout, maxSteps).findTraces(maxTraces)
+    }
+
     /**
      * Merges [upGraph] into this graph.
      */
@@ -64,3 +85,6 @@ data class TraceGraph<Fact>(
         edges.getOrPut(upGraph.sink) { hashSetOf() }.addAll(entryPoints)
     }
 }
+
+private val DEFAULT_TRACE_SEARCH_TIMEOUT: Duration = 10.seconds
+private const val DEFAULT_TRACE_SEARCH_MAX_STEPS: Int = 10_000_000
@@ -0,0 +1,193 @@
+/*
+ *  Copyright 2022 UnitTestBot contributors (utbot.org)
+ * <p>
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ * <p>
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package org.jacodb.analysis.ifds
+
+import java.util.PriorityQueue
+import kotlin.time.Duration
+import kotlin.time.ExperimentalTime
+import kotlin.time.TimeSource
+
+/**
+ * Searches for the shortest (by the number of vertices) simple traces in a [TraceGraph]
+ * using Yen's algorithm, where each spur path is found by BFS.
+ *
+ * The graph is converted to a dense int-indexed adjacency representation once,
+ * so that all membership checks and blocked sets are plain array operations.
+ *
+ * The search is bounded by [timeout] and by [maxSteps] (the total number of vertices expanded by all BFS runs).
+ * When the budget is exhausted, the traces found so far are returned.
+ */
+@OptIn(ExperimentalTime::class)
+internal class TraceSearch<Fact>(
+    graph: TraceGraph<Fact>,
+    timeout: Duration,
+    private val maxSteps: Int,
+) {
+    private val vertices: List<Vertex<Fact>>
+    private val successors: Array<IntArray>
+    private val sinkId: Int
+
+    // Virtual vertex with edges to all sources, so that the search is single-source.
+    private val rootId: Int
+
+    init {
+        val index: MutableMap<Vertex<Fact>, Int> = hashMapOf()
+        val vertexList: MutableList<Vertex<Fact>> = mutableListOf()
+        fun id(v: Vertex<Fact>): Int = index.getOrPut(v) {
+            vertexList.add(v)
+            vertexList.size - 1
+        }
+
+        sinkId = id(graph.sink)
+        val sourceIds = graph.sources.map { id(it) }.toIntArray()
+        for ((from, tos) in graph.edges) {
+            id(from)
+            for (to in tos) id(to)
+        }
+        vertices = vertexList
+        rootId = vertexList.size
+        successors = Array(vertexList.size + 1) { EMPTY }
+        for ((from, tos) in graph.edges) {
+            successors[index.getValue(from)] = tos.map { index.getValue(it) }.toIntArray()
+        }
+        successors[rootId] = sourceIds
+    }
+
+    // Note: unlike adding nanoseconds to System.nanoTime(), the mark does not overflow for infinite timeouts.
+    private val deadline = TimeSource.Monotonic.markNow() + timeout
+    private var steps = 0
+
+    private val isExhausted: Boolean
+        get() = steps > maxSteps || deadline.hasPassedNow()
+
+    // Reused BFS state:
+    private val parent = IntArray(successors.size)
+    private val visitMark = IntArray(successors.size)
+    private var currentMark = 0
+    private val queue = IntArray(successors.size)
+
+    /**
+     * Finds the shortest path from [start] to the sink, avoiding [blockedVertices] and [blockedEdges].
+     * Returns `null` if there is no such path or the budget is exhausted.
+     */
+    private fun bfs(
+        start: Int,
+        blockedVertices: BooleanArray,
+        blockedEdges: Set<Long>,
+    ): IntArray? {
+        currentMark++
+        var head = 0
+        var tail = 0
+        visitMark[start] = currentMark
+        parent[start] = -1
+        queue[tail++] = start
+        while (head < tail) {
+            if (++steps > maxSteps) return null
+            val v = queue[head++]
+            if (v == sinkId) {
+                return restorePath(v)
+            }
+            for (u in successors[v]) {
+                if (blockedVertices[u] || visitMark[u] == currentMark) continue
+                if (blockedEdges.isNotEmpty() && edgeKey(v, u) in blockedEdges) continue
+                visitMark[u] = currentMark
+                parent[u] = v
+                queue[tail++] = u
+            }
+        }
+        return null
+    }
+
+    private fun restorePath(end: Int): IntArray {
+        var length = 0
+        var v = end
+        while (v != -1) {
+            length++
+            v = parent[v]
+        }
+        val path = IntArray(length)
+        v = end
+        for (i in length - 1 downTo 0) {
+            path[i] = v
+            v = parent[v]
+        }
+        return path
+    }
+
+    /**
+     * Returns at most [k] shortest traces, in order of non-decreasing length.
+     */
+    fun findTraces(k: Int): List<List<Vertex<Fact>>> {
+        if (k <= 0) return emptyList()
+
+        val blockedVertices = BooleanArray(successors.size)
+        val first = bfs(rootId, blockedVertices, emptySet()) ?: return emptyList()
+
+        val found: MutableList<IntArray> = mutableListOf(first)
+        val seen: MutableSet<List<Int>> = hashSetOf(first.asList())
+        val candidates = PriorityQueue<IntArray>(compareBy { it.size })
+
+        while (found.size < k && !isExhausted) {
+            val previous = found.last()
+            for (i in 0 until previous.size - 1) {
+                if (isExhausted) break
+                val spur = previous[i]
+
+                // Block the edges used by already found traces sharing the same root path:
+                val blockedEdges: MutableSet<Long> = hashSetOf()
+                for (path in found) {
+                    if (path.size > i + 1 && haveCommonPrefix(path, previous, i + 1)) {
+                        blockedEdges.add(edgeKey(path[i], path[i + 1]))
+                    }
+                }
+
+                // Block the root path vertices (except the spur vertex) to keep traces simple:
+                blockedVertices.fill(false)
+                for (j in 0 until i) {
+                    blockedVertices[previous[j]] = true
+                }
+
+                val spurPath = bfs(spur, blockedVertices, blockedEdges) ?: continue
+                val candidate = IntArray(i + spurPath.size)
+                previous.copyInto(candidate, endIndex = i)
+                spurPath.copyInto(candidate, destinationOffset = i)
+                if (seen.add(candidate.asList())) {
+                    candidates.add(candidate)
+                }
+            }
+
+            val next = candidates.poll() ?: break
+            found.add(next)
+        }
+
+        // Note: the first vertex of each path is the virtual root.
+        return found.map { path -> List(path.size - 1) { vertices[path[it + 1]] } }
+    }
+
+    private fun haveCommonPrefix(a: IntArray, b: IntArray, length: Int): Boolean {
+        for (j in 0 until length) {
+            if (a[j] != b[j]) return false
+        }
+        return true
+    }
+
+    companion object {
+        private val EMPTY = IntArray(0)
+
+        private fun edgeKey(from: Int, to: Int): Long = (from.toLong() shl 32) or (to.toLong() and 0xFFFF_FFFFL)
+    }
+}
@@ -0,0 +1,135 @@
+/*
+ *  Copyright 2022 UnitTestBot contributors (utbot.org)
+ * <p>
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ * <p>
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package org.jacodb.analysis.ifds
+
+import kotlinx.coroutines.CompletableDeferred
+import kotlinx.coroutines.CoroutineScope
+import kotlinx.coroutines.cancelChildren
+import kotlinx.coroutines.channels.Channel
+import kotlinx.coroutines.coroutineScope
+import kotlinx.coroutines.launch
+import kotlinx.coroutines.yield
+import java.util.concurrent.PriorityBlockingQueue
+import java.util.concurrent.atomic.AtomicBoolean
+import java.util.concurrent.atomic.AtomicLong
+
+internal interface WorkListener {
+    fun beforeEdgeQueued()
+    fun afterEdgeQueued()
+    fun afterEdgeProcessed()
+}
+
+/**
+ * Drives [UniRunner]s of many units by a fixed number of workers instead of a coroutine per unit.
+ *
+ * - Runners are [registered][register] on demand, e.g. when the first edge for their unit appears.
+ * - Units with pending edges are processed in batches, in order of their priority:
+ *   units deeper in the call graph go first, so that summaries of callees are ready before callers need them.
+ * - Termination is detected in O(1) via a global counter of pending edges,
+ *   i.e. edges which are added to any worklist and are not yet processed.
+ */
+class UnitScheduler<Fact>(
+    private val parallelism: Int = Runtime.getRuntime().availableProcessors(),
+    private val batchSize: Int = 256,
+) {
+    private val pendingEdges = AtomicLong()
+    private val quiescence = CompletableDeferred<Unit>()
+    private val readyUnits = PriorityBlockingQueue<ScheduledUnit>()
+    private val wakeups = Channel<Unit>(Channel.UNLIMITED)
+    private val scheduleOrder = AtomicLong()
+
+    /**
+     * Registers [runner] in this scheduler. Must be called before any edge is submitted to the runner.
+     *
+     * @param depth depth of the runner's unit in the call graph, deeper units are processed first.
+     */
+    fun register(runner: UniRunner<Fact, *>, depth: Int) {
+        check(runner.workListener == null) { "Runner for ${runner.unit} is already scheduled" }
+        runner.workListener = ScheduledUnit(runner, depth)
+    }
+
+    /**
+     * Processes edges of all registered runners until there are no pending edges left.
+     */
+    suspend fun run() = coroutineScope {
+        if (pendingEdges.get() > 0) {
+            repeat(parallelism) {
+                launch { worker(this@coroutineScope) }
+            }
+            quiescence.await()
+        }
+        // Note: stop workers along with anything else launched in this scope (e.g. summary subscriptions).
+        coroutineContext.cancelChildren()
+    }
+
+    private suspend fun worker(scope: CoroutineScope) {
+        while (true) {
+            val unit = readyUnits.poll()
+            if (unit == null) {
+                wakeups.receive()
+                continue
+            }
+            unit.runner.processWorkList(batchSize, scope)
+            unit.isQueued.set(false)
+            if (unit.runner.hasQueuedEdges) {
+                unit.schedule()
+            }
+            yield()
+        }
+    }
+
+    private inner class ScheduledUnit(
+        val runner: UniRunner<Fact, *>,
+        val depth: Int,
+    ) : WorkListener, Comparable<ScheduledUnit> {
+
+        // 'true' while the unit is in the queue or being processed by some worker
+        val isQueued = AtomicBoolean(false)
+
+        @Volatile
+        private var order: Long = 0
+
+        override fun beforeEdgeQueued() {
+            // Note: counted before the edge becomes visible to workers,
+            //  so the counter cannot drop to zero while the edge is pending.
+            pendingEdges.incrementAndGet()
+        }
+
+        override fun afterEdgeQueued() {
+            schedule()
+        }
+
+        override fun afterEdgeProcessed() {
+            if (pendingEdges.decrementAndGet() == 0L) {
+                quiescence.complete(Unit)
+            }
+        }
+
+        fun schedule() {
+            if (isQueued.compareAndSet(false, true)) {
+                order = scheduleOrder.incrementAndGet()
+                readyUnits.add(this)
+                wakeups.trySend(Unit)
+            }
+        }
+
+        override fun compareTo(other: ScheduledUnit): Int {
+            if (depth != other.depth) return other.depth.compareTo(depth)
+            return order.compareTo(other.order)
+        }
+    }
+}
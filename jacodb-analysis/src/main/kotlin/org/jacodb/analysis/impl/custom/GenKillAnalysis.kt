@@ -0,0 +1,272 @@
+/*
+ *  Copyright 2022 UnitTestBot contributors (utbot.org)
+ * <p>
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ * <p>
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+
+package org.jacodb.analysis.impl.custom
+
+import org.jacodb.api.cfg.JcBasicBlock
+import org.jacodb.api.cfg.JcBlockGraph
+import org.jacodb.api.cfg.JcInst
+
+/**
+ * Base for intraprocedural gen/kill dataflow analyses over a [JcBlockGraph], tuned for speed:
+ * - facts (locals, definitions, ...) are numbered densely by the subclass, so flow values are plain `long[]` bitsets;
+ * - gen/kill sets of each block are composed once from the sets of its instructions;
+ * - blocks are visited in the reverse postorder of the analysis direction, which is computed once.
+ *
+ * The result is the fixpoint of `output = gen ∪ (input − kill)`, where the input of a block is the meet of the
+ * outputs of its neighbours, and empty for boundary blocks without them:
+ * - for a may-analysis ([isUnion]) the meet is the union and all outputs start empty (the least fixpoint);
+ * - for a must-analysis the meet is the intersection and outputs of non-boundary blocks start full (the greatest
+ *   fixpoint), so facts are not lost on back edges of loops. Entries of the analysis direction and blocks
+ *   unreachable from them are boundary ones too, instead of getting a vacuously full input.
+ *
+ * "Input" and "output" are meant in the direction of the analysis: for a backward analysis the input of an
+ * instruction is the state right after it in program order.
+ */
+abstract class GenKillAnalysis(
+    val blockGraph: JcBlockGraph,
+    val isForward: Boolean,
+    private val isUnion: Boolean,
+    private val withExceptionalEdges: Boolean,
+) {
+    val jcGraph get() = blockGraph.jcGraph
+
+    /**
+     * Number of facts, all of them must be numbered in `0 until factsCount`
+     */
+    protected abstract val factsCount: Int
+
+    /**
+     * Fills [gen] and [kill] bitsets (initially empty) of the [inst]. A fact both generated and killed is generated.
+     */
+    protected abstract fun genKill(inst: JcInst, gen: LongArray, kill: LongArray)
+
+    private val blocks: List<JcBasicBlock> = blockGraph.toList()
+    private val blockIndices: Map<JcBasicBlock, Int> = blocks.withIndex().associate { it.value to it.index }
+
+    private var words = 0
+    private lateinit var blockInputs: Array<LongArray>
+    private lateinit var blockOutputs: Array<LongArray>
+
+    private val isComputed get() = this::blockOutputs.isInitialized
+
+    fun run() {
+        if (isComputed) {
+            return
+        }
+        words = (factsCount + Long.SIZE_BITS - 1) ushr 6
+        val gen = Array(blocks.size) { LongArray(words) }
+        val kill = Array(blocks.size) { LongArray(words) }
+        val instGen = LongArray(words)
+        val instKill = LongArray(words)
+        for ((index, block) in blocks.withIndex()) {
+            for (inst in directed(blockGraph.instructions(block))) {
+                instGen.fill(0L)
+                instKill.fill(0L)
+                genKill(inst, instGen, instKill)
+                // (g2, k2) after (g1, k1) is (g2 ∪ (g1 − k2), k1 ∪ k2)
+                gen[index].transfer(instGen, instKill)
+                kill[index].union(instKill)
+            }
+        }
+
+        val inputs = Array(blocks.size) { index -> neighbours(blocks[index], isInput = true) }
+        val reachable = BooleanArray(blocks.size)
+        val order = reversePostorder(reachable)
+        val isEntry = BooleanArray(blocks.size)
+        directionEntries().forEach { isEntry[blockIndices.getValue(it)] = true }
+        // joining the empty boundary value changes nothing for the union, so there entries with neighbours are ordinary
+        val isBoundary = BooleanArray(blocks.size) {
+            inputs[it].isEmpty() || (!isUnion && (isEntry[it] || !reachable[it]))
+        }
+        val input = Array(blocks.size) { LongArray(words) }
+        val output = Array(blocks.size) { if (isUnion || isBoundary[it]) LongArray(words) else fullSet() }
+        val newOutput = LongArray(words)
+        var changed = true
+        while (changed) {
+            changed = false
+            for (index in order) {
+                val blockIn = input[index]
+                val preds = inputs[index]
+                if (isBoundary[index]) {
+                    blockIn.fill(0L)
+                } else {
+                    output[preds[0]].copyInto(blockIn)
+                    for (i in 1 until preds.size) {
+                        if (isUnion) blockIn.union(output[preds[i]]) else blockIn.intersect(output[preds[i]])
+                    }
+                }
+                blockIn.copyInto(newOutput)
+                newOutput.transfer(gen[index], kill[index])
+                if (!newOutput.contentEquals(output[index])) {
+                    newOutput.copyInto(output[index])
+                    changed = true
+                }
+            }
+        }
+        blockInputs = input
+        blockOutputs = output
+    }
+
+    private fun fullSet(): LongArray {
+        val result = LongArray(words) { -1L }
+        val tail = factsCount and (Long.SIZE_BITS - 1)
+        if (tail != 0) {
+            result[words - 1] = (1L shl tail) - 1
+        }
+        return result
+    }
+
+    /**
+     * Returns bitset of facts at the input of the [block] in the analysis direction
+     */
+    protected fun blockInput(block: JcBasicBlock): LongArray = blockInputs[indexOf(block)]
+
+    /**
+     * Returns bitset of facts at the output of the [block] in the analysis direction
+     */
+    protected fun blockOutput(block: JcBasicBlock): LongArray = blockOutputs[indexOf(block)]
+
+    /**
+     * Returns bitset of facts at the input of the [inst] in the analysis direction, replaying its block from the
+     * block input
+     */
+    protected fun inputOf(inst: JcInst): LongArray = replay(inst, includeInst = false)
+
+    /**
+     * Returns bitset of facts at the output of the [inst] in the analysis direction
+     */
+    protected fun outputOf(inst: JcInst): LongArray = replay(inst, includeInst = true)
+
+    private fun replay(inst: JcInst, includeInst: Boolean): LongArray {
+        val block = blockGraph.block(inst)
+        val result = blockInput(block).copyOf()
+        val instGen = LongArray(words)
+        val instKill = LongArray(words)
+        for (current in directed(blockGraph.instructions(block))) {
+            if (current == inst && !includeInst) {
+                break
+            }
+            instGen.fill(0L)
+            instKill.fill(0L)
+            genKill(current, instGen, instKill)
+            result.transfer(instGen, instKill)
+            if (current == inst) {
+                break
+            }
+        }
+        return result
+    }
+
+    private fun indexOf(block: JcBasicBlock): Int {
+        check(isComputed) { "Analysis is not run yet" }
+        return blockIndices[block] ?: error("Block $block does not belong to the graph")
+    }
+
+    private fun directionEntries() = if (isForward) blockGraph.entries else blockGraph.exits
+
+    private fun directed(instructions: List<JcInst>) = if (isForward) instructions else instructions.asReversed()
+
+    private fun neighbours(block: JcBasicBlock, isInput: Boolean): IntArray {
+        val normal = if (isForward == isInput) blockGraph.predecessors(block) else blockGraph.successors(block)
+        val result = if (withExceptionalEdges) {
+            normal + if (isForward == isInput) blockGraph.throwers(block) else blockGraph.catchers(block)
+        } else {
+            normal
+        }
+        return result.map { blockIndices.getValue(it) }.toIntArray()
+    }
+
+    /**
+     * Reverse postorder of blocks in the analysis direction. The depth-first search starts from the entries of the
+     * direction (exits of the graph for a backward analysis) and then from every block not visited yet.
+     * Blocks visited from the entries are marked in [reachable].
+     */
+    private fun reversePostorder(reachable: BooleanArray): IntArray {
+        val successors = Array(blocks.size) { neighbours(blocks[it], isInput = false) }
+        val visited = BooleanArray(blocks.size)
+        val postorder = IntArray(blocks.size)
+        var size = 0
+        val stack = IntArray(blocks.size)
+        val nextChild = IntArray(blocks.size)
+        fun visitFrom(start: Int) {
+            if (visited[start]) return
+            var top = 0
+            stack[0] = start
+            visited[start] = true
+            while (top >= 0) {
+                val current = stack[top]
+                val children = successors[current]
+                if (nextChild[current] < children.size) {
+                    val child = children[nextChild[current]++]
+                    if (!visited[child]) {
+                        visited[child] = true
+                        stack[++top] = child
+                    }
+                } else {
+                    postorder[size++] = current
+                    top--
+                }
+            }
+        }
+
+        for (entry in directionEntries()) {
+            visitFrom(blockIndices.getValue(entry))
+        }
+        visited.copyInto(reachable)
+        for (start in blocks.indices) {
+            visitFrom(start)
+        }
+        postorder.reverse()
+        return postorder
+    }
+}
+
+internal fun LongArray.getBit(index: Int): Boolean = this[index ushr 6] and (1L shl index) != 0L
+
+internal fun LongArray.setBit(index: Int) {
+    this[index ushr 6] = this[index ushr 6] or (1L shl index)
+}
+
+internal fun LongArray.clearBit(index: Int) {
+    this[index ushr 6] = this[index ushr 6] and (1L shl index).inv()
+}
+
+internal inline fun LongArray.forEachBit(action: (Int) -> Unit) {
+    for (word in indices) {
+        var bits = this[word]
+        while (bits != 0L) {
+            action((word shl 6) + java.lang.Long.numberOfTrailingZeros(bits))
+            bits = bits and (bits - 1)
+        }
+    }
+}
+
+private fun LongArray.union(other: LongArray) {
+    for (i in indices) this[i] = this[i] or other[i]
+}
+
+private fun LongArray.intersect(other: LongArray) {
+    for (i in indices) this[i] = this[i] and other[i]
+}
+
+/**
+ * this := gen ∪ (this − kill)
+ */
+private fun LongArray.transfer(gen: LongArray, kill: LongArray) {
+    for (i in indices) this[i] = gen[i] or (this[i] and kill[i].inv())
+}
@@ -17,17 +17,15 @@
 package org.jacodb.analysis.impl.custom
 
 import org.jacodb.api.JcRefType
-import org.jacodb.api.cfg.JcArrayAccess
 import org.jacodb.api.cfg.JcAssignInst
-import org.jacodb.api.cfg.JcCallExpr
 import org.jacodb.api.cfg.JcCastExpr
 import org.jacodb.api.cfg.JcEnterMonitorInst
-import org.jacodb.api.cfg.JcFieldRef
 import org.jacodb.api.cfg.JcGraph
 import org.jacodb.api.cfg.JcInst
 import org.jacodb.api.cfg.JcInstanceCallExpr
 import org.jacodb.api.cfg.JcLocal
 import org.jacodb.api.cfg.JcValue
+import org.jacodb.api.cfg.locals
 import org.jacodb.api.ext.cfg.arrayRef
 import org.jacodb.api.ext.cfg.callExpr
 import org.jacodb.api.ext.cfg.fieldRef
@@ -50,152 +48,86 @@ class NullAnalysisMap : HashMap<JcValue, NullableState> {
  *
  * If the original program assumes a value is non-null, then adding a use of that value will not introduce any NEW nullness
  * errors into the program. This code may be buggy, or just plain wrong. It has not been checked.
+ *
+ * Locals assumed to be non-null are tracked as a bitset over [JcGraph.locals], see [GenKillAnalysis]. Uses never make
+ * the program assume a value is null, so [NullableState.NULL] is never inferred.
  */
-open class NullAssumptionAnalysis(graph: JcGraph) : BackwardFlowAnalysis<JcInst, NullAnalysisMap>(graph) {
-
-    override val ins: MutableMap<JcInst, NullAnalysisMap> = HashMap()
-    override val outs: MutableMap<JcInst, NullAnalysisMap> = HashMap()
+open class NullAssumptionAnalysis(graph: JcGraph) : GenKillAnalysis(
+    graph.blockGraph(),
+    isForward = false,
+    isUnion = false,
+    withExceptionalEdges = false
+) {
+
+    private val locals: List<JcLocal> = graph.locals.toList()
+    private val localIndices: Map<JcValue, Int> = locals.withIndex().associate { it.value to it.index }
+
+    // allow subclasses to define certain values as always-non-null
+    private val alwaysNonNull: IntArray by lazy {
+        locals.indices.filter { isAlwaysNonNull(locals[it]) }.toIntArray()
+    }
 
-    override fun flowThrough(
-        instIn: NullAnalysisMap?,
-        ins: JcInst,
-        instOut: NullAnalysisMap
-    ) {
-        val out = instIn?.let { NullAnalysisMap(it) } ?: NullAnalysisMap()
+    override val factsCount: Int get() = locals.size
 
+    override fun genKill(inst: JcInst, gen: LongArray, kill: LongArray) {
         // programmer assumes we have a non-null value
-        if (ins is JcEnterMonitorInst) {
-            out[ins.monitor] = NullableState.NON_NULL
+        if (inst is JcEnterMonitorInst) {
+            gen.assumeNonNull(inst.monitor)
         }
 
-        // if we have an array ref, set the info for this ref to TOP,
-        // because we need to be conservative here
-        ins.arrayRef?.let {
-            onArrayAccess(it, out)
+        // if we have an array ref, the array must point to an object, but the array value might be anything
+        inst.arrayRef?.let {
+            gen.assumeNonNull(it.array)
         }
-        // same for field refs, but also set the receiver object to non-null, if there is one
-        ins.fieldRef?.let {
-            onFieldRef(it, out)
+        // same for field refs, the receiver object is non-null, if there is one
+        inst.fieldRef?.instance?.let {
+            gen.assumeNonNull(it)
         }
-        // same for invoke expr., also set the receiver object to non-null, if there is one
-        ins.callExpr?.let {
-            onCallExpr(it, out)
+        // same for invoke expr., the receiver object is non-null, if there is one
+        (inst.callExpr as? JcInstanceCallExpr)?.let {
+            gen.assumeNonNull(it.instance)
         }
 
-        // allow sublasses to define certain values as always-non-null
-        for (entry in out.entries) {
-            if (isAlwaysNonNull(entry.key)) {
-                entry.setValue(NullableState.NON_NULL)
-            }
+        for (index in alwaysNonNull) {
+            gen.setBit(index)
         }
 
-        // if we have a definition (assignment) statement to a ref-like type, handle it,
-        if (ins is JcAssignInst) {
-            // need to copy the current out set because we need to assign under this assumption;
-            // so this copy becomes the in-set to handleRefTypeAssignment
-            if (ins.lhv.type is JcRefType) {
-                onRefTypeAssignment(ins, NullAnalysisMap(out), out)
-            }
-        }
-
-        // save memory by only retaining information about locals
-        val outIter = out.keys.iterator()
-        while (outIter.hasNext()) {
-            val v = outIter.next()
-            if (!(v is JcLocal)) {
-                outIter.remove()
+        // an assignment to a ref-like type invalidates any assumptions of null/non-null for lhs.
+        // We COULD be more accurate by assigning those assumptions to the rhs prior to this statement
+        if (inst is JcAssignInst && inst.lhv.type is JcRefType) {
+            val rhv = inst.rhv
+            if (rhv is JcCastExpr || rhv is JcValue) {
+                localIndices[inst.lhv]?.let {
+                    gen.clearBit(it)
+                    kill.setBit(it)
+                }
             }
         }
+    }
 
-        // now copy the computed info to out
-        copy(out, instOut)
+    private fun LongArray.assumeNonNull(value: JcValue) {
+        // only information about locals is retained
+        localIndices[value]?.let { setBit(it) }
     }
 
     protected open fun isAlwaysNonNull(v: JcValue): Boolean {
         return false
     }
 
-    private fun onArrayAccess(arrayRef: JcArrayAccess, out: NullAnalysisMap) {
-        // here we know that the array must point to an object, but the array value might be anything
-        out[arrayRef.array] = NullableState.NON_NULL
-    }
-
-    private fun onFieldRef(fieldRef: JcFieldRef, out: NullAnalysisMap) {
-        // here we know that the receiver must point to an object
-        val instance = fieldRef.instance
-        if (instance != null) {
-            out[instance] = NullableState.NON_NULL
-        }
-    }
-
-    private fun onCallExpr(invokeExpr: JcCallExpr, out: NullAnalysisMap) {
-        if (invokeExpr is JcInstanceCallExpr) {
-            // here we know that the receiver must point to an object
-            out[invokeExpr.instance] = NullableState.NON_NULL
-        }
-    }
-
-    private fun onRefTypeAssignment(assignStmt: JcAssignInst, rhsInfo: NullAnalysisMap, out: NullAnalysisMap) {
-        val right = when (val rhv = assignStmt.rhv) {
-            is JcCastExpr -> rhv.operand
-            is JcValue -> rhv
-            else -> null
-        }
-        if (right != null) {
-
-            // An assignment invalidates any assumptions of null/non-null for lhs
-            // We COULD be more accurate by assigning those assumptions to the rhs prior to this statement
-            rhsInfo[right] = NullableState.UNKNOWN
-
-            // assign from rhs to lhs
-            out[assignStmt.lhv] = rhsInfo[right]
-        }
-    }
-
-    override fun copy(source: NullAnalysisMap?, dest: NullAnalysisMap) {
-        dest.clear()
-        if (source != null) {
-            dest.putAll(source)
-        }
-    }
-
-    override fun newEntryFlow(): NullAnalysisMap {
-        return NullAnalysisMap()
-    }
+    /**
+     * Returns nullness of locals right after the [inst] in program order, i.e. at the input of this backward analysis
+     */
+    fun ins(inst: JcInst): NullAnalysisMap = inputOf(inst).toNullAnalysisMap()
 
-    override fun newFlow(): NullAnalysisMap {
-        return NullAnalysisMap()
-    }
+    /**
+     * Returns nullness of locals right before the [inst] in program order, i.e. at the output of this backward analysis
+     */
+    fun outs(inst: JcInst): NullAnalysisMap = outputOf(inst).toNullAnalysisMap()
 
-    override fun merge(in1: NullAnalysisMap, in2: NullAnalysisMap, out: NullAnalysisMap) {
-        val values = HashSet<JcValue>()
-        values.addAll(in1.keys)
-        values.addAll(in2.keys)
-        out.clear()
-        for (v in values) {
-            val leftAndRight = HashSet<Any>()
-            leftAndRight.add(in1[v])
-            leftAndRight.add(in2[v])
-            val result = if (leftAndRight.contains(NullableState.UNKNOWN)) {
-                // if on either side we know nothing... then together we know nothing for sure
-                NullableState.UNKNOWN
-            } else if (leftAndRight.contains(NullableState.NON_NULL)) {
-                if (leftAndRight.contains(NullableState.NULL)) {
-                    // NULL and NON_NULL merges to BOTTOM
-                    NullableState.UNKNOWN
-                } else {
-                    // NON_NULL and NON_NULL stays NON_NULL
-                    NullableState.NON_NULL
-                }
-            } else if (leftAndRight.contains(NullableState.NULL)) {
-                // NULL and NULL stays NULL
-                NullableState.NULL
-            } else {
-                // only BOTTOM remains
-                NullableState.UNKNOWN
-            }
-            out[v] = result
-        }
+    private fun LongArray.toNullAnalysisMap(): NullAnalysisMap {
+        val result = NullAnalysisMap()
+        forEachBit { result[locals[it]] = NullableState.NON_NULL }
+        return result
     }
 
     /**
@@ -218,7 +150,8 @@ open class NullAssumptionAnalysis(graph: JcGraph) : BackwardFlowAnalysis<JcInst,
      * @return true if value is always non-null right before this statement
      */
     fun isAssumedNonNullBefore(inst: JcInst, value: JcValue): Boolean {
-        return ins(inst)[value] == NullableState.NON_NULL
+        val index = localIndices[value] ?: return false
+        return inputOf(inst).getBit(index)
     }
 
 }
@@ -16,10 +16,10 @@
 
 package org.jacodb.analysis.npe
 
-import org.jacodb.analysis.config.CallPositionToJcValueResolver
-import org.jacodb.analysis.config.FactAwareConditionEvaluator
+import org.jacodb.analysis.graph.isExitPoint
 import org.jacodb.analysis.ifds.Analyzer
 import org.jacodb.analysis.ifds.Reason
+import org.jacodb.analysis.taint.CompiledSinks
 import org.jacodb.analysis.taint.EdgeForOtherRunner
 import org.jacodb.analysis.taint.NewSummaryEdge
 import org.jacodb.analysis.taint.NewVulnerability
@@ -31,10 +31,8 @@ import org.jacodb.analysis.taint.Tainted
 import org.jacodb.analysis.taint.TaintVulnerability
 import org.jacodb.api.analysis.JcApplicationGraph
 import org.jacodb.api.cfg.JcInst
-import org.jacodb.api.ext.cfg.callExpr
 import org.jacodb.taint.configuration.TaintConfigurationFeature
 import org.jacodb.taint.configuration.TaintMark
-import org.jacodb.taint.configuration.TaintMethodSink
 
 private val logger = mu.KotlinLogging.logger {}
 
@@ -49,8 +47,10 @@ class NpeAnalyzer(
     private val taintConfigurationFeature: TaintConfigurationFeature?
         get() = flowFunctions.taintConfigurationFeature
 
+    private val sinks = CompiledSinks { taintConfigurationFeature }
+
     private fun isExitPoint(statement: JcInst): Boolean {
-        return statement in graph.exitPoints(statement.location.method)
+        return graph.isExitPoint(statement)
     }
 
     override fun handleNewEdge(
@@ -70,24 +70,14 @@ class NpeAnalyzer(
         }
 
         run {
-            val callExpr = edge.to.statement.callExpr ?: return@run
-            val callee = callExpr.method.method
-
-            val config = taintConfigurationFeature?.getConfigForMethod(callee) ?: return@run
-
             // TODO: not always we want to skip sinks on Zero facts.
             //  Some rules might have ConstantTrue or just true (when evaluated with Zero fact) condition.
-            if (edge.to.fact !is Tainted) {
-                return@run
-            }
+            val fact = edge.to.fact as? Tainted ?: return@run
 
             // Determine whether 'edge.to' is a sink via config:
-            val conditionEvaluator = FactAwareConditionEvaluator(
-                edge.to.fact,
-                CallPositionToJcValueResolver(edge.to.statement),
-            )
-            for (item in config.filterIsInstance<TaintMethodSink>()) {
-                if (item.condition.accept(conditionEvaluator)) {
+            for (compiledSink in sinks.at(edge.to.statement)) {
+                val item = compiledSink.rule
+                if (compiledSink.condition.test(fact)) {
                     logger.trace { "Found sink at ${edge.to} in ${edge.method} on $item" }
                     val message = item.ruleNote
                     val vulnerability = TaintVulnerability(message, sink = edge.to, rule = item)
@@ -25,8 +25,9 @@ import org.jacodb.analysis.config.FactAwareConditionEvaluator
 import org.jacodb.analysis.config.TaintActionEvaluator
 import org.jacodb.analysis.ifds.AccessPath
 import org.jacodb.analysis.ifds.ElementAccessor
-import org.jacodb.analysis.ifds.FlowFunction
+import org.jacodb.analysis.ifds.FactSink
 import org.jacodb.analysis.ifds.FlowFunctions
+import org.jacodb.analysis.ifds.SinkFlowFunction
 import org.jacodb.analysis.ifds.onSome
 import org.jacodb.analysis.ifds.toPath
 import org.jacodb.analysis.ifds.toPathOrNull
@@ -69,6 +70,7 @@ import org.jacodb.taint.configuration.TaintEntryPointSource
 import org.jacodb.taint.configuration.TaintMark
 import org.jacodb.taint.configuration.TaintMethodSource
 import org.jacodb.taint.configuration.TaintPassThrough
+import java.util.concurrent.ConcurrentHashMap
 
 private val logger = mu.KotlinLogging.logger {}
 
@@ -97,8 +99,17 @@ class ForwardNpeFlowFunctions(
         }
     }
 
+    // Basic start facts depend only on the method, while they are requested on every call-to-start edge with Zero fact
+    private val basicStartFacts = ConcurrentHashMap<JcMethod, Collection<TaintDomainFact>>()
+
     private fun obtainPossibleStartFactsBasic(
         method: JcMethod,
+    ): Collection<TaintDomainFact> = basicStartFacts.getOrPut(method) {
+        computePossibleStartFactsBasic(method)
+    }
+
+    private fun computePossibleStartFactsBasic(
+        method: JcMethod,
     ): Collection<TaintDomainFact> = buildSet {
         // Zero (reachability) fact always present at entrypoint:
         add(TaintZeroFact)
@@ -128,7 +139,8 @@ class ForwardNpeFlowFunctions(
         fact: Tainted,
         from: JcExpr,
         to: JcValue,
-    ): Collection<Tainted> {
+        sink: FactSink<TaintDomainFact>,
+    ) {
         val toPath = to.toPath()
         val fromPath = from.toPathOrNull()
 
@@ -140,62 +152,63 @@ class ForwardNpeFlowFunctions(
             //      || (from is JcCallExpr && from.method.method.isNullable != true))
             if (fact.variable.startsWith(toPath)) {
                 // NULLNESS is overridden:
-                return emptySet()
+                return
             }
         }
 
         if (fromPath != null) {
             // Adhoc taint array:
-            if (fromPath.accesses.isNotEmpty()
-                && fromPath.accesses.last() is ElementAccessor
+            if (fromPath.lastAccessor is ElementAccessor
                 && fromPath == (fact.variable / ElementAccessor)
             ) {
                 val newTaint = fact.copy(variable = toPath)
-                return setOf(fact, newTaint)
+                sink.accept(fact)
+                sink.accept(newTaint)
+                return
             }
 
-            val tail = fact.variable - fromPath
-            if (tail != null) {
+            val newPath = fact.variable.rebase(fromPath, toPath)
+            if (newPath != null) {
                 // Both 'from' and 'to' are tainted now:
-                val newPath = toPath / tail
                 val newTaint = fact.copy(variable = newPath)
-                return setOf(fact, newTaint)
+                sink.accept(fact)
+                sink.accept(newTaint)
+                return
             }
         }
 
-        return buildSet {
-            if (from is JcNullConstant) {
-                add(Tainted(toPath, TaintMark.NULLNESS))
-            }
+        if (from is JcNullConstant) {
+            sink.accept(Tainted(toPath, TaintMark.NULLNESS))
+        }
 
-            if (fact.variable.startsWith(toPath)) {
-                // 'to' was (sub-)tainted, but it is now overridden by 'from':
-                return@buildSet
-            } else {
-                // Neither 'from' nor 'to' are tainted:
-                add(fact)
-            }
+        if (fact.variable.startsWith(toPath)) {
+            // 'to' was (sub-)tainted, but it is now overridden by 'from':
+            return
+        } else {
+            // Neither 'from' nor 'to' are tainted:
+            sink.accept(fact)
         }
     }
 
     private fun transmitTaintNormal(
         fact: Tainted,
         inst: JcInst,
-    ): List<Tainted> {
+        sink: FactSink<TaintDomainFact>,
+    ) {
         // Pass-through:
-        return listOf(fact)
+        sink.accept(fact)
     }
 
-    private fun generates(inst: JcInst): Collection<TaintDomainFact> = buildList {
+    private fun generates(inst: JcInst, sink: FactSink<TaintDomainFact>) {
         if (inst is JcAssignInst) {
             val toPath = inst.lhv.toPath()
             val from = inst.rhv
             if (from is JcNullConstant || (from is JcCallExpr && from.method.method.isNullable == true)) {
-                add(Tainted(toPath, TaintMark.NULLNESS))
+                sink.accept(Tainted(toPath, TaintMark.NULLNESS))
             } else if (from is JcNewArrayExpr && (from.type as JcArrayType).elementType.nullable != false) {
                 val accessors = List((from.type as JcArrayType).dimensions) { ElementAccessor }
                 val path = toPath / accessors
-                add(Tainted(path, TaintMark.NULLNESS))
+                sink.accept(Tainted(path, TaintMark.NULLNESS))
             }
         }
     }
@@ -215,10 +228,10 @@ class ForwardNpeFlowFunctions(
     override fun obtainSequentFlowFunction(
         current: JcInst,
         next: JcInst,
-    ) = FlowFunction<TaintDomainFact> { fact ->
+    ) = SinkFlowFunction<TaintDomainFact> { fact, sink ->
         if (fact is Tainted && fact.mark == TaintMark.NULLNESS) {
             if (fact.variable.isDereferencedAt(current)) {
-                return@FlowFunction emptySet()
+                return@SinkFlowFunction
             }
         }
 
@@ -233,32 +246,37 @@ class ForwardNpeFlowFunctions(
                         // This is a hack: instructions like `return null` in branch of next will be considered only if
                         //  the fact holds (otherwise we could not get there)
                         // Note the absence of 'Zero' here!
-                        return@FlowFunction listOf(Tainted(pathComparedWithNull, TaintMark.NULLNESS))
+                        sink.accept(Tainted(pathComparedWithNull, TaintMark.NULLNESS))
+                        return@SinkFlowFunction
                     }
                 }
             } else if (fact is Tainted && fact.mark == TaintMark.NULLNESS) {
                 val expr = current.condition
                 if (pathComparedWithNull != fact.variable) {
-                    return@FlowFunction listOf(fact)
+                    sink.accept(fact)
+                    return@SinkFlowFunction
                 }
                 if ((expr is JcEqExpr && nextIsTrueBranch) || (expr is JcNeqExpr && !nextIsTrueBranch)) {
                     // comparedPath is null in this branch
-                    return@FlowFunction listOf(TaintZeroFact)
+                    sink.accept(TaintZeroFact)
+                    return@SinkFlowFunction
                 } else {
-                    return@FlowFunction emptyList()
+                    return@SinkFlowFunction
                 }
             }
         }
 
         if (fact is TaintZeroFact) {
-            return@FlowFunction listOf(TaintZeroFact) + generates(current)
+            sink.accept(TaintZeroFact)
+            generates(current, sink)
+            return@SinkFlowFunction
         }
         check(fact is Tainted)
 
         if (current is JcAssignInst) {
-            transmitTaintAssign(fact, from = current.rhv, to = current.lhv)
+            transmitTaintAssign(fact, from = current.rhv, to = current.lhv, sink = sink)
         } else {
-            transmitTaintNormal(fact, current)
+            transmitTaintNormal(fact, current, sink)
         }
     }
 
@@ -267,20 +285,20 @@ class ForwardNpeFlowFunctions(
         at: JcInst,
         from: JcValue,
         to: JcValue,
-    ): Collection<Tainted> = buildSet {
+        sink: FactSink<TaintDomainFact>,
+    ) {
         if (fact.mark == TaintMark.NULLNESS) {
             if (fact.variable.isDereferencedAt(at)) {
-                return@buildSet
+                return
             }
         }
 
         val fromPath = from.toPath()
         val toPath = to.toPath()
 
-        val tail = (fact.variable - fromPath) ?: return@buildSet
-        val newPath = toPath / tail
+        val newPath = fact.variable.rebase(fromPath, toPath) ?: return
         val newTaint = fact.copy(variable = newPath)
-        add(newTaint)
+        sink.accept(newTaint)
     }
 
     private fun transmitTaintArgumentActualToFormal(
@@ -288,43 +306,48 @@ class ForwardNpeFlowFunctions(
         at: JcInst,
         from: JcValue, // actual
         to: JcValue, // formal
-    ): Collection<Tainted> = transmitTaint(fact, at, from, to)
+        sink: FactSink<TaintDomainFact>,
+    ) = transmitTaint(fact, at, from, to, sink)
 
     private fun transmitTaintArgumentFormalToActual(
         fact: Tainted,
         at: JcInst,
         from: JcValue, // formal
         to: JcValue, // actual
-    ): Collection<Tainted> = transmitTaint(fact, at, from, to)
+        sink: FactSink<TaintDomainFact>,
+    ) = transmitTaint(fact, at, from, to, sink)
 
     private fun transmitTaintInstanceToThis(
         fact: Tainted,
         at: JcInst,
         from: JcValue, // instance
         to: JcThis, // this
-    ): Collection<Tainted> = transmitTaint(fact, at, from, to)
+        sink: FactSink<TaintDomainFact>,
+    ) = transmitTaint(fact, at, from, to, sink)
 
     private fun transmitTaintThisToInstance(
         fact: Tainted,
         at: JcInst,
         from: JcThis, // this
         to: JcValue, // instance
-    ): Collection<Tainted> = transmitTaint(fact, at, from, to)
+        sink: FactSink<TaintDomainFact>,
+    ) = transmitTaint(fact, at, from, to, sink)
 
     private fun transmitTaintReturn(
         fact: Tainted,
         at: JcInst,
         from: JcValue,
         to: JcValue,
-    ): Collection<Tainted> = transmitTaint(fact, at, from, to)
+        sink: FactSink<TaintDomainFact>,
+    ) = transmitTaint(fact, at, from, to, sink)
 
     override fun obtainCallToReturnSiteFlowFunction(
         callStatement: JcInst,
         returnSite: JcInst, // FIXME: unused?
-    ) = FlowFunction<TaintDomainFact> { fact ->
+    ) = SinkFlowFunction<TaintDomainFact> { fact, sink ->
         if (fact is Tainted && fact.mark == TaintMark.NULLNESS) {
             if (fact.variable.isDereferencedAt(callStatement)) {
-                return@FlowFunction emptySet()
+                return@SinkFlowFunction
             }
         }
 
@@ -340,54 +363,53 @@ class ForwardNpeFlowFunctions(
         ) {
             for (arg in callExpr.args) {
                 if (arg.toPath() == fact.variable) {
-                    return@FlowFunction setOf(
-                        fact,
-                        fact.copy(variable = callStatement.lhv.toPath())
-                    )
+                    sink.accept(fact)
+                    sink.accept(fact.copy(variable = callStatement.lhv.toPath()))
+                    return@SinkFlowFunction
                 }
             }
-            return@FlowFunction setOf(fact)
+            sink.accept(fact)
+            return@SinkFlowFunction
         }
 
         val config = taintConfigurationFeature?.getConfigForMethod(callee)
 
         if (fact == TaintZeroFact) {
-            return@FlowFunction buildSet {
-                add(TaintZeroFact)
-
-                if (callStatement is JcAssignInst) {
-                    val toPath = callStatement.lhv.toPath()
-                    val from = callStatement.rhv
-                    if (from is JcNullConstant || (from is JcCallExpr && from.method.method.isNullable == true)) {
-                        add(Tainted(toPath, TaintMark.NULLNESS))
-                    } else if (from is JcNewArrayExpr && (from.type as JcArrayType).elementType.nullable != false) {
-                        val size = (from.type as JcArrayType).dimensions
-                        val accessors = List(size) { ElementAccessor }
-                        val path = toPath / accessors
-                        add(Tainted(path, TaintMark.NULLNESS))
-                    }
+            sink.accept(TaintZeroFact)
+
+            if (callStatement is JcAssignInst) {
+                val toPath = callStatement.lhv.toPath()
+                val from = callStatement.rhv
+                if (from is JcNullConstant || (from is JcCallExpr && from.method.method.isNullable == true)) {
+                    sink.accept(Tainted(toPath, TaintMark.NULLNESS))
+                } else if (from is JcNewArrayExpr && (from.type as JcArrayType).elementType.nullable != false) {
+                    val size = (from.type as JcArrayType).dimensions
+                    val accessors = List(size) { ElementAccessor }
+                    val path = toPath / accessors
+                    sink.accept(Tainted(path, TaintMark.NULLNESS))
                 }
+            }
+
+            if (config != null) {
+                val conditionEvaluator = BasicConditionEvaluator(CallPositionToJcValueResolver(callStatement))
+                val actionEvaluator = TaintActionEvaluator(CallPositionToAccessPathResolver(callStatement))
 
-                if (config != null) {
-                    val conditionEvaluator = BasicConditionEvaluator(CallPositionToJcValueResolver(callStatement))
-                    val actionEvaluator = TaintActionEvaluator(CallPositionToAccessPathResolver(callStatement))
-
-                    // Handle MethodSource config items:
-                    for (item in config.filterIsInstance<TaintMethodSource>()) {
-                        if (item.condition.accept(conditionEvaluator)) {
-                            for (action in item.actionsAfter) {
-                                val result = when (action) {
-                                    is AssignMark -> actionEvaluator.evaluate(action)
-                                    else -> error("$action is not supported for $item")
-                                }
-                                result.onSome {
-                                    addAll(it)
-                                }
+                // Handle MethodSource config items:
+                for (item in config.filterIsInstance<TaintMethodSource>()) {
+                    if (item.condition.accept(conditionEvaluator)) {
+                        for (action in item.actionsAfter) {
+                            val result = when (action) {
+                                is AssignMark -> actionEvaluator.evaluate(action)
+                                else -> error("$action is not supported for $item")
+                            }
+                            result.onSome {
+                                it.forEach(sink::accept)
                             }
                         }
                     }
                 }
             }
+            return@SinkFlowFunction
         }
         check(fact is Tainted)
 
@@ -441,7 +463,8 @@ class ForwardNpeFlowFunctions(
                     if (facts.size > 0) {
                         logger.trace { "Got ${facts.size} facts from config for $callee: $facts" }
                     }
-                    return@FlowFunction facts
+                    facts.forEach(sink::accept)
+                    return@SinkFlowFunction
                 } else {
                     // Fall back to the default behavior, as if there were no config at all.
                 }
@@ -450,7 +473,8 @@ class ForwardNpeFlowFunctions(
 
         // FIXME: adhoc for constructors:
         if (callee.isConstructor) {
-            return@FlowFunction listOf(fact)
+            sink.accept(fact)
+            return@SinkFlowFunction
         }
 
         // TODO: CONSIDER REFACTORING THIS
@@ -465,20 +489,20 @@ class ForwardNpeFlowFunctions(
         if (callee in graph.callees(callStatement)) {
 
             if (fact.variable.isStatic) {
-                return@FlowFunction emptyList()
+                return@SinkFlowFunction
             }
 
             for (actual in callExpr.args) {
                 // Possibly tainted actual parameter:
                 if (fact.variable.startsWith(actual.toPathOrNull())) {
-                    return@FlowFunction emptyList() // Will be handled by summary edge
+                    return@SinkFlowFunction // Will be handled by summary edge
                 }
             }
 
             if (callExpr is JcInstanceCallExpr) {
                 // Possibly tainted instance:
                 if (fact.variable.startsWith(callExpr.instance.toPathOrNull())) {
-                    return@FlowFunction emptyList() // Will be handled by summary edge
+                    return@SinkFlowFunction // Will be handled by summary edge
                 }
             }
 
@@ -487,59 +511,58 @@ class ForwardNpeFlowFunctions(
         if (callStatement is JcAssignInst) {
             // Possibly tainted lhv:
             if (fact.variable.startsWith(callStatement.lhv.toPathOrNull())) {
-                return@FlowFunction emptyList() // Overridden by rhv
+                return@SinkFlowFunction // Overridden by rhv
             }
         }
 
         // The "most default" behaviour is encapsulated here:
-        transmitTaintNormal(fact, callStatement)
+        transmitTaintNormal(fact, callStatement, sink)
     }
 
     override fun obtainCallToStartFlowFunction(
         callStatement: JcInst,
         calleeStart: JcInst,
-    ) = FlowFunction<TaintDomainFact> { fact ->
+    ) = SinkFlowFunction<TaintDomainFact> { fact, sink ->
         val callee = calleeStart.location.method
 
         if (fact == TaintZeroFact) {
-            return@FlowFunction obtainPossibleStartFactsBasic(callee)
+            for (startFact in obtainPossibleStartFactsBasic(callee)) {
+                sink.accept(startFact)
+            }
+            return@SinkFlowFunction
         }
         check(fact is Tainted)
 
         val callExpr = callStatement.callExpr
             ?: error("Call statement should have non-null callExpr")
 
-        buildSet {
-            // Transmit facts on arguments (from 'actual' to 'formal'):
-            val actualParams = callExpr.args
-            val formalParams = cp.getArgumentsOf(callee)
-            for ((formal, actual) in formalParams.zip(actualParams)) {
-                addAll(
-                    transmitTaintArgumentActualToFormal(
-                        fact = fact,
-                        at = callStatement,
-                        from = actual,
-                        to = formal
-                    )
-                )
-            }
+        // Transmit facts on arguments (from 'actual' to 'formal'):
+        val actualParams = callExpr.args
+        val formalParams = cp.getArgumentsOf(callee)
+        for ((formal, actual) in formalParams.zip(actualParams)) {
+            transmitTaintArgumentActualToFormal(
+                fact = fact,
+                at = callStatement,
+                from = actual,
+                to = formal,
+                sink = sink
+            )
+        }
 
-            // Transmit facts on instance (from 'instance' to 'this'):
-            if (callExpr is JcInstanceCallExpr) {
-                addAll(
-                    transmitTaintInstanceToThis(
-                        fact = fact,
-                        at = callStatement,
-                        from = callExpr.instance,
-                        to = callee.thisInstance
-                    )
-                )
-            }
+        // Transmit facts on instance (from 'instance' to 'this'):
+        if (callExpr is JcInstanceCallExpr) {
+            transmitTaintInstanceToThis(
+                fact = fact,
+                at = callStatement,
+                from = callExpr.instance,
+                to = callee.thisInstance,
+                sink = sink
+            )
+        }
 
-            // Transmit facts on static values:
-            if (fact.variable.isStatic) {
-                add(fact)
-            }
+        // Transmit facts on static values:
+        if (fact.variable.isStatic) {
+            sink.accept(fact)
         }
     }
 
@@ -547,22 +570,21 @@ class ForwardNpeFlowFunctions(
         callStatement: JcInst,
         returnSite: JcInst, // unused
         exitStatement: JcInst,
-    ) = FlowFunction<TaintDomainFact> { fact ->
+    ) = SinkFlowFunction<TaintDomainFact> { fact, sink ->
         // TODO: do we even need to return non-empty list for zero fact here?
         if (fact == TaintZeroFact) {
             // return@FlowFunction listOf(Zero)
-            return@FlowFunction buildSet {
-                add(TaintZeroFact)
-                if (exitStatement is JcReturnInst && callStatement is JcAssignInst) {
-                    // Note: returnValue can be null here in some weird cases, e.g. in lambda.
-                    exitStatement.returnValue?.let { returnValue ->
-                        if (returnValue is JcNullConstant) {
-                            val toPath = callStatement.lhv.toPath()
-                            add(Tainted(toPath, TaintMark.NULLNESS))
-                        }
+            sink.accept(TaintZeroFact)
+            if (exitStatement is JcReturnInst && callStatement is JcAssignInst) {
+                // Note: returnValue can be null here in some weird cases, e.g. in lambda.
+                exitStatement.returnValue?.let { returnValue ->
+                    if (returnValue is JcNullConstant) {
+                        val toPath = callStatement.lhv.toPath()
+                        sink.accept(Tainted(toPath, TaintMark.NULLNESS))
                     }
                 }
             }
+            return@SinkFlowFunction
         }
         check(fact is Tainted)
 
@@ -570,53 +592,48 @@ class ForwardNpeFlowFunctions(
             ?: error("Call statement should have non-null callExpr")
         val callee = exitStatement.location.method
 
-        buildSet {
-            // Transmit facts on arguments (from 'formal' back to 'actual'), if they are passed by-ref:
-            if (fact.variable.isOnHeap) {
-                val actualParams = callExpr.args
-                val formalParams = cp.getArgumentsOf(callee)
-                for ((formal, actual) in formalParams.zip(actualParams)) {
-                    addAll(
-                        transmitTaintArgumentFormalToActual(
-                            fact = fact,
-                            at = callStatement,
-                            from = formal,
-                            to = actual
-                        )
-                    )
-                }
-            }
-
-            // Transmit facts on instance (from 'this' to 'instance'):
-            if (callExpr is JcInstanceCallExpr) {
-                addAll(
-                    transmitTaintThisToInstance(
-                        fact = fact,
-                        at = callStatement,
-                        from = callee.thisInstance,
-                        to = callExpr.instance
-                    )
+        // Transmit facts on arguments (from 'formal' back to 'actual'), if they are passed by-ref:
+        if (fact.variable.isOnHeap) {
+            val actualParams = callExpr.args
+            val formalParams = cp.getArgumentsOf(callee)
+            for ((formal, actual) in formalParams.zip(actualParams)) {
+                transmitTaintArgumentFormalToActual(
+                    fact = fact,
+                    at = callStatement,
+                    from = formal,
+                    to = actual,
+                    sink = sink
                 )
             }
+        }
 
-            // Transmit facts on static values:
-            if (fact.variable.isStatic) {
-                add(fact)
-            }
+        // Transmit facts on instance (from 'this' to 'instance'):
+        if (callExpr is JcInstanceCallExpr) {
+            transmitTaintThisToInstance(
+                fact = fact,
+                at = callStatement,
+                from = callee.thisInstance,
+                to = callExpr.instance,
+                sink = sink
+            )
+        }
 
-            // Transmit facts on return value (from 'returnValue' to 'lhv'):
-            if (exitStatement is JcReturnInst && callStatement is JcAssignInst) {
-                // Note: returnValue can be null here in some weird cases, e.g. in lambda.
-                exitStatement.returnValue?.let { returnValue ->
-                    addAll(
-                        transmitTaintReturn(
-                            fact = fact,
-                            at = callStatement,
-                            from = returnValue,
-                            to = callStatement.lhv
-                        )
-                    )
-                }
+        // Transmit facts on static values:
+        if (fact.variable.isStatic) {
+            sink.accept(fact)
+        }
+
+        // Transmit facts on return value (from 'returnValue' to 'lhv'):
+        if (exitStatement is JcReturnInst && callStatement is JcAssignInst) {
+            // Note: returnValue can be null here in some weird cases, e.g. in lambda.
+            exitStatement.returnValue?.let { returnValue ->
+                transmitTaintReturn(
+                    fact = fact,
+                    at = callStatement,
+                    from = returnValue,
+                    to = callStatement.lhv,
+                    sink = sink
+                )
             }
         }
     }
@@ -20,6 +20,7 @@ import org.jacodb.analysis.ifds.UniRunner
 import org.jacodb.analysis.ifds.UnitResolver
 import org.jacodb.analysis.ifds.UnitType
 import org.jacodb.analysis.ifds.UnknownUnit
+import org.jacodb.analysis.taint.TaintIncrementalStorage
 import org.jacodb.analysis.taint.TaintManager
 import org.jacodb.analysis.taint.TaintRunner
 import org.jacodb.analysis.taint.TaintZeroFact
@@ -31,7 +32,8 @@ private val logger = mu.KotlinLogging.logger {}
 class NpeManager(
     graph: JcApplicationGraph,
     unitResolver: UnitResolver,
-) : TaintManager(graph, unitResolver, useBidiRunner = false) {
+    incrementalStorage: TaintIncrementalStorage? = null,
+) : TaintManager(graph, unitResolver, useBidiRunner = false, incrementalStorage = incrementalStorage) {
 
     override fun newRunner(
         unit: UnitType,
@@ -47,7 +47,7 @@ fun AccessPath?.isDereferencedAt(expr: JcExpr): Boolean {
     return expr.values
         .mapNotNull { it.toPathOrNull() }
         .any {
-            (it - this)?.isNotEmpty() == true
+            it != this && it.startsWith(this)
         }
 }
 
@@ -16,6 +16,8 @@
 
 package org.jacodb.analysis.sarif
 
+import com.google.common.cache.Cache
+import com.google.common.cache.CacheBuilder
 import io.github.detekt.sarif4k.ArtifactLocation
 import io.github.detekt.sarif4k.CodeFlow
 import io.github.detekt.sarif4k.Location
@@ -37,11 +39,12 @@ import org.jacodb.api.JcMethod
 import org.jacodb.api.cfg.JcInst
 import java.io.File
 
-private const val SARIF_SCHEMA =
+internal const val SARIF_SCHEMA =
     "https://raw.githubusercontent.com/oasis-tcs/sarif-spec/master/Schemata/sarif-schema-2.1.0.json"
 private const val JACODB_INFORMATION_URI =
     "https://github.com/UnitTestBot/jacodb/blob/develop/jacodb-analysis/README.md"
-private const val DEFAULT_PATH_COUNT = 3
+internal const val DEFAULT_PATH_COUNT = 3
+internal const val DEFAULT_LOCATIONS_CACHE_SIZE = 10_000L
 
 fun sarifReportFromVulnerabilities(
     vulnerabilities: List<VulnerabilityInstance<*>>,
@@ -49,42 +52,69 @@ fun sarifReportFromVulnerabilities(
     isDeduplicate: Boolean = true,
     sourceFileResolver: SourceFileResolver = SourceFileResolver { null },
 ): SarifSchema210 {
+    val locations = SarifLocations(sourceFileResolver)
     return SarifSchema210(
         schema = SARIF_SCHEMA,
         version = Version.The210,
         runs = listOf(
             Run(
-                tool = Tool(
-                    driver = ToolComponent(
-                        name = "jacodb-analysis",
-                        organization = "UnitTestBot",
-                        version = "1.4.5",
-                        informationURI = JACODB_INFORMATION_URI,
-                    )
-                ),
+                tool = jacodbTool,
                 results = vulnerabilities.map { instance ->
-                    Result(
-                        ruleID = instance.description.ruleId,
-                        message = Message(
-                            text = instance.description.message
-                        ),
-                        level = instance.description.level,
-                        locations = listOf(instToSarifLocation(instance.traceGraph.sink.statement, sourceFileResolver)),
-                        codeFlows = instance.traceGraph
-                            .getAllTraces()
-                            .take(maxPathsCount)
-                            .map { traceToSarifCodeFlow(it, sourceFileResolver, isDeduplicate) }
-                            .toList(),
-                    )
+                    instanceToSarifResult(instance, locations, maxPathsCount, isDeduplicate)
                 }
             )
         )
     )
 }
 
+internal val jacodbTool: Tool = Tool(
+    driver = ToolComponent(
+        name = "jacodb-analysis",
+        organization = "UnitTestBot",
+        version = "1.4.5",
+        informationURI = JACODB_INFORMATION_URI,
+    )
+)
+
+internal fun instanceToSarifResult(
+    instance: VulnerabilityInstance<*>,
+    locations: SarifLocations,
+    maxPathsCount: Int = DEFAULT_PATH_COUNT,
+    isDeduplicate: Boolean = true,
+): Result {
+    return Result(
+        ruleID = instance.description.ruleId,
+        message = Message(
+            text = instance.description.message
+        ),
+        level = instance.description.level,
+        locations = listOf(locations.of(instance.traceGraph.sink.statement)),
+        codeFlows = instance.traceGraph
+            .getShortestTraces(maxPathsCount)
+            .map { traceToSarifCodeFlow(it, locations, isDeduplicate) },
+    )
+}
+
 private val JcMethod.fullyQualifiedName: String
     get() = "${enclosingClass.name}#${name}"
 
+/**
+ * Builds SARIF [Location]s for instructions.
+ *
+ * The same sink and trace statements show up in many results, so the built locations are shared
+ * through a cache bounded by [maxCachedLocations].
+ */
+internal class SarifLocations(
+    private val sourceFileResolver: SourceFileResolver,
+    maxCachedLocations: Long = DEFAULT_LOCATIONS_CACHE_SIZE,
+) {
+    private val cache: Cache<JcInst, Location> = CacheBuilder.newBuilder()
+        .maximumSize(maxCachedLocations)
+        .build()
+
+    fun of(inst: JcInst): Location = cache.get(inst) { instToSarifLocation(inst, sourceFileResolver) }
+}
+
 private fun instToSarifLocation(inst: JcInst, sourceFileResolver: SourceFileResolver): Location {
     val sourceLocation = sourceFileResolver.resolve(inst)
         ?: run {
@@ -112,7 +142,7 @@ private fun instToSarifLocation(inst: JcInst, sourceFileResolver: SourceFileReso
 
 private fun traceToSarifCodeFlow(
     trace: List<Vertex<*>>,
-    sourceFileResolver: SourceFileResolver,
+    locations: SarifLocations,
     isDeduplicate: Boolean = true,
 ): CodeFlow {
     return CodeFlow(
@@ -120,7 +150,7 @@ private fun traceToSarifCodeFlow(
             ThreadFlow(
                 locations = trace.map {
                     ThreadFlowLocation(
-                        location = instToSarifLocation(it.statement, sourceFileResolver),
+                        location = locations.of(it.statement),
                         state = mapOf(
                             "fact" to MultiformatMessageString(
                                 text = it.fact.toString()
@@ -0,0 +1,96 @@
+/*
+ *  Copyright 2022 UnitTestBot contributors (utbot.org)
+ * <p>
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ * <p>
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+
+package org.jacodb.analysis.sarif
+
+import io.github.detekt.sarif4k.Result
+import io.github.detekt.sarif4k.Tool
+import io.github.detekt.sarif4k.Version
+import kotlinx.serialization.ExperimentalSerializationApi
+import kotlinx.serialization.builtins.serializer
+import kotlinx.serialization.json.Json
+import kotlinx.serialization.json.encodeToStream
+import java.io.Closeable
+import java.io.OutputStream
+
+/**
+ * Writes a SARIF report to [output] one result at a time.
+ *
+ * Unlike [sarifReportFromVulnerabilities], which needs the whole list of vulnerabilities
+ * (and all of their trace graphs) in memory, every result is serialized to [output]
+ * as soon as it is passed to [write]. Locations are shared through a bounded cache
+ * and source files are resolved once per class, see [memoizedByClass].
+ *
+ * The report is complete (and flushed) only after [close] is called.
+ */
+@OptIn(ExperimentalSerializationApi::class)
+class SarifWriter(
+    output: OutputStream,
+    private val maxPathsCount: Int = DEFAULT_PATH_COUNT,
+    private val isDeduplicate: Boolean = true,
+    sourceFileResolver: SourceFileResolver = SourceFileResolver { null },
+    maxCachedLocations: Long = DEFAULT_LOCATIONS_CACHE_SIZE,
+    private val json: Json = Json,
+) : Closeable {
+    private val output = output.buffered()
+    private val locations = SarifLocations(sourceFileResolver.memoizedByClass(), maxCachedLocations)
+    private var resultsCount = 0
+    private var isClosed = false
+
+    init {
+        // Envelope of the report with a single run, as built by sarifReportFromVulnerabilities:
+        // {"$schema": ..., "version": ..., "runs": [{"tool": ..., "results": [ <results> ]}]}
+        writeRaw("{\"\$schema\":")
+        json.encodeToStream(String.serializer(), SARIF_SCHEMA, this.output)
+        writeRaw(",\"version\":")
+        json.encodeToStream(Version.serializer(), Version.The210, this.output)
+        writeRaw(",\"runs\":[{\"tool\":")
+        json.encodeToStream(Tool.serializer(), jacodbTool, this.output)
+        writeRaw(",\"results\":[")
+    }
+
+    val writtenResults: Int
+        @Synchronized get() = resultsCount
+
+    @Synchronized
+    fun write(instance: VulnerabilityInstance<*>) {
+        check(!isClosed) { "SARIF writer is already closed" }
+        val result = instanceToSarifResult(instance, locations, maxPathsCount, isDeduplicate)
+        if (resultsCount > 0) {
+            writeRaw(",")
+        }
+        json.encodeToStream(Result.serializer(), result, output)
+        resultsCount++
+    }
+
+    fun writeAll(instances: Sequence<VulnerabilityInstance<*>>) {
+        instances.forEach { write(it) }
+    }
+
+    @Synchronized
+    override fun close() {
+        if (isClosed) return
+        isClosed = true
+        output.use {
+            writeRaw("]}]}")
+        }
+    }
+
+    private fun writeRaw(text: String) {
+        output.write(text.toByteArray(Charsets.UTF_8))
+    }
+}
@@ -16,8 +16,38 @@
 
 package org.jacodb.analysis.sarif
 
+import com.google.common.cache.Cache
+import com.google.common.cache.CacheBuilder
+import org.jacodb.api.JcClassOrInterface
 import org.jacodb.api.cfg.JcInst
+import java.util.Optional
 
 fun interface SourceFileResolver {
     fun resolve(inst: JcInst): String?
 }
+
+/**
+ * Returns a resolver that asks [this] once per enclosing class and reuses the answer
+ * for every other instruction of that class.
+ *
+ * Only valid for resolvers whose result depends on the class alone, which is the case
+ * for resolvers mapping class files to source files.
+ */
+fun SourceFileResolver.memoizedByClass(maxCachedClasses: Long = 10_000L): SourceFileResolver {
+    if (this is MemoizedSourceFileResolver) return this
+    return MemoizedSourceFileResolver(this, maxCachedClasses)
+}
+
+private class MemoizedSourceFileResolver(
+    private val resolver: SourceFileResolver,
+    maxCachedClasses: Long,
+) : SourceFileResolver {
+    private val cache: Cache<JcClassOrInterface, Optional<String>> = CacheBuilder.newBuilder()
+        .maximumSize(maxCachedClasses)
+        .build()
+
+    override fun resolve(inst: JcInst): String? {
+        val clazz = inst.location.method.enclosingClass
+        return cache.get(clazz) { Optional.ofNullable(resolver.resolve(inst)) }.orElse(null)
+    }
+}
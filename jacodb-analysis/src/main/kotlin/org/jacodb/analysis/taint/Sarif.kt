@@ -31,3 +31,13 @@ fun TaintVulnerability.toSarif(
         )
     )
 }
+
+/**
+ * Lazily builds the trace graph of each vulnerability and converts it to SARIF,
+ * so that a [SarifWriter][org.jacodb.analysis.sarif.SarifWriter] only keeps one trace graph in memory at a time.
+ */
+fun TaintManager.toSarif(
+    vulnerabilities: List<TaintVulnerability>,
+): Sequence<VulnerabilityInstance<TaintDomainFact>> {
+    return vulnerabilities.asSequence().map { it.toSarif(vulnerabilityTraceGraph(it)) }
+}
@@ -17,7 +17,9 @@
 package org.jacodb.analysis.taint
 
 import org.jacodb.analysis.config.CallPositionToJcValueResolver
-import org.jacodb.analysis.config.FactAwareConditionEvaluator
+import org.jacodb.analysis.config.CompiledCondition
+import org.jacodb.analysis.config.ConditionCompiler
+import org.jacodb.analysis.graph.isExitPoint
 import org.jacodb.analysis.ifds.Analyzer
 import org.jacodb.analysis.ifds.Edge
 import org.jacodb.analysis.ifds.Reason
@@ -26,6 +28,7 @@ import org.jacodb.api.cfg.JcInst
 import org.jacodb.api.ext.cfg.callExpr
 import org.jacodb.taint.configuration.TaintConfigurationFeature
 import org.jacodb.taint.configuration.TaintMethodSink
+import java.util.concurrent.ConcurrentHashMap
 
 private val logger = mu.KotlinLogging.logger {}
 
@@ -40,8 +43,10 @@ class TaintAnalyzer(
     private val taintConfigurationFeature: TaintConfigurationFeature?
         get() = flowFunctions.taintConfigurationFeature
 
+    private val sinks = CompiledSinks { taintConfigurationFeature }
+
     private fun isExitPoint(statement: JcInst): Boolean {
-        return statement in graph.exitPoints(statement.location.method)
+        return graph.isExitPoint(statement)
     }
 
     override fun handleNewEdge(
@@ -52,24 +57,14 @@ class TaintAnalyzer(
         }
 
         run {
-            val callExpr = edge.to.statement.callExpr ?: return@run
-            val callee = callExpr.method.method
-
-            val config = taintConfigurationFeature?.getConfigForMethod(callee) ?: return@run
-
             // TODO: not always we want to skip sinks on Zero facts.
             //  Some rules might have ConstantTrue or just true (when evaluated with Zero fact) condition.
-            if (edge.to.fact !is Tainted) {
-                return@run
-            }
+            val fact = edge.to.fact as? Tainted ?: return@run
 
             // Determine whether 'edge.to' is a sink via config:
-            val conditionEvaluator = FactAwareConditionEvaluator(
-                edge.to.fact,
-                CallPositionToJcValueResolver(edge.to.statement),
-            )
-            for (item in config.filterIsInstance<TaintMethodSink>()) {
-                if (item.condition.accept(conditionEvaluator)) {
+            for (compiledSink in sinks.at(edge.to.statement)) {
+                val item = compiledSink.rule
+                if (compiledSink.condition.test(fact)) {
                     val message = item.ruleNote
                     val vulnerability = TaintVulnerability(message, sink = edge.to, rule = item)
                     logger.info { "Found sink=${vulnerability.sink} in ${vulnerability.method}" }
@@ -87,6 +82,38 @@ class TaintAnalyzer(
     }
 }
 
+/**
+ * [TaintMethodSink] rules of the call site with conditions compiled for it.
+ */
+internal class CompiledSink(val rule: TaintMethodSink, val condition: CompiledCondition)
+
+/**
+ * Caches sinks per call site, so that the config is looked up and fact-independent parts of conditions
+ * are evaluated once per call site instead of once per fact reaching it.
+ */
+internal class CompiledSinks(
+    private val taintConfigurationFeature: () -> TaintConfigurationFeature?,
+) {
+    private val sinksByCallSite = ConcurrentHashMap<JcInst, List<CompiledSink>>()
+
+    fun at(statement: JcInst): List<CompiledSink> {
+        // only call sites are cached, so the cache does not grow with the number of other instructions
+        val callExpr = statement.callExpr ?: return emptyList()
+        return sinksByCallSite.getOrPut(statement) {
+            val callee = callExpr.method.method
+            val config = taintConfigurationFeature()?.getConfigForMethod(callee) ?: return@getOrPut emptyList()
+            val rules = config.filterIsInstance<TaintMethodSink>()
+            if (rules.isEmpty()) return@getOrPut emptyList()
+
+            val compiler = ConditionCompiler(CallPositionToJcValueResolver(statement))
+            rules.mapNotNull { rule ->
+                val condition = compiler.compile(rule.condition)
+                if (condition.isAlwaysFalse) null else CompiledSink(rule, condition)
+            }
+        }
+    }
+}
+
 class BackwardTaintAnalyzer(
     private val graph: JcApplicationGraph,
 ) : Analyzer<TaintDomainFact, TaintEvent> {
@@ -96,7 +123,7 @@ class BackwardTaintAnalyzer(
     }
 
     private fun isExitPoint(statement: JcInst): Boolean {
-        return statement in graph.exitPoints(statement.location.method)
+        return graph.isExitPoint(statement)
     }
 
     override fun handleNewEdge(
@@ -141,4 +141,9 @@ class TaintBidiRunner(
     override fun getIfdsResult(): IfdsResult<TaintDomainFact> {
         return forwardRunner.getIfdsResult()
     }
+
+    override fun complete() {
+        forwardRunner.complete()
+        backwardRunner.complete()
+    }
 }
@@ -0,0 +1,335 @@
+/*
+ *  Copyright 2022 UnitTestBot contributors (utbot.org)
+ * <p>
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ * <p>
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+
+package org.jacodb.analysis.taint
+
+import com.google.common.cache.Cache
+import com.google.common.cache.CacheBuilder
+import org.jacodb.analysis.config.markedFacts
+import org.jacodb.analysis.config.removeTrailingElementAccessors
+import org.jacodb.analysis.graph.indexed
+import org.jacodb.analysis.ifds.Edge
+import org.jacodb.analysis.ifds.FlowFunction
+import org.jacodb.analysis.ifds.UnitResolver
+import org.jacodb.analysis.ifds.UnknownUnit
+import org.jacodb.analysis.ifds.Vertex
+import org.jacodb.analysis.ifds.toPathOrNull
+import org.jacodb.analysis.util.getArgumentsOf
+import org.jacodb.analysis.util.thisInstance
+import org.jacodb.api.JcMethod
+import org.jacodb.api.analysis.JcApplicationGraph
+import org.jacodb.api.cfg.JcInst
+import org.jacodb.api.cfg.JcValue
+import org.jacodb.api.cfg.values
+import java.util.concurrent.ConcurrentHashMap
+
+/**
+ * Result of the demand-driven taint query, see [TaintManager.query].
+ */
+sealed interface TaintQueryResult {
+    /**
+     * The sink is reachable by taint, which originates at [source]:
+     * the fact of this vertex holds right after its statement.
+     */
+    data class Reachable(val source: TaintVertex) : TaintQueryResult
+
+    object Unreachable : TaintQueryResult
+
+    /**
+     * The query was stopped before either a source was found or the exploration was completed.
+     */
+    object BudgetExhausted : TaintQueryResult
+}
+
+/**
+ * Demand-driven backward taint solver answering whether a single sink vertex is reachable by taint.
+ *
+ * A demand `(statement, fact)` means that the fact must hold before the statement for the sink fact to appear.
+ * Starting from the sink, the solver explores the supergraph backwards: through predecessors in the method,
+ * into callees through their exit points, and out of the method to its callers.
+ * Each backward step is the preimage of the corresponding [ForwardTaintFlowFunctions] step, restricted to
+ * candidate facts built from the operands of the statement, so both directions share the same semantics.
+ * The source is found as soon as the Zero fact produces a demanded fact.
+ *
+ * Summaries (demand at a callee exit to demands at its start) are memoized within a query and are shared
+ * between queries once a query completes the exploration without finding a source.
+ * At most [MAX_SHARED_SUMMARIES] summaries are shared, the least recently used ones are dropped.
+ */
+internal class TaintDemandSolver(
+    graph: JcApplicationGraph,
+    private val unitResolver: UnitResolver,
+) {
+    private val graph = graph.indexed()
+    private val cp = graph.classpath
+    private val flowFunctions = ForwardTaintFlowFunctions(cp, graph)
+
+    private val completeSummaries: Cache<TaintVertex, Set<TaintVertex>> = CacheBuilder.newBuilder()
+        .maximumSize(MAX_SHARED_SUMMARIES)
+        .build()
+    private val scopeOfMethod = ConcurrentHashMap<JcMethod, List<JcValue>>()
+
+    private val sinks = CompiledSinks { flowFunctions.taintConfigurationFeature }
+
+    fun query(sinks: Collection<TaintVertex>, budget: Int): TaintQueryResult {
+        return Query(budget).run(sinks)
+    }
+
+    /**
+     * Sink vertices at the [statement]: facts satisfying the conditions of its sink rules.
+     */
+    fun sinkVertices(statement: JcInst): List<TaintVertex> {
+        return sinks.at(statement)
+            .flatMap { sink -> sink.condition.markedFacts().filter { sink.condition.test(it) } }
+            .distinct()
+            .map { Vertex(statement, it) }
+    }
+
+    private fun isAnalyzed(method: JcMethod): Boolean {
+        return unitResolver.resolve(method) != UnknownUnit
+    }
+
+    // Values the facts at the start of the method may refer to (except for static fields)
+    private fun scopeOf(method: JcMethod): List<JcValue> = scopeOfMethod.getOrPut(method) {
+        buildList {
+            addAll(cp.getArgumentsOf(method))
+            if (!method.isStatic) add(method.thisInstance)
+        }
+    }
+
+    // Same matching as the one of sink conditions, see [org.jacodb.analysis.config.CompiledContainsMark]
+    private fun TaintDomainFact.covers(demand: Tainted): Boolean {
+        return this is Tainted && mark == demand.mark &&
+            variable.removeTrailingElementAccessors() == demand.variable.removeTrailingElementAccessors()
+    }
+
+    /**
+     * Facts which may produce [demand] through the statement:
+     * the demand itself, the Zero fact, facts on [before] values, and the demand rebased
+     * from [after] values to [before] values.
+     */
+    private fun candidates(
+        demand: Tainted,
+        after: Collection<JcValue>,
+        before: Collection<JcValue>,
+    ): Set<TaintDomainFact> {
+        val result = linkedSetOf(TaintZeroFact, demand)
+        val afterPaths = after.mapNotNullTo(hashSetOf()) { it.toPathOrNull() }
+        for (value in before) {
+            val path = value.toPathOrNull() ?: continue
+            result += Tainted(path, demand.mark)
+            for (afterPath in afterPaths) {
+                val rebased = demand.variable.rebase(afterPath, path) ?: continue
+                result += Tainted(rebased, demand.mark)
+            }
+        }
+        return result
+    }
+
+    private inline fun preimage(
+        flowFunction: FlowFunction<TaintDomainFact>,
+        demand: Tainted,
+        candidates: Set<TaintDomainFact>,
+        action: (TaintDomainFact) -> Unit,
+    ) {
+        for (candidate in candidates) {
+            if (flowFunction.compute(candidate).any { it.covers(demand) }) {
+                action(candidate)
+            }
+        }
+    }
+
+    private inner class Query(private val budget: Int) {
+        // Path edges go from the origin of the exploration in the method to the demands found so far.
+        // The origin is either a demand at the exit of a callee, or a "top" vertex, see [topOrigins].
+        private val pathEdges: MutableSet<TaintEdge> = hashSetOf()
+        private val workList = ArrayDeque<TaintEdge>()
+
+        // Origins not entered from a particular call site, so their demands at the method start go to all callers
+        private val topOrigins: MutableSet<TaintVertex> = hashSetOf()
+
+        // Demands at the method start found for the origin at the method exit
+        private val summaries: MutableMap<TaintVertex, MutableSet<TaintVertex>> = hashMapOf()
+
+        // Demands after the call statements waiting for the summaries of the callee exit origin
+        private val waitingCallers: MutableMap<TaintVertex, MutableSet<TaintEdge>> = hashMapOf()
+
+        private var source: TaintVertex? = null
+
+        fun run(sinks: Collection<TaintVertex>): TaintQueryResult {
+            for (sink in sinks) {
+                topOrigins += sink
+                propagate(Edge(sink, sink))
+            }
+            while (workList.isNotEmpty()) {
+                source?.let { return TaintQueryResult.Reachable(it) }
+                if (pathEdges.size > budget) return TaintQueryResult.BudgetExhausted
+                process(workList.removeFirst())
+            }
+            source?.let { return TaintQueryResult.Reachable(it) }
+            // Note: all summaries are complete only when the whole exploration is done
+            completeSummaries.putAll(summaries)
+            return TaintQueryResult.Unreachable
+        }
+
+        private fun propagate(edge: TaintEdge) {
+            if (pathEdges.add(edge)) {
+                workList.add(edge)
+            }
+        }
+
+        /**
+         * Continues the exploration from [candidate] before [statement],
+         * or reports the source if [candidate] is Zero (i.e., [statement] produces [demand] from nothing).
+         */
+        private fun step(origin: TaintVertex, statement: JcInst, candidate: TaintDomainFact, demand: Tainted) {
+            if (candidate == TaintZeroFact) {
+                if (source == null) source = Vertex(statement, demand)
+            } else {
+                propagate(Edge(origin, Vertex(statement, candidate)))
+            }
+        }
+
+        private fun process(edge: TaintEdge) {
+            val origin = edge.from
+            val current = edge.to
+            val demand = current.fact as Tainted
+            val table = graph.tableOf(current.method)
+            val index = table.indexOf(current.statement)
+
+            if (table.isEntry(index)) {
+                reachedStart(origin, current)
+            }
+
+            for (predecessorIndex in table.predecessors(index)) {
+                val predecessor = table.inst(predecessorIndex)
+                if (table.isCall(predecessorIndex)) {
+                    processCall(origin, predecessor, current.statement, demand, table.callees(predecessorIndex))
+                } else {
+                    val values = predecessor.values
+                    preimage(
+                        flowFunctions.obtainSequentFlowFunction(predecessor, current.statement),
+                        demand,
+                        candidates(demand, values, values)
+                    ) { step(origin, predecessor, it, demand) }
+                }
+            }
+        }
+
+        private fun processCall(
+            origin: TaintVertex,
+            call: JcInst,
+            returnSite: JcInst,
+            demand: Tainted,
+            callees: List<JcMethod>,
+        ) {
+            val callValues = call.values
+
+            // Around the call:
+            preimage(
+                flowFunctions.obtainCallToReturnSiteFlowFunction(call, returnSite),
+                demand,
+                candidates(demand, callValues, callValues)
+            ) { step(origin, call, it, demand) }
+
+            // Through the callees:
+            val callerEdge = Edge(origin, Vertex(call, demand))
+            for (callee in callees) {
+                if (!isAnalyzed(callee)) continue
+                val calleeTable = graph.tableOf(callee)
+                for (exitIndex in calleeTable.exits) {
+                    val exit = calleeTable.inst(exitIndex)
+                    val calleeCandidates = candidates(demand, callValues, exit.values + scopeOf(callee))
+                    preimage(
+                        flowFunctions.obtainExitToReturnSiteFlowFunction(call, returnSite, exit),
+                        demand,
+                        calleeCandidates
+                    ) { fact ->
+                        if (fact is Tainted) {
+                            enterCallee(callerEdge, Vertex(exit, fact))
+                        }
+                    }
+                }
+            }
+        }
+
+        private fun enterCallee(callerEdge: TaintEdge, exitVertex: TaintVertex) {
+            val complete = completeSummaries.getIfPresent(exitVertex)
+            if (complete != null) {
+                for (start in complete) {
+                    applySummary(callerEdge, start)
+                }
+                return
+            }
+            if (waitingCallers.getOrPut(exitVertex) { hashSetOf() }.add(callerEdge)) {
+                for (start in summaries[exitVertex].orEmpty().toList()) {
+                    applySummary(callerEdge, start)
+                }
+            }
+            propagate(Edge(exitVertex, exitVertex))
+        }
+
+        private fun applySummary(callerEdge: TaintEdge, start: TaintVertex) {
+            val call = callerEdge.to.statement
+            val demandAfterCall = callerEdge.to.fact as Tainted
+            val demand = start.fact as Tainted
+            preimage(
+                flowFunctions.obtainCallToStartFlowFunction(call, start.statement),
+                demand,
+                candidates(demand, scopeOf(start.method), call.values)
+            ) { step(callerEdge.from, call, it, demandAfterCall) }
+        }
+
+        private fun reachedStart(origin: TaintVertex, start: TaintVertex) {
+            if (summaries.getOrPut(origin) { hashSetOf() }.add(start)) {
+                for (callerEdge in waitingCallers[origin].orEmpty().toList()) {
+                    applySummary(callerEdge, start)
+                }
+            }
+
+            if (origin !in topOrigins) return
+
+            val method = start.method
+            val demand = start.fact as Tainted
+            if (flowFunctions.obtainPossibleStartFacts(method).any { it.covers(demand) }) {
+                if (source == null) source = start
+                return
+            }
+
+            // Unbalanced return to all callers:
+            for (callSite in graph.callers(method)) {
+                if (!isAnalyzed(callSite.location.method)) continue
+                preimage(
+                    flowFunctions.obtainCallToStartFlowFunction(callSite, start.statement),
+                    demand,
+                    candidates(demand, scopeOf(method), callSite.values)
+                ) { fact ->
+                    if (fact is Tainted) {
+                        val vertex = Vertex(callSite, fact)
+                        topOrigins += vertex
+                        propagate(Edge(vertex, vertex))
+                    } else if (source == null) {
+                        source = start
+                    }
+                }
+            }
+        }
+    }
+
+    companion object {
+        private const val MAX_SHARED_SUMMARIES = 100_000L
+    }
+}
@@ -24,8 +24,11 @@ import org.jacodb.analysis.config.EntryPointPositionToJcValueResolver
 import org.jacodb.analysis.config.FactAwareConditionEvaluator
 import org.jacodb.analysis.config.TaintActionEvaluator
 import org.jacodb.analysis.ifds.ElementAccessor
+import org.jacodb.analysis.ifds.FactSink
 import org.jacodb.analysis.ifds.FlowFunction
 import org.jacodb.analysis.ifds.FlowFunctions
+import org.jacodb.analysis.ifds.SinkFlowFunction
+import org.jacodb.analysis.ifds.SparseFlowFunctions
 import org.jacodb.analysis.ifds.onSome
 import org.jacodb.analysis.ifds.toPath
 import org.jacodb.analysis.ifds.toPathOrNull
@@ -42,6 +45,7 @@ import org.jacodb.api.cfg.JcExpr
 import org.jacodb.api.cfg.JcInst
 import org.jacodb.api.cfg.JcInstanceCallExpr
 import org.jacodb.api.cfg.JcReturnInst
+import org.jacodb.api.cfg.JcSimpleValue
 import org.jacodb.api.cfg.JcThis
 import org.jacodb.api.cfg.JcValue
 import org.jacodb.api.ext.cfg.callExpr
@@ -55,13 +59,21 @@ import org.jacodb.taint.configuration.TaintConfigurationFeature
 import org.jacodb.taint.configuration.TaintEntryPointSource
 import org.jacodb.taint.configuration.TaintMethodSource
 import org.jacodb.taint.configuration.TaintPassThrough
+import java.util.concurrent.ConcurrentHashMap
 
 private val logger = mu.KotlinLogging.logger {}
 
+private val zeroStartFacts: List<TaintDomainFact> = listOf(TaintZeroFact)
+
 class ForwardTaintFlowFunctions(
     private val cp: JcClasspath,
     private val graph: JcApplicationGraph,
-) : FlowFunctions<TaintDomainFact> {
+) : SparseFlowFunctions<TaintDomainFact> {
+
+    // Taint of a local value (or a path starting from it) is changed only by statements mentioning the value
+    override fun obtainSparseBase(fact: TaintDomainFact): JcSimpleValue? {
+        return (fact as? Tainted)?.variable?.value
+    }
 
     internal val taintConfigurationFeature: TaintConfigurationFeature? by lazy {
         cp.features
@@ -69,8 +81,17 @@ class ForwardTaintFlowFunctions(
             ?.let { it as TaintConfigurationFeature }
     }
 
+    // Start facts depend only on the method, while they are requested on every call-to-start edge with Zero fact
+    private val startFacts = ConcurrentHashMap<JcMethod, Collection<TaintDomainFact>>()
+
     override fun obtainPossibleStartFacts(
         method: JcMethod,
+    ): Collection<TaintDomainFact> = startFacts.getOrPut(method) {
+        computePossibleStartFacts(method)
+    }
+
+    private fun computePossibleStartFacts(
+        method: JcMethod,
     ): Collection<TaintDomainFact> = buildSet {
         // Zero (reachability) fact always present at entrypoint:
         add(TaintZeroFact)
@@ -100,63 +121,72 @@ class ForwardTaintFlowFunctions(
         fact: Tainted,
         from: JcExpr,
         to: JcValue,
-    ): Collection<Tainted> {
+        sink: FactSink<TaintDomainFact>,
+    ) {
         val toPath = to.toPath()
         val fromPath = from.toPathOrNull()
 
         if (fromPath != null) {
             // Adhoc taint array:
-            if (fromPath.accesses.isNotEmpty()
-                && fromPath.accesses.last() is ElementAccessor
+            if (fromPath.lastAccessor is ElementAccessor
                 && fromPath == (fact.variable / ElementAccessor)
             ) {
                 val newTaint = fact.copy(variable = toPath)
-                return setOf(fact, newTaint)
+                sink.accept(fact)
+                sink.accept(newTaint)
+                return
             }
 
-            val tail = fact.variable - fromPath
-            if (tail != null) {
+            val newPath = fact.variable.rebase(fromPath, toPath)
+            if (newPath != null) {
                 // Both 'from' and 'to' are tainted now:
-                val newPath = toPath / tail
                 val newTaint = fact.copy(variable = newPath)
-                return setOf(fact, newTaint)
+                sink.accept(fact)
+                sink.accept(newTaint)
+                return
             }
         }
 
         if (fact.variable.startsWith(toPath)) {
             // FIXME: pass-through tainted arrays
             if (to is JcArrayAccess) {
-                return setOf(fact)
+                sink.accept(fact)
+                return
             }
             // 'to' was (sub-)tainted, but it is now overridden by 'from':
-            return emptySet()
+            return
         } else {
             // Neither 'from' nor 'to' are tainted:
-            return setOf(fact)
+            sink.accept(fact)
         }
     }
 
     private fun transmitTaintNormal(
         fact: Tainted,
         inst: JcInst,
-    ): List<Tainted> {
+        sink: FactSink<TaintDomainFact>,
+    ) {
         // Pass-through:
-        return listOf(fact)
+        sink.accept(fact)
     }
 
     override fun obtainSequentFlowFunction(
         current: JcInst,
         next: JcInst,
-    ) = FlowFunction<TaintDomainFact> { fact ->
-        if (fact is TaintZeroFact) {
-            return@FlowFunction listOf(TaintZeroFact)
+    ): FlowFunction<TaintDomainFact> {
+        if (current !is JcAssignInst) {
+            // Pass-through, both for Zero and Tainted facts:
+            return FlowFunction.identity()
         }
-        check(fact is Tainted)
 
-        if (current is JcAssignInst) {
-            transmitTaintAssign(fact, from = current.rhv, to = current.lhv)
-        } else {
-            transmitTaintNormal(fact, current)
+        return SinkFlowFunction<TaintDomainFact> { fact, sink ->
+            if (fact is TaintZeroFact) {
+                sink.accept(TaintZeroFact)
+                return@SinkFlowFunction
+            }
+            check(fact is Tainted)
+
+            transmitTaintAssign(fact, from = current.rhv, to = current.lhv, sink = sink)
         }
     }
 
@@ -164,50 +194,55 @@ class ForwardTaintFlowFunctions(
         fact: Tainted,
         from: JcValue,
         to: JcValue,
-    ): Collection<Tainted> = buildSet {
+        sink: FactSink<TaintDomainFact>,
+    ) {
         val fromPath = from.toPath()
         val toPath = to.toPath()
 
-        val tail = (fact.variable - fromPath) ?: return@buildSet
-        val newPath = toPath / tail
+        val newPath = fact.variable.rebase(fromPath, toPath) ?: return
         val newTaint = fact.copy(variable = newPath)
-        add(newTaint)
+        sink.accept(newTaint)
     }
 
     private fun transmitTaintArgumentActualToFormal(
         fact: Tainted,
         from: JcValue, // actual
         to: JcValue, // formal
-    ): Collection<Tainted> = transmitTaint(fact, from, to)
+        sink: FactSink<TaintDomainFact>,
+    ) = transmitTaint(fact, from, to, sink)
 
     private fun transmitTaintArgumentFormalToActual(
         fact: Tainted,
         from: JcValue, // formal
         to: JcValue, // actual
-    ): Collection<Tainted> = transmitTaint(fact, from, to)
+        sink: FactSink<TaintDomainFact>,
+    ) = transmitTaint(fact, from, to, sink)
 
     private fun transmitTaintInstanceToThis(
         fact: Tainted,
         from: JcValue, // instance
         to: JcThis, // this
-    ): Collection<Tainted> = transmitTaint(fact, from, to)
+        sink: FactSink<TaintDomainFact>,
+    ) = transmitTaint(fact, from, to, sink)
 
     private fun transmitTaintThisToInstance(
         fact: Tainted,
         from: JcThis, // this
         to: JcValue, // instance
-    ): Collection<Tainted> = transmitTaint(fact, from, to)
+        sink: FactSink<TaintDomainFact>,
+    ) = transmitTaint(fact, from, to, sink)
 
     private fun transmitTaintReturn(
         fact: Tainted,
         from: JcValue,
         to: JcValue,
-    ): Collection<Tainted> = transmitTaint(fact, from, to)
+        sink: FactSink<TaintDomainFact>,
+    ) = transmitTaint(fact, from, to, sink)
 
     override fun obtainCallToReturnSiteFlowFunction(
         callStatement: JcInst,
         returnSite: JcInst, // FIXME: unused?
-    ) = FlowFunction<TaintDomainFact> { fact ->
+    ) = SinkFlowFunction<TaintDomainFact> { fact, sink ->
         val callExpr = callStatement.callExpr
             ?: error("Call statement should have non-null callExpr")
         val callee = callExpr.method.method
@@ -220,39 +255,38 @@ class ForwardTaintFlowFunctions(
         ) {
             for (arg in callExpr.args) {
                 if (arg.toPath() == fact.variable) {
-                    return@FlowFunction setOf(
-                        fact,
-                        fact.copy(variable = callStatement.lhv.toPath())
-                    )
+                    sink.accept(fact)
+                    sink.accept(fact.copy(variable = callStatement.lhv.toPath()))
+                    return@SinkFlowFunction
                 }
             }
-            return@FlowFunction setOf(fact)
+            sink.accept(fact)
+            return@SinkFlowFunction
         }
 
         val config = taintConfigurationFeature?.getConfigForMethod(callee)
 
         if (fact == TaintZeroFact) {
-            return@FlowFunction buildSet {
-                add(TaintZeroFact)
-
-                if (config != null) {
-                    val conditionEvaluator = BasicConditionEvaluator(CallPositionToJcValueResolver(callStatement))
-                    val actionEvaluator = TaintActionEvaluator(CallPositionToAccessPathResolver(callStatement))
-
-                    // Handle MethodSource config items:
-                    for (item in config.filterIsInstance<TaintMethodSource>()) {
-                        if (item.condition.accept(conditionEvaluator)) {
-                            for (action in item.actionsAfter) {
-                                val result = when (action) {
-                                    is AssignMark -> actionEvaluator.evaluate(action)
-                                    else -> error("$action is not supported for $item")
-                                }
-                                result.onSome { addAll(it) }
+            sink.accept(TaintZeroFact)
+
+            if (config != null) {
+                val conditionEvaluator = BasicConditionEvaluator(CallPositionToJcValueResolver(callStatement))
+                val actionEvaluator = TaintActionEvaluator(CallPositionToAccessPathResolver(callStatement))
+
+                // Handle MethodSource config items:
+                for (item in config.filterIsInstance<TaintMethodSource>()) {
+                    if (item.condition.accept(conditionEvaluator)) {
+                        for (action in item.actionsAfter) {
+                            val result = when (action) {
+                                is AssignMark -> actionEvaluator.evaluate(action)
+                                else -> error("$action is not supported for $item")
                             }
+                            result.onSome { it.forEach(sink::accept) }
                         }
                     }
                 }
             }
+            return@SinkFlowFunction
         }
         check(fact is Tainted)
 
@@ -302,7 +336,8 @@ class ForwardTaintFlowFunctions(
                 if (facts.size > 0) {
                     logger.trace { "Got ${facts.size} facts from config for $callee: $facts" }
                 }
-                return@FlowFunction facts
+                facts.forEach(sink::accept)
+                return@SinkFlowFunction
             } else {
                 // Fall back to the default behavior, as if there were no config at all.
             }
@@ -310,7 +345,8 @@ class ForwardTaintFlowFunctions(
 
         // FIXME: adhoc for constructors:
         if (callee.isConstructor) {
-            return@FlowFunction listOf(fact)
+            sink.accept(fact)
+            return@SinkFlowFunction
         }
 
         // TODO: CONSIDER REFACTORING THIS
@@ -325,20 +361,20 @@ class ForwardTaintFlowFunctions(
         if (callee in graph.callees(callStatement)) {
 
             if (fact.variable.isStatic) {
-                return@FlowFunction emptyList()
+                return@SinkFlowFunction
             }
 
             for (actual in callExpr.args) {
                 // Possibly tainted actual parameter:
                 if (fact.variable.startsWith(actual.toPathOrNull())) {
-                    return@FlowFunction emptyList() // Will be handled by summary edge
+                    return@SinkFlowFunction // Will be handled by summary edge
                 }
             }
 
             if (callExpr is JcInstanceCallExpr) {
                 // Possibly tainted instance:
                 if (fact.variable.startsWith(callExpr.instance.toPathOrNull())) {
-                    return@FlowFunction emptyList() // Will be handled by summary edge
+                    return@SinkFlowFunction // Will be handled by summary edge
                 }
             }
 
@@ -347,45 +383,46 @@ class ForwardTaintFlowFunctions(
         if (callStatement is JcAssignInst) {
             // Possibly tainted lhv:
             if (fact.variable.startsWith(callStatement.lhv.toPathOrNull())) {
-                return@FlowFunction emptyList() // Overridden by rhv
+                return@SinkFlowFunction // Overridden by rhv
             }
         }
 
         // The "most default" behaviour is encapsulated here:
-        transmitTaintNormal(fact, callStatement)
+        transmitTaintNormal(fact, callStatement, sink)
     }
 
     override fun obtainCallToStartFlowFunction(
         callStatement: JcInst,
         calleeStart: JcInst,
-    ) = FlowFunction<TaintDomainFact> { fact ->
+    ) = SinkFlowFunction<TaintDomainFact> { fact, sink ->
         val callee = calleeStart.location.method
 
         if (fact == TaintZeroFact) {
-            return@FlowFunction obtainPossibleStartFacts(callee)
+            for (startFact in obtainPossibleStartFacts(callee)) {
+                sink.accept(startFact)
+            }
+            return@SinkFlowFunction
         }
         check(fact is Tainted)
 
         val callExpr = callStatement.callExpr
             ?: error("Call statement should have non-null callExpr")
 
-        buildSet {
-            // Transmit facts on arguments (from 'actual' to 'formal'):
-            val actualParams = callExpr.args
-            val formalParams = cp.getArgumentsOf(callee)
-            for ((formal, actual) in formalParams.zip(actualParams)) {
-                addAll(transmitTaintArgumentActualToFormal(fact, from = actual, to = formal))
-            }
+        // Transmit facts on arguments (from 'actual' to 'formal'):
+        val actualParams = callExpr.args
+        val formalParams = cp.getArgumentsOf(callee)
+        for ((formal, actual) in formalParams.zip(actualParams)) {
+            transmitTaintArgumentActualToFormal(fact, from = actual, to = formal, sink = sink)
+        }
 
-            // Transmit facts on instance (from 'instance' to 'this'):
-            if (callExpr is JcInstanceCallExpr) {
-                addAll(transmitTaintInstanceToThis(fact, from = callExpr.instance, to = callee.thisInstance))
-            }
+        // Transmit facts on instance (from 'instance' to 'this'):
+        if (callExpr is JcInstanceCallExpr) {
+            transmitTaintInstanceToThis(fact, from = callExpr.instance, to = callee.thisInstance, sink = sink)
+        }
 
-            // Transmit facts on static values:
-            if (fact.variable.isStatic) {
-                add(fact)
-            }
+        // Transmit facts on static values:
+        if (fact.variable.isStatic) {
+            sink.accept(fact)
         }
     }
 
@@ -393,9 +430,10 @@ class ForwardTaintFlowFunctions(
         callStatement: JcInst,
         returnSite: JcInst, // unused
         exitStatement: JcInst,
-    ) = FlowFunction<TaintDomainFact> { fact ->
+    ) = SinkFlowFunction<TaintDomainFact> { fact, sink ->
         if (fact == TaintZeroFact) {
-            return@FlowFunction listOf(TaintZeroFact)
+            sink.accept(TaintZeroFact)
+            return@SinkFlowFunction
         }
         check(fact is Tainted)
 
@@ -403,32 +441,30 @@ class ForwardTaintFlowFunctions(
             ?: error("Call statement should have non-null callExpr")
         val callee = exitStatement.location.method
 
-        buildSet {
-            // Transmit facts on arguments (from 'formal' back to 'actual'), if they are passed by-ref:
-            if (fact.variable.isOnHeap) {
-                val actualParams = callExpr.args
-                val formalParams = cp.getArgumentsOf(callee)
-                for ((formal, actual) in formalParams.zip(actualParams)) {
-                    addAll(transmitTaintArgumentFormalToActual(fact, from = formal, to = actual))
-                }
+        // Transmit facts on arguments (from 'formal' back to 'actual'), if they are passed by-ref:
+        if (fact.variable.isOnHeap) {
+            val actualParams = callExpr.args
+            val formalParams = cp.getArgumentsOf(callee)
+            for ((formal, actual) in formalParams.zip(actualParams)) {
+                transmitTaintArgumentFormalToActual(fact, from = formal, to = actual, sink = sink)
             }
+        }
 
-            // Transmit facts on instance (from 'this' to 'instance'):
-            if (callExpr is JcInstanceCallExpr) {
-                addAll(transmitTaintThisToInstance(fact, from = callee.thisInstance, to = callExpr.instance))
-            }
+        // Transmit facts on instance (from 'this' to 'instance'):
+        if (callExpr is JcInstanceCallExpr) {
+            transmitTaintThisToInstance(fact, from = callee.thisInstance, to = callExpr.instance, sink = sink)
+        }
 
-            // Transmit facts on static values:
-            if (fact.variable.isStatic) {
-                add(fact)
-            }
+        // Transmit facts on static values:
+        if (fact.variable.isStatic) {
+            sink.accept(fact)
+        }
 
-            // Transmit facts on return value (from 'returnValue' to 'lhv'):
-            if (exitStatement is JcReturnInst && callStatement is JcAssignInst) {
-                // Note: returnValue can be null here in some weird cases, e.g. in lambda.
-                exitStatement.returnValue?.let { returnValue ->
-                    addAll(transmitTaintReturn(fact, from = returnValue, to = callStatement.lhv))
-                }
+        // Transmit facts on return value (from 'returnValue' to 'lhv'):
+        if (exitStatement is JcReturnInst && callStatement is JcAssignInst) {
+            // Note: returnValue can be null here in some weird cases, e.g. in lambda.
+            exitStatement.returnValue?.let { returnValue ->
+                transmitTaintReturn(fact, from = returnValue, to = callStatement.lhv, sink = sink)
             }
         }
     }
@@ -442,57 +478,64 @@ class BackwardTaintFlowFunctions(
     override fun obtainPossibleStartFacts(
         method: JcMethod,
     ): Collection<TaintDomainFact> {
-        return listOf(TaintZeroFact)
+        return zeroStartFacts
     }
 
     private fun transmitTaintBackwardAssign(
         fact: Tainted,
         from: JcValue,
         to: JcExpr,
-    ): Collection<TaintDomainFact> {
+        sink: FactSink<TaintDomainFact>,
+    ) {
         val fromPath = from.toPath()
         val toPath = to.toPathOrNull()
 
         if (toPath != null) {
-            val tail = fact.variable - fromPath
-            if (tail != null) {
+            val newPath = fact.variable.rebase(fromPath, toPath)
+            if (newPath != null) {
                 // Both 'from' and 'to' are tainted now:
-                val newPath = toPath / tail
                 val newTaint = fact.copy(variable = newPath)
-                return setOf(fact, newTaint)
+                sink.accept(fact)
+                sink.accept(newTaint)
+                return
             }
 
             if (fact.variable.startsWith(toPath)) {
                 // 'to' was (sub-)tainted, but it is now overridden by 'from':
-                return emptySet()
+                return
             }
         }
 
         // Pass-through:
-        return setOf(fact)
+        sink.accept(fact)
     }
 
     private fun transmitTaintBackwardNormal(
         fact: Tainted,
         inst: JcInst,
-    ): List<TaintDomainFact> {
+        sink: FactSink<TaintDomainFact>,
+    ) {
         // Pass-through:
-        return listOf(fact)
+        sink.accept(fact)
     }
 
     override fun obtainSequentFlowFunction(
         current: JcInst,
         next: JcInst,
-    ) = FlowFunction<TaintDomainFact> { fact ->
-        if (fact is TaintZeroFact) {
-            return@FlowFunction listOf(TaintZeroFact)
+    ): FlowFunction<TaintDomainFact> {
+        if (current !is JcAssignInst) {
+            // Pass-through, both for Zero and Tainted facts:
+            return FlowFunction.identity()
         }
-        check(fact is Tainted)
 
-        if (current is JcAssignInst) {
-            transmitTaintBackwardAssign(fact, from = current.lhv, to = current.rhv)
-        } else {
-            transmitTaintBackwardNormal(fact, current)
+        return SinkFlowFunction<TaintDomainFact> { fact, sink ->
+            if (fact is TaintZeroFact) {
+                sink.accept(TaintZeroFact)
+                return@SinkFlowFunction
+            }
+            check(fact is Tainted)
+
+            transmitTaintBackwardAssign(fact, from = current.lhv, to = current.rhv, sink = sink)
         }
     }
 
@@ -500,54 +543,60 @@ class BackwardTaintFlowFunctions(
         fact: Tainted,
         from: JcValue,
         to: JcValue,
-    ): Collection<Tainted> = buildSet {
+        sink: FactSink<TaintDomainFact>,
+    ) {
         val fromPath = from.toPath()
         val toPath = to.toPath()
 
-        val tail = (fact.variable - fromPath) ?: return@buildSet
-        val newPath = toPath / tail
+        val newPath = fact.variable.rebase(fromPath, toPath) ?: return
         val newTaint = fact.copy(variable = newPath)
-        add(newTaint)
+        sink.accept(newTaint)
     }
 
     private fun transmitTaintArgumentActualToFormal(
         fact: Tainted,
         from: JcValue, // actual
         to: JcValue, // formal
-    ): Collection<Tainted> = transmitTaint(fact, from, to)
+        sink: FactSink<TaintDomainFact>,
+    ) = transmitTaint(fact, from, to, sink)
 
     private fun transmitTaintArgumentFormalToActual(
         fact: Tainted,
         from: JcValue, // formal
         to: JcValue, // actual
-    ): Collection<Tainted> = transmitTaint(fact, from, to)
+        sink: FactSink<TaintDomainFact>,
+    ) = transmitTaint(fact, from, to, sink)
 
     private fun transmitTaintInstanceToThis(
         fact: Tainted,
         from: JcValue, // instance
         to: JcThis, // this
-    ): Collection<Tainted> = transmitTaint(fact, from, to)
+        sink: FactSink<TaintDomainFact>,
+    ) = transmitTaint(fact, from, to, sink)
 
     private fun transmitTaintThisToInstance(
         fact: Tainted,
         from: JcThis, // this
         to: JcValue, // instance
-    ): Collection<Tainted> = transmitTaint(fact, from, to)
+        sink: FactSink<TaintDomainFact>,
+    ) = transmitTaint(fact, from, to, sink)
 
     private fun transmitTaintReturn(
         fact: Tainted,
         from: JcValue,
         to: JcValue,
-    ): Collection<Tainted> = transmitTaint(fact, from, to)
+        sink: FactSink<TaintDomainFact>,
+    ) = transmitTaint(fact, from, to, sink)
 
     override fun obtainCallToReturnSiteFlowFunction(
         callStatement: JcInst,
         returnSite: JcInst, // FIXME: unused?
-    ) = FlowFunction<TaintDomainFact> { fact ->
+    ) = SinkFlowFunction<TaintDomainFact> { fact, sink ->
         // TODO: pass-through on invokedynamic-based String concatenation
 
         if (fact == TaintZeroFact) {
-            return@FlowFunction listOf(TaintZeroFact)
+            sink.accept(TaintZeroFact)
+            return@SinkFlowFunction
         }
         check(fact is Tainted)
 
@@ -558,20 +607,20 @@ class BackwardTaintFlowFunctions(
         if (callee in graph.callees(callStatement)) {
 
             if (fact.variable.isStatic) {
-                return@FlowFunction emptyList()
+                return@SinkFlowFunction
             }
 
             for (actual in callExpr.args) {
                 // Possibly tainted actual parameter:
                 if (fact.variable.startsWith(actual.toPathOrNull())) {
-                    return@FlowFunction emptyList() // Will be handled by summary edge
+                    return@SinkFlowFunction // Will be handled by summary edge
                 }
             }
 
             if (callExpr is JcInstanceCallExpr) {
                 // Possibly tainted instance:
                 if (fact.variable.startsWith(callExpr.instance.toPathOrNull())) {
-                    return@FlowFunction emptyList() // Will be handled by summary edge
+                    return@SinkFlowFunction // Will be handled by summary edge
                 }
             }
 
@@ -580,58 +629,58 @@ class BackwardTaintFlowFunctions(
         if (callStatement is JcAssignInst) {
             // Possibly tainted rhv:
             if (fact.variable.startsWith(callStatement.rhv.toPathOrNull())) {
-                return@FlowFunction emptyList() // Overridden by lhv
+                return@SinkFlowFunction // Overridden by lhv
             }
         }
 
         // The "most default" behaviour is encapsulated here:
-        transmitTaintBackwardNormal(fact, callStatement)
+        transmitTaintBackwardNormal(fact, callStatement, sink)
     }
 
     override fun obtainCallToStartFlowFunction(
         callStatement: JcInst,
         calleeStart: JcInst,
-    ) = FlowFunction<TaintDomainFact> { fact ->
+    ) = SinkFlowFunction<TaintDomainFact> { fact, sink ->
         val callee = calleeStart.location.method
 
         if (fact == TaintZeroFact) {
-            return@FlowFunction obtainPossibleStartFacts(callee)
+            for (startFact in obtainPossibleStartFacts(callee)) {
+                sink.accept(startFact)
+            }
+            return@SinkFlowFunction
         }
         check(fact is Tainted)
 
         val callExpr = callStatement.callExpr
             ?: error("Call statement should have non-null callExpr")
 
-        buildSet {
-            // Transmit facts on arguments (from 'actual' to 'formal'):
-            val actualParams = callExpr.args
-            val formalParams = project.getArgumentsOf(callee)
-            for ((formal, actual) in formalParams.zip(actualParams)) {
-                addAll(transmitTaintArgumentActualToFormal(fact, from = actual, to = formal))
-            }
+        // Transmit facts on arguments (from 'actual' to 'formal'):
+        val actualParams = callExpr.args
+        val formalParams = project.getArgumentsOf(callee)
+        for ((formal, actual) in formalParams.zip(actualParams)) {
+            transmitTaintArgumentActualToFormal(fact, from = actual, to = formal, sink = sink)
+        }
 
-            // Transmit facts on instance (from 'instance' to 'this'):
-            if (callExpr is JcInstanceCallExpr) {
-                addAll(transmitTaintInstanceToThis(fact, from = callExpr.instance, to = callee.thisInstance))
-            }
+        // Transmit facts on instance (from 'instance' to 'this'):
+        if (callExpr is JcInstanceCallExpr) {
+            transmitTaintInstanceToThis(fact, from = callExpr.instance, to = callee.thisInstance, sink = sink)
+        }
 
-            // Transmit facts on static values:
-            if (fact.variable.isStatic) {
-                add(fact)
-            }
+        // Transmit facts on static values:
+        if (fact.variable.isStatic) {
+            sink.accept(fact)
+        }
 
-            // Transmit facts on return value (from 'returnValue' to 'lhv'):
-            if (calleeStart is JcReturnInst && callStatement is JcAssignInst) {
-                // Note: returnValue can be null here in some weird cases, e.g. in lambda.
-                calleeStart.returnValue?.let { returnValue ->
-                    addAll(
-                        transmitTaintReturn(
-                            fact = fact,
-                            from = callStatement.lhv,
-                            to = returnValue
-                        )
-                    )
-                }
+        // Transmit facts on return value (from 'returnValue' to 'lhv'):
+        if (calleeStart is JcReturnInst && callStatement is JcAssignInst) {
+            // Note: returnValue can be null here in some weird cases, e.g. in lambda.
+            calleeStart.returnValue?.let { returnValue ->
+                transmitTaintReturn(
+                    fact = fact,
+                    from = callStatement.lhv,
+                    to = returnValue,
+                    sink = sink
+                )
             }
         }
     }
@@ -640,9 +689,10 @@ class BackwardTaintFlowFunctions(
         callStatement: JcInst,
         returnSite: JcInst,
         exitStatement: JcInst,
-    ) = FlowFunction<TaintDomainFact> { fact ->
+    ) = SinkFlowFunction<TaintDomainFact> { fact, sink ->
         if (fact == TaintZeroFact) {
-            return@FlowFunction listOf(TaintZeroFact)
+            sink.accept(TaintZeroFact)
+            return@SinkFlowFunction
         }
         check(fact is Tainted)
 
@@ -650,37 +700,33 @@ class BackwardTaintFlowFunctions(
             ?: error("Call statement should have non-null callExpr")
         val callee = exitStatement.location.method
 
-        buildSet {
-            // Transmit facts on arguments (from 'formal' back to 'actual'), if they are passed by-ref:
-            if (fact.variable.isOnHeap) {
-                val actualParams = callExpr.args
-                val formalParams = project.getArgumentsOf(callee)
-                for ((formal, actual) in formalParams.zip(actualParams)) {
-                    addAll(
-                        transmitTaintArgumentFormalToActual(
-                            fact = fact,
-                            from = formal,
-                            to = actual
-                        )
-                    )
-                }
-            }
-
-            // Transmit facts on instance (from 'this' to 'instance'):
-            if (callExpr is JcInstanceCallExpr) {
-                addAll(
-                    transmitTaintThisToInstance(
-                        fact = fact,
-                        from = callee.thisInstance,
-                        to = callExpr.instance
-                    )
+        // Transmit facts on arguments (from 'formal' back to 'actual'), if they are passed by-ref:
+        if (fact.variable.isOnHeap) {
+            val actualParams = callExpr.args
+            val formalParams = project.getArgumentsOf(callee)
+            for ((formal, actual) in formalParams.zip(actualParams)) {
+                transmitTaintArgumentFormalToActual(
+                    fact = fact,
+                    from = formal,
+                    to = actual,
+                    sink = sink
                 )
             }
+        }
 
-            // Transmit facts on static values:
-            if (fact.variable.isStatic) {
-                add(fact)
-            }
+        // Transmit facts on instance (from 'this' to 'instance'):
+        if (callExpr is JcInstanceCallExpr) {
+            transmitTaintThisToInstance(
+                fact = fact,
+                from = callee.thisInstance,
+                to = callExpr.instance,
+                sink = sink
+            )
+        }
+
+        // Transmit facts on static values:
+        if (fact.variable.isStatic) {
+            sink.accept(fact)
         }
     }
 }
@@ -0,0 +1,274 @@
+/*
+ *  Copyright 2022 UnitTestBot contributors (utbot.org)
+ * <p>
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ * <p>
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package org.jacodb.analysis.taint
+
+import kotlinx.serialization.Serializable
+import kotlinx.serialization.builtins.ListSerializer
+import kotlinx.serialization.json.Json
+import org.jacodb.analysis.ifds.ClassUnit
+import org.jacodb.analysis.ifds.MethodUnit
+import org.jacodb.analysis.ifds.PackageUnit
+import org.jacodb.analysis.ifds.SingletonUnit
+import org.jacodb.analysis.ifds.TraceGraph
+import org.jacodb.analysis.ifds.UnitResolver
+import org.jacodb.analysis.ifds.UnitType
+import org.jacodb.api.JcMethod
+import java.io.InputStream
+import java.io.OutputStream
+import java.util.concurrent.ConcurrentHashMap
+
+/**
+ * Method referenced by its signature, so that it can be found again in a refreshed classpath.
+ */
+@Serializable
+internal data class MethodRef(
+    val className: String,
+    val name: String,
+    val description: String,
+) {
+    override fun toString(): String = "$className#$name$description"
+}
+
+internal val JcMethod.ref: MethodRef
+    get() = MethodRef(enclosingClass.name, name, description)
+
+@Serializable
+internal enum class LocalKind { THIS, ARGUMENT, LOCAL }
+
+@Serializable
+internal data class StoredLocal(
+    val kind: LocalKind,
+    val index: Int,
+    val name: String,
+)
+
+/**
+ * Accessor of the field [fieldName] declared in [className], or the array element accessor if both are null.
+ */
+@Serializable
+internal data class StoredAccessor(
+    val className: String? = null,
+    val fieldName: String? = null,
+)
+
+/**
+ * The zero fact if [mark] is null, otherwise the taint of the path [local] / [accessors].
+ * Paths of static fields have no [local] and start with the static field accessor.
+ */
+@Serializable
+internal data class StoredFact(
+    val mark: String? = null,
+    val local: StoredLocal? = null,
+    val accessors: List<StoredAccessor> = emptyList(),
+)
+
+/**
+ * Vertex at the instruction with the given [index] in the control flow graph of the [method],
+ * or at the synthetic start of the [method] added by the application graph if [index] is -1.
+ */
+@Serializable
+internal data class StoredVertex(
+    val method: MethodRef,
+    val index: Int,
+    val fact: StoredFact,
+)
+
+@Serializable
+internal data class StoredSummaryEdge(
+    val from: StoredVertex,
+    val to: StoredVertex,
+)
+
+@Serializable
+internal data class StoredTraceEdge(
+    val from: StoredVertex,
+    val to: List<StoredVertex>,
+)
+
+/**
+ * Vulnerability together with its trace graph.
+ *
+ * @property ruleIndex index of the vulnerability rule among the sink rules of the called method,
+ * or -1 for vulnerabilities without a rule.
+ */
+@Serializable
+internal data class StoredVulnerability(
+    val message: String,
+    val sink: StoredVertex,
+    val ruleIndex: Int,
+    val sources: List<StoredVertex>,
+    val edges: List<StoredTraceEdge>,
+)
+
+/**
+ * Everything [TaintManager] needs to replay the analysis of a single unit without re-running it.
+ * All the methods, instructions and values are referenced by signatures and indices (see [TaintRecordCodec]),
+ * so the record does not depend on the classpath it was built in.
+ *
+ * @property unit key of the unit, see [unitKey].
+ * @property seedMethods methods the unit was started from by [TaintManager.analyze].
+ * @property fingerprints fingerprints of all methods analyzed in the unit, see [TaintRecordCodec.fingerprint].
+ * @property dependencies methods of other units which exchanged edges or summaries with this unit.
+ * @property startVertices all method starts (with facts) reached in the unit,
+ * a cross-unit call to any other start vertex requires the unit to be re-analyzed.
+ */
+@Serializable
+internal data class TaintUnitRecord(
+    val unit: String,
+    val seedMethods: Set<MethodRef>,
+    val fingerprints: Map<MethodRef, Int>,
+    val dependencies: Set<MethodRef>,
+    val startVertices: Set<StoredVertex>,
+    val summaryEdges: List<StoredSummaryEdge>,
+    val vulnerabilities: List<StoredVulnerability>,
+) {
+    fun merge(other: TaintUnitRecord): TaintUnitRecord {
+        check(unit == other.unit) { "Cannot merge records of different units: $unit and ${other.unit}" }
+        return TaintUnitRecord(
+            unit = unit,
+            seedMethods = seedMethods + other.seedMethods,
+            fingerprints = fingerprints + other.fingerprints,
+            dependencies = dependencies + other.dependencies,
+            startVertices = startVertices + other.startVertices,
+            summaryEdges = (summaryEdges + other.summaryEdges).distinct(),
+            vulnerabilities = (vulnerabilities + other.vulnerabilities).distinct(),
+        )
+    }
+}
+
+/**
+ * [TaintUnitRecord] decoded in the current classpath.
+ */
+internal class ReplayedUnit(
+    val startVertices: Set<TaintVertex>,
+    val summaryEdges: List<TaintSummaryEdge>,
+    val traceGraphs: Map<TaintVulnerability, TraceGraph<TaintDomainFact>>,
+)
+
+/**
+ * Key of the [unit] which is stable between classpaths, or null for units which can't be stored.
+ */
+internal fun unitKey(unit: UnitType): String? = when (unit) {
+    is MethodUnit -> "method:${unit.method.ref}"
+    is ClassUnit -> "class:${unit.clazz.name}"
+    is PackageUnit -> "package:${unit.packageName}"
+    is SingletonUnit -> "singleton"
+    else -> null
+}
+
+/**
+ * Keeps the results of [TaintManager] runs per unit, so that the next run on a changed classpath
+ * only re-analyzes the units affected by the change.
+ *
+ * A unit is replayed from its record when all the methods it analyzed are still present with the same
+ * fingerprints, it is started from no new methods, and none of the units it exchanged edges or summaries
+ * with is re-analyzed. All the other units are invalidated and analyzed from scratch.
+ *
+ * Records refer to the code by signatures only, so the storage can be [saved][save] and [loaded][load]
+ * to be used by the analysis of another classpath or in another process.
+ */
+class TaintIncrementalStorage {
+    private val records: MutableMap<String, TaintUnitRecord> = ConcurrentHashMap()
+
+    /**
+     * Keys of all stored units, e.g. `class:org.example.Foo` for [ClassUnit]s.
+     */
+    val units: Set<String>
+        get() = records.keys
+
+    fun invalidate(unit: UnitType) {
+        unitKey(unit)?.let { records.remove(it) }
+    }
+
+    fun clear() {
+        records.clear()
+    }
+
+    /**
+     * Writes all records to the [output] as JSON, the [output] is not closed.
+     */
+    fun save(output: OutputStream) {
+        val writer = output.bufferedWriter()
+        writer.write(json.encodeToString(recordsSerializer, records.values.toList()))
+        writer.flush()
+    }
+
+    internal operator fun get(unit: UnitType): TaintUnitRecord? {
+        return unitKey(unit)?.let { records[it] }
+    }
+
+    internal fun put(record: TaintUnitRecord) {
+        records[record.unit] = record
+    }
+
+    /**
+     * Decodes the records of the units among [units] which can be replayed instead of being re-analyzed.
+     * Records of all the other units among [units] are dropped.
+     */
+    internal fun replayableUnits(
+        units: Collection<UnitType>,
+        seedMethods: (UnitType) -> Set<JcMethod>,
+        codec: TaintRecordCodec,
+        unitResolver: UnitResolver,
+    ): Map<UnitType, ReplayedUnit> {
+        val replayable = hashMapOf<UnitType, ReplayedUnit>()
+        for (unit in units) {
+            val record = get(unit) ?: continue
+            val isUnchanged = record.seedMethods.containsAll(seedMethods(unit).map { it.ref }) &&
+                record.fingerprints.all { (ref, fingerprint) ->
+                    val method = codec.resolve(ref)
+                    method != null && codec.fingerprint(method) == fingerprint
+                }
+            if (isUnchanged) {
+                codec.decode(record)?.let { replayable[unit] = it }
+            }
+        }
+
+        // Invalidate transitively: a re-analyzed unit may send other edges and produce other summaries.
+        do {
+            val invalidated = replayable.keys.filter { unit ->
+                get(unit)!!.dependencies.any { ref ->
+                    val method = codec.resolve(ref)
+                    method == null || unitResolver.resolve(method) !in replayable
+                }
+            }
+            replayable -= invalidated.toSet()
+        } while (invalidated.isNotEmpty())
+
+        for (unit in units) {
+            if (unit !in replayable) {
+                invalidate(unit)
+            }
+        }
+        return replayable
+    }
+
+    companion object {
+        private val json = Json { allowStructuredMapKeys = true }
+        private val recordsSerializer = ListSerializer(TaintUnitRecord.serializer())
+
+        /**
+         * Reads the records written by [save] from the [input], the [input] is not closed.
+         */
+        fun load(input: InputStream): TaintIncrementalStorage {
+            val records = json.decodeFromString(recordsSerializer, input.bufferedReader().readText())
+            return TaintIncrementalStorage().also { storage ->
+                records.forEach { storage.put(it) }
+            }
+        }
+    }
+}
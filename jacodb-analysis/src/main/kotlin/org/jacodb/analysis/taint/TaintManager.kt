@@ -19,11 +19,12 @@ package org.jacodb.analysis.taint
 import kotlinx.coroutines.CoroutineScope
 import kotlinx.coroutines.CoroutineStart
 import kotlinx.coroutines.Dispatchers
+import kotlinx.coroutines.async
+import kotlinx.coroutines.awaitAll
 import kotlinx.coroutines.cancelAndJoin
 import kotlinx.coroutines.channels.Channel
+import kotlinx.coroutines.coroutineScope
 import kotlinx.coroutines.delay
-import kotlinx.coroutines.flow.launchIn
-import kotlinx.coroutines.flow.onEach
 import kotlinx.coroutines.isActive
 import kotlinx.coroutines.joinAll
 import kotlinx.coroutines.launch
@@ -31,19 +32,24 @@ import kotlinx.coroutines.runBlocking
 import kotlinx.coroutines.withTimeoutOrNull
 import org.jacodb.analysis.graph.reversed
 import org.jacodb.analysis.ifds.ControlEvent
+import org.jacodb.analysis.ifds.IfdsMetrics
 import org.jacodb.analysis.ifds.IfdsResult
 import org.jacodb.analysis.ifds.Manager
 import org.jacodb.analysis.ifds.QueueEmptinessChanged
-import org.jacodb.analysis.ifds.SummaryStorageImpl
+import org.jacodb.analysis.ifds.SummaryStorageWithSubscriptions
+import org.jacodb.analysis.ifds.Reason
 import org.jacodb.analysis.ifds.TraceGraph
 import org.jacodb.analysis.ifds.UniRunner
 import org.jacodb.analysis.ifds.UnitResolver
+import org.jacodb.analysis.ifds.UnitScheduler
 import org.jacodb.analysis.ifds.UnitType
 import org.jacodb.analysis.ifds.UnknownUnit
 import org.jacodb.analysis.ifds.Vertex
 import org.jacodb.analysis.util.getPathEdges
 import org.jacodb.api.JcMethod
 import org.jacodb.api.analysis.JcApplicationGraph
+import org.jacodb.api.cfg.JcInst
+import org.jacodb.taint.configuration.TaintMethodSink
 import java.util.concurrent.ConcurrentHashMap
 import kotlin.time.Duration
 import kotlin.time.Duration.Companion.seconds
@@ -53,18 +59,48 @@ import kotlin.time.TimeSource
 
 private val logger = mu.KotlinLogging.logger {}
 
+private const val DEFAULT_QUERY_BUDGET = 100_000
+
 open class TaintManager(
     protected val graph: JcApplicationGraph,
     protected val unitResolver: UnitResolver,
     private val useBidiRunner: Boolean = false,
+    private val incrementalStorage: TaintIncrementalStorage? = null,
+    private val useSparseRunner: Boolean = false,
 ) : Manager<TaintDomainFact, TaintEvent> {
 
-    protected val methodsForUnit: MutableMap<UnitType, MutableSet<JcMethod>> = hashMapOf()
-    protected val runnerForUnit: MutableMap<UnitType, TaintRunner> = hashMapOf()
+    init {
+        require(incrementalStorage == null || !useBidiRunner) {
+            "Incremental analysis is supported only without the bidirectional runner"
+        }
+    }
+
+    protected val methodsForUnit: MutableMap<UnitType, MutableSet<JcMethod>> = ConcurrentHashMap()
+    protected val runnerForUnit: MutableMap<UnitType, TaintRunner> = ConcurrentHashMap()
     private val queueIsEmpty = ConcurrentHashMap<UnitType, Boolean>()
 
-    private val summaryEdgesStorage = SummaryStorageImpl<TaintSummaryEdge>()
-    private val vulnerabilitiesStorage = SummaryStorageImpl<TaintVulnerability>()
+    // Depth of units in the call graph, used as a priority by the scheduler (callees first)
+    private val unitDepth = ConcurrentHashMap<UnitType, Int>()
+
+    // Runners registered in the scheduler; published only after the registration
+    private val scheduledRunners = ConcurrentHashMap<UnitType, TaintRunner>()
+
+    @Volatile
+    private var scheduler: UnitScheduler<TaintDomainFact>? = null
+
+    private val summaryEdgesStorage = SummaryStorageWithSubscriptions<TaintSummaryEdge>()
+    private val vulnerabilitiesStorage = SummaryStorageWithSubscriptions<TaintVulnerability>()
+
+    // Units replayed from the incremental storage instead of being analyzed, with their replayed starts
+    private val replayedStarts = ConcurrentHashMap<UnitType, Set<TaintVertex>>()
+    private val replayedTraceGraphs = ConcurrentHashMap<TaintVulnerability, TraceGraph<TaintDomainFact>>()
+
+    // Methods of other units which exchanged edges or summaries with each unit
+    private val dependenciesForUnit = ConcurrentHashMap<UnitType, MutableSet<JcMethod>>()
+
+    private val codec by lazy { TaintRecordCodec(graph) }
+
+    private val demandSolver by lazy { TaintDemandSolver(graph, unitResolver) }
 
     private val stopRendezvous = Channel<Unit>(Channel.RENDEZVOUS)
 
@@ -110,7 +146,8 @@ open class TaintManager(
                 manager = this@TaintManager,
                 unitResolver = unitResolver,
                 unit = unit,
-                zeroFact = TaintZeroFact
+                zeroFact = TaintZeroFact,
+                isSparse = useSparseRunner
             )
         }
 
@@ -127,13 +164,18 @@ open class TaintManager(
     }
 
     protected open fun addStart(method: JcMethod) {
+        addStart(method, depth = 0)
+    }
+
+    private fun addStart(method: JcMethod, depth: Int) {
         logger.info { "Adding start method: $method" }
         val unit = unitResolver.resolve(method)
         if (unit == UnknownUnit) return
+        unitDepth.merge(unit, depth, ::maxOf)
         val isNew = methodsForUnit.getOrPut(unit) { hashSetOf() }.add(method)
         if (isNew) {
             for (dep in getAllCallees(method)) {
-                addStart(dep)
+                addStart(dep, depth + 1)
             }
         }
     }
@@ -159,6 +201,58 @@ open class TaintManager(
             } methods in ${allUnits.size} units"
         }
 
+        if (useBidiRunner) {
+            runAllUnits(allUnits, timeout)
+        } else {
+            // Runners for other units are created lazily, when the first edge reaches them.
+            // Note: replayed units send no edges, but all the units they depended on are replayed as well.
+            val seedUnits = startMethods.map { unitResolver.resolve(it) }.filter { it != UnknownUnit }.distinct()
+            val unitsToStart = if (incrementalStorage != null) {
+                replayUnits(incrementalStorage, allUnits, seedUnits.toSet())
+                seedUnits.filter { it !in replayedStarts }
+            } else {
+                seedUnits
+            }
+            val isCompleted = runScheduled(unitsToStart, timeout)
+            if (incrementalStorage != null && isCompleted) {
+                recordUnits(incrementalStorage, seedUnits.toSet())
+            }
+        }
+        for (runner in runnerForUnit.values) {
+            runner.complete()
+        }
+        recordUnitMetrics()
+
+        // Extract found vulnerabilities (sinks):
+        val foundVulnerabilities = vulnerabilitiesStorage.knownMethods
+            .flatMap { method ->
+                vulnerabilitiesStorage.getCurrentFacts(method)
+            }
+        if (logger.isDebugEnabled) {
+            logger.debug { "Total found ${foundVulnerabilities.size} vulnerabilities" }
+            for (vulnerability in foundVulnerabilities) {
+                logger.debug { "$vulnerability in ${vulnerability.method}" }
+            }
+        }
+        logger.info { "Total sinks: ${foundVulnerabilities.size}" }
+        logger.info {
+            "Total propagated ${
+                runnerForUnit.values.sumOf { it.getPathEdges().size }
+            } path edges"
+        }
+        logger.info {
+            "Analysis done in %.1f s".format(
+                timeStart.elapsedNow().toDouble(DurationUnit.SECONDS)
+            )
+        }
+        foundVulnerabilities
+    }
+
+    /**
+     * Runs every unit in its own coroutine until all runners become idle.
+     */
+    @OptIn(ExperimentalTime::class)
+    private suspend fun runAllUnits(allUnits: List<UnitType>, timeout: Duration) = coroutineScope {
         // Spawn runner jobs:
         val allJobs = allUnits.map { unit ->
             // Create the runner:
@@ -209,30 +303,131 @@ open class TaintManager(
                 timeStartJobs.elapsedNow().toDouble(DurationUnit.SECONDS)
             )
         }
+    }
 
-        // Extract found vulnerabilities (sinks):
-        val foundVulnerabilities = vulnerabilitiesStorage.knownMethods
-            .flatMap { method ->
-                vulnerabilitiesStorage.getCurrentFacts(method)
+    /**
+     * Runs units by a fixed number of workers of [UnitScheduler], starting from all methods of [startUnits].
+     * Runners for the other units are created on the first [EdgeForOtherRunner] reaching them.
+     */
+    @OptIn(ExperimentalTime::class)
+    private suspend fun runScheduled(startUnits: List<UnitType>, timeout: Duration) = coroutineScope {
+        val scheduler = UnitScheduler<TaintDomainFact>()
+        this@TaintManager.scheduler = scheduler
+        val runners = startUnits.map { unit ->
+            getOrCreateScheduledRunner(scheduler, unit) as UniRunner<TaintDomainFact, *>
+        }
+
+        // Spawn progress job:
+        val progress = launch(Dispatchers.IO) {
+            while (isActive) {
+                delay(1.seconds)
+                logger.info {
+                    "Progress: propagated ${
+                        runnerForUnit.values.sumOf { it.getPathEdges().size }
+                    } path edges"
+                }
             }
-        if (logger.isDebugEnabled) {
-            logger.debug { "Total found ${foundVulnerabilities.size} vulnerabilities" }
-            for (vulnerability in foundVulnerabilities) {
-                logger.debug { "$vulnerability in ${vulnerability.method}" }
+        }
+
+        val timeStartJobs = TimeSource.Monotonic.markNow()
+        val isCompleted = withTimeoutOrNull(timeout) {
+            for ((unit, runner) in startUnits.zip(runners)) {
+                runner.addStartMethods(methodsForUnit[unit]!!.toList())
             }
+            scheduler.run()
+            true
+        } ?: run {
+            logger.info { "Timeout!" }
+            false
         }
-        logger.info { "Total sinks: ${foundVulnerabilities.size}" }
+        progress.cancelAndJoin()
         logger.info {
-            "Total propagated ${
-                runnerForUnit.values.sumOf { it.getPathEdges().size }
-            } path edges"
+            "All ${runnerForUnit.size} units completed in %.1f s".format(
+                timeStartJobs.elapsedNow().toDouble(DurationUnit.SECONDS)
+            )
         }
-        logger.info {
-            "Analysis done in %.1f s".format(
-                timeStart.elapsedNow().toDouble(DurationUnit.SECONDS)
+        isCompleted
+    }
+
+    /**
+     * Replays the summaries and vulnerabilities of all units which are not affected by the changes
+     * since the previous run.
+     */
+    private fun replayUnits(storage: TaintIncrementalStorage, allUnits: List<UnitType>, seedUnits: Set<UnitType>) {
+        val replayable = storage.replayableUnits(
+            allUnits,
+            { unit -> if (unit in seedUnits) methodsForUnit[unit].orEmpty() else emptySet() },
+            codec,
+            unitResolver
+        )
+        for ((unit, replayed) in replayable) {
+            replayedStarts[unit] = replayed.startVertices
+            replayed.summaryEdges.forEach { summaryEdgesStorage.add(it) }
+            for ((vulnerability, traceGraph) in replayed.traceGraphs) {
+                replayedTraceGraphs[vulnerability] = traceGraph
+                vulnerabilitiesStorage.add(vulnerability)
+            }
+        }
+        logger.info { "Replayed ${replayable.size} of ${allUnits.size} units from the incremental storage" }
+    }
+
+    /**
+     * Saves the results of all analyzed units, including the trace graphs of their vulnerabilities,
+     * to the [storage] for the next incremental run.
+     */
+    private fun recordUnits(storage: TaintIncrementalStorage, seedUnits: Set<UnitType>) {
+        for ((unit, runner) in runnerForUnit) {
+            @Suppress("UNCHECKED_CAST")
+            val pathEdges = runner.getPathEdges() as Set<TaintEdge>
+            val methods = pathEdges.mapTo(hashSetOf()) { it.method }
+            val vulnerabilities = methods.flatMap { vulnerabilitiesStorage.getCurrentFacts(it) }
+            val record = codec.encode(
+                unit = unit,
+                seedMethods = if (unit in seedUnits) methodsForUnit[unit].orEmpty() else emptySet(),
+                methods = methods,
+                dependencies = dependenciesForUnit[unit].orEmpty(),
+                startVertices = pathEdges.filter { it.from == it.to }.mapTo(hashSetOf()) { it.from },
+                summaryEdges = methods.flatMap { summaryEdgesStorage.getCurrentFacts(it) },
+                traceGraphs = vulnerabilities.associateWith { vulnerabilityTraceGraph(it) },
             )
+            if (record == null) {
+                logger.debug { "Results of $unit can't be stored, it will be re-analyzed by the next run" }
+                storage.invalidate(unit)
+                continue
+            }
+            // Note: units replayed at first and re-analyzed on demand keep their replayed results.
+            val previous = storage[unit]
+            storage.put(previous?.merge(record) ?: record)
+        }
+    }
+
+    /**
+     * Note: units are scheduled by their depth found by [addStart], which discovers all the units to analyze.
+     */
+    private fun getOrCreateScheduledRunner(
+        scheduler: UnitScheduler<TaintDomainFact>,
+        unit: UnitType,
+    ): TaintRunner {
+        scheduledRunners[unit]?.let { return it }
+        synchronized(scheduledRunners) {
+            scheduledRunners[unit]?.let { return it }
+            val runner = newRunner(unit)
+            check(runner is UniRunner<TaintDomainFact, *>) {
+                "Only UniRunner can be scheduled, but got $runner"
+            }
+            scheduler.register(runner, unitDepth[unit] ?: 0)
+            scheduledRunners[unit] = runner
+            return runner
+        }
+    }
+
+    private fun recordUnitMetrics() {
+        val metrics = IfdsMetrics(graph.classpath.db.metrics)
+        if (metrics.isEnabled) {
+            for (runner in runnerForUnit.values) {
+                metrics.edgesPerUnit.record(runner.getPathEdges().size.toLong())
+            }
         }
-        foundVulnerabilities
     }
 
     override fun handleEvent(event: TaintEvent) {
@@ -248,7 +443,29 @@ open class TaintManager(
             is EdgeForOtherRunner -> {
                 val method = event.edge.method
                 val unit = unitResolver.resolve(method)
-                val otherRunner = runnerForUnit[unit] ?: run {
+                if (incrementalStorage != null) {
+                    val reason = event.reason
+                    if (reason is Reason.CrossUnitCall) {
+                        // The caller consumes summaries of the callee, which in turn is started by the caller
+                        val callerMethod = reason.caller.method
+                        dependenciesOf(unitResolver.resolve(callerMethod)).add(method)
+                        dependenciesOf(unit).add(callerMethod)
+                    }
+                    val replayed = replayedStarts[unit]
+                    if (replayed != null) {
+                        if (event.edge.from in replayed) {
+                            // Summaries for this start are already replayed
+                            return
+                        }
+                        logger.debug { "Re-analyzing replayed $unit for new start ${event.edge.from}" }
+                        replayedStarts.remove(unit)
+                    }
+                }
+                val otherRunner = if (scheduler != null) {
+                    scheduledRunnerFor(unit)
+                } else {
+                    runnerForUnit[unit]
+                } ?: run {
                     // error("No runner for $unit")
                     logger.trace { "Ignoring event=$event for non-existing runner for unit=$unit" }
                     return
@@ -258,6 +475,18 @@ open class TaintManager(
         }
     }
 
+    private fun dependenciesOf(unit: UnitType): MutableSet<JcMethod> {
+        return dependenciesForUnit.computeIfAbsent(unit) { ConcurrentHashMap.newKeySet() }
+    }
+
+    private fun scheduledRunnerFor(unit: UnitType): TaintRunner? {
+        val scheduler = scheduler ?: return null
+        scheduledRunners[unit]?.let { return it }
+        // Note: as in the non-scheduled mode, units which were not discovered by 'addStart' are not analyzed
+        if (unit !in methodsForUnit) return null
+        return getOrCreateScheduledRunner(scheduler, unit)
+    }
+
     override fun handleControlEvent(event: ControlEvent) {
         when (event) {
             is QueueEmptinessChanged -> {
@@ -277,14 +506,59 @@ open class TaintManager(
         scope: CoroutineScope,
         handler: (TaintEdge) -> Unit,
     ) {
-        summaryEdgesStorage
-            .getFacts(method)
-            .onEach { handler(it.edge) }
-            .launchIn(scope)
+        summaryEdgesStorage.subscribe(method) { summaryEdge ->
+            handler(summaryEdge.edge)
+        }
+    }
+
+    /**
+     * Answers whether the [sink] vertex is reachable by taint, without running the exhaustive analysis.
+     *
+     * The demand-driven solver explores the program backwards from the [sink] and stops as soon as
+     * a source is found, or after [budget] path edges are explored.
+     * It does not need [analyze] to be called before.
+     */
+    fun query(
+        sink: TaintVertex,
+        budget: Int = DEFAULT_QUERY_BUDGET,
+    ): TaintQueryResult {
+        return demandSolver.query(listOf(sink), budget)
+    }
+
+    /**
+     * Answers whether any sink rule of the [statement] (see [TaintMethodSink]) can be triggered.
+     */
+    fun querySink(
+        statement: JcInst,
+        budget: Int = DEFAULT_QUERY_BUDGET,
+    ): TaintQueryResult {
+        val sinks = demandSolver.sinkVertices(statement)
+        if (sinks.isEmpty()) return TaintQueryResult.Unreachable
+        return demandSolver.query(sinks, budget)
+    }
+
+    /**
+     * Builds trace graphs for all given [vulnerabilities] in parallel.
+     *
+     * Note: IFDS results of runners are built once and shared by all trace graph builders,
+     * so this should be called after the analysis is finished.
+     */
+    fun vulnerabilityTraceGraphs(
+        vulnerabilities: List<TaintVulnerability>,
+    ): List<TraceGraph<TaintDomainFact>> = runBlocking(Dispatchers.Default) {
+        vulnerabilities
+            .map { vulnerability -> async { vulnerabilityTraceGraph(vulnerability) } }
+            .awaitAll()
     }
 
     fun vulnerabilityTraceGraph(vulnerability: TaintVulnerability): TraceGraph<TaintDomainFact> {
+        val replayedGraph = replayedTraceGraphs[vulnerability]
         val result = getIfdsResultForMethod(vulnerability.method)
+        if (replayedGraph != null && (result == null || vulnerability.sink !in result.pathEdgesBySink)) {
+            // Replayed vulnerability: its trace graph was built by the run which recorded it
+            return replayedGraph
+        }
+        checkNotNull(result) { "No IFDS result for $vulnerability" }
         val initialGraph = result.buildTraceGraph(vulnerability.sink)
         val resultGraph = initialGraph.copy(unresolvedCrossUnitCalls = emptyMap())
 
@@ -302,7 +576,10 @@ open class TaintManager(
 
             if (unresolvedCallees.isEmpty()) continue
 
-            val callerResult = getIfdsResultForMethod(caller.method)
+            // Callers of analyzed units are never replayed, since they depend on their callees
+            val callerResult = checkNotNull(getIfdsResultForMethod(caller.method)) {
+                "No IFDS result for the caller $caller"
+            }
             val callerGraph = callerResult.buildTraceGraph(caller)
             resultGraph.mergeWithUpGraph(callerGraph, unresolvedCallees)
             unresolvedCrossUnitCalls += callerGraph.unresolvedCrossUnitCalls.entries
@@ -311,9 +588,15 @@ open class TaintManager(
         return resultGraph
     }
 
-    private fun getIfdsResultForMethod(method: JcMethod): IfdsResult<TaintDomainFact> {
+    /**
+     * Returns `null` for units replayed from the incremental storage, which have no runners.
+     */
+    private fun getIfdsResultForMethod(method: JcMethod): IfdsResult<TaintDomainFact>? {
         val unit = unitResolver.resolve(method)
-        val runner = runnerForUnit[unit] ?: error("No runner for $unit")
+        val runner = runnerForUnit[unit] ?: run {
+            check(unit in replayedStarts) { "No runner for $unit" }
+            return null
+        }
         return runner.getIfdsResult()
     }
 }
@@ -0,0 +1,245 @@
+/*
+ *  Copyright 2022 UnitTestBot contributors (utbot.org)
+ * <p>
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ * <p>
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package org.jacodb.analysis.taint
+
+import org.jacodb.analysis.ifds.AccessPath
+import org.jacodb.analysis.ifds.Accessor
+import org.jacodb.analysis.ifds.Edge
+import org.jacodb.analysis.ifds.ElementAccessor
+import org.jacodb.analysis.ifds.FieldAccessor
+import org.jacodb.analysis.ifds.TraceGraph
+import org.jacodb.analysis.ifds.UnitType
+import org.jacodb.analysis.ifds.Vertex
+import org.jacodb.analysis.util.getArgument
+import org.jacodb.analysis.util.thisInstance
+import org.jacodb.api.JcMethod
+import org.jacodb.api.analysis.JcApplicationGraph
+import org.jacodb.api.cfg.JcArgument
+import org.jacodb.api.cfg.JcInst
+import org.jacodb.api.cfg.JcLocal
+import org.jacodb.api.cfg.JcLocalVar
+import org.jacodb.api.cfg.JcSimpleValue
+import org.jacodb.api.cfg.JcThis
+import org.jacodb.api.ext.cfg.callExpr
+import org.jacodb.api.ext.cfg.locals
+import org.jacodb.api.ext.findClassOrNull
+import org.jacodb.api.ext.findDeclaredFieldOrNull
+import org.jacodb.taint.configuration.TaintConfigurationFeature
+import org.jacodb.taint.configuration.TaintMark
+import org.jacodb.taint.configuration.TaintMethodSink
+import java.util.concurrent.ConcurrentHashMap
+
+/**
+ * Converts the results of the analysis in the [graph] classpath to [TaintUnitRecord]s and back.
+ *
+ * Methods are referenced by signatures, statements by indices in the control flow graphs of their methods,
+ * and facts by the kinds, indices and names of their locals. Encoding returns null for results
+ * which can't be referenced this way (e.g. facts about constants), such units are not stored.
+ */
+internal class TaintRecordCodec(
+    private val graph: JcApplicationGraph,
+) {
+    private val cp = graph.classpath
+
+    private val taintConfigurationFeature: TaintConfigurationFeature? by lazy {
+        cp.features
+            ?.singleOrNull { it is TaintConfigurationFeature }
+            ?.let { it as TaintConfigurationFeature }
+    }
+
+    private val fingerprints = ConcurrentHashMap<JcMethod, Int>()
+    private val localsOfMethod = ConcurrentHashMap<JcMethod, List<JcLocal>>()
+
+    fun resolve(ref: MethodRef): JcMethod? {
+        return cp.findClassOrNull(ref.className)
+            ?.declaredMethods
+            ?.singleOrNull { it.name == ref.name && it.description == ref.description }
+    }
+
+    /**
+     * Fingerprint of the [method] bytecode and of the methods it calls. It changes whenever the instructions
+     * of the method change or any of its calls is dispatched to other methods, e.g. when a new override is added.
+     */
+    fun fingerprint(method: JcMethod): Int = fingerprints.getOrPut(method) {
+        var result = method.rawInstList.fold(1) { acc, inst -> 31 * acc + inst.toString().hashCode() }
+        for (inst in method.flowGraph().instructions) {
+            if (inst.callExpr == null) continue
+            val callees = graph.callees(inst).map { it.ref.toString() }.sorted()
+            result = 31 * result + callees.hashCode()
+        }
+        result
+    }
+
+    fun encode(
+        unit: UnitType,
+        seedMethods: Set<JcMethod>,
+        methods: Set<JcMethod>,
+        dependencies: Set<JcMethod>,
+        startVertices: Set<TaintVertex>,
+        summaryEdges: List<TaintSummaryEdge>,
+        traceGraphs: Map<TaintVulnerability, TraceGraph<TaintDomainFact>>,
+    ): TaintUnitRecord? {
+        return TaintUnitRecord(
+            unit = unitKey(unit) ?: return null,
+            seedMethods = seedMethods.mapTo(hashSetOf()) { it.ref },
+            fingerprints = methods.associate { it.ref to fingerprint(it) },
+            dependencies = dependencies.mapTo(hashSetOf()) { it.ref },
+            startVertices = startVertices.mapTo(hashSetOf()) { encode(it) ?: return null },
+            summaryEdges = summaryEdges.map {
+                StoredSummaryEdge(encode(it.edge.from) ?: return null, encode(it.edge.to) ?: return null)
+            },
+            vulnerabilities = traceGraphs.map { (vulnerability, traceGraph) ->
+                encode(vulnerability, traceGraph) ?: return null
+            },
+        )
+    }
+
+    /**
+     * Returns null if any method, statement or value of the [record] is not found in the current classpath.
+     */
+    fun decode(record: TaintUnitRecord): ReplayedUnit? {
+        return ReplayedUnit(
+            startVertices = record.startVertices.mapTo(hashSetOf()) { decode(it) ?: return null },
+            summaryEdges = record.summaryEdges.map {
+                TaintSummaryEdge(Edge(decode(it.from) ?: return null, decode(it.to) ?: return null))
+            },
+            traceGraphs = record.vulnerabilities.associate { decode(it) ?: return null },
+        )
+    }
+
+    private fun encode(
+        vulnerability: TaintVulnerability,
+        traceGraph: TraceGraph<TaintDomainFact>,
+    ): StoredVulnerability? {
+        val rule = vulnerability.rule
+        val ruleIndex = if (rule == null) -1 else sinkRules(vulnerability.sink.statement).indexOf(rule)
+        if (rule != null && ruleIndex < 0) return null
+        return StoredVulnerability(
+            message = vulnerability.message,
+            sink = encode(vulnerability.sink) ?: return null,
+            ruleIndex = ruleIndex,
+            sources = traceGraph.sources.map { encode(it) ?: return null },
+            edges = traceGraph.edges.map { (from, to) ->
+                StoredTraceEdge(encode(from) ?: return null, to.map { encode(it) ?: return null })
+            },
+        )
+    }
+
+    private fun decode(
+        vulnerability: StoredVulnerability,
+    ): Pair<TaintVulnerability, TraceGraph<TaintDomainFact>>? {
+        val sink = decode(vulnerability.sink) ?: return null
+        val rule = if (vulnerability.ruleIndex < 0) {
+            null
+        } else {
+            sinkRules(sink.statement).getOrNull(vulnerability.ruleIndex) ?: return null
+        }
+        val sources = vulnerability.sources.mapTo(hashSetOf()) { decode(it) ?: return null }
+        val edges = hashMapOf<TaintVertex, MutableSet<TaintVertex>>()
+        for (edge in vulnerability.edges) {
+            edges[decode(edge.from) ?: return null] = edge.to.mapTo(hashSetOf()) { decode(it) ?: return null }
+        }
+        val traceGraph = TraceGraph(sink, sources, edges, emptyMap())
+        return TaintVulnerability(vulnerability.message, sink, rule) to traceGraph
+    }
+
+    private fun sinkRules(statement: JcInst): List<TaintMethodSink> {
+        val callee = statement.callExpr?.method?.method ?: return emptyList()
+        val config = taintConfigurationFeature?.getConfigForMethod(callee) ?: return emptyList()
+        return config.filterIsInstance<TaintMethodSink>()
+    }
+
+    private fun encode(vertex: TaintVertex): StoredVertex? {
+        val method = vertex.method
+        val index = if (vertex.statement.location.index < 0) {
+            // Synthetic start of the method added by the application graph
+            if (graph.entryPoints(method).singleOrNull() != vertex.statement) return null
+            SYNTHETIC_START_INDEX
+        } else {
+            vertex.statement.location.index
+        }
+        if (index >= 0 && method.flowGraph().instructions.getOrNull(index) != vertex.statement) return null
+        return StoredVertex(method.ref, index, encode(vertex.fact) ?: return null)
+    }
+
+    private fun decode(vertex: StoredVertex): TaintVertex? {
+        val method = resolve(vertex.method) ?: return null
+        val statement = if (vertex.index == SYNTHETIC_START_INDEX) {
+            graph.entryPoints(method).singleOrNull()
+        } else {
+            method.flowGraph().instructions.getOrNull(vertex.index)
+        }
+        return Vertex(statement ?: return null, decode(vertex.fact, method) ?: return null)
+    }
+
+    private fun encode(fact: TaintDomainFact): StoredFact? = when (fact) {
+        TaintZeroFact -> StoredFact()
+
+        is Tainted -> {
+            val local = when (val value = fact.variable.value) {
+                null -> null
+                is JcThis -> StoredLocal(LocalKind.THIS, 0, value.name)
+                is JcArgument -> StoredLocal(LocalKind.ARGUMENT, value.index, value.name)
+                is JcLocalVar -> StoredLocal(LocalKind.LOCAL, value.index, value.name)
+                else -> return null
+            }
+            StoredFact(fact.mark.name, local, fact.variable.accesses.map { encode(it) })
+        }
+    }
+
+    private fun decode(fact: StoredFact, method: JcMethod): TaintDomainFact? {
+        val mark = fact.mark ?: return TaintZeroFact
+        val accessors = fact.accessors.map { decode(it) ?: return null }
+        val path = if (fact.local == null) {
+            val field = (accessors.firstOrNull() as? FieldAccessor)?.field
+            if (field == null || !field.isStatic) return null
+            AccessPath.from(field) / accessors.drop(1)
+        } else {
+            AccessPath.from(decode(fact.local, method) ?: return null) / accessors
+        }
+        return Tainted(path, TaintMark(mark))
+    }
+
+    private fun encode(accessor: Accessor): StoredAccessor = when (accessor) {
+        is FieldAccessor -> StoredAccessor(accessor.field.enclosingClass.name, accessor.field.name)
+        ElementAccessor -> StoredAccessor()
+    }
+
+    private fun decode(accessor: StoredAccessor): Accessor? {
+        if (accessor.className == null || accessor.fieldName == null) return ElementAccessor
+        val field = cp.findClassOrNull(accessor.className)?.findDeclaredFieldOrNull(accessor.fieldName)
+        return field?.let { FieldAccessor(it) }
+    }
+
+    private fun decode(local: StoredLocal, method: JcMethod): JcSimpleValue? {
+        if (local.kind == LocalKind.THIS) return method.thisInstance
+        val locals = localsOfMethod.getOrPut(method) {
+            method.instList.locals.toList() + method.parameters.mapNotNull { cp.getArgument(it) }
+        }
+        return locals.firstOrNull { value ->
+            value.name == local.name && when (value) {
+                is JcArgument -> local.kind == LocalKind.ARGUMENT && local.index == value.index
+                is JcLocalVar -> local.kind == LocalKind.LOCAL && local.index == value.index
+                else -> false
+            }
+        }
+    }
+
+    companion object {
+        private const val SYNTHETIC_START_INDEX = -1
+    }
+}
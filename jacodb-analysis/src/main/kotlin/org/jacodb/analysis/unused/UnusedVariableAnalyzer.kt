@@ -16,6 +16,7 @@
 
 package org.jacodb.analysis.unused
 
+import org.jacodb.analysis.graph.isExitPoint
 import org.jacodb.analysis.ifds.Analyzer
 import org.jacodb.analysis.ifds.Edge
 import org.jacodb.analysis.ifds.Vertex
@@ -31,7 +32,7 @@ class UnusedVariableAnalyzer(
     }
 
     private fun isExitPoint(statement: JcInst): Boolean {
-        return statement in graph.exitPoints(statement.location.method)
+        return graph.isExitPoint(statement)
     }
 
     override fun handleNewEdge(edge: Edge<UnusedVariableDomainFact>): List<Event> = buildList {
@@ -18,6 +18,7 @@ package org.jacodb.analysis.unused
 
 import org.jacodb.analysis.ifds.FlowFunction
 import org.jacodb.analysis.ifds.FlowFunctions
+import org.jacodb.analysis.ifds.SinkFlowFunction
 import org.jacodb.analysis.ifds.toPath
 import org.jacodb.analysis.ifds.toPathOrNull
 import org.jacodb.analysis.util.getArgumentsOf
@@ -30,6 +31,8 @@ import org.jacodb.api.cfg.JcSpecialCallExpr
 import org.jacodb.api.cfg.JcStaticCallExpr
 import org.jacodb.api.ext.cfg.callExpr
 
+private val zeroStartFacts: Set<UnusedVariableDomainFact> = setOf(UnusedVariableZeroFact)
+
 class UnusedVariableFlowFunctions(
     private val graph: JcApplicationGraph,
 ) : FlowFunctions<UnusedVariableDomainFact> {
@@ -39,41 +42,43 @@ class UnusedVariableFlowFunctions(
     override fun obtainPossibleStartFacts(
         method: JcMethod,
     ): Collection<UnusedVariableDomainFact> {
-        return setOf(UnusedVariableZeroFact)
+        return zeroStartFacts
     }
 
     override fun obtainSequentFlowFunction(
         current: JcInst,
         next: JcInst,
-    ) = FlowFunction<UnusedVariableDomainFact> { fact ->
+    ): FlowFunction<UnusedVariableDomainFact> {
         if (current !is JcAssignInst) {
-            return@FlowFunction setOf(fact)
+            return FlowFunction.identity()
         }
 
-        if (fact == UnusedVariableZeroFact) {
-            val toPath = current.lhv.toPath()
-            if (!toPath.isOnHeap) {
-                return@FlowFunction setOf(UnusedVariableZeroFact, UnusedVariable(toPath, current))
-            } else {
-                return@FlowFunction setOf(UnusedVariableZeroFact)
+        return SinkFlowFunction<UnusedVariableDomainFact> { fact, sink ->
+            if (fact == UnusedVariableZeroFact) {
+                sink.accept(UnusedVariableZeroFact)
+                val toPath = current.lhv.toPath()
+                if (!toPath.isOnHeap) {
+                    sink.accept(UnusedVariable(toPath, current))
+                }
+                return@SinkFlowFunction
             }
-        }
-        check(fact is UnusedVariable)
+            check(fact is UnusedVariable)
 
-        val toPath = current.lhv.toPath()
-        val default = if (toPath == fact.variable) emptySet() else setOf(fact)
-        val fromPath = current.rhv.toPathOrNull()
-            ?: return@FlowFunction default
+            val toPath = current.lhv.toPath()
+            if (toPath != fact.variable) {
+                sink.accept(fact)
+            }
+            val fromPath = current.rhv.toPathOrNull()
+                ?: return@SinkFlowFunction
 
-        if (fromPath.isOnHeap || toPath.isOnHeap) {
-            return@FlowFunction default
-        }
+            if (fromPath.isOnHeap || toPath.isOnHeap) {
+                return@SinkFlowFunction
+            }
 
-        if (fromPath == fact.variable) {
-            return@FlowFunction default + fact.copy(variable = toPath)
+            if (fromPath == fact.variable) {
+                sink.accept(fact.copy(variable = toPath))
+            }
         }
-
-        default
     }
 
     override fun obtainCallToReturnSiteFlowFunction(
@@ -84,37 +89,32 @@ class UnusedVariableFlowFunctions(
     override fun obtainCallToStartFlowFunction(
         callStatement: JcInst,
         calleeStart: JcInst,
-    ) = FlowFunction<UnusedVariableDomainFact> { fact ->
+    ) = SinkFlowFunction<UnusedVariableDomainFact> { fact, sink ->
         val callExpr = callStatement.callExpr
             ?: error("Call statement should have non-null callExpr")
 
         if (fact == UnusedVariableZeroFact) {
+            sink.accept(UnusedVariableZeroFact)
             if (callExpr !is JcStaticCallExpr && callExpr !is JcSpecialCallExpr) {
-                return@FlowFunction setOf(UnusedVariableZeroFact)
+                return@SinkFlowFunction
             }
-            return@FlowFunction buildSet {
-                add(UnusedVariableZeroFact)
-                val callee = calleeStart.location.method
-                val formalParams = cp.getArgumentsOf(callee)
-                for (formal in formalParams) {
-                    add(UnusedVariable(formal.toPath(), callStatement))
-                }
+            val callee = calleeStart.location.method
+            val formalParams = cp.getArgumentsOf(callee)
+            for (formal in formalParams) {
+                sink.accept(UnusedVariable(formal.toPath(), callStatement))
             }
+            return@SinkFlowFunction
         }
         check(fact is UnusedVariable)
-
-        emptySet()
     }
 
     override fun obtainExitToReturnSiteFlowFunction(
         callStatement: JcInst,
         returnSite: JcInst,
         exitStatement: JcInst,
-    ) = FlowFunction<UnusedVariableDomainFact> { fact ->
+    ) = SinkFlowFunction<UnusedVariableDomainFact> { fact, sink ->
         if (fact == UnusedVariableZeroFact) {
-            setOf(UnusedVariableZeroFact)
-        } else {
-            emptySet()
+            sink.accept(UnusedVariableZeroFact)
         }
     }
 }
@@ -22,8 +22,6 @@ import kotlinx.coroutines.Dispatchers
 import kotlinx.coroutines.cancelAndJoin
 import kotlinx.coroutines.channels.Channel
 import kotlinx.coroutines.delay
-import kotlinx.coroutines.flow.launchIn
-import kotlinx.coroutines.flow.onEach
 import kotlinx.coroutines.isActive
 import kotlinx.coroutines.joinAll
 import kotlinx.coroutines.launch
@@ -31,10 +29,11 @@ import kotlinx.coroutines.runBlocking
 import kotlinx.coroutines.withTimeoutOrNull
 import org.jacodb.analysis.ifds.ControlEvent
 import org.jacodb.analysis.ifds.Edge
+import org.jacodb.analysis.ifds.IfdsMetrics
 import org.jacodb.analysis.ifds.Manager
 import org.jacodb.analysis.ifds.QueueEmptinessChanged
 import org.jacodb.analysis.ifds.Runner
-import org.jacodb.analysis.ifds.SummaryStorageImpl
+import org.jacodb.analysis.ifds.SummaryStorageWithSubscriptions
 import org.jacodb.analysis.ifds.UniRunner
 import org.jacodb.analysis.ifds.UnitResolver
 import org.jacodb.analysis.ifds.UnitType
@@ -62,8 +61,8 @@ class UnusedVariableManager(
     private val runnerForUnit: MutableMap<UnitType, Runner<UnusedVariableDomainFact>> = hashMapOf()
     private val queueIsEmpty = ConcurrentHashMap<UnitType, Boolean>()
 
-    private val summaryEdgesStorage = SummaryStorageImpl<UnusedVariableSummaryEdge>()
-    private val vulnerabilitiesStorage = SummaryStorageImpl<UnusedVariableVulnerability>()
+    private val summaryEdgesStorage = SummaryStorageWithSubscriptions<UnusedVariableSummaryEdge>()
+    private val vulnerabilitiesStorage = SummaryStorageWithSubscriptions<UnusedVariableVulnerability>()
 
     private val stopRendezvous = Channel<Unit>(Channel.RENDEZVOUS)
 
@@ -173,6 +172,10 @@ class UnusedVariableManager(
         }
         progress.cancelAndJoin()
         stopper.cancelAndJoin()
+        for (runner in runnerForUnit.values) {
+            runner.complete()
+        }
+        recordUnitMetrics()
         logger.info {
             "All ${allJobs.size} jobs completed in %.1f s".format(
                 timeStartJobs.elapsedNow().toDouble(DurationUnit.SECONDS)
@@ -225,6 +228,15 @@ class UnusedVariableManager(
         foundVulnerabilities
     }
 
+    private fun recordUnitMetrics() {
+        val metrics = IfdsMetrics(graph.classpath.db.metrics)
+        if (metrics.isEnabled) {
+            for (runner in runnerForUnit.values) {
+                metrics.edgesPerUnit.record(runner.getPathEdges().size.toLong())
+            }
+        }
+    }
+
     override fun handleEvent(event: Event) {
         when (event) {
             is NewSummaryEdge -> {
@@ -252,9 +264,8 @@ class UnusedVariableManager(
         scope: CoroutineScope,
         handler: (Edge<UnusedVariableDomainFact>) -> Unit,
     ) {
-        summaryEdgesStorage
-            .getFacts(method)
-            .onEach { handler(it.edge) }
-            .launchIn(scope)
+        summaryEdgesStorage.subscribe(method) { summaryEdge ->
+            handler(summaryEdge.edge)
+        }
     }
 }
@@ -50,8 +50,5 @@ fun AccessPath?.startsWith(other: AccessPath?): Boolean {
     if (this == null || other == null) {
         return false
     }
-    if (this.value != other.value) {
-        return false
-    }
-    return this.accesses.take(other.accesses.size) == other.accesses
+    return startsWith(other)
 }
@@ -0,0 +1,91 @@
+/*
+ *  Copyright 2022 UnitTestBot contributors (utbot.org)
+ * <p>
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ * <p>
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+
+package org.jacodb.analysis.impl
+
+import io.mockk.every
+import io.mockk.mockk
+import org.jacodb.analysis.ifds.AccessPath
+import org.jacodb.analysis.ifds.ElementAccessor
+import org.jacodb.analysis.ifds.FieldAccessor
+import org.jacodb.api.JcField
+import org.jacodb.api.JcType
+import org.jacodb.api.cfg.JcLocalVar
+import org.junit.jupiter.api.Assertions.assertEquals
+import org.junit.jupiter.api.Assertions.assertFalse
+import org.junit.jupiter.api.Assertions.assertNull
+import org.junit.jupiter.api.Assertions.assertSame
+import org.junit.jupiter.api.Assertions.assertTrue
+import org.junit.jupiter.api.Test
+
+class AccessPathTest {
+
+    private val type = mockk<JcType>()
+
+    private fun field(name: String, static: Boolean = false) = mockk<JcField> {
+        every { this@mockk.name } returns name
+        every { isStatic } returns static
+    }
+
+    private val f = FieldAccessor(field("f"))
+    private val g = FieldAccessor(field("g"))
+
+    @Test
+    fun `equal paths are the same instance`() {
+        val a = AccessPath.from(JcLocalVar(0, "a", type))
+        val a2 = AccessPath.from(JcLocalVar(0, "a", type))
+        assertSame(a, a2)
+        assertSame(a / f / g, a2 / listOf(f, g))
+        assertEquals(listOf(f, g), (a / f / g).accesses)
+        assertEquals("a.f.g", (a / f / g).toString())
+    }
+
+    @Test
+    fun `prefixes are checked by parents`() {
+        val a = AccessPath.from(JcLocalVar(0, "a", type))
+        val b = AccessPath.from(JcLocalVar(1, "b", type))
+        val path = a / f / ElementAccessor
+
+        assertTrue(path.startsWith(a / f))
+        assertFalse(path.startsWith(a / g))
+        assertFalse(path.startsWith(b))
+        assertEquals(listOf(ElementAccessor), path - (a / f))
+        assertNull(path - b)
+        assertSame(a / f, path.parent)
+        assertSame(a, path.limit(0))
+    }
+
+    @Test
+    fun `rebase replaces prefix`() {
+        val a = AccessPath.from(JcLocalVar(0, "a", type))
+        val b = AccessPath.from(JcLocalVar(1, "b", type))
+
+        assertSame(b / g / f, (a / f / g / f).rebase(a / f, b))
+        assertSame(b, (a / f).rebase(a / f, b))
+        assertNull((a / g).rebase(a / f, b))
+    }
+
+    @Test
+    fun `static field paths`() {
+        val field = field("s", static = true)
+        val path = AccessPath.from(field)
+        assertSame(path, AccessPath.from(field))
+        assertTrue(path.isStatic)
+        assertNull(path.parent)
+        assertEquals(listOf(FieldAccessor(field), f), (path / f).accesses)
+    }
+}
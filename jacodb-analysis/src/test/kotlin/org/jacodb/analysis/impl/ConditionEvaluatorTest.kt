@@ -19,6 +19,10 @@ package org.jacodb.analysis.impl
 import io.mockk.every
 import io.mockk.mockk
 import org.jacodb.analysis.config.BasicConditionEvaluator
+import org.jacodb.analysis.config.CompiledContainsMark
+import org.jacodb.analysis.config.CompiledFalse
+import org.jacodb.analysis.config.CompiledTrue
+import org.jacodb.analysis.config.ConditionCompiler
 import org.jacodb.analysis.config.FactAwareConditionEvaluator
 import org.jacodb.analysis.ifds.Maybe
 import org.jacodb.analysis.ifds.toMaybe
@@ -58,8 +62,10 @@ import org.jacodb.taint.configuration.TaintMark
 import org.jacodb.taint.configuration.This
 import org.jacodb.taint.configuration.TypeMatches
 import org.junit.jupiter.api.Test
+import kotlin.test.assertEquals
 import kotlin.test.assertFailsWith
 import kotlin.test.assertFalse
+import kotlin.test.assertSame
 import kotlin.test.assertTrue
 
 class ConditionEvaluatorTest {
@@ -335,4 +341,43 @@ class ConditionEvaluatorTest {
         assertFalse(factAwareEvaluator.visit(ContainsMark(stringArg, TaintMark("BAR"))))
         assertFalse(factAwareEvaluator.visit(ContainsMark(position = mockk(), TaintMark("FOO"))))
     }
+
+    @Test
+    fun `compiled condition keeps only ContainsMark checks`() {
+        val compiler = ConditionCompiler(positionResolver)
+        val fact = Tainted(intValue.toPath(), TaintMark("FOO"))
+        val otherFact = Tainted(stringValue.toPath(), TaintMark("FOO"))
+
+        assertSame(CompiledTrue, compiler.compile(And(listOf(IsConstant(intArg), Not(IsConstant(thisPos))))))
+        val unreachable = And(listOf(IsConstant(thisPos), ContainsMark(intArg, TaintMark("FOO"))))
+        assertSame(CompiledFalse, compiler.compile(unreachable))
+        assertSame(CompiledFalse, compiler.compile(ContainsMark(position = mockk(), TaintMark("FOO"))))
+
+        val condition = compiler.compile(
+            Or(listOf(ConstantEq(intArg, ConstantIntValue(999)), ContainsMark(intArg, TaintMark("FOO"))))
+        )
+        assertTrue(condition is CompiledContainsMark)
+        assertTrue(condition.test(fact))
+        assertFalse(condition.test(otherFact))
+        assertFalse(condition.test(Tainted(intValue.toPath(), TaintMark("BAR"))))
+    }
+
+    @Test
+    fun `compiled condition evaluates checks after ContainsMark only when reached`() {
+        var boolArgResolutions = 0
+        val compiler = ConditionCompiler { position ->
+            if (position == boolArg) boolArgResolutions++
+            positionResolver(position)
+        }
+        val fact = Tainted(intValue.toPath(), TaintMark("FOO"))
+        val otherFact = Tainted(stringValue.toPath(), TaintMark("FOO"))
+
+        val condition = compiler.compile(And(listOf(ContainsMark(intArg, TaintMark("FOO")), IsConstant(boolArg))))
+        assertEquals(0, boolArgResolutions)
+        assertFalse(condition.test(otherFact))
+        assertEquals(0, boolArgResolutions)
+        assertTrue(condition.test(fact))
+        assertTrue(condition.test(fact))
+        assertEquals(1, boolArgResolutions)
+    }
 }
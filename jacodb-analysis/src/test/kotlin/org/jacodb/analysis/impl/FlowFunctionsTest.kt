@@ -0,0 +1,80 @@
+/*
+ *  Copyright 2022 UnitTestBot contributors (utbot.org)
+ * <p>
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ * <p>
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package org.jacodb.analysis.impl
+
+import org.jacodb.analysis.ifds.FactBuffer
+import org.jacodb.analysis.ifds.FactSink
+import org.jacodb.analysis.ifds.FlowFunction
+import org.jacodb.analysis.ifds.SinkFlowFunction
+import org.junit.jupiter.api.Assertions.assertEquals
+import org.junit.jupiter.api.Test
+
+class FlowFunctionsTest {
+
+    private fun FactBuffer<Int>.toList(): List<Int> = List(size) { this[it] }
+
+    @Test
+    fun `fact buffer keeps facts in order until cleared`() {
+        val buffer = FactBuffer<Int>()
+        buffer.accept(2)
+        buffer.accept(1)
+        buffer.accept(2)
+        assertEquals(listOf(2, 1, 2), buffer.toList())
+        assertEquals(setOf(1, 2), buffer.toSet())
+
+        buffer.clear()
+        assertEquals(0, buffer.size)
+        buffer.accept(3)
+        assertEquals(listOf(3), buffer.toList())
+    }
+
+    @Test
+    fun `flow function writes computed facts to the sink`() {
+        val flowFunction = FlowFunction<Int> { fact -> listOf(fact, fact + 1) }
+        val facts = mutableListOf<Int>()
+        val sink = FactSink<Int> { facts += it }
+        flowFunction.computeTo(1, sink)
+        flowFunction.computeTo(5, sink)
+        assertEquals(listOf(1, 2, 5, 6), facts)
+    }
+
+    @Test
+    fun `sink flow function computes the same facts as a collection`() {
+        val flowFunction = SinkFlowFunction<Int> { fact, sink ->
+            if (fact < 0) return@SinkFlowFunction
+            sink.accept(fact)
+            sink.accept(fact * 2)
+        }
+        assertEquals(setOf(3, 6), flowFunction.compute(3))
+        assertEquals(setOf(0), flowFunction.compute(0))
+        assertEquals(emptySet<Int>(), flowFunction.compute(-1))
+
+        val buffer = FactBuffer<Int>()
+        flowFunction.computeTo(0, buffer)
+        assertEquals(listOf(0, 0), buffer.toList())
+    }
+
+    @Test
+    fun `identity flow function passes the fact through`() {
+        val identity = FlowFunction.identity<Int>()
+        assertEquals(listOf(4), identity.compute(4).toList())
+
+        val buffer = FactBuffer<Int>()
+        identity.computeTo(4, buffer)
+        assertEquals(listOf(4), buffer.toList())
+    }
+}
@@ -0,0 +1,174 @@
+/*
+ *  Copyright 2022 UnitTestBot contributors (utbot.org)
+ * <p>
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ * <p>
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+
+package org.jacodb.analysis.impl
+
+import org.jacodb.analysis.impl.custom.GenKillAnalysis
+import org.jacodb.analysis.impl.custom.ReachingDefinitionsAnalysis
+import org.jacodb.analysis.impl.custom.getBit
+import org.jacodb.analysis.impl.custom.setBit
+import org.jacodb.api.cfg.JcAssignInst
+import org.jacodb.api.cfg.JcBasicBlock
+import org.jacodb.api.cfg.JcBlockGraph
+import org.jacodb.api.cfg.JcInst
+import org.jacodb.api.cfg.JcLocal
+import org.jacodb.api.cfg.JcValue
+import org.jacodb.api.cfg.locals
+import org.jacodb.api.ext.findClass
+import org.jacodb.impl.cfg.JcBlockGraphImpl
+import org.jacodb.testing.BaseTest
+import org.jacodb.testing.WithGlobalDB
+import org.jacodb.testing.cfg.JavaTasks
+import org.junit.jupiter.api.Assertions.assertEquals
+import org.junit.jupiter.api.Assertions.assertTrue
+import org.junit.jupiter.api.Test
+
+class GenKillAnalysisTest : BaseTest() {
+
+    companion object : WithGlobalDB()
+
+    private val loopMethods = listOf("insertionSort", "heapSort", "sortTemperatures")
+
+    @Test
+    fun `reaching definitions should be the least fixpoint`() {
+        for (blockGraph in loopBlockGraphs()) {
+            val analysis = ReachingDefinitionsAnalysis(blockGraph as JcBlockGraphImpl)
+            val expected = referenceFixpoint<JcInst>(
+                blockGraph,
+                isUnion = true,
+                withExceptionalEdges = true,
+                top = emptySet()
+            ) { block, input ->
+                blockGraph.instructions(block).fold(input) { defs, inst ->
+                    if (inst is JcAssignInst) {
+                        defs.filterTo(hashSetOf()) { (it as JcAssignInst).lhv != inst.lhv } + inst
+                    } else {
+                        defs
+                    }
+                }
+            }
+            for (block in blockGraph) {
+                assertEquals(expected.getValue(block), analysis.outs(block).toSet(), "$block")
+            }
+        }
+    }
+
+    @Test
+    fun `must-analysis should be the greatest fixpoint over loops`() {
+        var checkedLocals = 0
+        for (blockGraph in loopBlockGraphs()) {
+            val analysis = AssignedLocalsAnalysis(blockGraph).also { it.run() }
+            val expected = referenceFixpoint(
+                blockGraph,
+                isUnion = false,
+                withExceptionalEdges = false,
+                top = blockGraph.jcGraph.locals
+            ) { block, input ->
+                input + blockGraph.instructions(block).mapNotNull { (it as? JcAssignInst)?.lhv as? JcLocal }
+            }
+            for (block in blockGraph) {
+                assertEquals(expected.getValue(block), analysis.assignedAfter(block), "$block")
+            }
+            // entry dominates all reachable blocks, so its locals are assigned after them despite the back edges
+            val assignedInEntry = analysis.assignedAfter(blockGraph.entry)
+            checkedLocals += assignedInEntry.size
+            for (block in reachableBlocks(blockGraph, withExceptionalEdges = false)) {
+                assertTrue(analysis.assignedAfter(block).containsAll(assignedInEntry), "$block")
+            }
+        }
+        assertTrue(checkedLocals > 0)
+    }
+
+    private fun loopBlockGraphs(): List<JcBlockGraph> {
+        val clazz = cp.findClass<JavaTasks>()
+        return loopMethods.map { name -> clazz.declaredMethods.first { it.name == name }.flowGraph().blockGraph() }
+    }
+
+    /**
+     * Straightforward forward fixpoint over sets, see [GenKillAnalysis] for the initial values
+     */
+    private fun <T> referenceFixpoint(
+        blockGraph: JcBlockGraph,
+        isUnion: Boolean,
+        withExceptionalEdges: Boolean,
+        top: Set<T>,
+        transfer: (JcBasicBlock, Set<T>) -> Set<T>,
+    ): Map<JcBasicBlock, Set<T>> {
+        fun predecessors(block: JcBasicBlock) = blockGraph.predecessors(block) +
+                if (withExceptionalEdges) blockGraph.throwers(block) else emptySet()
+
+        val reachable = reachableBlocks(blockGraph, withExceptionalEdges)
+        val isBoundary = { block: JcBasicBlock ->
+            predecessors(block).isEmpty() || (!isUnion && (block in blockGraph.entries || block !in reachable))
+        }
+        val outputs = blockGraph.associateWithTo(hashMapOf()) { if (isUnion || isBoundary(it)) emptySet() else top }
+        do {
+            var changed = false
+            for (block in blockGraph) {
+                val input = if (isBoundary(block)) {
+                    emptySet()
+                } else {
+                    predecessors(block).map { outputs.getValue(it) }.reduce { acc, set ->
+                        if (isUnion) acc + set else acc intersect set
+                    }
+                }
+                val output = transfer(block, input)
+                if (output != outputs[block]) {
+                    outputs[block] = output
+                    changed = true
+                }
+            }
+        } while (changed)
+        return outputs
+    }
+
+    private fun reachableBlocks(blockGraph: JcBlockGraph, withExceptionalEdges: Boolean): Set<JcBasicBlock> {
+        val reachable = hashSetOf<JcBasicBlock>()
+        val stack = ArrayDeque(blockGraph.entries)
+        while (stack.isNotEmpty()) {
+            val block = stack.removeLast()
+            if (reachable.add(block)) {
+                stack.addAll(blockGraph.successors(block))
+                if (withExceptionalEdges) stack.addAll(blockGraph.catchers(block))
+            }
+        }
+        return reachable
+    }
+
+    private class AssignedLocalsAnalysis(blockGraph: JcBlockGraph) : GenKillAnalysis(
+        blockGraph,
+        isForward = true,
+        isUnion = false,
+        withExceptionalEdges = false
+    ) {
+        private val locals: List<JcLocal> = jcGraph.locals.toList()
+        private val localIndices: Map<JcValue, Int> = locals.withIndex().associate { it.value to it.index }
+
+        override val factsCount: Int get() = locals.size
+
+        override fun genKill(inst: JcInst, gen: LongArray, kill: LongArray) {
+            if (inst is JcAssignInst) {
+                localIndices[inst.lhv]?.let { gen.setBit(it) }
+            }
+        }
+
+        fun assignedAfter(block: JcBasicBlock): Set<JcLocal> {
+            val bits = blockOutput(block)
+            return locals.filterIndexedTo(hashSetOf()) { index, _ -> bits.getBit(index) }
+        }
+    }
+}
@@ -16,24 +16,41 @@
 
 package org.jacodb.analysis.impl
 
+import io.github.detekt.sarif4k.SarifSchema210
+import kotlinx.serialization.decodeFromString
 import kotlinx.serialization.encodeToString
 import kotlinx.serialization.json.Json
 import org.jacodb.analysis.ifds.ClassUnitResolver
 import org.jacodb.analysis.ifds.SingletonUnitResolver
+import org.jacodb.analysis.ifds.UnitType
+import org.jacodb.analysis.sarif.SarifWriter
 import org.jacodb.analysis.sarif.sarifReportFromVulnerabilities
+import org.jacodb.analysis.taint.EdgeForOtherRunner
+import org.jacodb.analysis.taint.TaintEvent
+import org.jacodb.analysis.taint.TaintIncrementalStorage
 import org.jacodb.analysis.taint.TaintManager
+import org.jacodb.analysis.taint.TaintQueryResult
+import org.jacodb.analysis.taint.TaintRunner
 import org.jacodb.analysis.taint.toSarif
+import org.jacodb.analysis.util.getPathEdges
+import org.jacodb.api.JcMethod
+import org.jacodb.api.ext.cfg.callExpr
 import org.jacodb.api.ext.findClass
 import org.jacodb.api.ext.methods
 import org.jacodb.impl.features.InMemoryHierarchy
 import org.jacodb.impl.features.Usages
 import org.jacodb.testing.WithDB
 import org.jacodb.testing.analysis.SqlInjectionExamples
+import org.junit.jupiter.api.Assertions.assertEquals
+import org.junit.jupiter.api.Assertions.assertSame
 import org.junit.jupiter.api.Assertions.assertTrue
 import org.junit.jupiter.api.Test
 import org.junit.jupiter.params.ParameterizedTest
 import org.junit.jupiter.params.provider.Arguments
 import org.junit.jupiter.params.provider.MethodSource
+import java.io.ByteArrayOutputStream
+import java.util.Collections
+import java.util.concurrent.ConcurrentHashMap
 import java.util.stream.Stream
 import kotlin.time.Duration.Companion.seconds
 
@@ -90,6 +107,198 @@ class IfdsSqlTest : BaseAnalysisTest() {
         }
     }
 
+    @Test
+    fun `sparse runner finds the same sinks`() {
+        val className = "juliet.testcases.CWE89_SQL_Injection.s01.CWE89_SQL_Injection__connect_tcp_execute_01"
+        val clazz = cp.findClass(className)
+        val methods = clazz.methods.filter { it.name == "bad" || it.name == "good" }
+        val unitResolver = ClassUnitResolver(true)
+        val dense = TaintManager(graph, unitResolver).analyze(methods, timeout = 30.seconds)
+        val sparse = TaintManager(graph, unitResolver, useSparseRunner = true).analyze(methods, timeout = 30.seconds)
+        assertTrue(dense.isNotEmpty())
+        assertEquals(dense.toSet(), sparse.toSet())
+    }
+
+    @Test
+    fun `runners are created only for reached units`() {
+        val className = "juliet.testcases.CWE89_SQL_Injection.s01.CWE89_SQL_Injection__connect_tcp_execute_01"
+        val clazz = cp.findClass(className)
+        val badMethod = clazz.methods.single { it.name == "bad" }
+        // Discovered, but never called from the analyzed method:
+        val unreachedMethod = cp.findClass<SqlInjectionExamples>().declaredMethods.single { it.name == "bad" }
+        val unitResolver = ClassUnitResolver(true)
+        val createdUnits: MutableSet<UnitType> = ConcurrentHashMap.newKeySet()
+        val reachedUnits: MutableSet<UnitType> = ConcurrentHashMap.newKeySet()
+        val manager = object : TaintManager(graph, unitResolver) {
+            override fun addStart(method: JcMethod) {
+                super.addStart(method)
+                super.addStart(unreachedMethod)
+            }
+
+            override fun newRunner(unit: UnitType): TaintRunner {
+                createdUnits += unit
+                return super.newRunner(unit)
+            }
+
+            override fun handleEvent(event: TaintEvent) {
+                if (event is EdgeForOtherRunner) {
+                    reachedUnits += unitResolver.resolve(event.edge.method)
+                }
+                super.handleEvent(event)
+            }
+        }
+        val sinks = manager.analyze(listOf(badMethod), timeout = 30.seconds)
+        assertTrue(sinks.isNotEmpty())
+
+        val seedUnit = unitResolver.resolve(badMethod)
+        assertTrue(seedUnit in createdUnits)
+        assertTrue(unitResolver.resolve(unreachedMethod) !in createdUnits)
+        assertEquals(emptySet<UnitType>(), createdUnits - reachedUnits - seedUnit)
+    }
+
+    @Test
+    fun `IFDS results are frozen once the analysis is completed`() {
+        val className = "juliet.testcases.CWE89_SQL_Injection.s01.CWE89_SQL_Injection__connect_tcp_execute_01"
+        val clazz = cp.findClass(className)
+        val badMethod = clazz.methods.single { it.name == "bad" }
+        val unitResolver = ClassUnitResolver(true)
+        val runners: MutableList<TaintRunner> = Collections.synchronizedList(mutableListOf())
+        val manager = object : TaintManager(graph, unitResolver) {
+            override fun newRunner(unit: UnitType): TaintRunner {
+                return super.newRunner(unit).also { runners += it }
+            }
+        }
+        val sinks = manager.analyze(listOf(badMethod), timeout = 30.seconds)
+        assertTrue(sinks.isNotEmpty())
+
+        assertTrue(runners.isNotEmpty())
+        for (runner in runners) {
+            val result = runner.getIfdsResult()
+            assertSame(result, runner.getIfdsResult())
+            assertEquals(runner.getPathEdges().size, result.pathEdgesBySink.values.sumOf { it.size })
+        }
+        // Trace graphs of all sinks are built from the frozen results
+        val traceGraph = manager.vulnerabilityTraceGraph(sinks.first())
+        assertTrue(traceGraph.getAllTraces().first().isNotEmpty())
+    }
+
+    @Test
+    fun `demand-driven query finds sources of found sinks`() {
+        val className = "juliet.testcases.CWE89_SQL_Injection.s01.CWE89_SQL_Injection__connect_tcp_execute_01"
+        val clazz = cp.findClass(className)
+        val badMethod = clazz.methods.single { it.name == "bad" }
+        val unitResolver = ClassUnitResolver(true)
+        val sinks = TaintManager(graph, unitResolver).analyze(listOf(badMethod), timeout = 30.seconds)
+        assertTrue(sinks.isNotEmpty())
+
+        val manager = TaintManager(graph, unitResolver)
+        for (sink in sinks) {
+            val result = manager.querySink(sink.sink.statement)
+            assertTrue(result is TaintQueryResult.Reachable, "Unexpected $result for $sink")
+        }
+        assertEquals(TaintQueryResult.BudgetExhausted, manager.query(sinks.first().sink, budget = 0))
+    }
+
+    @Test
+    fun `demand-driven query proves sinks of good method unreachable`() {
+        val className = "juliet.testcases.CWE89_SQL_Injection.s01.CWE89_SQL_Injection__connect_tcp_execute_01"
+        val clazz = cp.findClass(className)
+        val badMethod = clazz.methods.single { it.name == "bad" }
+        val goodMethod = clazz.declaredMethods.single { it.name == "goodG2B" }
+        val unitResolver = ClassUnitResolver(true)
+        val badSinks = TaintManager(graph, unitResolver).analyze(listOf(badMethod), timeout = 30.seconds)
+        val sinkCallees = badSinks.mapNotNull { it.sink.statement.callExpr?.method?.method }.toSet()
+        assertTrue(sinkCallees.isNotEmpty())
+        assertTrue(TaintManager(graph, unitResolver).analyze(listOf(goodMethod), timeout = 30.seconds).isEmpty())
+
+        // Same sinks as in the bad method, but the data written there is a constant
+        val goodSinkStatements = goodMethod.instList.filter { it.callExpr?.method?.method in sinkCallees }
+        assertTrue(goodSinkStatements.isNotEmpty())
+        val manager = TaintManager(graph, unitResolver)
+        for (statement in goodSinkStatements) {
+            assertEquals(TaintQueryResult.Unreachable, manager.querySink(statement), "Unexpected result for $statement")
+        }
+    }
+
+    @Test
+    fun `demand-driven query matches sinks as the analysis does`() {
+        val method = cp.findClass<SqlInjectionExamples>().declaredMethods.single { it.name == "fieldOfTaintedObject" }
+        val unitResolver = SingletonUnitResolver
+        assertTrue(TaintManager(graph, unitResolver).analyze(listOf(method), timeout = 30.seconds).isEmpty())
+
+        // The query must not treat the taint of the holder as the taint of its field
+        val sinkStatements = method.instList.filter { it.callExpr?.method?.name == "execute" }
+        assertTrue(sinkStatements.isNotEmpty())
+        val manager = TaintManager(graph, unitResolver)
+        for (statement in sinkStatements) {
+            assertEquals(TaintQueryResult.Unreachable, manager.querySink(statement), "Unexpected result for $statement")
+        }
+    }
+
+    @Test
+    fun `incremental analysis replays unchanged units`() {
+        val className = "juliet.testcases.CWE89_SQL_Injection.s01.CWE89_SQL_Injection__connect_tcp_execute_01"
+        val clazz = cp.findClass(className)
+        val badMethod = clazz.methods.single { it.name == "bad" }
+        val unitResolver = ClassUnitResolver(true)
+        val storage = TaintIncrementalStorage()
+
+        val firstManager = TaintManager(graph, unitResolver, incrementalStorage = storage)
+        val firstSinks = firstManager.analyze(listOf(badMethod), timeout = 30.seconds)
+        assertTrue(firstSinks.isNotEmpty())
+        val firstGraphs = firstSinks.associateWith { firstManager.vulnerabilityTraceGraph(it) }
+        assertTrue(firstGraphs.values.all { it.edges.isNotEmpty() })
+
+        // Next run loads the storage saved by the previous one
+        val output = ByteArrayOutputStream()
+        storage.save(output)
+        val loadedStorage = TaintIncrementalStorage.load(output.toByteArray().inputStream())
+        assertEquals(storage.units, loadedStorage.units)
+
+        val createdRunners = ConcurrentHashMap.newKeySet<UnitType>()
+        val secondManager = object : TaintManager(graph, unitResolver, incrementalStorage = loadedStorage) {
+            override fun newRunner(unit: UnitType): TaintRunner {
+                createdRunners.add(unit)
+                return super.newRunner(unit)
+            }
+        }
+        val secondSinks = secondManager.analyze(listOf(badMethod), timeout = 30.seconds)
+        assertEquals(emptySet<UnitType>(), createdRunners)
+        assertEquals(firstSinks.toSet(), secondSinks.toSet())
+        for (sink in secondSinks) {
+            assertEquals(firstGraphs[sink], secondManager.vulnerabilityTraceGraph(sink))
+        }
+    }
+
+    @Test
+    fun `incremental analysis re-analyzes invalidated units`() {
+        val className = "juliet.testcases.CWE89_SQL_Injection.s01.CWE89_SQL_Injection__connect_tcp_execute_01"
+        val clazz = cp.findClass(className)
+        val badMethod = clazz.methods.single { it.name == "bad" }
+        val unitResolver = ClassUnitResolver(true)
+        val storage = TaintIncrementalStorage()
+
+        val firstManager = TaintManager(graph, unitResolver, incrementalStorage = storage)
+        val firstSinks = firstManager.analyze(listOf(badMethod), timeout = 30.seconds)
+        val firstGraphs = firstSinks.associateWith { firstManager.vulnerabilityTraceGraph(it) }
+        val badUnit = unitResolver.resolve(badMethod)
+        storage.invalidate(badUnit)
+
+        val createdRunners = ConcurrentHashMap.newKeySet<UnitType>()
+        val secondManager = object : TaintManager(graph, unitResolver, incrementalStorage = storage) {
+            override fun newRunner(unit: UnitType): TaintRunner {
+                createdRunners.add(unit)
+                return super.newRunner(unit)
+            }
+        }
+        val secondSinks = secondManager.analyze(listOf(badMethod), timeout = 30.seconds)
+        assertTrue(badUnit in createdRunners)
+        assertEquals(firstSinks.toSet(), secondSinks.toSet())
+        for (sink in secondSinks) {
+            assertEquals(firstGraphs[sink], secondManager.vulnerabilityTraceGraph(sink))
+        }
+    }
+
     @Test
     fun `test bidirectional runner and other stuff`() {
         val className = "juliet.testcases.CWE89_SQL_Injection.s01.CWE89_SQL_Injection__Environment_executeBatch_51a"
@@ -107,4 +316,23 @@ class IfdsSqlTest : BaseAnalysisTest() {
         val sarifJson = myJson.encodeToString(sarif)
         logger.info { "SARIF:\n$sarifJson" }
     }
+
+    @Test
+    fun `streamed SARIF report equals the in-memory one`() {
+        val className = "juliet.testcases.CWE89_SQL_Injection.s01.CWE89_SQL_Injection__Environment_executeBatch_51a"
+        val clazz = cp.findClass(className)
+        val badMethod = clazz.methods.single { it.name == "bad" }
+        val unitResolver = ClassUnitResolver(true)
+        val manager = TaintManager(graph, unitResolver)
+        val sinks = manager.analyze(listOf(badMethod), timeout = 30.seconds)
+        assertTrue(sinks.isNotEmpty())
+
+        val output = ByteArrayOutputStream()
+        SarifWriter(output, json = myJson).use { writer ->
+            writer.writeAll(manager.toSarif(sinks))
+        }
+        val streamed = myJson.decodeFromString<SarifSchema210>(output.toString(Charsets.UTF_8.name()))
+        val expected = sarifReportFromVulnerabilities(manager.toSarif(sinks).toList())
+        assertEquals(expected, streamed)
+    }
 }
@@ -0,0 +1,84 @@
+/*
+ *  Copyright 2022 UnitTestBot contributors (utbot.org)
+ * <p>
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ * <p>
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+
+package org.jacodb.analysis.impl
+
+import org.jacodb.analysis.graph.JcIndexedApplicationGraph
+import org.jacodb.analysis.graph.JcNoopInst
+import org.jacodb.analysis.graph.newRtaApplicationGraphForAnalysis
+import org.jacodb.api.cfg.JcSimpleValue
+import org.jacodb.api.cfg.values
+import org.jacodb.api.ext.findClass
+import org.jacodb.api.ext.findDeclaredMethodOrNull
+import org.jacodb.testing.BaseTest
+import org.jacodb.testing.WithGlobalDB
+import org.junit.jupiter.api.Assertions.assertEquals
+import org.junit.jupiter.api.Assertions.assertSame
+import org.junit.jupiter.api.Assertions.assertTrue
+import org.junit.jupiter.api.Test
+
+class IndexedApplicationGraphTest : BaseTest() {
+
+    companion object : WithGlobalDB()
+
+    private val entry get() = cp.findClass<RtaSamples>().findDeclaredMethodOrNull("entry")!!
+
+    private val indexed get() = cp.newRtaApplicationGraphForAnalysis(listOf(entry)) as JcIndexedApplicationGraph
+
+    @Test
+    fun `method table is consistent with underlying graph`() {
+        val graph = indexed
+        val table = graph.tableOf(entry)
+        val start = graph.graph.entryPoints(entry).single()
+        assertTrue(start is JcNoopInst)
+        assertEquals(listOf(start), table.entries.map { table.inst(it) })
+        assertEquals(graph.graph.exitPoints(entry).toSet(), table.exits.mapTo(hashSetOf()) { table.inst(it) })
+
+        for (index in 0 until table.size) {
+            val inst = table.inst(index)
+            assertEquals(index, table.indexOf(inst))
+            assertEquals(graph.graph.successors(inst).toList(), table.successors(index).map { table.inst(it) })
+            assertEquals(graph.graph.predecessors(inst).toList(), table.predecessors(index).map { table.inst(it) })
+            assertEquals(graph.graph.callees(inst).toList(), table.callees(index))
+        }
+    }
+
+    @Test
+    fun `start node and table are stable`() {
+        val graph = indexed
+        assertSame(graph.tableOf(entry), graph.tableOf(entry))
+        assertSame(graph.entryPoints(entry).single(), graph.entryPoints(entry).single())
+    }
+
+    @Test
+    fun `nearest relevant instructions mention the base or are calls and exits`() {
+        val graph = indexed
+        val table = graph.tableOf(entry)
+        val locals = (0 until table.size).flatMap { table.inst(it).values }.filterIsInstance<JcSimpleValue>().toSet()
+        for (base in locals) {
+            for (index in 0 until table.size) {
+                for (target in table.nearestRelevant(index, base)) {
+                    val inst = table.inst(target)
+                    assertTrue(
+                        base in inst.values || table.isCall(target) || table.isExit(target),
+                        "$inst is not relevant for $base"
+                    )
+                }
+            }
+        }
+    }
+}
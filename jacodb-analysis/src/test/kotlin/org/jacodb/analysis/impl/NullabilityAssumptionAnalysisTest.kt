@@ -22,10 +22,12 @@ import org.jacodb.api.JcMethod
 import org.jacodb.api.cfg.JcAssignInst
 import org.jacodb.api.cfg.JcInstanceCallExpr
 import org.jacodb.api.cfg.JcLocal
+import org.jacodb.api.ext.cfg.callExpr
 import org.jacodb.api.ext.findClass
 import org.jacodb.testing.BaseTest
 import org.jacodb.testing.WithGlobalDB
 import org.jacodb.testing.cfg.NullAssumptionAnalysisExample
+import org.junit.jupiter.api.Assertions.assertFalse
 import org.junit.jupiter.api.Assertions.assertTrue
 import org.junit.jupiter.api.Test
 
@@ -65,6 +67,26 @@ class NullabilityAssumptionAnalysisTest : BaseTest() {
         }
     }
 
+    @Test
+    fun `null-assumption should survive loops`() {
+        val clazz = cp.findClass<NullAssumptionAnalysisExample>()
+        with(clazz.findMethod("test3").flowGraph()) {
+            val analysis = NullAssumptionAnalysis(this).also {
+                it.run()
+            }
+            val call = instructions.first { (it.callExpr as? JcInstanceCallExpr)?.method?.name == "length" }
+            val a = (call.callExpr as JcInstanceCallExpr).instance
+
+            // the loop has a back edge and does not use `a`, but every path to the exit dereferences it
+            val beforeCall = instructions.takeWhile { it != call }
+            assertTrue(beforeCall.any { inst -> successors(inst).any { index(it) < index(inst) } })
+            for (inst in beforeCall) {
+                assertTrue(analysis.isAssumedNonNullBefore(inst, a), "$inst")
+            }
+            assertFalse(analysis.isAssumedNonNullBefore(call, a))
+        }
+    }
+
     private fun JcClassOrInterface.findMethod(name: String): JcMethod = declaredMethods.first { it.name == name }
 
 }
\ No newline at end of file
@@ -0,0 +1,106 @@
+/*
+ *  Copyright 2022 UnitTestBot contributors (utbot.org)
+ * <p>
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ * <p>
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package org.jacodb.analysis.impl
+
+import org.jacodb.analysis.graph.JcCallGraph
+import org.jacodb.analysis.graph.newRtaCallGraph
+import org.jacodb.api.JcMethod
+import org.jacodb.api.ext.cfg.callExpr
+import org.jacodb.api.ext.findClass
+import org.jacodb.api.ext.findDeclaredMethodOrNull
+import org.jacodb.testing.BaseTest
+import org.jacodb.testing.WithGlobalDB
+import org.junit.jupiter.api.Assertions.assertEquals
+import org.junit.jupiter.api.Assertions.assertFalse
+import org.junit.jupiter.api.Assertions.assertTrue
+import org.junit.jupiter.api.Test
+import java.io.ByteArrayInputStream
+import java.io.ByteArrayOutputStream
+
+interface RtaShape {
+    fun area(): Int
+}
+
+class RtaSquare : RtaShape {
+    override fun area(): Int = 4
+}
+
+class RtaCircle : RtaShape {
+    override fun area(): Int = 3
+}
+
+class RtaSamples {
+    fun entry(): Int {
+        val shape: RtaShape = RtaSquare()
+        return shape.area()
+    }
+
+    fun circle(): RtaShape = RtaCircle()
+}
+
+class RtaCallGraphTest : BaseTest() {
+
+    companion object : WithGlobalDB()
+
+    private val samples get() = cp.findClass<RtaSamples>()
+    private val entry get() = samples.findDeclaredMethodOrNull("entry")!!
+    private val circle get() = samples.findDeclaredMethodOrNull("circle")!!
+
+    private fun JcCallGraph.areaCallees(): Set<String> {
+        val callSite = entry.instList.first { it.callExpr?.method?.name == "area" }
+        return callees(callSite)!!.mapTo(hashSetOf()) { it.enclosingClass.simpleName }
+    }
+
+    private fun area(className: String): JcMethod =
+        cp.findClass("org.jacodb.analysis.impl.$className").findDeclaredMethodOrNull("area")!!
+
+    @Test
+    fun `virtual call is resolved to instantiated classes only`() {
+        val callGraph = cp.newRtaCallGraph(listOf(entry), refineByLocalTypes = false)
+        assertEquals(setOf("RtaSquare"), callGraph.areaCallees())
+        assertTrue(callGraph.isReachable(area("RtaSquare")))
+        assertFalse(callGraph.isReachable(area("RtaCircle")))
+        assertFalse(callGraph.isReachable(circle))
+    }
+
+    @Test
+    fun `local types refine receivers`() {
+        val cha = cp.newRtaCallGraph(listOf(entry, circle), refineByLocalTypes = false)
+        assertEquals(setOf("RtaSquare", "RtaCircle"), cha.areaCallees())
+
+        val refined = cp.newRtaCallGraph(listOf(entry, circle), refineByLocalTypes = true)
+        assertEquals(setOf("RtaSquare"), refined.areaCallees())
+    }
+
+    @Test
+    fun `callers are taken from call graph`() {
+        val callGraph = cp.newRtaCallGraph(listOf(entry))
+        val callers = callGraph.callers(area("RtaSquare")).toList()
+        assertEquals(1, callers.size)
+        assertEquals(entry, callers.single().location.method)
+    }
+
+    @Test
+    fun `call graph is saved and loaded`() {
+        val callGraph = cp.newRtaCallGraph(listOf(entry, circle))
+        val bytes = ByteArrayOutputStream().also { callGraph.save(it) }.toByteArray()
+        val loaded = JcCallGraph.load(cp, ByteArrayInputStream(bytes))
+        assertEquals(callGraph.reachableMethods, loaded.reachableMethods)
+        assertEquals(callGraph.callSitesCount, loaded.callSitesCount)
+        assertEquals(callGraph.areaCallees(), loaded.areaCallees())
+    }
+}
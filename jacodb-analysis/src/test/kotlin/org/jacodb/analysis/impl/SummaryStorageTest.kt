@@ -0,0 +1,75 @@
+/*
+ *  Copyright 2022 UnitTestBot contributors (utbot.org)
+ * <p>
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ * <p>
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package org.jacodb.analysis.impl
+
+import io.mockk.mockk
+import org.jacodb.analysis.ifds.Summary
+import org.jacodb.analysis.ifds.SummaryStorageWithSubscriptions
+import org.jacodb.api.JcMethod
+import org.junit.jupiter.api.Assertions.assertEquals
+import org.junit.jupiter.api.Test
+import java.util.concurrent.ConcurrentHashMap
+import kotlin.concurrent.thread
+
+class SummaryStorageTest {
+
+    private data class TestSummary(
+        override val method: JcMethod,
+        val id: Int,
+    ) : Summary
+
+    private val method: JcMethod = mockk()
+    private val otherMethod: JcMethod = mockk()
+
+    @Test
+    fun `subscriber receives facts added before and after subscription`() {
+        val storage = SummaryStorageWithSubscriptions<TestSummary>()
+        storage.add(TestSummary(method, 1))
+        storage.add(TestSummary(method, 2))
+        storage.add(TestSummary(otherMethod, 3))
+
+        val received = mutableListOf<Int>()
+        storage.subscribe(method) { received += it.id }
+        assertEquals(listOf(1, 2), received)
+
+        storage.add(TestSummary(method, 3))
+        storage.add(TestSummary(method, 3)) // duplicate
+        assertEquals(listOf(1, 2, 3), received)
+
+        assertEquals(listOf(1, 2, 3), storage.getCurrentFacts(method).map { it.id })
+        assertEquals(setOf(method, otherMethod), storage.knownMethods.toSet())
+    }
+
+    @Test
+    fun `each fact is delivered exactly once under concurrent adds`() {
+        val storage = SummaryStorageWithSubscriptions<TestSummary>()
+        val received = ConcurrentHashMap<Int, Int>()
+        storage.subscribe(method) { received.merge(it.id, 1, Int::plus) }
+
+        val threads = (0 until 4).map { t ->
+            thread {
+                for (i in 0 until 1000) {
+                    storage.add(TestSummary(method, t * 1000 + i))
+                }
+            }
+        }
+        threads.forEach { it.join() }
+
+        assertEquals(4000, received.size)
+        assertEquals(setOf(1), received.values.toSet())
+    }
+}
@@ -0,0 +1,81 @@
+/*
+ *  Copyright 2022 UnitTestBot contributors (utbot.org)
+ * <p>
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ * <p>
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package org.jacodb.analysis.impl
+
+import io.mockk.mockk
+import org.jacodb.analysis.ifds.TraceGraph
+import org.jacodb.analysis.ifds.Vertex
+import org.jacodb.api.cfg.JcInst
+import org.junit.jupiter.api.Assertions.assertEquals
+import org.junit.jupiter.api.Assertions.assertTrue
+import org.junit.jupiter.api.Test
+import kotlin.time.Duration
+
+class TraceGraphTest {
+
+    private val vertices = List(8) { Vertex(mockk<JcInst>(), it) }
+
+    private fun graph(sources: List<Int>, sink: Int, vararg edges: Pair<Int, Int>): TraceGraph<Int> {
+        val edgeMap: MutableMap<Vertex<Int>, MutableSet<Vertex<Int>>> = hashMapOf()
+        for ((from, to) in edges) {
+            edgeMap.getOrPut(vertices[from]) { hashSetOf() }.add(vertices[to])
+        }
+        return TraceGraph(
+            sink = vertices[sink],
+            sources = sources.mapTo(hashSetOf()) { vertices[it] },
+            edges = edgeMap,
+            unresolvedCrossUnitCalls = emptyMap()
+        )
+    }
+
+    private fun List<Vertex<Int>>.ids(): List<Int> = map { it.fact }
+
+    @Test
+    fun `shortest traces are returned in order of length`() {
+        // 0 -> 1 -> 5
+        // 0 -> 2 -> 3 -> 5
+        // 0 -> 2 -> 4 -> 3
+        val graph = graph(listOf(0), 5, 0 to 1, 1 to 5, 0 to 2, 2 to 3, 3 to 5, 2 to 4, 4 to 3)
+        val traces = graph.getShortestTraces(10).map { it.ids() }
+        assertEquals(listOf(listOf(0, 1, 5), listOf(0, 2, 3, 5), listOf(0, 2, 4, 3, 5)), traces)
+        assertEquals(traces.toSet(), graph.getAllTraces().map { it.ids() }.toSet())
+
+        assertEquals(listOf(listOf(0, 1, 5)), graph.getShortestTraces(1).map { it.ids() })
+    }
+
+    @Test
+    fun `traces from several sources are simple`() {
+        // Loop 2 <-> 3 must not be traversed twice
+        val graph = graph(listOf(0, 1), 4, 0 to 2, 1 to 3, 2 to 3, 3 to 2, 3 to 4)
+        val traces = graph.getShortestTraces(10).map { it.ids() }
+        assertEquals(setOf(listOf(1, 3, 4), listOf(0, 2, 3, 4)), traces.toSet())
+        assertTrue(traces.all { it.size == it.toSet().size })
+    }
+
+    @Test
+    fun `infinite timeout does not stop the search`() {
+        val graph = graph(listOf(0), 3, 0 to 1, 1 to 3, 0 to 2, 2 to 3)
+        val traces = graph.getShortestTraces(10, timeout = Duration.INFINITE).map { it.ids() }
+        assertEquals(setOf(listOf(0, 1, 3), listOf(0, 2, 3)), traces.toSet())
+    }
+
+    @Test
+    fun `unreachable sink yields no traces`() {
+        val graph = graph(listOf(0), 3, 0 to 1, 1 to 2)
+        assertTrue(graph.getShortestTraces(3).isEmpty())
+    }
+}
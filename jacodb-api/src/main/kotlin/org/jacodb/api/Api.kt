@@ -135,6 +135,11 @@ interface JcDatabase : Closeable {
     fun isInstalled(feature: JcFeature<*, *>): Boolean = features.contains(feature)
 
     val features: List<JcFeature<*, *>>
+
+    /**
+     * metrics collected by this database and by analyses running on top of it
+     */
+    val metrics: JcMetrics get() = JcNoMetrics
 }
 
 
@@ -160,6 +165,11 @@ interface JcDatabasePersistence : Closeable {
     fun findClassSources(cp: JcClasspath, fullName: String): List<ClassSource>
 
     fun createIndexes() {}
+
+    /**
+     * Called once [locationIds] are marked as processed, i.e. all their classes are persisted and indexed
+     */
+    fun afterProcessing(locationIds: Collection<Long>) {}
 }
 
 interface RegisteredLocation {
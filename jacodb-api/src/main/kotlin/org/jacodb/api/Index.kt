@@ -17,16 +17,43 @@
 package org.jacodb.api
 
 import org.jooq.DSLContext
+import org.objectweb.asm.ClassReader
+import org.objectweb.asm.ClassVisitor
 import org.objectweb.asm.tree.ClassNode
 
 /** index builder */
 interface ByteCodeIndexer {
 
+    /**
+     * [ClassReader] parsing options required by this indexer.
+     *
+     * Each class is parsed once for all tree-based indexers of location: `SKIP_*` flag is applied
+     * only if all indexers skip it and [ClassReader.EXPAND_FRAMES] if any indexer requires it.
+     * [ByteCodeVisitorIndexer] always reads classes with its own options
+     */
+    val parsingOptions: Int get() = ClassReader.EXPAND_FRAMES
+
     fun index(classNode: ClassNode)
 
     fun flush(jooq: DSLContext)
 }
 
+/**
+ * index builder which receives class events directly from [ClassReader] without building [ClassNode]
+ * and instruction nodes for each class
+ */
+interface ByteCodeVisitorIndexer : ByteCodeIndexer {
+
+    /**
+     * @return visitor for the next class to be indexed. Visitor may be reused for sequential classes
+     */
+    fun classVisitor(): ClassVisitor
+
+    override fun index(classNode: ClassNode) {
+        classNode.accept(classVisitor())
+    }
+}
+
 interface JcFeature<REQ, RES> {
 
     suspend fun query(classpath: JcClasspath, req: REQ): Sequence<RES>
@@ -0,0 +1,121 @@
+/*
+ *  Copyright 2022 UnitTestBot contributors (utbot.org)
+ * <p>
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ * <p>
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package org.jacodb.api
+
+/**
+ * Monotonic counter.
+ *
+ * Implementations must be thread-safe and should not allocate on [add].
+ */
+interface JcCounter {
+    val value: Long
+
+    fun add(delta: Long)
+
+    fun increment() = add(1)
+}
+
+/**
+ * Distribution of non-negative values (latencies in nanoseconds, sizes, depths, etc.).
+ *
+ * Implementations must be thread-safe and should not allocate on [record].
+ */
+interface JcHistogram {
+    val count: Long
+    val sum: Long
+    val max: Long
+
+    fun record(value: Long)
+
+    /**
+     * @return approximate value of the given [percentile] (from 0.0 to 1.0)
+     */
+    fun percentile(percentile: Double): Long
+}
+
+/**
+ * Instrumentation SPI for jacodb and analyses built on top of it.
+ *
+ * Metrics are identified by names, dot-separated by convention (e.g. `cfg.build.nanos`).
+ * Counter and histogram handles are expected to be obtained once and then updated from hot paths.
+ */
+interface JcMetrics {
+
+    /**
+     * `false` means that all updates are ignored, so callers may skip
+     * preparing values for them (e.g. calling [System.nanoTime]).
+     */
+    val isEnabled: Boolean
+
+    fun counter(name: String): JcCounter
+
+    fun histogram(name: String): JcHistogram
+
+    /**
+     * registers value which is computed on demand, when metrics are dumped
+     */
+    fun gauge(name: String, value: () -> Long)
+
+    /**
+     * writes current state of all metrics in plain text format, one metric per line
+     */
+    fun dump(out: Appendable)
+}
+
+/**
+ * metrics which ignore all updates
+ */
+object JcNoMetrics : JcMetrics {
+
+    private object NoCounter : JcCounter {
+        override val value: Long get() = 0
+        override fun add(delta: Long) {}
+    }
+
+    private object NoHistogram : JcHistogram {
+        override val count: Long get() = 0
+        override val sum: Long get() = 0
+        override val max: Long get() = 0
+        override fun record(value: Long) {}
+        override fun percentile(percentile: Double): Long = 0
+    }
+
+    override val isEnabled: Boolean get() = false
+
+    override fun counter(name: String): JcCounter = NoCounter
+
+    override fun histogram(name: String): JcHistogram = NoHistogram
+
+    override fun gauge(name: String, value: () -> Long) {}
+
+    override fun dump(out: Appendable) {}
+}
+
+/**
+ * measures time of [body] execution in nanoseconds and records it to the [histogram]
+ */
+inline fun <T> JcMetrics.measureNanos(histogram: JcHistogram, body: () -> T): T {
+    if (!isEnabled) {
+        return body()
+    }
+    val start = System.nanoTime()
+    try {
+        return body()
+    } finally {
+        histogram.record(System.nanoTime() - start)
+    }
+}
@@ -37,6 +37,7 @@ import org.jacodb.impl.storage.jooq.tables.references.ANNOTATIONS
 import org.jacodb.impl.storage.jooq.tables.references.ANNOTATIONVALUES
 import org.jacodb.impl.storage.jooq.tables.references.CLASSES
 import org.jooq.DSLContext
+import org.objectweb.asm.ClassReader
 import org.objectweb.asm.tree.ClassNode
 import java.util.concurrent.ConcurrentHashMap
 import java.util.concurrent.ConcurrentMap
@@ -140,6 +141,9 @@ private class ApproximationIndexer(
     private val originalToApproximation: ConcurrentMap<OriginalClassName, ApproximationClassName>,
     private val approximationToOriginal: ConcurrentMap<ApproximationClassName, OriginalClassName>
 ) : ByteCodeIndexer {
+
+    override val parsingOptions get() = ClassReader.SKIP_CODE
+
     override fun index(classNode: ClassNode) {
         val annotations = classNode.visibleAnnotations ?: return
 
@@ -58,6 +58,15 @@ benchmark {
         register("instructions") {
             include("JcInstructionsBenchmark")
         }
+        register("instructionsAllocation") {
+            include("JcInstructionsAllocationBenchmark")
+        }
+        register("types") {
+            include("JcClassTypeBenchmark")
+        }
+        register("rewriting") {
+            include("JcClassesRewriterBenchmark")
+        }
         register("awaitBackground") {
             include("JcdbJvmBackgroundBenchmarks")
             include("JcdbAllClasspathBackgroundBenchmarks")
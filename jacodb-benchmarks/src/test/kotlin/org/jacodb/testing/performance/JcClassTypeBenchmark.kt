@@ -0,0 +1,100 @@
+/*
+ *  Copyright 2022 UnitTestBot contributors (utbot.org)
+ * <p>
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ * <p>
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package org.jacodb.testing.performance
+
+import kotlinx.coroutines.runBlocking
+import org.jacodb.api.JcClassType
+import org.jacodb.api.JcClasspath
+import org.jacodb.api.JcDatabase
+import org.jacodb.impl.jacodb
+import org.jacodb.impl.types.JcClassTypeImpl
+import org.jacodb.impl.types.substition.JcSubstitutorImpl
+import org.jacodb.testing.allClasspath
+import org.openjdk.jmh.annotations.Benchmark
+import org.openjdk.jmh.annotations.BenchmarkMode
+import org.openjdk.jmh.annotations.Level
+import org.openjdk.jmh.annotations.Measurement
+import org.openjdk.jmh.annotations.Mode
+import org.openjdk.jmh.annotations.OutputTimeUnit
+import org.openjdk.jmh.annotations.Param
+import org.openjdk.jmh.annotations.Scope
+import org.openjdk.jmh.annotations.Setup
+import org.openjdk.jmh.annotations.State
+import org.openjdk.jmh.annotations.TearDown
+import org.openjdk.jmh.annotations.Warmup
+import org.openjdk.jmh.infra.Blackhole
+import java.util.concurrent.TimeUnit
+
+@State(Scope.Benchmark)
+@Warmup(iterations = 5)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Measurement(iterations = 10)
+class JcClassTypeBenchmark {
+
+    @Param(
+        "java.util.concurrent.ConcurrentHashMap",
+        "java.util.TreeMap",
+        "java.util.concurrent.CompletableFuture",
+        "java.util.stream.Collectors"
+    )
+    lateinit var className: String
+
+    private lateinit var db: JcDatabase
+    private lateinit var cp: JcClasspath
+    private lateinit var type: JcClassType
+
+    @Setup(Level.Trial)
+    fun setup() {
+        runBlocking {
+            db = jacodb {
+                useProcessJavaRuntime()
+                loadByteCode(allClasspath)
+            }
+            cp = db.classpath(allClasspath)
+        }
+        type = cp.findTypeOrNull(className) as JcClassType
+    }
+
+    /**
+     * member table of the same type instance, i.e. memoized one
+     */
+    @Benchmark
+    fun methods(blackhole: Blackhole) {
+        blackhole.consume(type.methods)
+    }
+
+    /**
+     * member table of the newly created type, including super types resolution
+     */
+    @Benchmark
+    fun methodsOfNewType(blackhole: Blackhole) {
+        val newType = JcClassTypeImpl(cp, className, null, JcSubstitutorImpl.empty, null, emptyList())
+        blackhole.consume(newType.methods)
+    }
+
+    @Benchmark
+    fun fields(blackhole: Blackhole) {
+        blackhole.consume(type.fields)
+    }
+
+    @TearDown(Level.Trial)
+    fun tearDown() {
+        cp.close()
+        db.close()
+    }
+}
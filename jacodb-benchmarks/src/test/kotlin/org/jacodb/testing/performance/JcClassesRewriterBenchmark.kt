@@ -0,0 +1,92 @@
+/*
+ *  Copyright 2022 UnitTestBot contributors (utbot.org)
+ * <p>
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ * <p>
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+
+package org.jacodb.testing.performance
+
+import kotlinx.coroutines.runBlocking
+import org.jacodb.api.JcClassOrInterface
+import org.jacodb.api.JcClasspath
+import org.jacodb.api.JcDatabase
+import org.jacodb.api.JcMethod
+import org.jacodb.api.cfg.JcInstList
+import org.jacodb.api.cfg.JcRawInst
+import org.jacodb.api.ext.findClass
+import org.jacodb.impl.JcClasspathImpl
+import org.jacodb.impl.bytecode.JcClassesRewriter
+import org.jacodb.impl.jacodb
+import org.jacodb.testing.allClasspath
+import org.openjdk.jmh.annotations.Benchmark
+import org.openjdk.jmh.annotations.BenchmarkMode
+import org.openjdk.jmh.annotations.Level
+import org.openjdk.jmh.annotations.Measurement
+import org.openjdk.jmh.annotations.Mode
+import org.openjdk.jmh.annotations.OutputTimeUnit
+import org.openjdk.jmh.annotations.Scope
+import org.openjdk.jmh.annotations.Setup
+import org.openjdk.jmh.annotations.State
+import org.openjdk.jmh.annotations.TearDown
+import org.openjdk.jmh.annotations.Warmup
+import java.io.File
+import java.util.concurrent.TimeUnit
+
+/**
+ * Rewriting of all classes of jacodb-core with unchanged bodies of all methods
+ */
+@State(Scope.Benchmark)
+@Warmup(iterations = 2)
+@Measurement(iterations = 5)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+class JcClassesRewriterBenchmark {
+
+    private lateinit var db: JcDatabase
+    private lateinit var cp: JcClasspath
+    private lateinit var classes: List<JcClassOrInterface>
+    private lateinit var changes: Map<JcMethod, JcInstList<JcRawInst>>
+    private lateinit var jar: File
+
+    @Setup(Level.Trial)
+    fun setup() {
+        runBlocking {
+            db = jacodb {
+                useProcessJavaRuntime()
+                loadByteCode(allClasspath)
+            }
+            cp = db.classpath(allClasspath)
+        }
+        val coreLocation = cp.findClass<JcClasspathImpl>().declaration.location
+        classes = coreLocation.jcLocation?.classNames.orEmpty().mapNotNull { cp.findClassOrNull(it) }
+        changes = classes.flatMap { it.declaredMethods }
+            .filter { !it.isAbstract && !it.isNative }
+            .associateWith { it.rawInstList }
+        jar = File.createTempFile("jacodb-core-rewritten", ".jar")
+    }
+
+    @Benchmark
+    fun rewriteToJar() {
+        runBlocking {
+            JcClassesRewriter(cp).rewriteToJar(jar, changes, classes)
+        }
+    }
+
+    @TearDown(Level.Trial)
+    fun tearDown() {
+        cp.close()
+        db.close()
+        jar.delete()
+    }
+}
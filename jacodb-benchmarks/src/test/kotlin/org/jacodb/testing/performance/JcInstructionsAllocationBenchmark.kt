@@ -0,0 +1,101 @@
+/*
+ *  Copyright 2022 UnitTestBot contributors (utbot.org)
+ * <p>
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ * <p>
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+
+package org.jacodb.testing.performance
+
+import kotlinx.coroutines.runBlocking
+import org.jacodb.api.JcClasspath
+import org.jacodb.api.JcDatabase
+import org.jacodb.api.JcMethod
+import org.jacodb.api.cfg.JcInst
+import org.jacodb.api.cfg.JcInstList
+import org.jacodb.api.cfg.JcRawInst
+import org.jacodb.api.ext.findClass
+import org.jacodb.impl.JcClasspathImpl
+import org.jacodb.impl.jacodb
+import org.jacodb.testing.allClasspath
+import org.openjdk.jmh.annotations.Benchmark
+import org.openjdk.jmh.annotations.BenchmarkMode
+import org.openjdk.jmh.annotations.Level
+import org.openjdk.jmh.annotations.Measurement
+import org.openjdk.jmh.annotations.Mode
+import org.openjdk.jmh.annotations.OutputTimeUnit
+import org.openjdk.jmh.annotations.Scope
+import org.openjdk.jmh.annotations.Setup
+import org.openjdk.jmh.annotations.State
+import org.openjdk.jmh.annotations.TearDown
+import org.openjdk.jmh.annotations.Warmup
+import org.openjdk.jmh.profile.GCProfiler
+import org.openjdk.jmh.runner.Runner
+import org.openjdk.jmh.runner.options.OptionsBuilder
+import java.util.concurrent.TimeUnit
+
+/**
+ * Variant of [JcInstructionsBenchmark] where each operation builds instructions of single method. Being run with
+ * GC profiler (see [main]) `gc.alloc.rate.norm` shows allocated bytes per method.
+ */
+@State(Scope.Benchmark)
+@Warmup(iterations = 5)
+@Measurement(iterations = 10)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+class JcInstructionsAllocationBenchmark {
+
+    private lateinit var db: JcDatabase
+    private lateinit var cp: JcClasspath
+    private lateinit var methods: List<JcMethod>
+    private var index = 0
+
+    @Setup(Level.Trial)
+    fun setup() {
+        runBlocking {
+            db = jacodb {
+                useProcessJavaRuntime()
+                loadByteCode(allClasspath)
+            }
+            cp = db.classpath(allClasspath, listOf(JcInstructionsBenchmark.NoInstructionsCache))
+        }
+        methods = cp.findClass<JcClasspathImpl>().declaredMethods.filter { !it.isAbstract && !it.isNative }
+    }
+
+    @Benchmark
+    fun rawInstList(): JcInstList<JcRawInst> {
+        return nextMethod().rawInstList
+    }
+
+    @Benchmark
+    fun instList(): JcInstList<JcInst> {
+        return nextMethod().instList
+    }
+
+    private fun nextMethod(): JcMethod = methods[index++ % methods.size]
+
+    @TearDown(Level.Trial)
+    fun tearDown() {
+        cp.close()
+        db.close()
+    }
+}
+
+fun main() {
+    val options = OptionsBuilder()
+        .include(JcInstructionsAllocationBenchmark::class.java.simpleName)
+        .addProfiler(GCProfiler::class.java)
+        .forks(1)
+        .build()
+    Runner(options).run()
+}
@@ -21,17 +21,15 @@ import kotlinx.cli.ArgType
 import kotlinx.cli.default
 import kotlinx.cli.required
 import kotlinx.coroutines.runBlocking
-import kotlinx.serialization.ExperimentalSerializationApi
 import kotlinx.serialization.Serializable
 import kotlinx.serialization.decodeFromString
 import kotlinx.serialization.json.Json
-import kotlinx.serialization.json.encodeToStream
 import org.jacodb.analysis.graph.newApplicationGraphForAnalysis
 import org.jacodb.analysis.ifds.SingletonUnitResolver
 import org.jacodb.analysis.ifds.UnitResolver
 import org.jacodb.analysis.npe.NpeManager
 import org.jacodb.analysis.sarif.VulnerabilityInstance
-import org.jacodb.analysis.sarif.sarifReportFromVulnerabilities
+import org.jacodb.analysis.sarif.SarifWriter
 import org.jacodb.analysis.taint.TaintManager
 import org.jacodb.analysis.taint.toSarif
 import org.jacodb.analysis.unused.UnusedVariableManager
@@ -64,35 +62,58 @@ fun launchAnalysesByConfig(
     methods: List<JcMethod>,
 ): List<List<VulnerabilityInstance<*>>> {
     return config.analyses.mapNotNull { (analysis, options) ->
-        val unitResolver = options["UnitResolver"]?.let {
-            UnitResolver.getByName(it)
-        } ?: SingletonUnitResolver
-
-        when (analysis) {
-            "NPE" -> {
-                val manager = NpeManager(graph, unitResolver)
-                manager.analyze(methods, timeout = 60.seconds).map { it.toSarif(manager.vulnerabilityTraceGraph(it)) }
-            }
+        launchAnalysis(analysis, options, graph, methods)?.toList()
+    }
+}
 
-            "Unused" -> {
-                val manager = UnusedVariableManager(graph, unitResolver)
-                manager.analyze(methods, timeout = 60.seconds).map { it.toSarif() }
-            }
+/**
+ * Same as [launchAnalysesByConfig], but writes each result into [writer] as soon as it is ready,
+ * instead of collecting the results of all analyses in memory.
+ */
+fun launchAnalysesByConfig(
+    config: AnalysisConfig,
+    graph: JcApplicationGraph,
+    methods: List<JcMethod>,
+    writer: SarifWriter,
+) {
+    for ((analysis, options) in config.analyses) {
+        launchAnalysis(analysis, options, graph, methods)?.let { writer.writeAll(it) }
+    }
+}
 
-            "SQL" -> {
-                val manager = TaintManager(graph, unitResolver)
-                manager.analyze(methods, timeout = 60.seconds).map { it.toSarif(manager.vulnerabilityTraceGraph(it)) }
-            }
+private fun launchAnalysis(
+    analysis: String,
+    options: AnalysesOptions,
+    graph: JcApplicationGraph,
+    methods: List<JcMethod>,
+): Sequence<VulnerabilityInstance<*>>? {
+    val unitResolver = options["UnitResolver"]?.let {
+        UnitResolver.getByName(it)
+    } ?: SingletonUnitResolver
+
+    return when (analysis) {
+        "NPE" -> {
+            val manager = NpeManager(graph, unitResolver)
+            manager.toSarif(manager.analyze(methods, timeout = 60.seconds))
+        }
 
-            else -> {
-                logger.error { "Unknown analysis type: $analysis" }
-                return@mapNotNull null
-            }
+        "Unused" -> {
+            val manager = UnusedVariableManager(graph, unitResolver)
+            manager.analyze(methods, timeout = 60.seconds).asSequence().map { it.toSarif() }
+        }
+
+        "SQL" -> {
+            val manager = TaintManager(graph, unitResolver)
+            manager.toSarif(manager.analyze(methods, timeout = 60.seconds))
+        }
+
+        else -> {
+            logger.error { "Unknown analysis type: $analysis" }
+            null
         }
     }
 }
 
-@OptIn(ExperimentalSerializationApi::class)
 fun main(args: Array<String>) {
     val parser = ArgParser("taint-analysis")
     val configFilePath by parser.option(
@@ -170,13 +191,12 @@ fun main(args: Array<String>) {
         cp.newApplicationGraphForAnalysis()
     }
 
-    val vulnerabilities = launchAnalysesByConfig(config, graph, startJcMethods).flatten()
-    val report = sarifReportFromVulnerabilities(vulnerabilities)
     val prettyJson = Json {
         prettyPrint = true
     }
 
-    outputFile.outputStream().use { fileOutputStream ->
-        prettyJson.encodeToStream(report, fileOutputStream)
+    SarifWriter(outputFile.outputStream(), json = prettyJson).use { writer ->
+        launchAnalysesByConfig(config, graph, startJcMethods, writer)
+        logger.info { "Written ${writer.writtenResults} results to $outputFile" }
     }
 }
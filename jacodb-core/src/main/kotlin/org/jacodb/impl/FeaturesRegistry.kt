@@ -17,12 +17,26 @@
 package org.jacodb.impl
 
 import kotlinx.collections.immutable.toPersistentList
+import kotlinx.coroutines.Dispatchers
+import kotlinx.coroutines.async
+import kotlinx.coroutines.awaitAll
+import kotlinx.coroutines.coroutineScope
+import kotlinx.coroutines.launch
+import kotlinx.coroutines.withContext
 import org.jacodb.api.*
-import org.jacodb.impl.fs.fullAsmNode
+import org.jacodb.impl.bytecode.FanOutClassVisitor
+import org.jacodb.impl.fs.newClassNode
+import org.objectweb.asm.ClassReader
 import java.io.Closeable
 
 class FeaturesRegistry(features: List<JcFeature<*, *>>) : Closeable {
 
+    companion object {
+        private const val CHUNK_SIZE = 1024
+        private const val PARSING_BATCH_SIZE = 64
+        private const val SKIP_FLAGS = ClassReader.SKIP_CODE or ClassReader.SKIP_DEBUG or ClassReader.SKIP_FRAMES
+    }
+
     val features = features.toPersistentList()
 
     private lateinit var jcdb: JcDatabase
@@ -31,22 +45,65 @@ class FeaturesRegistry(features: List<JcFeature<*, *>>) : Closeable {
         this.jcdb = jcdb
     }
 
-    fun index(location: RegisteredLocation, classes: List<ClassSource>) {
-        features.forEach { feature ->
-            feature.index(location, classes)
+    /**
+     * Indexes [classes] by all features at once: each class is parsed only once with options
+     * required by all tree-based indexers and resulting node is passed to every such indexer.
+     * [ByteCodeVisitorIndexer]s receive events straight from a single [ClassReader] pass with options
+     * required by all of them (see [FanOutClassVisitor]), so no tree nodes are built for them.
+     *
+     * Classes are processed in chunks and each tree indexer consumes a chunk in its own coroutine,
+     * while all visitor indexers consume it in one more coroutine, so single indexer is never called concurrently.
+     */
+    suspend fun index(location: RegisteredLocation, classes: List<ClassSource>) {
+        if (features.isEmpty()) {
+            return
+        }
+        val indexers = features.map { it.newIndexer(jcdb, location) }
+        val visitorIndexers = indexers.filterIsInstance<ByteCodeVisitorIndexer>()
+        val treeIndexers = indexers.filter { it !is ByteCodeVisitorIndexer }
+        val parsingOptions = treeIndexers.parsingOptions
+        val visitorParsingOptions = visitorIndexers.parsingOptions
+        withContext(Dispatchers.Default) {
+            classes.chunked(CHUNK_SIZE).forEach { chunk ->
+                val nodes = when {
+                    treeIndexers.isEmpty() -> emptyList()
+                    else -> chunk.chunked(PARSING_BATCH_SIZE).map { batch ->
+                        async { batch.map { it.newClassNode(parsingOptions) } }
+                    }.awaitAll().flatten()
+                }
+                coroutineScope {
+                    treeIndexers.forEach { indexer ->
+                        launch { nodes.forEach { indexer.index(it) } }
+                    }
+                    if (visitorIndexers.isNotEmpty()) {
+                        launch {
+                            chunk.forEach { source ->
+                                val visitor = visitorIndexers.singleOrNull()?.classVisitor()
+                                    ?: FanOutClassVisitor(visitorIndexers.map { it.classVisitor() })
+                                ClassReader(source.byteCode).accept(visitor, visitorParsingOptions)
+                            }
+                        }
+                    }
+                }
+            }
+        }
+        withContext(Dispatchers.IO) {
+            // persistence is responsible for serializing writes if backend does not support concurrent ones
+            indexers.forEach { indexer ->
+                launch { jcdb.persistence.write { indexer.flush(it) } }
+            }
         }
     }
 
-    private fun <REQ, RES> JcFeature<RES, REQ>.index(
-        location: RegisteredLocation,
-        classes: List<ClassSource>
-    ) {
-        val indexer = newIndexer(jcdb, location)
-        classes.forEach { index(it, indexer) }
-        jcdb.persistence.write {
-            indexer.flush(it)
+    private val List<ByteCodeIndexer>.parsingOptions: Int
+        get() {
+            val skipFlags = fold(SKIP_FLAGS) { flags, indexer -> flags and indexer.parsingOptions }
+            val expandFrames = any { (it.parsingOptions and ClassReader.EXPAND_FRAMES) != 0 }
+            return when {
+                expandFrames -> skipFlags or ClassReader.EXPAND_FRAMES
+                else -> skipFlags
+            }
         }
-    }
 
     fun broadcast(signal: JcInternalSignal) {
         features.forEach { it.onSignal(signal.asJcSignal(jcdb)) }
@@ -54,10 +111,6 @@ class FeaturesRegistry(features: List<JcFeature<*, *>>) : Closeable {
 
     override fun close() {
     }
-
-    private fun index(source: ClassSource, builder: ByteCodeIndexer) {
-        builder.index(source.fullAsmNode)
-    }
 }
 
 sealed class JcInternalSignal {
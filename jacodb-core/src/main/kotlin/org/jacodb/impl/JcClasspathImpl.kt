@@ -16,12 +16,14 @@
 
 package org.jacodb.impl
 
+import com.google.common.cache.CacheBuilder
 import kotlinx.coroutines.*
 import org.jacodb.api.*
 import org.jacodb.api.JcClasspathExtFeature.JcResolvedClassResult
 import org.jacodb.api.JcClasspathExtFeature.JcResolvedTypeResult
 import org.jacodb.api.ext.toType
 import org.jacodb.impl.bytecode.JcClassOrInterfaceImpl
+import org.jacodb.impl.bytecode.JcCommonSuperClasses
 import org.jacodb.impl.features.JcFeatureEventImpl
 import org.jacodb.impl.features.JcFeaturesChain
 import org.jacodb.impl.features.classpaths.AbstractJcResolvedResult.JcResolvedClassResultImpl
@@ -33,20 +35,30 @@ import org.jacodb.impl.fs.ClassSourceImpl
 import org.jacodb.impl.types.JcArrayTypeImpl
 import org.jacodb.impl.types.JcClassTypeImpl
 import org.jacodb.impl.types.substition.JcSubstitutorImpl
+import org.jacodb.impl.vfs.ClassesVfs
 import org.jacodb.impl.vfs.ClasspathVfs
-import org.jacodb.impl.vfs.GlobalClassesVfs
 
 class JcClasspathImpl(
     private val locationsRegistrySnapshot: LocationsRegistrySnapshot,
     override val db: JcDatabaseImpl,
     override val features: List<JcClasspathFeature>,
-    globalClassVFS: GlobalClassesVfs
+    globalClassVFS: ClassesVfs
 ) : JcClasspath {
 
     override val locations: List<JcByteCodeLocation> = locationsRegistrySnapshot.locations.mapNotNull { it.jcLocation }
     override val registeredLocations: List<RegisteredLocation> = locationsRegistrySnapshot.locations
 
     private val classpathVfs = ClasspathVfs(globalClassVFS, locationsRegistrySnapshot)
+
+    // names of classes absent in all locations of this classpath. Set of locations is fixed for classpath
+    // so once missed class will never appear here
+    private val missedClasses = CacheBuilder.newBuilder()
+        .maximumSize(missedClassesCacheSize)
+        .build<String, Boolean>()
+
+    // lives as long as classpath itself, see [JcCommonSuperClasses.of]
+    internal val commonSuperClasses by lazy { JcCommonSuperClasses(this) }
+
     private val featuresChain = run{
         val strictFeatures = features.filter { it !is UnknownClasses }
         val hasUnknownClasses = strictFeatures.size != features.size
@@ -137,11 +149,7 @@ class JcClasspathImpl(
     private inner class JcClasspathFeatureImpl : JcClasspathExtFeature {
 
         override fun tryFindClass(classpath: JcClasspath, name: String): JcResolvedClassResult? {
-            val source = classpathVfs.firstClassOrNull(name)
-            val jcClass = source?.let { toJcClass(it.source) }
-                ?: db.persistence.findClassSourceByName(classpath, name)?.let {
-                    toJcClass(it)
-                }
+            val jcClass = findClassSource(classpath, name)?.let { toJcClass(it) }
             if (jcClass == null && isResolveAllToUnknown) {
                 return null
             }
@@ -167,14 +175,32 @@ class JcClasspathImpl(
         }
 
         override fun findClasses(classpath: JcClasspath, name: String): List<JcClassOrInterface> {
-            val vfsClasses = classpathVfs.findClassNodes(name).map { toJcClass(it.source) }
+            if (missedClasses.getIfPresent(name) != null) {
+                return emptyList()
+            }
+            val vfsClasses = classpathVfs.findClasses(name).map { toJcClass(it) }
             val persistedClasses = db.persistence.findClassSources(classpath, name).map { toJcClass(it) }
+            if (vfsClasses.isEmpty() && persistedClasses.isEmpty()) {
+                missedClasses.put(name, true)
+            }
             return buildSet {
                 addAll(vfsClasses)
                 addAll(persistedClasses)
             }.toList()
         }
 
+        private fun findClassSource(classpath: JcClasspath, name: String): ClassSource? {
+            if (missedClasses.getIfPresent(name) != null) {
+                return null
+            }
+            val source = classpathVfs.firstClassOrNull(name)
+                ?: db.persistence.findClassSourceByName(classpath, name)
+            if (source == null) {
+                missedClasses.put(name, true)
+            }
+            return source
+        }
+
         override fun event(result: Any): JcFeatureEvent {
             return JcFeatureEventImpl(this, result)
         }
@@ -183,4 +209,4 @@ class JcClasspathImpl(
 
 }
 
-
+private val missedClassesCacheSize = Integer.getInteger("org.jacodb.impl.classpath.missedClasses", 10_000).toLong()
@@ -23,8 +23,7 @@ import org.jacodb.impl.features.classpaths.KotlinMetadata
 import org.jacodb.impl.features.classpaths.MethodInstructionsFeature
 import org.jacodb.impl.fs.*
 import org.jacodb.impl.storage.PersistentLocationRegistry
-import org.jacodb.impl.vfs.GlobalClassesVfs
-import org.jacodb.impl.vfs.RemoveLocationsVisitor
+import org.jacodb.impl.vfs.FlatClassesVfs
 import java.io.File
 import java.util.concurrent.ConcurrentHashMap
 import java.util.concurrent.atomic.AtomicBoolean
@@ -37,7 +36,7 @@ class JcDatabaseImpl(
     private val settings: JcSettings
 ) : JcDatabase {
 
-    private val classesVfs = GlobalClassesVfs()
+    private val classesVfs = FlatClassesVfs()
     private val hooks = settings.hooks.map { it(this) }
 
     internal val locationsRegistry: LocationsRegistry
@@ -125,7 +124,7 @@ class JcDatabaseImpl(
                 async {
                     // here something may go wrong
                     location.lazySources.forEach {
-                        classesVfs.addClass(it)
+                        classesVfs.add(it)
                     }
                 }
             }
@@ -138,12 +137,7 @@ class JcDatabaseImpl(
                     val sources = location.sources
                     parentScope.ifActive { persistence.persist(location, sources) }
                     parentScope.ifActive {
-                        classesVfs.visit(
-                            RemoveLocationsVisitor(
-                                listOf(location),
-                                settings.byteCodeSettings.prefixes
-                            )
-                        )
+                        classesVfs.removeLocations(listOf(location), settings.byteCodeSettings.prefixes)
                     }
                     parentScope.ifActive { featureRegistry.index(location, sources) }
                 }
@@ -161,7 +155,7 @@ class JcDatabaseImpl(
         awaitBackgroundJobs()
         locationsRegistry.refresh().new.process(true)
         val result = locationsRegistry.cleanup()
-        classesVfs.visit(RemoveLocationsVisitor(result.outdated, settings.byteCodeSettings.prefixes))
+        classesVfs.removeLocations(result.outdated, settings.byteCodeSettings.prefixes)
     }
 
     override suspend fun rebuildFeatures() {
@@ -200,6 +194,9 @@ class JcDatabaseImpl(
     override val features: List<JcFeature<*, *>>
         get() = featureRegistry.features
 
+    override val metrics: JcMetrics
+        get() = settings.metrics
+
     suspend fun afterStart() {
         hooks.forEach { it.afterStart() }
     }
@@ -22,6 +22,8 @@ import org.jacodb.api.Hook
 import org.jacodb.api.JcDatabase
 import org.jacodb.api.JcDatabasePersistence
 import org.jacodb.api.JcFeature
+import org.jacodb.api.JcMetrics
+import org.jacodb.api.JcNoMetrics
 import org.jacodb.impl.fs.JavaRuntime
 import org.jacodb.impl.storage.SQLitePersistenceImpl
 import java.io.File
@@ -68,6 +70,10 @@ class JcSettings {
     var features: List<JcFeature<*, *>> = emptyList()
         private set
 
+    /** metrics collected by database and analyses, disabled by default */
+    var metrics: JcMetrics = JcNoMetrics
+        private set
+
     init {
         useProcessJavaRuntime()
     }
@@ -145,6 +151,13 @@ class JcSettings {
         jre = runtime.absolutePath.asValidJRE()
     }
 
+    /**
+     * collect metrics (for example to [org.jacodb.impl.metrics.InMemoryMetrics])
+     */
+    fun withMetrics(metrics: JcMetrics) = apply {
+        this.metrics = metrics
+    }
+
     /**
      * install additional indexes
      */
@@ -181,7 +194,8 @@ enum class PredefinedPersistenceType : JcPersistenceType {
                 javaRuntime = runtime,
                 featuresRegistry = featuresRegistry,
                 location = settings.persistentLocation,
-                clearOnStart = settings.persistentClearOnStart ?: false
+                clearOnStart = settings.persistentClearOnStart ?: false,
+                metrics = settings.metrics
             )
         }
     }
@@ -0,0 +1,463 @@
+/*
+ *  Copyright 2022 UnitTestBot contributors (utbot.org)
+ * <p>
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ * <p>
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package org.jacodb.impl.bytecode
+
+import org.objectweb.asm.AnnotationVisitor
+import org.objectweb.asm.Attribute
+import org.objectweb.asm.ClassVisitor
+import org.objectweb.asm.FieldVisitor
+import org.objectweb.asm.Handle
+import org.objectweb.asm.Label
+import org.objectweb.asm.MethodVisitor
+import org.objectweb.asm.ModuleVisitor
+import org.objectweb.asm.Opcodes
+import org.objectweb.asm.RecordComponentVisitor
+import org.objectweb.asm.TypePath
+import java.util.*
+
+/**
+ * Passes events of a single [org.objectweb.asm.ClassReader] pass to all [visitors],
+ * so that a class is parsed once for all of them.
+ *
+ * Nested visitors are requested from every visitor and the ones returned as `null` are skipped,
+ * so parts of the class (e.g. method bodies) are not parsed at all if no visitor is interested in them.
+ * Each visitor but the first receives its own [Label]s, since visitors may keep state in them
+ * (see [Label.info]).
+ */
+internal class FanOutClassVisitor(
+    private val visitors: List<ClassVisitor>,
+) : ClassVisitor(Opcodes.ASM9) {
+
+    override fun visit(
+        version: Int,
+        access: Int,
+        name: String?,
+        signature: String?,
+        superName: String?,
+        interfaces: Array<out String>?,
+    ) {
+        visitors.forEach { it.visit(version, access, name, signature, superName, interfaces) }
+    }
+
+    override fun visitSource(source: String?, debug: String?) {
+        visitors.forEach { it.visitSource(source, debug) }
+    }
+
+    override fun visitModule(name: String?, access: Int, version: String?): ModuleVisitor? {
+        return fanOut(visitors.map { it.visitModule(name, access, version) }, ::FanOutModuleVisitor)
+    }
+
+    override fun visitNestHost(nestHost: String?) {
+        visitors.forEach { it.visitNestHost(nestHost) }
+    }
+
+    override fun visitOuterClass(owner: String?, name: String?, descriptor: String?) {
+        visitors.forEach { it.visitOuterClass(owner, name, descriptor) }
+    }
+
+    override fun visitAnnotation(descriptor: String?, visible: Boolean): AnnotationVisitor? {
+        return fanOut(visitors.map { it.visitAnnotation(descriptor, visible) }, ::FanOutAnnotationVisitor)
+    }
+
+    override fun visitTypeAnnotation(
+        typeRef: Int,
+        typePath: TypePath?,
+        descriptor: String?,
+        visible: Boolean,
+    ): AnnotationVisitor? {
+        val children = visitors.map { it.visitTypeAnnotation(typeRef, typePath, descriptor, visible) }
+        return fanOut(children, ::FanOutAnnotationVisitor)
+    }
+
+    override fun visitAttribute(attribute: Attribute?) {
+        visitors.forEach { it.visitAttribute(attribute) }
+    }
+
+    override fun visitNestMember(nestMember: String?) {
+        visitors.forEach { it.visitNestMember(nestMember) }
+    }
+
+    override fun visitPermittedSubclass(permittedSubclass: String?) {
+        visitors.forEach { it.visitPermittedSubclass(permittedSubclass) }
+    }
+
+    override fun visitInnerClass(name: String?, outerName: String?, innerName: String?, access: Int) {
+        visitors.forEach { it.visitInnerClass(name, outerName, innerName, access) }
+    }
+
+    override fun visitRecordComponent(name: String?, descriptor: String?, signature: String?): RecordComponentVisitor? {
+        val children = visitors.map { it.visitRecordComponent(name, descriptor, signature) }
+        return fanOut(children, ::FanOutRecordComponentVisitor)
+    }
+
+    override fun visitField(
+        access: Int,
+        name: String?,
+        descriptor: String?,
+        signature: String?,
+        value: Any?,
+    ): FieldVisitor? {
+        val children = visitors.map { it.visitField(access, name, descriptor, signature, value) }
+        return fanOut(children, ::FanOutFieldVisitor)
+    }
+
+    override fun visitMethod(
+        access: Int,
+        name: String?,
+        descriptor: String?,
+        signature: String?,
+        exceptions: Array<out String>?,
+    ): MethodVisitor? {
+        val children = visitors.map { it.visitMethod(access, name, descriptor, signature, exceptions) }
+        return fanOut(children, ::FanOutMethodVisitor)
+    }
+
+    override fun visitEnd() {
+        visitors.forEach { it.visitEnd() }
+    }
+}
+
+private fun <V : Any> fanOut(children: List<V?>, create: (List<V>) -> V): V? {
+    val present = children.filterNotNull()
+    return when (present.size) {
+        0 -> null
+        1 -> present.single()
+        else -> create(present)
+    }
+}
+
+private class FanOutAnnotationVisitor(
+    private val visitors: List<AnnotationVisitor>,
+) : AnnotationVisitor(Opcodes.ASM9) {
+
+    override fun visit(name: String?, value: Any?) {
+        visitors.forEach { it.visit(name, value) }
+    }
+
+    override fun visitEnum(name: String?, descriptor: String?, value: String?) {
+        visitors.forEach { it.visitEnum(name, descriptor, value) }
+    }
+
+    override fun visitAnnotation(name: String?, descriptor: String?): AnnotationVisitor? {
+        return fanOut(visitors.map { it.visitAnnotation(name, descriptor) }, ::FanOutAnnotationVisitor)
+    }
+
+    override fun visitArray(name: String?): AnnotationVisitor? {
+        return fanOut(visitors.map { it.visitArray(name) }, ::FanOutAnnotationVisitor)
+    }
+
+    override fun visitEnd() {
+        visitors.forEach { it.visitEnd() }
+    }
+}
+
+private class FanOutFieldVisitor(
+    private val visitors: List<FieldVisitor>,
+) : FieldVisitor(Opcodes.ASM9) {
+
+    override fun visitAnnotation(descriptor: String?, visible: Boolean): AnnotationVisitor? {
+        return fanOut(visitors.map { it.visitAnnotation(descriptor, visible) }, ::FanOutAnnotationVisitor)
+    }
+
+    override fun visitTypeAnnotation(
+        typeRef: Int,
+        typePath: TypePath?,
+        descriptor: String?,
+        visible: Boolean,
+    ): AnnotationVisitor? {
+        val children = visitors.map { it.visitTypeAnnotation(typeRef, typePath, descriptor, visible) }
+        return fanOut(children, ::FanOutAnnotationVisitor)
+    }
+
+    override fun visitAttribute(attribute: Attribute?) {
+        visitors.forEach { it.visitAttribute(attribute) }
+    }
+
+    override fun visitEnd() {
+        visitors.forEach { it.visitEnd() }
+    }
+}
+
+private class FanOutRecordComponentVisitor(
+    private val visitors: List<RecordComponentVisitor>,
+) : RecordComponentVisitor(Opcodes.ASM9) {
+
+    override fun visitAnnotation(descriptor: String?, visible: Boolean): AnnotationVisitor? {
+        return fanOut(visitors.map { it.visitAnnotation(descriptor, visible) }, ::FanOutAnnotationVisitor)
+    }
+
+    override fun visitTypeAnnotation(
+        typeRef: Int,
+        typePath: TypePath?,
+        descriptor: String?,
+        visible: Boolean,
+    ): AnnotationVisitor? {
+        val children = visitors.map { it.visitTypeAnnotation(typeRef, typePath, descriptor, visible) }
+        return fanOut(children, ::FanOutAnnotationVisitor)
+    }
+
+    override fun visitAttribute(attribute: Attribute?) {
+        visitors.forEach { it.visitAttribute(attribute) }
+    }
+
+    override fun visitEnd() {
+        visitors.forEach { it.visitEnd() }
+    }
+}
+
+private class FanOutModuleVisitor(
+    private val visitors: List<ModuleVisitor>,
+) : ModuleVisitor(Opcodes.ASM9) {
+
+    override fun visitMainClass(mainClass: String?) {
+        visitors.forEach { it.visitMainClass(mainClass) }
+    }
+
+    override fun visitPackage(packaze: String?) {
+        visitors.forEach { it.visitPackage(packaze) }
+    }
+
+    override fun visitRequire(module: String?, access: Int, version: String?) {
+        visitors.forEach { it.visitRequire(module, access, version) }
+    }
+
+    override fun visitExport(packaze: String?, access: Int, vararg modules: String?) {
+        visitors.forEach { it.visitExport(packaze, access, *modules) }
+    }
+
+    override fun visitOpen(packaze: String?, access: Int, vararg modules: String?) {
+        visitors.forEach { it.visitOpen(packaze, access, *modules) }
+    }
+
+    override fun visitUse(service: String?) {
+        visitors.forEach { it.visitUse(service) }
+    }
+
+    override fun visitProvide(service: String?, vararg providers: String?) {
+        visitors.forEach { it.visitProvide(service, *providers) }
+    }
+
+    override fun visitEnd() {
+        visitors.forEach { it.visitEnd() }
+    }
+}
+
+private class FanOutMethodVisitor(
+    private val visitors: List<MethodVisitor>,
+) : MethodVisitor(Opcodes.ASM9) {
+
+    // labels of the visitors but the first one, which receives the original labels
+    private val labelMaps = List(visitors.size - 1) { IdentityHashMap<Label, Label>() }
+
+    private fun mapLabel(visitorIndex: Int, label: Label?): Label? {
+        if (visitorIndex == 0 || label == null) return label
+        return labelMaps[visitorIndex - 1].getOrPut(label) { Label() }
+    }
+
+    private fun mapLabels(visitorIndex: Int, labels: Array<out Label?>?): Array<Label?>? {
+        return labels?.let { Array(it.size) { i -> mapLabel(visitorIndex, it[i]) } }
+    }
+
+    // uninitialized types of stack map frames are labels of NEW instructions
+    private fun mapFrameTypes(visitorIndex: Int, types: Array<out Any?>?): Array<Any?>? {
+        return types?.let { Array(it.size) { i -> (it[i] as? Label)?.let { l -> mapLabel(visitorIndex, l) } ?: it[i] } }
+    }
+
+    override fun visitParameter(name: String?, access: Int) {
+        visitors.forEach { it.visitParameter(name, access) }
+    }
+
+    override fun visitAnnotationDefault(): AnnotationVisitor? {
+        return fanOut(visitors.map { it.visitAnnotationDefault() }, ::FanOutAnnotationVisitor)
+    }
+
+    override fun visitAnnotation(descriptor: String?, visible: Boolean): AnnotationVisitor? {
+        return fanOut(visitors.map { it.visitAnnotation(descriptor, visible) }, ::FanOutAnnotationVisitor)
+    }
+
+    override fun visitTypeAnnotation(
+        typeRef: Int,
+        typePath: TypePath?,
+        descriptor: String?,
+        visible: Boolean,
+    ): AnnotationVisitor? {
+        val children = visitors.map { it.visitTypeAnnotation(typeRef, typePath, descriptor, visible) }
+        return fanOut(children, ::FanOutAnnotationVisitor)
+    }
+
+    override fun visitAnnotableParameterCount(parameterCount: Int, visible: Boolean) {
+        visitors.forEach { it.visitAnnotableParameterCount(parameterCount, visible) }
+    }
+
+    override fun visitParameterAnnotation(parameter: Int, descriptor: String?, visible: Boolean): AnnotationVisitor? {
+        val children = visitors.map { it.visitParameterAnnotation(parameter, descriptor, visible) }
+        return fanOut(children, ::FanOutAnnotationVisitor)
+    }
+
+    override fun visitAttribute(attribute: Attribute?) {
+        visitors.forEach { it.visitAttribute(attribute) }
+    }
+
+    override fun visitCode() {
+        visitors.forEach { it.visitCode() }
+    }
+
+    override fun visitFrame(type: Int, numLocal: Int, local: Array<out Any?>?, numStack: Int, stack: Array<out Any?>?) {
+        visitors.forEachIndexed { i, it ->
+            it.visitFrame(type, numLocal, mapFrameTypes(i, local), numStack, mapFrameTypes(i, stack))
+        }
+    }
+
+    override fun visitInsn(opcode: Int) {
+        visitors.forEach { it.visitInsn(opcode) }
+    }
+
+    override fun visitIntInsn(opcode: Int, operand: Int) {
+        visitors.forEach { it.visitIntInsn(opcode, operand) }
+    }
+
+    override fun visitVarInsn(opcode: Int, varIndex: Int) {
+        visitors.forEach { it.visitVarInsn(opcode, varIndex) }
+    }
+
+    override fun visitTypeInsn(opcode: Int, type: String?) {
+        visitors.forEach { it.visitTypeInsn(opcode, type) }
+    }
+
+    override fun visitFieldInsn(opcode: Int, owner: String?, name: String?, descriptor: String?) {
+        visitors.forEach { it.visitFieldInsn(opcode, owner, name, descriptor) }
+    }
+
+    override fun visitMethodInsn(
+        opcode: Int,
+        owner: String?,
+        name: String?,
+        descriptor: String?,
+        isInterface: Boolean,
+    ) {
+        visitors.forEach { it.visitMethodInsn(opcode, owner, name, descriptor, isInterface) }
+    }
+
+    override fun visitInvokeDynamicInsn(
+        name: String?,
+        descriptor: String?,
+        bootstrapMethodHandle: Handle?,
+        vararg bootstrapMethodArguments: Any?,
+    ) {
+        visitors.forEach {
+            it.visitInvokeDynamicInsn(name, descriptor, bootstrapMethodHandle, *bootstrapMethodArguments)
+        }
+    }
+
+    override fun visitJumpInsn(opcode: Int, label: Label?) {
+        visitors.forEachIndexed { i, it -> it.visitJumpInsn(opcode, mapLabel(i, label)) }
+    }
+
+    override fun visitLabel(label: Label?) {
+        visitors.forEachIndexed { i, it -> it.visitLabel(mapLabel(i, label)) }
+    }
+
+    override fun visitLdcInsn(value: Any?) {
+        visitors.forEach { it.visitLdcInsn(value) }
+    }
+
+    override fun visitIincInsn(varIndex: Int, increment: Int) {
+        visitors.forEach { it.visitIincInsn(varIndex, increment) }
+    }
+
+    override fun visitTableSwitchInsn(min: Int, max: Int, dflt: Label?, vararg labels: Label?) {
+        visitors.forEachIndexed { i, it ->
+            it.visitTableSwitchInsn(min, max, mapLabel(i, dflt), *mapLabels(i, labels).orEmpty())
+        }
+    }
+
+    override fun visitLookupSwitchInsn(dflt: Label?, keys: IntArray?, labels: Array<out Label?>?) {
+        visitors.forEachIndexed { i, it -> it.visitLookupSwitchInsn(mapLabel(i, dflt), keys, mapLabels(i, labels)) }
+    }
+
+    override fun visitMultiANewArrayInsn(descriptor: String?, numDimensions: Int) {
+        visitors.forEach { it.visitMultiANewArrayInsn(descriptor, numDimensions) }
+    }
+
+    override fun visitInsnAnnotation(
+        typeRef: Int,
+        typePath: TypePath?,
+        descriptor: String?,
+        visible: Boolean,
+    ): AnnotationVisitor? {
+        val children = visitors.map { it.visitInsnAnnotation(typeRef, typePath, descriptor, visible) }
+        return fanOut(children, ::FanOutAnnotationVisitor)
+    }
+
+    override fun visitTryCatchBlock(start: Label?, end: Label?, handler: Label?, type: String?) {
+        visitors.forEachIndexed { i, it ->
+            it.visitTryCatchBlock(mapLabel(i, start), mapLabel(i, end), mapLabel(i, handler), type)
+        }
+    }
+
+    override fun visitTryCatchAnnotation(
+        typeRef: Int,
+        typePath: TypePath?,
+        descriptor: String?,
+        visible: Boolean,
+    ): AnnotationVisitor? {
+        val children = visitors.map { it.visitTryCatchAnnotation(typeRef, typePath, descriptor, visible) }
+        return fanOut(children, ::FanOutAnnotationVisitor)
+    }
+
+    override fun visitLocalVariable(
+        name: String?,
+        descriptor: String?,
+        signature: String?,
+        start: Label?,
+        end: Label?,
+        index: Int,
+    ) {
+        visitors.forEachIndexed { i, it ->
+            it.visitLocalVariable(name, descriptor, signature, mapLabel(i, start), mapLabel(i, end), index)
+        }
+    }
+
+    override fun visitLocalVariableAnnotation(
+        typeRef: Int,
+        typePath: TypePath?,
+        start: Array<out Label?>?,
+        end: Array<out Label?>?,
+        index: IntArray?,
+        descriptor: String?,
+        visible: Boolean,
+    ): AnnotationVisitor? {
+        val children = visitors.mapIndexed { i, it ->
+            it.visitLocalVariableAnnotation(
+                typeRef, typePath, mapLabels(i, start), mapLabels(i, end), index, descriptor, visible
+            )
+        }
+        return fanOut(children, ::FanOutAnnotationVisitor)
+    }
+
+    override fun visitLineNumber(line: Int, start: Label?) {
+        visitors.forEachIndexed { i, it -> it.visitLineNumber(line, mapLabel(i, start)) }
+    }
+
+    override fun visitMaxs(maxStack: Int, maxLocals: Int) {
+        visitors.forEach { it.visitMaxs(maxStack, maxLocals) }
+    }
+
+    override fun visitEnd() {
+        visitors.forEach { it.visitEnd() }
+    }
+}
@@ -0,0 +1,168 @@
+/*
+ *  Copyright 2022 UnitTestBot contributors (utbot.org)
+ * <p>
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ * <p>
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+
+package org.jacodb.impl.bytecode
+
+import kotlinx.coroutines.Dispatchers
+import kotlinx.coroutines.channels.Channel
+import kotlinx.coroutines.coroutineScope
+import kotlinx.coroutines.launch
+import kotlinx.coroutines.withContext
+import org.jacodb.api.JcClassOrInterface
+import org.jacodb.api.JcClasspath
+import org.jacodb.api.JcMethod
+import org.jacodb.api.cfg.JcInstList
+import org.jacodb.api.cfg.JcRawInst
+import org.jacodb.impl.cfg.MethodNodeBuilder
+import org.objectweb.asm.ClassReader
+import org.objectweb.asm.ClassVisitor
+import org.objectweb.asm.ClassWriter
+import org.objectweb.asm.MethodVisitor
+import org.objectweb.asm.Opcodes
+import org.objectweb.asm.tree.MethodNode
+import java.io.File
+import java.util.jar.JarEntry
+import java.util.jar.JarOutputStream
+
+/**
+ * Writes classes with transformed method bodies back to bytecode.
+ *
+ * Changes are grouped by class and classes are rewritten in parallel. Each class is read from its original bytecode
+ * and written with [JcDatabaseClassWriter] created from the same [ClassReader]: constant pool and untouched methods
+ * are copied as is while frames of transformed methods are computed using classpath hierarchy.
+ */
+class JcClassesRewriter(
+    private val classpath: JcClasspath,
+    private val parallelism: Int = Runtime.getRuntime().availableProcessors()
+) {
+
+    private val commonSuperClasses = JcCommonSuperClasses.of(classpath)
+
+    /**
+     * @return bytecode of [jcClass] with bodies of [methods] replaced by corresponding instructions
+     */
+    fun rewrite(jcClass: JcClassOrInterface, methods: Map<JcMethod, JcInstList<JcRawInst>>): ByteArray {
+        val newBodies = methods.entries.associate { (method, instList) ->
+            method.name + method.description to MethodNodeBuilder(method, instList).build()
+        }
+        if (newBodies.isEmpty()) {
+            return jcClass.bytecode()
+        }
+        return try {
+            val reader = ClassReader(jcClass.bytecode())
+            val writer = JcDatabaseClassWriter(classpath, reader, ClassWriter.COMPUTE_FRAMES, commonSuperClasses)
+            reader.accept(ReplaceMethodsVisitor(writer, newBodies), 0)
+            writer.toByteArray()
+        } catch (e: Exception) {
+            throw IllegalStateException("Can't rewrite class ${jcClass.name}", e)
+        }
+    }
+
+    /**
+     * writes all classes of [changes] and [untouchedClasses] to jar [file]. Jar entries are written as soon as
+     * corresponding class is ready
+     */
+    suspend fun rewriteToJar(
+        file: File,
+        changes: Map<JcMethod, JcInstList<JcRawInst>>,
+        untouchedClasses: Collection<JcClassOrInterface> = emptyList()
+    ) {
+        withContext(Dispatchers.IO) {
+            JarOutputStream(file.outputStream().buffered()).use { jar ->
+                rewriteAll(changes, untouchedClasses) { entryName, bytecode ->
+                    jar.putNextEntry(JarEntry(entryName))
+                    jar.write(bytecode)
+                    jar.closeEntry()
+                }
+            }
+        }
+    }
+
+    /**
+     * writes all classes of [changes] and [untouchedClasses] to [dir] using package structure
+     */
+    suspend fun rewriteToDirectory(
+        dir: File,
+        changes: Map<JcMethod, JcInstList<JcRawInst>>,
+        untouchedClasses: Collection<JcClassOrInterface> = emptyList()
+    ) {
+        withContext(Dispatchers.IO) {
+            rewriteAll(changes, untouchedClasses) { entryName, bytecode ->
+                val target = File(dir, entryName)
+                target.parentFile?.mkdirs()
+                target.writeBytes(bytecode)
+            }
+        }
+    }
+
+    private suspend fun rewriteAll(
+        changes: Map<JcMethod, JcInstList<JcRawInst>>,
+        untouchedClasses: Collection<JcClassOrInterface>,
+        output: (String, ByteArray) -> Unit
+    ) {
+        val changesByClass = changes.entries.groupBy({ it.key.enclosingClass }, { it.key to it.value })
+        val classes = Channel<JcClassOrInterface>(Channel.UNLIMITED)
+        changesByClass.keys.forEach { classes.trySend(it) }
+        untouchedClasses.forEach {
+            if (it !in changesByClass) {
+                classes.trySend(it)
+            }
+        }
+        classes.close()
+
+        val results = Channel<Pair<String, ByteArray>>(parallelism * 2)
+        coroutineScope {
+            val workers = List(parallelism) {
+                launch(Dispatchers.Default) {
+                    for (jcClass in classes) {
+                        val methods = changesByClass[jcClass]?.toMap().orEmpty()
+                        results.send(jcClass.entryName to rewrite(jcClass, methods))
+                    }
+                }
+            }
+            launch {
+                workers.forEach { it.join() }
+                results.close()
+            }
+            // single consumer: output streams are not thread safe
+            for ((entryName, bytecode) in results) {
+                output(entryName, bytecode)
+            }
+        }
+    }
+
+    private val JcClassOrInterface.entryName: String get() = name.replace('.', '/') + ".class"
+
+    private class ReplaceMethodsVisitor(
+        private val writer: ClassWriter,
+        private val newBodies: Map<String, MethodNode>
+    ) : ClassVisitor(Opcodes.ASM9, writer) {
+
+        override fun visitMethod(
+            access: Int,
+            name: String,
+            descriptor: String,
+            signature: String?,
+            exceptions: Array<out String>?
+        ): MethodVisitor? {
+            val newBody = newBodies[name + descriptor]
+                ?: return super.visitMethod(access, name, descriptor, signature, exceptions)
+            newBody.accept(writer)
+            return null
+        }
+    }
+}
@@ -0,0 +1,97 @@
+/*
+ *  Copyright 2022 UnitTestBot contributors (utbot.org)
+ * <p>
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ * <p>
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+
+package org.jacodb.impl.bytecode
+
+import org.jacodb.api.JcClassOrInterface
+import org.jacodb.api.JcClasspath
+import org.jacodb.impl.JcClasspathImpl
+import java.util.concurrent.ConcurrentHashMap
+
+/**
+ * Least common superclass queries for classes of [classpath].
+ *
+ * Each class gets memoized chain of superclasses from `java.lang.Object` to class itself (so depth of class is
+ * size of chain minus one). Chains of two classes share prefix up to common superclass, therefore it is found
+ * with binary search over chain of less deep class. Results are memoized by unordered pair of names.
+ *
+ * All names are in jvm internal form (`java/lang/Object`).
+ */
+class JcCommonSuperClasses(private val classpath: JcClasspath) {
+
+    companion object {
+        const val OBJECT = "java/lang/Object"
+
+        private val objectChain = arrayOf(OBJECT)
+
+        /**
+         * shared instance for classpath which is stored in classpath itself, so it lives as long as classpath is
+         * reachable. Classpaths of other implementations get a new instance
+         */
+        fun of(classpath: JcClasspath): JcCommonSuperClasses {
+            return (classpath as? JcClasspathImpl)?.commonSuperClasses ?: JcCommonSuperClasses(classpath)
+        }
+    }
+
+    // internal name -> superclasses from java/lang/Object to class itself.
+    // Interfaces and not resolved classes are represented by chain of java/lang/Object
+    private val chains = ConcurrentHashMap<String, Array<String>>()
+
+    private val commonSuperClasses = ConcurrentHashMap<Pair<String, String>, String>()
+
+    fun commonSuperClass(type1: String, type2: String): String {
+        if (type1 == type2) {
+            return type1
+        }
+        val key = if (type1 < type2) type1 to type2 else type2 to type1
+        return commonSuperClasses.getOrPut(key) {
+            commonPrefixTail(chainOf(type1), chainOf(type2))
+        }
+    }
+
+    fun depthOf(type: String): Int = chainOf(type).size - 1
+
+    private fun commonPrefixTail(chain1: Array<String>, chain2: Array<String>): String {
+        // chains[0] is always java/lang/Object, and once chains differ at some index they differ at all next ones
+        var low = 0
+        var high = minOf(chain1.size, chain2.size) - 1
+        while (low < high) {
+            val middle = (low + high + 1) ushr 1
+            if (chain1[middle] == chain2[middle]) {
+                low = middle
+            } else {
+                high = middle - 1
+            }
+        }
+        return chain1[low]
+    }
+
+    private fun chainOf(type: String): Array<String> {
+        chains[type]?.let { return it }
+        val jcClass = classpath.findClassOrNull(type.replace('/', '.'))
+        return chains.getOrPut(type) { jcClass?.let { newChain(type, it) } ?: objectChain }
+    }
+
+    private fun newChain(type: String, jcClass: JcClassOrInterface): Array<String> {
+        if (jcClass.isInterface || type == OBJECT) {
+            return objectChain
+        }
+        val superClass = jcClass.superClass ?: return objectChain
+        val parentChain = chainOf(superClass.name.replace('.', '/'))
+        return Array(parentChain.size + 1) { parentChain.getOrElse(it) { type } }
+    }
+}
@@ -16,51 +16,50 @@
 
 package org.jacodb.impl.bytecode
 
-import org.jacodb.api.JcClassOrInterface
 import org.jacodb.api.JcClasspath
-import org.jacodb.api.ext.findClass
+import org.objectweb.asm.ClassReader
 import org.objectweb.asm.ClassWriter
 
 
 /**
  * ASM class writer with jacodb specific resolution of common superclasses
  */
-class JcDatabaseClassWriter(val classpath: JcClasspath, flags: Int) : ClassWriter(flags) {
+class JcDatabaseClassWriter : ClassWriter {
+
+    val classpath: JcClasspath
+    private val commonSuperClasses: JcCommonSuperClasses
+
+    constructor(
+        classpath: JcClasspath,
+        flags: Int,
+        commonSuperClasses: JcCommonSuperClasses = JcCommonSuperClasses.of(classpath)
+    ) : super(flags) {
+        this.classpath = classpath
+        this.commonSuperClasses = commonSuperClasses
+    }
+
+    /**
+     * writer which copies constant pool and not transformed methods of class read by [classReader] as is
+     */
+    constructor(
+        classpath: JcClasspath,
+        classReader: ClassReader,
+        flags: Int,
+        commonSuperClasses: JcCommonSuperClasses = JcCommonSuperClasses.of(classpath)
+    ) : super(classReader, flags) {
+        this.classpath = classpath
+        this.commonSuperClasses = commonSuperClasses
+    }
 
     /*
    * We need to overwrite this method here, as we are generating multiple classes that might reference each other. See
    * asm4-guide, top of page 45 for more information.
    *
+   * Interfaces and classes that haven't been loaded yet or are phantom have java.lang.Object as the common superclass
+   *
    * @see org.objectweb.asm.ClassWriter#getCommonSuperClass(java.lang.String, java.lang.String)
    */
     override fun getCommonSuperClass(type1: String, type2: String): String {
-        val typeName1 = type1.replace('/', '.')
-        val typeName2 = type2.replace('/', '.')
-        val jcClass1 = classpath.findClass(typeName1)
-        val jcClass2 = classpath.findClass(typeName2)
-        val super1 = jcClass1.allSuperClasses
-        val super2 = jcClass2.allSuperClasses
-
-        // If these two classes haven't been loaded yet or are phantom, we take
-        // java.lang.Object as the common superclass
-        return when {
-            super1.isEmpty() || super2.isEmpty() -> "java/lang/Object"
-            else -> {
-                super1.firstOrNull { super2.contains(it) }?.name?.replace(".", "/")
-                    ?: throw RuntimeException("Could not find common super class for $type1 and $type2")
-            }
-
-        }
+        return commonSuperClasses.commonSuperClass(type1, type2)
     }
-
-    private val JcClassOrInterface.allSuperClasses: List<JcClassOrInterface>
-        get() {
-            val result = arrayListOf<JcClassOrInterface>()
-            var jcClass = superClass
-            while (jcClass != null) {
-                result.add(jcClass)
-                jcClass = jcClass.superClass
-            }
-            return result
-        }
 }
@@ -28,6 +28,7 @@ import org.jacodb.api.cfg.JcInstRef
 import org.jacodb.api.cfg.JcInstVisitor
 import org.jacodb.api.cfg.JcTerminatingInst
 import org.jacodb.api.ext.isSubClassOf
+import org.jacodb.impl.cfg.graphs.indexedDominators
 import java.util.Collections.singleton
 
 class JcGraphImpl(
@@ -49,6 +50,9 @@ class JcGraphImpl(
     override val entry: JcInst get() = instructions.first()
     override val exits: List<JcInst> by lazy { instructions.filterIsInstance<JcTerminatingInst>() }
 
+    internal val dominators by lazy { indexedDominators(isPost = false) }
+    internal val postDominators by lazy { indexedDominators(isPost = true) }
+
     /**
      * returns a map of possible exceptions that may be thrown from this method
      * for each instruction of in the graph in determines possible thrown exceptions using
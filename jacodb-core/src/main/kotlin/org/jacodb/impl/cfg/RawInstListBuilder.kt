@@ -16,9 +16,6 @@
 
 package org.jacodb.impl.cfg
 
-import kotlinx.collections.immutable.PersistentList
-import kotlinx.collections.immutable.persistentListOf
-import kotlinx.collections.immutable.toPersistentList
 import org.jacodb.api.JcMethod
 import org.jacodb.api.JcParameter
 import org.jacodb.api.PredefinedPrimitives
@@ -307,9 +304,12 @@ class RawInstListBuilder(
     private val keepLocalVariableNames: Boolean,
 ) {
     private val frames = identityMap<AbstractInsnNode, Frame>()
+
+    // frames are read only for predecessors of labels, snapshots of current frame are taken only for them
+    private val frameReaders = identityMap<AbstractInsnNode, Boolean>()
     private val labels = identityMap<LabelNode, JcRawLabelInst>()
     private lateinit var lastFrameState: FrameState
-    private lateinit var currentFrame: Frame
+    private val currentFrame = MutableFrame()
     private val ENTRY = InsnNode(-1)
 
     private val deadInstructions = hashSetOf<AbstractInsnNode>()
@@ -342,8 +342,8 @@ class RawInstListBuilder(
     }
 
     private fun buildInstructions() {
-        currentFrame = createInitialFrame()
-        frames[ENTRY] = currentFrame
+        currentFrame.reset(createInitialFrame())
+        frames[ENTRY] = currentFrame.snapshot()
         val nodes = methodNode.instructions.toList()
         nodes.forEachIndexed { index, insn ->
             when (insn) {
@@ -369,7 +369,13 @@ class RawInstListBuilder(
             if (index != 1 && (preds.isNullOrEmpty() || preds.all { deadInstructions.contains(it) })) {
                 deadInstructions.add(insn)
             }
-            frames[insn] = currentFrame
+            recordFrame(insn)
+        }
+    }
+
+    private fun recordFrame(insn: AbstractInsnNode) {
+        if (frameReaders.containsKey(insn)) {
+            frames[insn] = currentFrame.snapshot()
         }
     }
 
@@ -490,9 +496,9 @@ class RawInstListBuilder(
         val locals = localsUnsafe().copyLocals(predFrames, curLabel)
 
         val stack = if (copyStack) {
-            stack.copyStack(predFrames).toPersistentList()
+            stack.copyStack(predFrames)
         } else {
-            persistentListOf()
+            emptyList()
         }
 
         return Frame(locals, stack)
@@ -500,18 +506,12 @@ class RawInstListBuilder(
 
     /**
      * represents the bytecode Frame: a set of active local variables and stack variables
-     * during the execution of the instruction
+     * during the execution of the instruction. Frames are immutable snapshots of [MutableFrame]
      */
-    private data class Frame(
+    private class Frame(
         private val locals: Array<JcRawValue?>,
-        val stack: PersistentList<JcRawValue>,
+        val stack: List<JcRawValue>,
     ) {
-        fun putLocal(variable: Int, value: JcRawValue): Frame {
-            val newLocals = locals.copyOf(maxOf(locals.size, variable + 1))
-            newLocals[variable] = value
-            return copy(locals = newLocals, stack = stack)
-        }
-
         fun hasLocal(variable: Int): Boolean = findLocal(variable) != null
 
         fun maxLocal(): Int = locals.lastIndex
@@ -521,20 +521,81 @@ class RawInstListBuilder(
         fun getLocal(variable: Int): JcRawValue = locals.getOrNull(variable)
             ?: error("No local variable $variable")
 
-        fun push(value: JcRawValue) = copy(locals = locals, stack = stack.add(value))
-        fun peek() = stack.last()
-        fun pop(): Pair<Frame, JcRawValue> =
-            copy(locals = locals, stack = stack.removeAt(stack.lastIndex)) to stack.last()
+        fun localsCopy(): Array<JcRawValue?> = locals.copyOf()
     }
 
-    private fun pop(): JcRawValue {
-        val (frame, value) = currentFrame.pop()
-        currentFrame = frame
-        return value
+    /**
+     * frame of currently processed instruction. It is updated in place and copied only when
+     * snapshot is required for instruction which frame is read later or when new block starts
+     */
+    private class MutableFrame {
+        private var locals: Array<JcRawValue?> = emptyArray()
+        private var stack: Array<JcRawValue?> = arrayOfNulls(8)
+        private var stackSize = 0
+
+        // snapshot equal to current state if there were no changes after it was taken
+        private var snapshot: Frame? = null
+
+        fun reset(frame: Frame) {
+            if (frame === snapshot) {
+                return
+            }
+            locals = frame.localsCopy()
+            stackSize = frame.stack.size
+            if (stack.size < stackSize) {
+                stack = arrayOfNulls(stackSize * 2)
+            }
+            frame.stack.forEachIndexed { index, value -> stack[index] = value }
+            snapshot = frame
+        }
+
+        fun snapshot(): Frame {
+            return snapshot ?: Frame(
+                locals.copyOf(),
+                List(stackSize) { stack[it]!! }
+            ).also { snapshot = it }
+        }
+
+        fun putLocal(variable: Int, value: JcRawValue) {
+            if (variable >= locals.size) {
+                locals = locals.copyOf(variable + 1)
+            }
+            locals[variable] = value
+            snapshot = null
+        }
+
+        fun findLocal(variable: Int): JcRawValue? = locals.getOrNull(variable)
+
+        fun getLocal(variable: Int): JcRawValue = locals.getOrNull(variable)
+            ?: error("No local variable $variable")
+
+        fun push(value: JcRawValue) {
+            if (stackSize == stack.size) {
+                stack = stack.copyOf(stackSize * 2)
+            }
+            stack[stackSize++] = value
+            snapshot = null
+        }
+
+        fun peek(): JcRawValue {
+            if (stackSize == 0) {
+                throw NoSuchElementException("Stack is empty")
+            }
+            return stack[stackSize - 1]!!
+        }
+
+        fun pop(): JcRawValue {
+            val value = peek()
+            stack[--stackSize] = null
+            snapshot = null
+            return value
+        }
     }
 
+    private fun pop(): JcRawValue = currentFrame.pop()
+
     private fun push(value: JcRawValue) {
-        currentFrame = currentFrame.push(value)
+        currentFrame.push(value)
     }
 
     private fun peek(): JcRawValue = currentFrame.peek()
@@ -566,17 +627,17 @@ class RawInstListBuilder(
         return if (oldVar != null) {
             if (oldVar.typeName == expr.typeName || (expr is JcRawNullConstant && !oldVar.typeName.isPrimitive)) {
                 if (override) {
-                    currentFrame = currentFrame.putLocal(variable, expr)
+                    currentFrame.putLocal(variable, expr)
                     JcRawAssignInst(method, expr, expr)
                 } else {
                     JcRawAssignInst(method, oldVar, expr)
                 }
             } else if (oldVar is JcRawArgument) {
-                currentFrame = currentFrame.putLocal(variable, expr)
+                currentFrame.putLocal(variable, expr)
                 JcRawAssignInst(method, oldVar, expr)
             } else {
                 val assignment = nextRegisterDeclaredVariable(expr.typeName, variable, insn)
-                currentFrame = currentFrame.putLocal(variable, assignment)
+                currentFrame.putLocal(variable, assignment)
                 JcRawAssignInst(method, assignment, expr)
             }
         } else {
@@ -593,7 +654,7 @@ class RawInstListBuilder(
                 }
             val newLocal = nextRegisterDeclaredVariable(typeOfNewAssigment, variable, insn)
             val result = JcRawAssignInst(method, newLocal, expr)
-            currentFrame = currentFrame.putLocal(variable, newLocal)
+            currentFrame.putLocal(variable, newLocal)
             result
         }
     }
@@ -645,6 +706,15 @@ class RawInstListBuilder(
         methodNode.instructions.first?.let {
             predecessors.getOrPut(it, ::mutableListOf).add(ENTRY)
         }
+        buildPredecessors()
+        for ((insn, insnPredecessors) in predecessors) {
+            if (insn is LabelNode) {
+                insnPredecessors.forEach { frameReaders[it] = true }
+            }
+        }
+    }
+
+    private fun buildPredecessors() {
         for (insn in methodNode.instructions) {
             if (insn is JumpInsnNode) {
                 predecessors.getOrPut(insn.label, ::mutableListOf).add(insn)
@@ -713,7 +783,7 @@ class RawInstListBuilder(
             else argCounter++
         }
 
-        return Frame(locals.copyOf(localsRealSize), persistentListOf())
+        return Frame(locals.copyOf(localsRealSize), emptyList())
     }
 
     private fun thisRef() = JcRawThis(method.enclosingClass.name.typeName())
@@ -924,8 +994,8 @@ class RawInstListBuilder(
             val rightName = right.typeName
             val max = maxOfPrimitiveTypes(leftName, rightName)
             return when {
-                max.lessThen(PredefinedPrimitives.Int) -> TypeNameImpl(PredefinedPrimitives.Int)
-                else -> TypeNameImpl(max)
+                max.lessThen(PredefinedPrimitives.Int) -> PredefinedPrimitives.Int.typeName()
+                else -> max.typeName()
             }
         }
         return left
@@ -936,7 +1006,7 @@ class RawInstListBuilder(
         val expr = when (val opcode = insn.opcode) {
             in Opcodes.INEG..Opcodes.DNEG -> {
                 val resolvedType = maxOfPrimitiveTypes(operand.typeName.typeName, PredefinedPrimitives.Int)
-                JcRawNegExpr(TypeNameImpl(resolvedType), operand)
+                JcRawNegExpr(resolvedType.typeName(), operand)
             }
 
             Opcodes.ARRAYLENGTH -> JcRawLengthExpr(PredefinedPrimitives.Int.typeName(), operand)
@@ -1246,9 +1316,9 @@ class RawInstListBuilder(
         val catchEntries = methodNode.tryCatchBlocks.filter { it.handler == currentEntry }
 
         if (catchEntries.isEmpty()) {
-            currentFrame = lastFrameState.copyToFrame(predecessorFrames, currentEntry, copyStack = true)
+            currentFrame.reset(lastFrameState.copyToFrame(predecessorFrames, currentEntry, copyStack = true))
         } else {
-            currentFrame = lastFrameState.copyToFrame(predecessorFrames, currentEntry, copyStack = false)
+            currentFrame.reset(lastFrameState.copyToFrame(predecessorFrames, currentEntry, copyStack = false))
 
             val throwable = nextRegister(catchEntries.commonTypeOrDefault.typeName())
             val entries = catchEntries.map {
@@ -1269,7 +1339,7 @@ class RawInstListBuilder(
             addInstruction(currentEntry, catchInst, index = 1)
             var curInst = currentEntry as AbstractInsnNode
             while (curInst != insnNode) {
-                frames[curInst] = currentFrame
+                recordFrame(curInst)
                 curInst = curInst.next
             }
 
@@ -1278,7 +1348,7 @@ class RawInstListBuilder(
         var curNode: AbstractInsnNode = insnNode
         while (curNode !is LabelNode) {
             curNode = curNode.previous
-            frames[curNode] = currentFrame
+            recordFrame(curNode)
         }
     }
 
@@ -1422,7 +1492,7 @@ class RawInstListBuilder(
 
     private fun mergeFrames(frames: Map<AbstractInsnNode, Frame>, curLabel: LabelNode): Frame {
         val frameSet = frames.values
-        if (frames.isEmpty()) return currentFrame
+        if (frames.isEmpty()) return currentFrame.snapshot()
         if (frames.size == 1) return frameSet.first()
 
         val maxLocalVar = frameSet.minOf { it.maxLocal() }
@@ -1470,7 +1540,7 @@ class RawInstListBuilder(
             stackRanges.add(type)
         }
 
-        val newStack = stackRanges.copyStack(frames).toPersistentList()
+        val newStack = stackRanges.copyStack(frames)
 
         return Frame(newLocals, newStack)
     }
@@ -1481,9 +1551,9 @@ class RawInstListBuilder(
         val predecessors = predecessors.getOrDefault(insnNode, emptySet()).filter { !deadInstructions.contains(it) }
         val predecessorFrames = predecessors.mapNotNull { frames[it] }
         if (predecessorFrames.size == 1) {
-            currentFrame = predecessorFrames.first()
+            currentFrame.reset(predecessorFrames.first())
         } else {
-            currentFrame = mergeFrames(predecessors.zip(predecessorFrames).toMap(), insnNode)
+            currentFrame.reset(mergeFrames(predecessors.zip(predecessorFrames).toMap(), insnNode))
         }
         val catchEntries = methodNode.tryCatchBlocks.filter { it.handler == insnNode }
 
@@ -41,8 +41,13 @@ import org.jacodb.impl.cfg.util.NULL
 import org.jacodb.impl.cfg.util.STRING_CLASS
 import org.jacodb.impl.cfg.util.typeName
 
+private val rawNull = JcRawNullConstant(NULL)
+
+// constants loaded with ICONST_M1..ICONST_5 instructions
+private val rawSmallInts = Array(7) { org.jacodb.api.cfg.JcRawInt(it - 1, PredefinedPrimitives.Int.typeName()) }
+
 @JvmName("rawNull")
-fun JcRawNull() = JcRawNullConstant(NULL)
+fun JcRawNull() = rawNull
 
 @JvmName("rawBool")
 fun JcRawBool(value: Boolean) = org.jacodb.api.cfg.JcRawBool(value, PredefinedPrimitives.Boolean.typeName())
@@ -57,7 +62,8 @@ fun JcRawShort(value: Short) = org.jacodb.api.cfg.JcRawShort(value, PredefinedPr
 fun JcRawChar(value: Char) = org.jacodb.api.cfg.JcRawChar(value, PredefinedPrimitives.Char.typeName())
 
 @JvmName("rawInt")
-fun JcRawInt(value: Int) = org.jacodb.api.cfg.JcRawInt(value, PredefinedPrimitives.Int.typeName())
+fun JcRawInt(value: Int) = rawSmallInts.getOrNull(value + 1)
+    ?: org.jacodb.api.cfg.JcRawInt(value, PredefinedPrimitives.Int.typeName())
 
 @JvmName("rawLong")
 fun JcRawLong(value: Long) = org.jacodb.api.cfg.JcRawLong(value, PredefinedPrimitives.Long.typeName())
@@ -0,0 +1,259 @@
+/*
+ *  Copyright 2022 UnitTestBot contributors (utbot.org)
+ * <p>
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ * <p>
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+
+package org.jacodb.impl.cfg.graphs
+
+import org.jacodb.api.cfg.JcBasicBlock
+import org.jacodb.api.cfg.JcBlockGraph
+import org.jacodb.api.cfg.JcBytecodeGraph
+import org.jacodb.api.cfg.JcGraph
+import org.jacodb.api.cfg.JcInst
+import org.jacodb.impl.cfg.JcGraphImpl
+
+/**
+ * Dominators (or post-dominators, if [isPost] is `true`) of a graph computed over dense node indices with the
+ * iterative algorithm of Cooper, Harvey and Kennedy, "A Simple, Fast Dominance Algorithm".
+ *
+ * Unlike [GraphDominators] only the immediate dominator of each node is stored, so memory is linear in the size of
+ * the graph. The dominator tree is numbered in pre/post order, so [isDominatedBy] takes constant time.
+ * Nodes are addressed by their dense indices (locations of instructions or order of basic blocks), not by hashing.
+ *
+ * Both normal and exceptional edges are followed. Entries (exits for post-dominators) have no immediate dominator.
+ * Nodes unreachable from them are dominated only by themselves.
+ */
+class IndexedDominators<NODE> internal constructor(
+    val graph: JcBytecodeGraph<NODE>,
+    val isPost: Boolean,
+    private val nodes: List<NODE>,
+    // dense index of the node in [nodes], may be arbitrary for nodes of other graphs
+    private val indexOf: (NODE) -> Int,
+) {
+
+    private val size = nodes.size
+
+    // index of the virtual root dominating all the entries
+    private val root = size
+
+    // immediate dominator of each node, `root` for entries and `UNREACHABLE` for nodes not reachable from them
+    private val idoms = IntArray(size + 1) { UNREACHABLE }
+    private val treePreorder = IntArray(size + 1)
+    private val treePostorder = IntArray(size + 1)
+
+    // children of the dominator tree as linked lists over arrays
+    private val firstChild = IntArray(size + 1) { UNREACHABLE }
+    private val nextSibling = IntArray(size + 1) { UNREACHABLE }
+
+    init {
+        compute()
+        numberTree()
+    }
+
+    private fun compute() {
+        val successors = Array(size) { edges(nodes[it], forward = !isPost) }
+        val predecessors = Array(size) { edges(nodes[it], forward = isPost) }
+        val heads = (if (isPost) graph.exits else graph.entries).mapTo(LinkedHashSet()) { it.index }.toIntArray()
+        val isHead = BooleanArray(size).also { array -> heads.forEach { array[it] = true } }
+
+        // depth-first search from the virtual root
+        val postorder = IntArray(size + 1) { UNREACHABLE }
+        val reversePostorder = IntArray(size + 1)
+        var count = 0
+        val stack = IntArray(size + 1)
+        val nextChild = IntArray(size + 1)
+        val visited = BooleanArray(size + 1)
+        var top = 0
+        stack[0] = root
+        visited[root] = true
+        while (top >= 0) {
+            val current = stack[top]
+            val children = if (current == root) heads else successors[current]
+            if (nextChild[current] < children.size) {
+                val child = children[nextChild[current]++]
+                if (!visited[child]) {
+                    visited[child] = true
+                    stack[++top] = child
+                }
+            } else {
+                postorder[current] = count
+                reversePostorder[size - count] = current
+                count++
+                top--
+            }
+        }
+        val first = size + 1 - count
+
+        fun intersect(left: Int, right: Int): Int {
+            var finger1 = left
+            var finger2 = right
+            while (finger1 != finger2) {
+                while (postorder[finger1] < postorder[finger2]) finger1 = idoms[finger1]
+                while (postorder[finger2] < postorder[finger1]) finger2 = idoms[finger2]
+            }
+            return finger1
+        }
+
+        idoms[root] = root
+        var changed = true
+        while (changed) {
+            changed = false
+            // skip the root, which is the first in reverse postorder
+            for (i in first + 1..size) {
+                val node = reversePostorder[i]
+                var newIdom = if (isHead[node]) root else UNREACHABLE
+                for (pred in predecessors[node]) {
+                    if (idoms[pred] == UNREACHABLE) continue
+                    newIdom = if (newIdom == UNREACHABLE) pred else intersect(pred, newIdom)
+                }
+                if (idoms[node] != newIdom) {
+                    idoms[node] = newIdom
+                    changed = true
+                }
+            }
+        }
+    }
+
+    private fun numberTree() {
+        for (node in size - 1 downTo 0) {
+            val idom = idoms[node]
+            if (idom != UNREACHABLE) {
+                nextSibling[node] = firstChild[idom]
+                firstChild[idom] = node
+            }
+        }
+        val stack = IntArray(size + 1)
+        val nextChild = firstChild.copyOf()
+        var preorder = 0
+        var postorder = 0
+        var top = 0
+        stack[0] = root
+        treePreorder[root] = preorder++
+        while (top >= 0) {
+            val current = stack[top]
+            val child = nextChild[current]
+            if (child != UNREACHABLE) {
+                nextChild[current] = nextSibling[child]
+                treePreorder[child] = preorder++
+                stack[++top] = child
+            } else {
+                treePostorder[current] = postorder++
+                top--
+            }
+        }
+    }
+
+    private fun edges(node: NODE, forward: Boolean): IntArray {
+        val result = if (forward) {
+            graph.successors(node) + graph.catchers(node)
+        } else {
+            graph.predecessors(node) + graph.throwers(node)
+        }
+        return result.map { it.index }.toIntArray()
+    }
+
+    private val NODE.index: Int
+        get() {
+            val index = indexOf(this)
+            require(index in 0 until size && nodes[index] == this) { "No node $this in the graph" }
+            return index
+        }
+
+    /**
+     * @return the immediate dominator of [node] or `null` if [node] is an entry or is unreachable from entries
+     */
+    fun immediateDominator(node: NODE): NODE? {
+        val idom = idoms[node.index]
+        return if (idom == UNREACHABLE || idom == root) null else nodes[idom]
+    }
+
+    /**
+     * @return nodes dominated immediately by [node], i.e. its children in the dominator tree
+     */
+    fun immediatelyDominated(node: NODE): List<NODE> {
+        val result = arrayListOf<NODE>()
+        var child = firstChild[node.index]
+        while (child != UNREACHABLE) {
+            result.add(nodes[child])
+            child = nextSibling[child]
+        }
+        return result
+    }
+
+    /**
+     * @return all dominators of [node] from the node itself up to the root of the dominator tree
+     */
+    fun dominators(node: NODE): List<NODE> {
+        val result = arrayListOf<NODE>()
+        var current = node.index
+        while (current != UNREACHABLE && current != root) {
+            result.add(nodes[current])
+            current = idoms[current]
+        }
+        return result
+    }
+
+    fun isDominatedBy(node: NODE, dominator: NODE): Boolean {
+        val index = node.index
+        val dominatorIndex = dominator.index
+        if (index == dominatorIndex) {
+            return true
+        }
+        if (idoms[index] == UNREACHABLE || idoms[dominatorIndex] == UNREACHABLE) {
+            return false
+        }
+        return treePreorder[dominatorIndex] <= treePreorder[index] &&
+                treePostorder[index] <= treePostorder[dominatorIndex]
+    }
+
+    fun isDominatedByAll(node: NODE, dominators: Collection<NODE>): Boolean {
+        return dominators.all { isDominatedBy(node, it) }
+    }
+
+    private companion object {
+        private const val UNREACHABLE = -1
+    }
+}
+
+/**
+ * Dominators of the graph, computed once per [JcGraphImpl] and thus cached together with it by the classpath cache
+ */
+fun JcGraph.dominators(): IndexedDominators<JcInst> {
+    return (this as? JcGraphImpl)?.dominators ?: indexedDominators(isPost = false)
+}
+
+/**
+ * Post-dominators of the graph, computed once per [JcGraphImpl] and thus cached together with it by the classpath cache
+ */
+fun JcGraph.postDominators(): IndexedDominators<JcInst> {
+    return (this as? JcGraphImpl)?.postDominators ?: indexedDominators(isPost = true)
+}
+
+fun JcBlockGraph.dominators(): IndexedDominators<JcBasicBlock> = indexedDominators(isPost = false)
+
+fun JcBlockGraph.postDominators(): IndexedDominators<JcBasicBlock> = indexedDominators(isPost = true)
+
+// instructions of the graph are indexed by their locations
+internal fun JcGraph.indexedDominators(isPost: Boolean): IndexedDominators<JcInst> {
+    return IndexedDominators(this, isPost, instructions) { it.location.index }
+}
+
+// blocks are ordered by their starts, so the index of a block is looked up by the index of its first instruction
+private fun JcBlockGraph.indexedDominators(isPost: Boolean): IndexedDominators<JcBasicBlock> {
+    val blocks = toList()
+    val blockByStart = IntArray(jcGraph.instructions.size) { -1 }
+    blocks.forEachIndexed { index, block -> blockByStart[block.start.index] = index }
+    return IndexedDominators(this, isPost, blocks) { blockByStart.getOrElse(it.start.index) { -1 } }
+}
@@ -20,7 +20,7 @@ package org.jacodb.impl.cfg.util
 
 import org.jacodb.api.cfg.JcGraph
 import org.jacodb.api.cfg.JcInst
-import org.jacodb.impl.cfg.graphs.findDominators
+import org.jacodb.impl.cfg.graphs.dominators
 import java.util.*
 import kotlin.LazyThreadSafetyMode.PUBLICATION
 
@@ -67,14 +67,12 @@ class JcLoop(
 
 val JcGraph.loops: Set<JcLoop>
     get() {
-        val finder = findDominators()
+        val finder = dominators()
         val loops = HashMap<JcInst, MutableList<JcInst>>()
         instructions.forEach { inst ->
-            val dominators = finder.dominators(inst)
-
             val headers = arrayListOf<JcInst>()
             successors(inst).forEach {
-                if (dominators.contains(it)) {
+                if (finder.isDominatedBy(inst, it)) {
                     headers.add(it)
                 }
             }
@@ -16,6 +16,7 @@
 
 package org.jacodb.impl.cfg.util
 
+import com.google.common.cache.CacheBuilder
 import org.jacodb.api.PredefinedPrimitives
 import org.jacodb.api.TypeName
 import org.jacodb.api.ext.jcdbName
@@ -64,7 +65,12 @@ internal val TypeName.isDWord
         else -> false
     }
 
-internal fun String.typeName(): TypeName = TypeNameImpl(this.jcdbName())
+// raw name -> type name. Type names are immutable so they are shared between all methods of all classpaths
+private val typeNames = CacheBuilder.newBuilder()
+    .weakValues()
+    .build<String, TypeName>()
+
+internal fun String.typeName(): TypeName = typeNames.get(this) { TypeNameImpl(this.jcdbName()) }
 internal fun TypeName.asArray(dimensions: Int = 1) = "$typeName${"[]".repeat(dimensions)}".typeName()
 internal fun TypeName.elementType() = elementTypeOrNull() ?: this
 
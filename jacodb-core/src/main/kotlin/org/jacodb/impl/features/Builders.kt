@@ -27,14 +27,15 @@ import org.jacodb.impl.storage.jooq.tables.references.SYMBOLS
 import org.jacodb.impl.storage.runBatch
 import org.jacodb.impl.storage.withoutAutoCommit
 import org.jooq.DSLContext
+import org.objectweb.asm.ClassReader
+import org.objectweb.asm.ClassVisitor
+import org.objectweb.asm.MethodVisitor
 import org.objectweb.asm.Opcodes
 import org.objectweb.asm.Type
-import org.objectweb.asm.tree.ClassNode
-import org.objectweb.asm.tree.MethodNode
 
-private val MethodNode.isGetter: Boolean
+private val String.isGetterName: Boolean
     get() {
-        return name.startsWith("get")
+        return startsWith("get")
     }
 
 private val Int.isPublic get() = this and Opcodes.ACC_PUBLIC != 0
@@ -47,40 +48,69 @@ private data class BuilderMethod(
 )
 
 class BuildersIndexer(val persistence: JcDatabasePersistence, private val location: RegisteredLocation) :
-    ByteCodeIndexer {
+    ByteCodeVisitorIndexer {
+
+    override val parsingOptions get() = ClassReader.SKIP_CODE
 
     // class -> (caller_class, offset, priority)
     private val potentialBuilders = hashMapOf<String, HashSet<BuilderMethod>>()
 
-    override fun index(classNode: ClassNode) {
-        val callerClass = classNode.name
-        classNode.methods.forEachIndexed { index, methodNode ->
-            val isStatic = methodNode.access.isStatic
-            if (methodNode.access.isPublic && !methodNode.isGetter) {
-                val returnType = Type.getMethodType(methodNode.desc).returnType.internalName
-                if (
-                    !jvmPrimitiveNames.contains(returnType) && // not interesting in primitives
-                    !returnType.startsWith("[") && // not interesting in arrays
-                    !returnType.startsWith("java/") // not interesting in java package classes
-                ) {
-                    val noParams = Type.getArgumentTypes(methodNode.desc).isNullOrEmpty()
-                    val isBuildName = methodNode.name.equals("build")
-                    val priority = when {
-                        isStatic && noParams && returnType == callerClass -> 15
-                        isStatic && noParams -> 10
-                        isBuildName && noParams -> 7
-                        isStatic -> 5
-                        isBuildName -> 3
-                        else -> 0
-                    }
-                    potentialBuilders.getOrPut(returnType) { hashSetOf() }
-                        .add(BuilderMethod(callerClass, index, priority))
+    private val visitor = object : ClassVisitor(Opcodes.ASM9) {
+
+        private var callerClass = ""
+        private var methodIndex = 0
+
+        override fun visit(
+            version: Int,
+            access: Int,
+            name: String,
+            signature: String?,
+            superName: String?,
+            interfaces: Array<out String>?
+        ) {
+            callerClass = name
+            methodIndex = 0
+        }
+
+        override fun visitMethod(
+            access: Int,
+            name: String,
+            descriptor: String,
+            signature: String?,
+            exceptions: Array<out String>?
+        ): MethodVisitor? {
+            index(callerClass, methodIndex++, access, name, descriptor)
+            return null
+        }
+    }
+
+    override fun classVisitor(): ClassVisitor = visitor
+
+    private fun index(callerClass: String, index: Int, access: Int, name: String, desc: String) {
+        val isStatic = access.isStatic
+        if (access.isPublic && !name.isGetterName) {
+            val returnType = Type.getReturnType(desc).internalName
+            if (
+                !jvmPrimitiveNames.contains(returnType) && // not interesting in primitives
+                !returnType.startsWith("[") && // not interesting in arrays
+                !returnType.startsWith("java/") // not interesting in java package classes
+            ) {
+                val noParams = Type.getArgumentTypes(desc).isNullOrEmpty()
+                val isBuildName = name == "build"
+                val priority = when {
+                    isStatic && noParams && returnType == callerClass -> 15
+                    isStatic && noParams -> 10
+                    isBuildName && noParams -> 7
+                    isStatic -> 5
+                    isBuildName -> 3
+                    else -> 0
                 }
+                potentialBuilders.getOrPut(returnType) { hashSetOf() }
+                    .add(BuilderMethod(callerClass, index, priority))
             }
         }
     }
 
-
     override fun flush(jooq: DSLContext) {
         jooq.withoutAutoCommit { conn ->
             conn.runBatch(BUILDERS) {
@@ -28,8 +28,10 @@ import org.jacodb.impl.storage.jooq.tables.references.SYMBOLS
 import org.jacodb.impl.storage.withoutAutoCommit
 import org.jooq.DSLContext
 import org.jooq.impl.DSL
+import org.objectweb.asm.ClassReader
+import org.objectweb.asm.ClassVisitor
+import org.objectweb.asm.Opcodes
 import org.objectweb.asm.Type
-import org.objectweb.asm.tree.ClassNode
 import java.util.concurrent.ConcurrentHashMap
 import kotlin.math.min
 
@@ -41,16 +43,32 @@ class InMemoryHierarchyIndexer(
     persistence: JcDatabasePersistence,
     private val location: RegisteredLocation,
     private val hierarchy: InMemoryHierarchyCache
-) : ByteCodeIndexer {
+) : ByteCodeVisitorIndexer {
+
+    override val parsingOptions get() = ClassReader.SKIP_CODE
 
     private val interner = persistence.symbolInterner
 
-    override fun index(classNode: ClassNode) {
-        val clazzSymbolId = interner.findOrNew(classNode.name.className)
-        val superName = classNode.superName
+    private val visitor = object : ClassVisitor(Opcodes.ASM9) {
+        override fun visit(
+            version: Int,
+            access: Int,
+            name: String,
+            signature: String?,
+            superName: String?,
+            interfaces: Array<out String>?
+        ) {
+            index(name, superName, interfaces.orEmpty())
+        }
+    }
+
+    override fun classVisitor(): ClassVisitor = visitor
+
+    private fun index(name: String, superName: String?, interfaces: Array<out String>) {
+        val clazzSymbolId = interner.findOrNew(name.className)
         val superclasses = when {
-            superName != null && superName != objectJvmName -> classNode.interfaces + superName
-            else -> classNode.interfaces
+            superName != null && superName != objectJvmName -> interfaces.toList() + superName
+            else -> interfaces.toList()
         }
         superclasses.map { interner.findOrNew(it.className) }
             .forEach {
@@ -24,19 +24,25 @@ import org.jacodb.impl.storage.jooq.tables.references.CALLS
 import org.jacodb.impl.storage.jooq.tables.references.CLASSES
 import org.jacodb.impl.storage.jooq.tables.references.SYMBOLS
 import org.jooq.DSLContext
+import org.objectweb.asm.ClassReader
+import org.objectweb.asm.ClassVisitor
+import org.objectweb.asm.MethodVisitor
+import org.objectweb.asm.Opcodes
 import org.objectweb.asm.Type
-import org.objectweb.asm.tree.ClassNode
-import org.objectweb.asm.tree.FieldInsnNode
-import org.objectweb.asm.tree.MethodInsnNode
 
 
-private class MethodMap(size: Int) {
+private class MethodMap {
 
-    private val ticks = BooleanArray(size)
-    private val array = ShortArray(size)
+    private var ticks = BooleanArray(DEFAULT_CAPACITY)
+    private var array = ShortArray(DEFAULT_CAPACITY)
     private var position = 0
 
     fun tick(index: Int) {
+        if (index >= ticks.size) {
+            val newSize = maxOf(index + 1, ticks.size * 2)
+            ticks = ticks.copyOf(newSize)
+            array = array.copyOf(newSize)
+        }
         if (!ticks[index]) {
             array[position] = index.toShort()
             ticks[index] = true
@@ -62,39 +68,71 @@ private class MethodMap(size: Int) {
         }
         return buffer
     }
+
+    private companion object {
+        private const val DEFAULT_CAPACITY = 8
+    }
 }
 
 class UsagesIndexer(private val location: RegisteredLocation) :
-    ByteCodeIndexer {
+    ByteCodeVisitorIndexer {
+
+    override val parsingOptions get() = ClassReader.SKIP_DEBUG or ClassReader.SKIP_FRAMES
 
     // callee_class -> (callee_name, callee_desc, opcode) -> caller
     private val usages = hashMapOf<String, HashMap<Triple<String, String?, Int>, HashMap<String, MethodMap>>>()
 
-    override fun index(classNode: ClassNode) {
-        val callerClass = Type.getObjectType(classNode.name).className
-        val size = classNode.methods.size
-        classNode.methods.forEachIndexed { index, methodNode ->
-            methodNode.instructions.forEach {
-                var key: Triple<String, String?, Int>? = null
-                var callee: String? = null
-                when (it) {
-                    is FieldInsnNode -> {
-                        callee = it.owner
-                        key = Triple(it.name, null, it.opcode)
-                    }
+    private val visitor = object : ClassVisitor(Opcodes.ASM9) {
 
-                    is MethodInsnNode -> {
-                        callee = it.owner
-                        key = Triple(it.name, it.desc, it.opcode)
-                    }
-                }
-                if (key != null && callee != null) {
-                    usages.getOrPut(callee) { hashMapOf() }
-                        .getOrPut(key) { hashMapOf() }
-                        .getOrPut(callerClass) { MethodMap(size) }.tick(index)
-                }
+        private var callerClass = ""
+        private var methodIndex = -1
+
+        private val methodVisitor = object : MethodVisitor(Opcodes.ASM9) {
+            override fun visitFieldInsn(opcode: Int, owner: String, name: String, descriptor: String) {
+                addUsage(callerClass, methodIndex, owner, Triple(name, null, opcode))
+            }
+
+            override fun visitMethodInsn(
+                opcode: Int,
+                owner: String,
+                name: String,
+                descriptor: String,
+                isInterface: Boolean
+            ) {
+                addUsage(callerClass, methodIndex, owner, Triple(name, descriptor, opcode))
             }
         }
+
+        override fun visit(
+            version: Int,
+            access: Int,
+            name: String,
+            signature: String?,
+            superName: String?,
+            interfaces: Array<out String>?
+        ) {
+            callerClass = Type.getObjectType(name).className
+            methodIndex = -1
+        }
+
+        override fun visitMethod(
+            access: Int,
+            name: String,
+            descriptor: String,
+            signature: String?,
+            exceptions: Array<out String>?
+        ): MethodVisitor {
+            methodIndex++
+            return methodVisitor
+        }
+    }
+
+    override fun classVisitor(): ClassVisitor = visitor
+
+    private fun addUsage(callerClass: String, methodIndex: Int, callee: String, key: Triple<String, String?, Int>) {
+        usages.getOrPut(callee) { hashMapOf() }
+            .getOrPut(key) { hashMapOf() }
+            .getOrPut(callerClass) { MethodMap() }.tick(methodIndex)
     }
 
     override fun flush(jooq: DSLContext) {
@@ -27,6 +27,7 @@ import org.jacodb.api.JcClasspathExtFeature.JcResolvedTypeResult
 import org.jacodb.api.JcFeatureEvent
 import org.jacodb.api.JcMethod
 import org.jacodb.api.JcMethodExtFeature
+import org.jacodb.api.JcMetrics
 import org.jacodb.api.JcMethodExtFeature.JcFlowGraphResult
 import org.jacodb.api.JcMethodExtFeature.JcInstListResult
 import org.jacodb.api.JcMethodExtFeature.JcRawInstListResult
@@ -62,26 +63,66 @@ open class ClasspathCache(settings: JcCacheSettings) : JcClasspathExtFeature, Jc
     private val instCache = segmentBuilder(settings.instLists)
         .build<JcMethod, JcInstList<JcInst>>()
 
+    // graphs keep their lazily computed dominators, so those are cached along with them
     private val cfgCache = segmentBuilder(settings.flowGraphs)
         .build<JcMethod, JcGraph>()
 
 
     override fun tryFindClass(classpath: JcClasspath, name: String): JcResolvedClassResult? {
         return classesCache.getIfPresent(name)
+            .recordTo(classpath.db.metrics) { it.classes }
     }
 
     override fun tryFindType(classpath: JcClasspath, name: String): JcResolvedTypeResult? {
         return typesCache.getIfPresent(name)
+            .recordTo(classpath.db.metrics) { it.types }
     }
 
-    override fun flowGraph(method: JcMethod) = cfgCache.getIfPresent(method)?.let {
-        JcFlowGraphResultImpl(method, it)
+    override fun flowGraph(method: JcMethod) = cfgCache.getIfPresent(method)
+        .recordTo(method.metrics) { it.cfg }?.let {
+            JcFlowGraphResultImpl(method, it)
+        }
+
+    override fun instList(method: JcMethod) = instCache.getIfPresent(method)
+        .recordTo(method.metrics) { it.instructions }?.let {
+            JcInstListResultImpl(method, it)
+        }
+
+    override fun rawInstList(method: JcMethod) = rawInstCache.getIfPresent(method)
+        .recordTo(method.metrics) { it.rawInstructions }?.let {
+            JcRawInstListResultImpl(method, it)
+        }
+
+    private val JcMethod.metrics: JcMetrics
+        get() = enclosingClass.classpath.db.metrics
+
+    // counters are resolved once per metrics of the database, not on every cache access
+    @Volatile
+    private var meters: CacheMeters? = null
+
+    private inline fun <T> T?.recordTo(metrics: JcMetrics, counters: (CacheMeters) -> HitCounters): T? {
+        if (metrics.isEnabled) {
+            val current = meters?.takeIf { it.metrics === metrics } ?: CacheMeters(metrics).also { meters = it }
+            counters(current).record(hit = this != null)
+        }
+        return this
     }
-    override fun instList(method: JcMethod) = instCache.getIfPresent(method)?.let {
-        JcInstListResultImpl(method, it)
+
+    private class CacheMeters(val metrics: JcMetrics) {
+        val classes = HitCounters(metrics, "classes")
+        val types = HitCounters(metrics, "types")
+        val cfg = HitCounters(metrics, "cfg")
+        val instructions = HitCounters(metrics, "instructions")
+        val rawInstructions = HitCounters(metrics, "raw-instructions")
     }
-    override fun rawInstList(method: JcMethod) = rawInstCache.getIfPresent(method)?.let {
-        JcRawInstListResultImpl(method, it)
+
+    private class HitCounters(metrics: JcMetrics, cache: String) {
+        private val hits = metrics.counter("cache.$cache.hits")
+        private val misses = metrics.counter("cache.$cache.misses")
+
+        fun record(hit: Boolean) {
+            (if (hit) hits else misses).increment()
+        }
     }
 
     override fun on(event: JcFeatureEvent) {
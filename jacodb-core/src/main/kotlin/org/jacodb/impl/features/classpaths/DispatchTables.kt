@@ -0,0 +1,110 @@
+/*
+ *  Copyright 2022 UnitTestBot contributors (utbot.org)
+ * <p>
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ * <p>
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package org.jacodb.impl.features.classpaths
+
+import com.google.common.cache.CacheBuilder
+import org.jacodb.api.JcClassOrInterface
+import org.jacodb.api.JcClasspath
+import org.jacodb.api.JcClasspathFeature
+import org.jacodb.api.JcMethod
+import org.jacodb.api.ext.findMethodOrNull
+
+/**
+ * virtual dispatch table of class: maps (name, description) of each virtual method
+ * visible in class to the method which is invoked for instance of this class
+ */
+class JcDispatchTable internal constructor(
+    val jcClass: JcClassOrInterface,
+    private val methods: Map<String, Map<String, JcMethod>>
+) {
+
+    /**
+     * @return method invoked by virtual call of method with [name] and [description] on instance of [jcClass]
+     */
+    fun resolve(name: String, description: String): JcMethod? = methods[name]?.get(description)
+
+    val implementations: Sequence<JcMethod>
+        get() = methods.values.asSequence().flatMap { it.values }
+
+    val size: Int get() = methods.values.sumOf { it.size }
+
+    internal fun copyTo(target: MutableMap<String, MutableMap<String, JcMethod>>) {
+        methods.forEach { (name, byDescription) ->
+            target.getOrPut(name) { HashMap(byDescription.size) }.putAll(byDescription)
+        }
+    }
+}
+
+/**
+ * Feature for O(1) resolution of virtual calls. Dispatch tables are built lazily for each requested class
+ * from tables of its super class and interfaces and are kept in bounded cache.
+ *
+ * Dispatch table is built according to JVM method selection rules: method declared in class overrides
+ * method of super class and both take precedence over default methods of interfaces. Package-private
+ * methods are treated as usual virtual methods.
+ *
+ * Instance of this feature should not be shared between classpaths.
+ */
+class JcDispatchTables(maxSize: Long = 10_000) : JcClasspathFeature {
+
+    private val tables = CacheBuilder.newBuilder()
+        .maximumSize(maxSize)
+        .build<JcClassOrInterface, JcDispatchTable>()
+
+    fun tableOf(jcClass: JcClassOrInterface): JcDispatchTable {
+        return tables.get(jcClass) { build(jcClass) }
+    }
+
+    fun resolve(jcClass: JcClassOrInterface, name: String, description: String): JcMethod? {
+        return tableOf(jcClass).resolve(name, description)
+    }
+
+    private fun build(jcClass: JcClassOrInterface): JcDispatchTable {
+        val methods = HashMap<String, MutableMap<String, JcMethod>>()
+        jcClass.superClass?.let { tableOf(it).copyTo(methods) }
+        for (method in jcClass.declaredMethods) {
+            if (method.isVirtual) {
+                methods.getOrPut(method.name) { HashMap() }[method.description] = method
+            }
+        }
+        for (iface in jcClass.interfaces) {
+            for (method in tableOf(iface).implementations) {
+                val byDescription = methods.getOrPut(method.name) { HashMap() }
+                val current = byDescription[method.description]
+                if (current == null || (current.isAbstract && !method.isAbstract)) {
+                    byDescription[method.description] = method
+                }
+            }
+        }
+        return JcDispatchTable(jcClass, methods)
+    }
+
+    private val JcMethod.isVirtual: Boolean
+        get() = !isStatic && !isPrivate && !isConstructor && !isClassInitializer
+}
+
+val JcClasspath.dispatchTables: JcDispatchTables?
+    get() = features?.firstNotNullOfOrNull { it as? JcDispatchTables }
+
+/**
+ * find method invoked by virtual call on instance of this class. Uses [JcDispatchTables] if it is installed
+ * into classpath and falls back to [findMethodOrNull] otherwise
+ */
+fun JcClassOrInterface.findVirtualMethodOrNull(name: String, description: String): JcMethod? {
+    val tables = classpath.dispatchTables ?: return findMethodOrNull(name, description)
+    return tables.resolve(this, name, description)
+}
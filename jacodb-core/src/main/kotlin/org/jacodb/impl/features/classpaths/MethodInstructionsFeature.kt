@@ -21,9 +21,11 @@ import org.jacodb.api.JcInstExtFeature
 import org.jacodb.api.JcMethod
 import org.jacodb.api.JcMethodExtFeature
 import org.jacodb.api.JcMethodExtFeature.JcInstListResult
+import org.jacodb.api.JcMetrics
 import org.jacodb.api.cfg.JcInst
 import org.jacodb.api.cfg.JcInstList
 import org.jacodb.api.cfg.JcRawInst
+import org.jacodb.api.measureNanos
 import org.jacodb.impl.cfg.JcGraphImpl
 import org.jacodb.impl.cfg.JcInstListBuilder
 import org.jacodb.impl.cfg.RawInstListBuilder
@@ -39,20 +41,48 @@ class MethodInstructionsFeature(
     private val JcMethod.methodFeatures
         get() = enclosingClass.classpath.features?.filterIsInstance<JcInstExtFeature>().orEmpty()
 
+    private val JcMethod.metrics: JcMetrics
+        get() = enclosingClass.classpath.db.metrics
+
+    // histograms are resolved once per metrics of the database, not on every build
+    @Volatile
+    private var cachedMeters: InstructionsMeters? = null
+
+    private val JcMetrics.meters: InstructionsMeters
+        get() = cachedMeters?.takeIf { it.metrics === this } ?: InstructionsMeters(this).also { cachedMeters = it }
+
+    private class InstructionsMeters(val metrics: JcMetrics) {
+        val flowGraph = metrics.histogram("cfg.flowGraph.nanos")
+        val instList = metrics.histogram("cfg.instList.nanos")
+        val rawInstList = metrics.histogram("cfg.rawInstList.nanos")
+    }
+
     @Synchronized
     override fun flowGraph(method: JcMethod): JcMethodExtFeature.JcFlowGraphResult {
-        return JcFlowGraphResultImpl(method, JcGraphImpl(method, method.instList.instructions))
+        val instructions = method.instList.instructions
+        val metrics = method.metrics
+        val graph = metrics.measureNanos(metrics.meters.flowGraph) {
+            JcGraphImpl(method, instructions)
+        }
+        return JcFlowGraphResultImpl(method, graph)
     }
 
     override fun instList(method: JcMethod): JcInstListResult {
-        val list: JcInstList<JcInst> = JcInstListBuilder(method, method.rawInstList).buildInstList()
+        val rawInstList = method.rawInstList
+        val metrics = method.metrics
+        val list: JcInstList<JcInst> = metrics.measureNanos(metrics.meters.instList) {
+            JcInstListBuilder(method, rawInstList).buildInstList()
+        }
         return JcInstListResultImpl(method, method.methodFeatures.fold(list) { value, feature ->
             feature.transformInstList(method, value)
         })
     }
 
     override fun rawInstList(method: JcMethod): JcMethodExtFeature.JcRawInstListResult {
-        val list: JcInstList<JcRawInst> = RawInstListBuilder(method, method.asmNode(), keepLocalVariableNames).build()
+        val metrics = method.metrics
+        val list: JcInstList<JcRawInst> = metrics.measureNanos(metrics.meters.rawInstList) {
+            RawInstListBuilder(method, method.asmNode(), keepLocalVariableNames).build()
+        }
         return JcRawInstListResultImpl(method, method.methodFeatures.fold(list) { value, feature ->
             feature.transformRawInstList(method, value)
         })
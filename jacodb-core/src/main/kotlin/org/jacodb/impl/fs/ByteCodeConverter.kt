@@ -164,7 +164,7 @@ val ClassSource.fullAsmNode: ClassNode
 //    return classNode
 //}
 
-private fun ClassSource.newClassNode(level: Int): ClassNode {
+internal fun ClassSource.newClassNode(level: Int): ClassNode {
     return ClassNode(Opcodes.ASM9).also {
         ClassReader(byteCode).accept(it, level)
     }
@@ -0,0 +1,168 @@
+/*
+ *  Copyright 2022 UnitTestBot contributors (utbot.org)
+ * <p>
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ * <p>
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package org.jacodb.impl.metrics
+
+import org.jacodb.api.JcCounter
+import org.jacodb.api.JcHistogram
+import org.jacodb.api.JcMetrics
+import java.lang.management.ManagementFactory
+import java.util.concurrent.ConcurrentHashMap
+import java.util.concurrent.atomic.AtomicLong
+import java.util.concurrent.atomic.AtomicLongArray
+import java.util.concurrent.atomic.LongAdder
+import javax.management.ObjectName
+
+/**
+ * In-process metrics.
+ *
+ * Counters are backed by [LongAdder] and histograms by fixed power-of-two buckets,
+ * so updating metrics never allocates. Metrics can be dumped in plain text format
+ * or exposed via JMX using [registerMBean].
+ */
+class InMemoryMetrics : JcMetrics {
+
+    private val counters = ConcurrentHashMap<String, InMemoryCounter>()
+    private val histograms = ConcurrentHashMap<String, InMemoryHistogram>()
+    private val gauges = ConcurrentHashMap<String, () -> Long>()
+
+    override val isEnabled: Boolean get() = true
+
+    override fun counter(name: String): JcCounter {
+        return counters[name] ?: counters.computeIfAbsent(name) { InMemoryCounter() }
+    }
+
+    override fun histogram(name: String): JcHistogram {
+        return histograms[name] ?: histograms.computeIfAbsent(name) { InMemoryHistogram() }
+    }
+
+    override fun gauge(name: String, value: () -> Long) {
+        gauges[name] = value
+    }
+
+    val counterValues: Map<String, Long>
+        get() {
+            val result = sortedMapOf<String, Long>()
+            counters.forEach { (name, counter) -> result[name] = counter.value }
+            gauges.forEach { (name, gauge) -> result[name] = gauge() }
+            return result
+        }
+
+    val histogramValues: Map<String, String>
+        get() {
+            val result = sortedMapOf<String, String>()
+            histograms.forEach { (name, histogram) -> result[name] = histogram.describe() }
+            return result
+        }
+
+    override fun dump(out: Appendable) {
+        for ((name, value) in counterValues) {
+            out.append(name).append(' ').append(value.toString()).append('\n')
+        }
+        for ((name, value) in histogramValues) {
+            out.append(name).append(' ').append(value).append('\n')
+        }
+    }
+
+    fun dump(): String = buildString { dump(this) }
+
+    /**
+     * registers these metrics in platform MBean server
+     */
+    @JvmOverloads
+    fun registerMBean(name: String = DEFAULT_MBEAN_NAME): ObjectName {
+        val objectName = ObjectName(name)
+        ManagementFactory.getPlatformMBeanServer().registerMBean(InMemoryMetricsMXBeanImpl(this), objectName)
+        return objectName
+    }
+
+    companion object {
+        const val DEFAULT_MBEAN_NAME = "org.jacodb:type=Metrics"
+    }
+}
+
+interface InMemoryMetricsMXBean {
+    val counters: Map<String, Long>
+    val histograms: Map<String, String>
+    fun dump(): String
+}
+
+private class InMemoryMetricsMXBeanImpl(private val metrics: InMemoryMetrics) : InMemoryMetricsMXBean {
+    override val counters: Map<String, Long> get() = metrics.counterValues
+    override val histograms: Map<String, String> get() = metrics.histogramValues
+    override fun dump(): String = metrics.dump()
+}
+
+private class InMemoryCounter : JcCounter {
+    private val adder = LongAdder()
+
+    override val value: Long get() = adder.sum()
+
+    override fun add(delta: Long) {
+        adder.add(delta)
+    }
+}
+
+/**
+ * Histogram with bucket `i` holding values from `[2^(i-1), 2^i)` (bucket `0` holds zeros and negative values).
+ * Percentiles are approximated by upper bounds of buckets.
+ */
+private class InMemoryHistogram : JcHistogram {
+    private val buckets = AtomicLongArray(BUCKETS)
+    private val total = LongAdder()
+    private val summed = LongAdder()
+    private val maximum = AtomicLong()
+
+    override val count: Long get() = total.sum()
+    override val sum: Long get() = summed.sum()
+    override val max: Long get() = maximum.get()
+
+    override fun record(value: Long) {
+        val bucket = if (value <= 0) 0 else BUCKETS - java.lang.Long.numberOfLeadingZeros(value)
+        buckets.incrementAndGet(bucket)
+        total.increment()
+        summed.add(value)
+        var current = maximum.get()
+        while (value > current && !maximum.compareAndSet(current, value)) {
+            current = maximum.get()
+        }
+    }
+
+    override fun percentile(percentile: Double): Long {
+        val total = count
+        if (total == 0L) return 0
+        val threshold = (total * percentile).toLong().coerceIn(1, total)
+        var accumulated = 0L
+        for (i in 0 until BUCKETS) {
+            accumulated += buckets.get(i)
+            if (accumulated >= threshold) {
+                return if (i == 0) 0 else minOf(max, (1L shl i) - 1)
+            }
+        }
+        return max
+    }
+
+    fun describe(): String {
+        val count = count
+        val mean = if (count == 0L) 0 else sum / count
+        return "count=$count sum=$sum mean=$mean max=$max " +
+                "p50=${percentile(0.5)} p90=${percentile(0.9)} p99=${percentile(0.99)}"
+    }
+
+    companion object {
+        private const val BUCKETS = 64
+    }
+}
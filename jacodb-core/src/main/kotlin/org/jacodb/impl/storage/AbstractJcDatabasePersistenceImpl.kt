@@ -16,12 +16,17 @@
 
 package org.jacodb.impl.storage
 
+import com.google.common.hash.BloomFilter
+import com.google.common.hash.Funnels
 import org.jacodb.api.ClassSource
 import org.jacodb.api.JcByteCodeLocation
 import org.jacodb.api.JcClasspath
 import org.jacodb.api.JcDatabase
 import org.jacodb.api.JcDatabasePersistence
+import org.jacodb.api.JcMetrics
+import org.jacodb.api.JcNoMetrics
 import org.jacodb.api.RegisteredLocation
+import org.jacodb.api.measureNanos
 import org.jacodb.impl.FeaturesRegistry
 import org.jacodb.impl.JcInternalSignal
 import org.jacodb.impl.fs.JavaRuntime
@@ -36,13 +41,15 @@ import org.jooq.Condition
 import org.jooq.DSLContext
 import java.io.Closeable
 import java.io.File
+import java.util.concurrent.ConcurrentHashMap
 
 val defaultBatchSize: Int get() = System.getProperty("org.jacodb.impl.storage.defaultBatchSize", "100").toInt()
 
 abstract class AbstractJcDatabasePersistenceImpl(
     private val javaRuntime: JavaRuntime,
     private val featuresRegistry: FeaturesRegistry,
-    private val clearOnStart: Boolean
+    private val clearOnStart: Boolean,
+    private val metrics: JcMetrics = JcNoMetrics
 ) : JcDatabasePersistence, Closeable {
 
     companion object {
@@ -50,6 +57,8 @@ abstract class AbstractJcDatabasePersistenceImpl(
         private val locationsCacheSize = Integer.getInteger("$cachesPrefix.locations", 1_000).toLong()
         private val byteCodeCacheSize = Integer.getInteger("$cachesPrefix.bytecode", 10_000).toLong()
         private val symbolsCacheSize = Integer.getInteger("$cachesPrefix.symbols", 100_000).toLong()
+
+        private const val classNamesFalsePositives = 0.01
     }
 
     private val persistenceService = PersistenceService(this)
@@ -60,6 +69,19 @@ abstract class AbstractJcDatabasePersistenceImpl(
     private val byteCodeCache = cacheOf<Long, ByteArray>(byteCodeCacheSize)
     private val symbolsCache = cacheOf<Long, String>(symbolsCacheSize)
 
+    // locationId -> names of all classes of processed location
+    private val classNamesFilters = ConcurrentHashMap<Long, BloomFilter<CharSequence>>()
+
+    // ids of locations which were not processed yet when their filter was requested
+    private val unprocessedLocations: MutableSet<Long> = ConcurrentHashMap.newKeySet()
+
+    private val findBytecodeLatency = metrics.histogram("persistence.findBytecode.nanos")
+    private val findSymbolIdLatency = metrics.histogram("persistence.findSymbolId.nanos")
+    private val findSymbolNameLatency = metrics.histogram("persistence.findSymbolName.nanos")
+    private val findLocationLatency = metrics.histogram("persistence.findLocation.nanos")
+    private val findClassSourcesLatency = metrics.histogram("persistence.findClassSources.nanos")
+    private val persistLatency = metrics.histogram("persistence.persist.nanos")
+
     override val locations: List<JcByteCodeLocation>
         get() {
             return jooq.selectFrom(BYTECODELOCATIONS).fetch().mapNotNull {
@@ -84,9 +106,10 @@ abstract class AbstractJcDatabasePersistenceImpl(
 
     override fun findBytecode(classId: Long): ByteArray {
         return byteCodeCache.get(classId) {
-            jooq.select(CLASSES.BYTECODE).from(CLASSES)
-                .where(CLASSES.ID.eq(classId)).fetchAny()?.value1()
-                ?: throw IllegalArgumentException("Can't find bytecode for $classId")
+            metrics.measureNanos(findBytecodeLatency) {
+                jooq.select(CLASSES.BYTECODE).from(CLASSES)
+                    .where(CLASSES.ID.eq(classId)).fetchAny()?.value1()
+            } ?: throw IllegalArgumentException("Can't find bytecode for $classId")
         }
     }
 
@@ -95,24 +118,32 @@ abstract class AbstractJcDatabasePersistenceImpl(
     }
 
     override fun findSymbolId(symbol: String): Long? {
-        return persistenceService.findSymbolId(symbol)
+        return metrics.measureNanos(findSymbolIdLatency) {
+            persistenceService.findSymbolId(symbol)
+        }
     }
 
     override fun findSymbolName(symbolId: Long): String {
         return symbolsCache.get(symbolId) {
-            persistenceService.findSymbolName(symbolId)
+            metrics.measureNanos(findSymbolNameLatency) {
+                persistenceService.findSymbolName(symbolId)
+            }
         }
     }
 
     override fun findLocation(locationId: Long): RegisteredLocation {
         return locationsCache.get(locationId) {
-            val record = jooq.fetchOne(BYTECODELOCATIONS, BYTECODELOCATIONS.ID.eq(locationId))
-                ?: throw IllegalArgumentException("location not found by id $locationId")
+            val record = metrics.measureNanos(findLocationLatency) {
+                jooq.fetchOne(BYTECODELOCATIONS, BYTECODELOCATIONS.ID.eq(locationId))
+            } ?: throw IllegalArgumentException("location not found by id $locationId")
             PersistentByteCodeLocation(this, runtimeVersion = javaRuntime.version, locationId, record, null)
         }
     }
 
     override fun findClassSourceByName(cp: JcClasspath, fullName: String): ClassSource? {
+        if (!cp.mayContainClass(fullName)) {
+            return null
+        }
         val symbolId = findSymbolId(fullName) ?: return null
         return cp.db.classSources(CLASSES.NAME.eq(symbolId).and(cp.clause), single = true).firstOrNull()
     }
@@ -122,10 +153,53 @@ abstract class AbstractJcDatabasePersistenceImpl(
     }
 
     override fun findClassSources(cp: JcClasspath, fullName: String): List<ClassSource> {
+        if (!cp.mayContainClass(fullName)) {
+            return emptyList()
+        }
         val symbolId = findSymbolId(fullName) ?: return emptyList()
         return cp.db.classSources(CLASSES.NAME.eq(symbolId).and(cp.clause))
     }
 
+    /**
+     * @return false only if class is definitely absent in all persisted locations of classpath
+     */
+    private fun JcClasspath.mayContainClass(fullName: String): Boolean {
+        return registeredLocations.any {
+            val filter = classNamesFilterOf(it.id) ?: return true
+            filter.mightContain(fullName)
+        }
+    }
+
+    private fun classNamesFilterOf(locationId: Long): BloomFilter<CharSequence>? {
+        classNamesFilters[locationId]?.let { return it }
+        if (locationId in unprocessedLocations) {
+            return null
+        }
+        // location persisted by previous run: filter is rebuilt once from stored class names
+        val state = jooq.select(BYTECODELOCATIONS.STATE).from(BYTECODELOCATIONS)
+            .where(BYTECODELOCATIONS.ID.eq(locationId)).fetchAny()?.value1()
+        if (state != LocationState.PROCESSED.ordinal) {
+            // remembered until location is processed, see [afterProcessing]
+            unprocessedLocations.add(locationId)
+            return null
+        }
+        val names = jooq.select(SYMBOLS.NAME).from(CLASSES)
+            .join(SYMBOLS).on(CLASSES.NAME.eq(SYMBOLS.ID))
+            .where(CLASSES.LOCATION_ID.eq(locationId))
+            .fetch(SYMBOLS.NAME)
+        return classNamesFilters.computeIfAbsent(locationId) { newClassNamesFilter(names.filterNotNull()) }
+    }
+
+    private fun newClassNamesFilter(names: Collection<String>): BloomFilter<CharSequence> {
+        return BloomFilter.create(
+            Funnels.stringFunnel(Charsets.UTF_8),
+            maxOf(names.size, 1),
+            classNamesFalsePositives
+        ).also { filter ->
+            names.forEach { filter.put(it) }
+        }
+    }
+
     private val JcClasspath.clause: Condition
         get() {
             val ids = registeredLocations.map { it.id }
@@ -136,9 +210,11 @@ abstract class AbstractJcDatabasePersistenceImpl(
         val classesQuery = jooq.select(CLASSES.LOCATION_ID, CLASSES.ID, CLASSES.BYTECODE, SYMBOLS.NAME).from(CLASSES)
             .join(SYMBOLS).on(CLASSES.NAME.eq(SYMBOLS.ID))
             .where(clause)
-        val classes = when {
-            single -> listOfNotNull(classesQuery.fetchAny())
-            else -> classesQuery.fetch()
+        val classes = metrics.measureNanos(findClassSourcesLatency) {
+            when {
+                single -> listOfNotNull(classesQuery.fetchAny())
+                else -> classesQuery.fetch()
+            }
         }
         return classes.map { (locationId, classId, bytecode, name) ->
             PersistenceClassSource(
@@ -153,13 +229,26 @@ abstract class AbstractJcDatabasePersistenceImpl(
 
     override fun persist(location: RegisteredLocation, classes: List<ClassSource>) {
         val allClasses = classes.map { it.info }
-        persistenceService.persist(location, allClasses)
+        metrics.measureNanos(persistLatency) {
+            persistenceService.persist(location, allClasses)
+        }
+        classNamesFilters[location.id] = newClassNamesFilter(classes.map { it.className })
+        unprocessedLocations.remove(location.id)
+    }
+
+    /**
+     * Class names filters of [locationIds] are built on the next lookup
+     */
+    override fun afterProcessing(locationIds: Collection<Long>) {
+        unprocessedLocations.removeAll(locationIds.toSet())
     }
 
     override fun close() {
         locationsCache.invalidateAll()
         symbolsCache.invalidateAll()
         byteCodeCache.invalidateAll()
+        classNamesFilters.clear()
+        unprocessedLocations.clear()
         symbolInterner.setup()
     }
 }
\ No newline at end of file
@@ -90,6 +90,7 @@ class PersistentLocationRegistry(private val jcdb: JcDatabase, private val featu
                 .set(BYTECODELOCATIONS.STATE, LocationState.PROCESSED.ordinal).where(BYTECODELOCATIONS.ID.`in`(ids))
                 .execute()
         }
+        persistence.afterProcessing(ids)
         featuresRegistry.broadcast(JcInternalSignal.AfterIndexing)
     }
 
@@ -16,6 +16,8 @@
 
 package org.jacodb.impl.storage
 
+import org.jacodb.api.JcMetrics
+import org.jacodb.api.JcNoMetrics
 import org.jacodb.impl.FeaturesRegistry
 import org.jacodb.impl.fs.JavaRuntime
 import org.jacodb.impl.fs.logger
@@ -35,8 +37,9 @@ class SQLitePersistenceImpl(
     javaRuntime: JavaRuntime,
     featuresRegistry: FeaturesRegistry,
     location: String? = null,
-    clearOnStart: Boolean
-) : AbstractJcDatabasePersistenceImpl(javaRuntime, featuresRegistry, clearOnStart) {
+    clearOnStart: Boolean,
+    metrics: JcMetrics = JcNoMetrics
+) : AbstractJcDatabasePersistenceImpl(javaRuntime, featuresRegistry, clearOnStart, metrics) {
 
     private var connection: Connection? = null
     override val jooq: DSLContext
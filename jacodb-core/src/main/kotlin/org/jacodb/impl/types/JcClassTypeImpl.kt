@@ -27,6 +27,7 @@ import org.jacodb.impl.types.signature.TypeResolutionImpl
 import org.jacodb.impl.types.signature.TypeSignature
 import org.jacodb.impl.types.substition.JcSubstitutorImpl
 import org.jacodb.impl.types.substition.SafeSubstitution
+import java.util.concurrent.ConcurrentHashMap
 import kotlin.LazyThreadSafetyMode.PUBLICATION
 
 class JcClassTypeImpl(
@@ -63,7 +64,11 @@ class JcClassTypeImpl(
         JcClassTypeLookupImpl(this)
     )
 
-    override val jcClass: JcClassOrInterface get() = classpath.findClass(name)
+    override val jcClass: JcClassOrInterface by lazy(PUBLICATION) { classpath.findClass(name) }
+
+    // members of this type visible from subtypes, keyed by package name of subtype
+    private val inheritedMethods = ConcurrentHashMap<String, List<JcTypedMethod>>()
+    private val inheritedFields = ConcurrentHashMap<String, List<JcTypedField>>()
 
     override val access: Int
         get() = jcClass.access
@@ -91,40 +96,37 @@ class JcClassTypeImpl(
 
     override val typeParameters get() = declaredTypeParameters.map { it.asJcDeclaration(jcClass) }
 
-    override val typeArguments: List<JcRefType>
-        get() {
-            return declaredTypeParameters.map { declaration ->
-                val jvmType = substitutor.substitution(declaration)
-                if (jvmType != null) {
-                    classpath.typeOf(jvmType) as JcRefType
-                } else {
-                    JcTypeVariableImpl(classpath, declaration.asJcDeclaration(jcClass), true)
-                }
+    override val typeArguments: List<JcRefType> by lazy(PUBLICATION) {
+        declaredTypeParameters.map { declaration ->
+            val jvmType = substitutor.substitution(declaration)
+            if (jvmType != null) {
+                classpath.typeOf(jvmType) as JcRefType
+            } else {
+                JcTypeVariableImpl(classpath, declaration.asJcDeclaration(jcClass), true)
             }
         }
+    }
 
 
-    override val superType: JcClassType?
-        get() {
-            val superClass = jcClass.superClass ?: return null
-            return resolutionImpl?.let {
-                val newSubstitutor = superSubstitutor(superClass, it.superClass)
-                JcClassTypeImpl(classpath, superClass.name, outerType, newSubstitutor, nullable, annotations)
-            } ?: superClass.toType()
-        }
+    override val superType: JcClassType? by lazy(PUBLICATION) {
+        val superClass = jcClass.superClass ?: return@lazy null
+        resolutionImpl?.let {
+            val newSubstitutor = superSubstitutor(superClass, it.superClass)
+            JcClassTypeImpl(classpath, superClass.name, outerType, newSubstitutor, nullable, annotations)
+        } ?: superClass.toType()
+    }
 
-    override val interfaces: List<JcClassType>
-        get() {
-            return jcClass.interfaces.map { iface ->
-                val ifaceType = resolutionImpl?.interfaceType?.firstOrNull { it.isReferencesClass(iface.name) }
-                if (ifaceType != null) {
-                    val newSubstitutor = superSubstitutor(iface, ifaceType)
-                    JcClassTypeImpl(classpath, iface.name, null, newSubstitutor, nullable, annotations)
-                } else {
-                    iface.toType()
-                }
+    override val interfaces: List<JcClassType> by lazy(PUBLICATION) {
+        jcClass.interfaces.map { iface ->
+            val ifaceType = resolutionImpl?.interfaceType?.firstOrNull { it.isReferencesClass(iface.name) }
+            if (ifaceType != null) {
+                val newSubstitutor = superSubstitutor(iface, ifaceType)
+                JcClassTypeImpl(classpath, iface.name, null, newSubstitutor, nullable, annotations)
+            } else {
+                iface.toType()
             }
         }
+    }
 
     override val innerTypes: List<JcClassType>
         get() {
@@ -143,26 +145,22 @@ class JcClassTypeImpl(
             }
         }
 
-    override val declaredMethods: List<JcTypedMethod>
-        get() {
-            return typedMethods(true, fromSuperTypes = false, jcClass.packageName)
-        }
+    override val declaredMethods: List<JcTypedMethod> by lazy(PUBLICATION) {
+        typedMethods(true, fromSuperTypes = false, jcClass.packageName)
+    }
 
-    override val methods: List<JcTypedMethod>
-        get() {
-            //let's calculate visible methods from super types
-            return typedMethods(true, fromSuperTypes = true, jcClass.packageName)
-        }
+    override val methods: List<JcTypedMethod> by lazy(PUBLICATION) {
+        //let's calculate visible methods from super types
+        typedMethods(true, fromSuperTypes = true, jcClass.packageName)
+    }
 
-    override val declaredFields: List<JcTypedField>
-        get() {
-            return typedFields(true, fromSuperTypes = false, jcClass.packageName)
-        }
+    override val declaredFields: List<JcTypedField> by lazy(PUBLICATION) {
+        typedFields(true, fromSuperTypes = false, jcClass.packageName)
+    }
 
-    override val fields: List<JcTypedField>
-        get() {
-            return typedFields(true, fromSuperTypes = true, jcClass.packageName)
-        }
+    override val fields: List<JcTypedField> by lazy(PUBLICATION) {
+        typedFields(true, fromSuperTypes = true, jcClass.packageName)
+    }
 
     override fun copyWithNullability(nullability: Boolean?) =
         JcClassTypeImpl(classpath, name, outerType, substitutor, nullability, annotations)
@@ -206,16 +204,28 @@ class JcClassTypeImpl(
         }
         val result = declaredMethods.toSortedSet(UnsafeHierarchyTypedMethodComparator)
         result.addAll(
-            (superType as? JcClassTypeImpl)?.typedMethods(false, fromSuperTypes = true, packageName).orEmpty()
+            (superType as? JcClassTypeImpl)?.inheritedMethods(packageName).orEmpty()
         )
         result.addAll(
             interfaces.flatMap {
-                (it as? JcClassTypeImpl)?.typedMethods(false, fromSuperTypes = true, packageName).orEmpty()
+                (it as? JcClassTypeImpl)?.inheritedMethods(packageName).orEmpty()
             }
         )
         return result.toList()
     }
 
+    private fun inheritedMethods(packageName: String): List<JcTypedMethod> {
+        return inheritedMethods.getOrPut(packageName) {
+            typedMethods(false, fromSuperTypes = true, packageName)
+        }
+    }
+
+    private fun inheritedFields(packageName: String): List<JcTypedField> {
+        return inheritedFields.getOrPut(packageName) {
+            typedFields(false, fromSuperTypes = true, packageName)
+        }
+    }
+
     private fun typedFields(all: Boolean, fromSuperTypes: Boolean, packageName: String): List<JcTypedField> {
         val classPackageName = jcClass.packageName
 
@@ -235,11 +245,7 @@ class JcClassTypeImpl(
 
         result.addAll(
             superTypesToCheck.flatMap {
-                it.typedFields(
-                    false,
-                    fromSuperTypes = true,
-                    classPackageName
-                )
+                it.inheritedFields(classPackageName)
             }
         )
         return result.toList()
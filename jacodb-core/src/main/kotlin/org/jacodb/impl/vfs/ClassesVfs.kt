@@ -0,0 +1,71 @@
+/*
+ *  Copyright 2022 UnitTestBot contributors (utbot.org)
+ * <p>
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ * <p>
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+
+package org.jacodb.impl.vfs
+
+import org.jacodb.api.ClassSource
+import org.jacodb.api.RegisteredLocation
+import java.io.Closeable
+import java.util.*
+
+/**
+ * Storage of class sources of all loaded locations shared by every classpath of database
+ */
+interface ClassesVfs : Closeable {
+
+    fun add(source: ClassSource)
+
+    fun firstClassOrNull(fullName: String, locations: LocationsFilter): ClassSource?
+
+    fun findClasses(fullName: String, locations: LocationsFilter): List<ClassSource>
+
+    /**
+     * removes classes of [locations] except classes from packages starting with one of [ignoredPackages]
+     */
+    fun removeLocations(locations: List<RegisteredLocation>, ignoredPackages: List<String> = emptyList())
+}
+
+/**
+ * Immutable set of location ids of classpath snapshot. Ids which fit into `int` range are kept in bitset,
+ * others (like hashes used by virtual locations) are kept in sorted array.
+ */
+class LocationsFilter(locationIds: Collection<Long>) {
+
+    constructor(locations: List<RegisteredLocation>) : this(locations.map { it.id })
+
+    private val bits = BitSet()
+    private val outOfRange: LongArray
+
+    init {
+        val others = arrayListOf<Long>()
+        locationIds.forEach {
+            if (it in 0..Int.MAX_VALUE) {
+                bits.set(it.toInt())
+            } else {
+                others.add(it)
+            }
+        }
+        outOfRange = others.toLongArray().also { it.sort() }
+    }
+
+    operator fun contains(locationId: Long): Boolean {
+        if (locationId in 0..Int.MAX_VALUE) {
+            return bits.get(locationId.toInt())
+        }
+        return outOfRange.isNotEmpty() && Arrays.binarySearch(outOfRange, locationId) >= 0
+    }
+}
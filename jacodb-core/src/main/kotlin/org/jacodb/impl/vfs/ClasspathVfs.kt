@@ -16,6 +16,7 @@
 
 package org.jacodb.impl.vfs
 
+import org.jacodb.api.ClassSource
 import org.jacodb.api.RegisteredLocation
 import org.jacodb.impl.LocationsRegistrySnapshot
 
@@ -23,26 +24,22 @@ import org.jacodb.impl.LocationsRegistrySnapshot
  * ClassTree view limited by number of `locations`
  */
 class ClasspathVfs(
-    private val globalClassVFS: GlobalClassesVfs,
+    private val globalClassVFS: ClassesVfs,
     locations: List<RegisteredLocation>
 ) {
 
-    constructor(globalClassVFS: GlobalClassesVfs, locationsRegistrySnapshot: LocationsRegistrySnapshot) : this(
+    constructor(globalClassVFS: ClassesVfs, locationsRegistrySnapshot: LocationsRegistrySnapshot) : this(
         globalClassVFS,
         locationsRegistrySnapshot.locations
     )
 
-    private val locationIds: Set<Long> = locations.map { it.id }.toHashSet()
+    private val locationsFilter = LocationsFilter(locations)
 
-    fun firstClassOrNull(fullName: String): ClassVfsItem? {
-        return globalClassVFS.firstClassNodeOrNull(fullName) {
-            locationIds.contains(it)
-        }
+    fun firstClassOrNull(fullName: String): ClassSource? {
+        return globalClassVFS.firstClassOrNull(fullName, locationsFilter)
     }
 
-    fun findClassNodes(fullName: String): List<ClassVfsItem> {
-        return globalClassVFS.findClassNodes(fullName) {
-            locationIds.contains(it)
-        }
+    fun findClasses(fullName: String): List<ClassSource> {
+        return globalClassVFS.findClasses(fullName, locationsFilter)
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,101 @@
+/*
+ *  Copyright 2022 UnitTestBot contributors (utbot.org)
+ * <p>
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ * <p>
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+
+package org.jacodb.impl.vfs
+
+import org.jacodb.api.ClassSource
+import org.jacodb.api.RegisteredLocation
+import java.util.concurrent.ConcurrentHashMap
+
+/**
+ * Flat [ClassesVfs]: single map from full class name to sources of this class in different locations.
+ *
+ * Values are immutable arrays which are replaced on write with `compute` (locks only one bin of the map)
+ * while lookups are plain lock-free reads without splitting of class name.
+ */
+class FlatClassesVfs : ClassesVfs {
+
+    // fullName -> sources in order of addition
+    private val classes = ConcurrentHashMap<String, LocatedSources>()
+
+    override fun add(source: ClassSource) {
+        classes.compute(source.className) { _, current ->
+            current?.plus(source) ?: LocatedSources(longArrayOf(source.location.id), arrayOf(source))
+        }
+    }
+
+    override fun firstClassOrNull(fullName: String, locations: LocationsFilter): ClassSource? {
+        val located = classes[fullName] ?: return null
+        val ids = located.locationIds
+        for (index in ids.indices) {
+            if (ids[index] in locations) {
+                return located.sources[index]
+            }
+        }
+        return null
+    }
+
+    override fun findClasses(fullName: String, locations: LocationsFilter): List<ClassSource> {
+        val located = classes[fullName] ?: return emptyList()
+        val ids = located.locationIds
+        val result = ArrayList<ClassSource>(ids.size)
+        for (index in ids.indices) {
+            if (ids[index] in locations) {
+                result.add(located.sources[index])
+            }
+        }
+        return result
+    }
+
+    override fun removeLocations(locations: List<RegisteredLocation>, ignoredPackages: List<String>) {
+        val removed = LocationsFilter(locations)
+        classes.keys.forEach { className ->
+            val packageName = className.substringBeforeLast('.', "") + "."
+            if (ignoredPackages.any { packageName.startsWith(it) }) {
+                return@forEach
+            }
+            classes.computeIfPresent(className) { _, current -> current.minus(removed) }
+        }
+    }
+
+    override fun close() {
+        classes.clear()
+    }
+
+    private class LocatedSources(val locationIds: LongArray, val sources: Array<ClassSource>) {
+
+        fun plus(source: ClassSource): LocatedSources {
+            val id = source.location.id
+            if (locationIds.contains(id)) {
+                return this
+            }
+            return LocatedSources(locationIds + id, sources + source)
+        }
+
+        fun minus(locations: LocationsFilter): LocatedSources? {
+            val retained = locationIds.indices.filter { locationIds[it] !in locations }
+            return when (retained.size) {
+                0 -> null
+                locationIds.size -> this
+                else -> LocatedSources(
+                    LongArray(retained.size) { locationIds[retained[it]] },
+                    Array(retained.size) { sources[retained[it]] }
+                )
+            }
+        }
+    }
+}
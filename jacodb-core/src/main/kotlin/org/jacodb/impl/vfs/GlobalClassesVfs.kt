@@ -18,10 +18,9 @@ package org.jacodb.impl.vfs
 
 import org.jacodb.api.ClassSource
 import org.jacodb.api.RegisteredLocation
-import java.io.Closeable
 import java.util.concurrent.ConcurrentHashMap
 
-open class GlobalClassesVfs : Closeable {
+open class GlobalClassesVfs : ClassesVfs {
 
     private val rootItem = PackageVfsItem(null, null)
 
@@ -59,6 +58,10 @@ open class GlobalClassesVfs : Closeable {
         return node.findClassOrNew(simpleClassName, source)
     }
 
+    override fun add(source: ClassSource) {
+        addClass(source)
+    }
+
     fun findClassNodeOrNull(codeLocation: RegisteredLocation, fullName: String): ClassVfsItem? {
         val splitted = fullName.splitted
         val simpleClassName = splitted[splitted.size - 1]
@@ -77,6 +80,18 @@ open class GlobalClassesVfs : Closeable {
         return findPackage(splitted)?.findClasses(simpleClassName, predicate) ?: emptyList()
     }
 
+    override fun firstClassOrNull(fullName: String, locations: LocationsFilter): ClassSource? {
+        return firstClassNodeOrNull(fullName) { it in locations }?.source
+    }
+
+    override fun findClasses(fullName: String, locations: LocationsFilter): List<ClassSource> {
+        return findClassNodes(fullName) { it in locations }.map { it.source }
+    }
+
+    override fun removeLocations(locations: List<RegisteredLocation>, ignoredPackages: List<String>) {
+        visit(RemoveLocationsVisitor(locations, ignoredPackages))
+    }
+
     private fun findPackage(splitted: List<String>): PackageVfsItem? {
         var node: PackageVfsItem? = rootItem
         var index = 0
@@ -0,0 +1,72 @@
+/*
+ *  Copyright 2022 UnitTestBot contributors (utbot.org)
+ * <p>
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ * <p>
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package org.jacodb.testing
+
+import org.jacodb.impl.bytecode.FanOutClassVisitor
+import org.junit.jupiter.api.Assertions.assertEquals
+import org.junit.jupiter.api.Test
+import org.objectweb.asm.ClassReader
+import org.objectweb.asm.ClassVisitor
+import org.objectweb.asm.Opcodes
+import org.objectweb.asm.util.Textifier
+import org.objectweb.asm.util.TraceClassVisitor
+import java.io.PrintWriter
+import java.io.StringWriter
+
+class FanOutClassVisitorTest {
+
+    @Test
+    fun `every visitor should receive the whole class`() {
+        // switches, try-catch blocks, loops and frames are all present in these classes
+        for (className in listOf("java.util.HashMap", "java.util.ArrayList", "java.util.regex.Pattern")) {
+            val expected = textify(className)
+
+            val outputs = List(3) { StringWriter() }
+            val visitors = outputs.map { TraceClassVisitor(null, Textifier(), PrintWriter(it)) }
+            ClassReader(className).accept(FanOutClassVisitor(visitors), ClassReader.EXPAND_FRAMES)
+
+            for (output in outputs) {
+                assertEquals(expected, output.toString(), "Unexpected events for $className")
+            }
+        }
+    }
+
+    @Test
+    fun `methods should be skipped if no visitor needs them`() {
+        var visitedMethods = 0
+        val headersOnly = object : ClassVisitor(Opcodes.ASM9) {
+            override fun visitMethod(
+                access: Int,
+                name: String?,
+                descriptor: String?,
+                signature: String?,
+                exceptions: Array<out String>?,
+            ) = null.also { visitedMethods++ }
+        }
+        val noMethods = object : ClassVisitor(Opcodes.ASM9) {}
+        val visitor = FanOutClassVisitor(listOf(headersOnly, noMethods))
+        assertEquals(null, visitor.visitMethod(0, "foo", "()V", null, null))
+        assertEquals(1, visitedMethods)
+    }
+
+    private fun textify(className: String): String {
+        val output = StringWriter()
+        val visitor = TraceClassVisitor(null, Textifier(), PrintWriter(output))
+        ClassReader(className).accept(visitor, ClassReader.EXPAND_FRAMES)
+        return output.toString()
+    }
+}
@@ -0,0 +1,63 @@
+/*
+ *  Copyright 2022 UnitTestBot contributors (utbot.org)
+ * <p>
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ * <p>
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package org.jacodb.testing
+
+import org.jacodb.impl.metrics.InMemoryMetrics
+import org.junit.jupiter.api.Assertions.assertEquals
+import org.junit.jupiter.api.Assertions.assertSame
+import org.junit.jupiter.api.Assertions.assertTrue
+import org.junit.jupiter.api.Test
+
+class MetricsTest {
+
+    private val metrics = InMemoryMetrics()
+
+    @Test
+    fun `counters are shared by name`() {
+        val counter = metrics.counter("test.counter")
+        assertSame(counter, metrics.counter("test.counter"))
+        counter.increment()
+        metrics.counter("test.counter").add(41)
+        assertEquals(42, counter.value)
+        assertEquals(42L, metrics.counterValues["test.counter"])
+    }
+
+    @Test
+    fun `histogram tracks count sum max and percentiles`() {
+        val histogram = metrics.histogram("test.histogram")
+        for (i in 1..100L) {
+            histogram.record(i)
+        }
+        assertEquals(100, histogram.count)
+        assertEquals(5050, histogram.sum)
+        assertEquals(100, histogram.max)
+        val p50 = histogram.percentile(0.5)
+        assertTrue(p50 in 50..63) { "p50 is $p50" }
+        assertEquals(100, histogram.percentile(1.0))
+    }
+
+    @Test
+    fun `dump contains all metrics`() {
+        metrics.counter("a.counter").increment()
+        metrics.histogram("b.histogram").record(10)
+        metrics.gauge("c.gauge") { 7 }
+        val dump = metrics.dump()
+        assertTrue(dump.contains("a.counter 1"))
+        assertTrue(dump.contains("b.histogram count=1"))
+        assertTrue(dump.contains("c.gauge 7"))
+    }
+}
@@ -0,0 +1,68 @@
+/*
+ *  Copyright 2022 UnitTestBot contributors (utbot.org)
+ * <p>
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ * <p>
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+
+package org.jacodb.testing.cfg
+
+import kotlinx.coroutines.runBlocking
+import org.jacodb.api.JcClassOrInterface
+import org.jacodb.api.ext.findClass
+import org.jacodb.impl.bytecode.JcClassesRewriter
+import org.jacodb.testing.BaseTest
+import org.jacodb.testing.WithGlobalDB
+import org.jacodb.testing.primitives.Primitives
+import org.junit.jupiter.api.Assertions.assertEquals
+import org.junit.jupiter.api.Assertions.assertNotNull
+import org.junit.jupiter.api.Test
+import java.io.File
+import java.net.URLClassLoader
+import java.nio.file.Files
+import java.nio.file.Paths
+import java.util.jar.JarFile
+
+class ClassesRewriterTest : BaseTest() {
+
+    companion object : WithGlobalDB()
+
+    private val target = Files.createTempDirectory("jcdb-rewriter")
+
+    @Test
+    fun `rewritten classes are written to jar and loaded`() {
+        val primitives = cp.findClass<Primitives>()
+        val changes = primitives.declaredMethods
+            .filter { !it.isAbstract && !it.isNative }
+            .associateWith { it.rawInstList }
+        val untouched = cp.findClass<RealMethodResolution>()
+        val jar = target.resolve("rewritten.jar").toFile()
+
+        runBlocking {
+            JcClassesRewriter(cp, parallelism = 2).rewriteToJar(jar, changes, listOf(untouched))
+        }
+
+        JarFile(jar).use {
+            assertEquals(2, it.size())
+            assertEquals(untouched.bytecode().size.toLong(), it.getJarEntry(untouched.entryName).size)
+            assertNotNull(it.getJarEntry(primitives.entryName))
+        }
+        val classpath = listOf(jar.toURI().toURL()) + System.getProperty("java.class.path")
+            .split(File.pathSeparatorChar)
+            .map { Paths.get(it).toUri().toURL() }
+        val loaded = URLClassLoader(classpath.toTypedArray(), null).loadClass(primitives.name)
+        assertEquals(Primitives::class.java.declaredMethods.size, loaded.declaredMethods.size)
+    }
+
+    private val JcClassOrInterface.entryName get() = name.replace('.', '/') + ".class"
+}
@@ -0,0 +1,112 @@
+/*
+ *  Copyright 2022 UnitTestBot contributors (utbot.org)
+ * <p>
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ * <p>
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+
+package org.jacodb.testing.cfg
+
+import org.jacodb.api.cfg.JcGraph
+import org.jacodb.api.cfg.JcInst
+import org.jacodb.api.ext.findClass
+import org.jacodb.impl.cfg.graphs.dominators
+import org.jacodb.impl.cfg.graphs.findDominators
+import org.jacodb.impl.cfg.graphs.postDominators
+import org.jacodb.testing.BaseTest
+import org.jacodb.testing.WithGlobalDB
+import org.junit.jupiter.api.Assertions.assertEquals
+import org.junit.jupiter.api.Assertions.assertSame
+import org.junit.jupiter.api.Assertions.assertTrue
+import org.junit.jupiter.api.Test
+
+class IndexedDominatorsTest : BaseTest() {
+
+    companion object : WithGlobalDB()
+
+    @Test
+    fun `dominators should match iterative bitset dominators`() {
+        val clazz = cp.findClass<JavaTasks>()
+        clazz.declaredMethods.filter { !it.isAbstract }.forEach { method ->
+            val graph = method.flowGraph()
+            val expected = graph.findDominators()
+            val actual = graph.dominators()
+            // Note: bitset dominators of unreachable nodes are not meaningful
+            val reachable = graph.reachable()
+            for (inst in reachable) {
+                val idom = expected.immediateDominator(inst) ?: continue
+                assertEquals(idom, actual.immediateDominator(inst), "$method: $inst")
+                assertTrue(inst in actual.immediatelyDominated(idom), "$method: $inst")
+                for (other in reachable) {
+                    assertEquals(expected.isDominatedBy(inst, other), actual.isDominatedBy(inst, other))
+                }
+            }
+        }
+    }
+
+    @Test
+    fun `block dominators should match instruction dominators`() {
+        val clazz = cp.findClass<JavaTasks>()
+        clazz.declaredMethods.filter { !it.isAbstract }.forEach { method ->
+            val graph = method.flowGraph()
+            val blockGraph = graph.blockGraph()
+            val dominators = graph.dominators()
+            val blockDominators = blockGraph.dominators()
+            for (block in blockGraph) {
+                val start = graph.inst(block.start)
+                val idom = blockDominators.immediateDominator(block) ?: continue
+                assertTrue(dominators.isDominatedBy(start, graph.inst(idom.start)), "$method: $block")
+                assertTrue(block in blockDominators.immediatelyDominated(idom), "$method: $block")
+            }
+        }
+    }
+
+    @Test
+    fun `single successor should be immediate post-dominator`() {
+        val clazz = cp.findClass<JavaTasks>()
+        clazz.declaredMethods.filter { !it.isAbstract }.forEach { method ->
+            val graph = method.flowGraph()
+            val postDominators = graph.postDominators()
+            for (inst in graph.instructions) {
+                val successors = graph.successors(inst)
+                if (successors.size != 1 || graph.catchers(inst).isNotEmpty()) continue
+                val ipdom = postDominators.immediateDominator(inst) ?: continue
+                assertEquals(successors.single(), ipdom, "$method: $inst")
+                assertTrue(postDominators.isDominatedBy(inst, ipdom))
+            }
+            graph.exits.forEach {
+                assertEquals(listOf(it), postDominators.dominators(it))
+            }
+        }
+    }
+
+    @Test
+    fun `dominators are cached with the graph`() {
+        val graph = cp.findClass<JavaTasks>().declaredMethods.first { it.name == "insertionSort" }.flowGraph()
+        assertSame(graph.dominators(), graph.dominators())
+    }
+
+    private fun JcGraph.reachable(): Set<JcInst> {
+        val result = entries.toHashSet()
+        val queue = ArrayDeque(entries)
+        while (queue.isNotEmpty()) {
+            val inst = queue.removeFirst()
+            for (next in successors(inst) + catchers(inst)) {
+                if (result.add(next)) {
+                    queue.add(next)
+                }
+            }
+        }
+        return result
+    }
+}
@@ -0,0 +1,59 @@
+/*
+ *  Copyright 2022 UnitTestBot contributors (utbot.org)
+ * <p>
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ * <p>
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package org.jacodb.testing.cfg
+
+import org.jacodb.api.ext.findClass
+import org.jacodb.impl.cfg.JcRawInt
+import org.jacodb.impl.cfg.JcRawNull
+import org.junit.jupiter.api.Assertions.assertEquals
+import org.junit.jupiter.api.Assertions.assertNotSame
+import org.junit.jupiter.api.Assertions.assertSame
+import org.junit.jupiter.api.Test
+
+class RawInstListBuilderTest : BaseInstructionsTest() {
+
+    @Test
+    fun `methods with merged frames should work after round trip`() {
+        val javaClazz = testAndLoadClass(cp.findClass<MergedFrames>())
+        fun invoke(name: String, arg: Any?): Any? {
+            return javaClazz.methods.first { it.name == name }.invoke(null, arg)
+        }
+
+        for (flag in listOf(true, false)) {
+            assertEquals(MergedFrames.stackMerge(flag), invoke("stackMerge", flag))
+        }
+        for (x in -2..4) {
+            assertEquals(MergedFrames.nullAndSmallIntsMerge(x), invoke("nullAndSmallIntsMerge", x))
+            assertEquals(MergedFrames.wideLocalsLoop(x), invoke("wideLocalsLoop", x))
+            assertEquals(MergedFrames.switchMerge(x), invoke("switchMerge", x))
+        }
+        for (s in listOf("42", "-7", "not a number")) {
+            assertEquals(MergedFrames.handlerMerge(s), invoke("handlerMerge", s))
+        }
+    }
+
+    @Test
+    fun `null and small int constants should be shared`() {
+        assertSame(JcRawNull(), JcRawNull())
+        for (value in -1..5) {
+            assertSame(JcRawInt(value), JcRawInt(value))
+            assertEquals(value, JcRawInt(value).value)
+        }
+        assertNotSame(JcRawInt(6), JcRawInt(6))
+        assertEquals(JcRawInt(6), JcRawInt(6))
+    }
+}
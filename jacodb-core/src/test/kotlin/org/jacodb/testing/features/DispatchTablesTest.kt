@@ -0,0 +1,68 @@
+/*
+ *  Copyright 2022 UnitTestBot contributors (utbot.org)
+ * <p>
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ * <p>
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package org.jacodb.testing.features
+
+import kotlinx.coroutines.runBlocking
+import org.jacodb.api.JcClasspath
+import org.jacodb.api.ext.findClass
+import org.jacodb.impl.features.classpaths.JcDispatchTables
+import org.jacodb.impl.features.classpaths.findVirtualMethodOrNull
+import org.jacodb.testing.BaseTest
+import org.jacodb.testing.WithGlobalDB
+import org.jacodb.testing.allClasspath
+import org.junit.jupiter.api.Assertions.assertEquals
+import org.junit.jupiter.api.Assertions.assertNotNull
+import org.junit.jupiter.api.Assertions.assertNull
+import org.junit.jupiter.api.Test
+
+class DispatchTablesTest : BaseTest() {
+
+    companion object : WithGlobalDB()
+
+    // tables are kept per classpath, so each classpath gets its own instance of the feature
+    override val cp: JcClasspath = runBlocking { db.classpath(allClasspath, listOf(JcDispatchTables())) }
+
+    @Test
+    fun `declared method overrides method of super class`() {
+        val method = cp.findClass<ArrayList<*>>().findVirtualMethodOrNull("size", "()I")
+        assertNotNull(method)
+        assertEquals(ArrayList::class.java.name, method!!.enclosingClass.name)
+    }
+
+    @Test
+    fun `method is inherited from super class`() {
+        val method = cp.findClass<HashMap<*, *>>().findVirtualMethodOrNull("toString", "()Ljava/lang/String;")
+        assertNotNull(method)
+        assertEquals(java.util.AbstractMap::class.java.name, method!!.enclosingClass.name)
+    }
+
+    @Test
+    fun `default method is inherited from interface`() {
+        val method = cp.findClass<ArrayList<*>>().findVirtualMethodOrNull("stream", "()Ljava/util/stream/Stream;")
+        assertNotNull(method)
+        assertEquals(Collection::class.java.name, method!!.enclosingClass.name)
+    }
+
+    @Test
+    fun `static and private methods are not dispatched`() {
+        val list = cp.findClass<ArrayList<*>>()
+        assertNull(list.findVirtualMethodOrNull("rangeCheckForAdd", "(I)V"))
+        assertNull(list.findVirtualMethodOrNull("<init>", "()V"))
+        val integer = cp.findClass("java.lang.Integer")
+        assertNull(integer.findVirtualMethodOrNull("valueOf", "(I)Ljava/lang/Integer;"))
+    }
+}
@@ -0,0 +1,106 @@
+/*
+ *  Copyright 2022 UnitTestBot contributors (utbot.org)
+ * <p>
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ * <p>
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+
+package org.jacodb.testing.tree
+
+import kotlinx.collections.immutable.persistentListOf
+import org.jacodb.api.ClassSource
+import org.jacodb.impl.fs.ClassSourceImpl
+import org.jacodb.impl.vfs.ClasspathVfs
+import org.jacodb.impl.vfs.FlatClassesVfs
+import org.jacodb.impl.vfs.LocationsFilter
+import org.junit.jupiter.api.Assertions.assertEquals
+import org.junit.jupiter.api.Assertions.assertFalse
+import org.junit.jupiter.api.Assertions.assertNotNull
+import org.junit.jupiter.api.Assertions.assertNull
+import org.junit.jupiter.api.Assertions.assertTrue
+import org.junit.jupiter.api.Test
+
+class FlatClassesVfsTest {
+
+    private val vfs = FlatClassesVfs()
+    private val lib1 = DummyCodeLocation("xxx")
+    private val lib2 = DummyCodeLocation("yyy")
+
+    @Test
+    fun `locations filter`() {
+        val filter = LocationsFilter(listOf(1L, 64L, -1L, lib1.id))
+        assertTrue(1L in filter)
+        assertTrue(64L in filter)
+        assertTrue(-1L in filter)
+        assertTrue(lib1.id in filter)
+        assertFalse(2L in filter)
+        assertFalse(lib2.id in filter)
+    }
+
+    @Test
+    fun `handle classes at limited classpath`() {
+        val limited = ClasspathVfs(vfs, persistentListOf(lib1))
+        vfs.add(lib2.classSource("xxx.Simple"))
+        vfs.add(lib1.classSource("xxx.Simple"))
+        vfs.add(lib2.classSource("xxx.zzz.Simple"))
+
+        with(limited.firstClassOrNull("xxx.Simple")) {
+            assertNotNull(this!!)
+            assertEquals(lib1, location)
+        }
+        assertEquals(1, limited.findClasses("xxx.Simple").size)
+        assertEquals(2, ClasspathVfs(vfs, persistentListOf(lib1, lib2)).findClasses("xxx.Simple").size)
+        assertNull(limited.firstClassOrNull("xxx.zzz.Simple"))
+        assertNull(limited.firstClassOrNull("Simple"))
+    }
+
+    @Test
+    fun `same class of same location is added once`() {
+        val first = lib1.classSource("xxx.Simple")
+        vfs.add(first)
+        vfs.add(lib1.classSource("xxx.Simple"))
+
+        val found = ClasspathVfs(vfs, persistentListOf(lib1)).findClasses("xxx.Simple")
+        assertEquals(1, found.size)
+        assertTrue(first === found.first())
+    }
+
+    @Test
+    fun `dropping locations`() {
+        val limited = ClasspathVfs(vfs, persistentListOf(lib1, lib2))
+        vfs.add(lib2.classSource("xxx.Simple"))
+        vfs.add(lib1.classSource("xxx.Simple"))
+        vfs.add(lib2.classSource("xxx.zzz.Simple"))
+        vfs.add(lib2.classSource("java.lang.Simple"))
+
+        vfs.removeLocations(listOf(lib2), listOf("java."))
+
+        with(limited.findClasses("xxx.Simple")) {
+            assertEquals(1, size)
+            assertEquals(lib1, first().location)
+        }
+        assertNull(limited.firstClassOrNull("xxx.zzz.Simple"))
+        assertNotNull(limited.firstClassOrNull("java.lang.Simple"))
+
+        vfs.removeLocations(listOf(lib1))
+        assertNull(limited.firstClassOrNull("xxx.Simple"))
+    }
+
+    private fun DummyCodeLocation.classSource(name: String): ClassSource {
+        return ClassSourceImpl(
+            className = name,
+            location = this,
+            byteCode = ByteArray(10)
+        )
+    }
+}
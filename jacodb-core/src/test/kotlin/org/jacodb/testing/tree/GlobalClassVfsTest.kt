@@ -68,19 +68,19 @@ class GlobalClassVfsTest {
 
         with(limitedTree.firstClassOrNull("xxx.Simple")) {
             assertNotNull(this!!)
-            assertEquals("Simple", name)
+            assertEquals("xxx.Simple", className)
             assertEquals(lib1, location)
         }
-        with(limitedTree.findClassNodes("xxx.Simple")) {
+        with(limitedTree.findClasses("xxx.Simple")) {
             assertEquals(1, size)
             with(first()) {
-                assertEquals("Simple", name)
+                assertEquals("xxx.Simple", className)
                 assertEquals(lib1, location)
             }
         }
 
         assertNull(limitedTree.firstClassOrNull("xxx.zzz.Simple"))
-        assertTrue(limitedTree.findClassNodes("xxx.zzz.Simple").isEmpty())
+        assertTrue(limitedTree.findClasses("xxx.zzz.Simple").isEmpty())
     }
 
     @Test
@@ -95,7 +95,7 @@ class GlobalClassVfsTest {
 
         with(limitedTree.firstClassOrNull("xxx.Simple")) {
             assertNotNull(this!!)
-            assertEquals("Simple", name)
+            assertEquals("xxx.Simple", className)
             assertEquals(lib1, location)
         }
 
@@ -0,0 +1,52 @@
+/*
+ *  Copyright 2022 UnitTestBot contributors (utbot.org)
+ * <p>
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ * <p>
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+
+package org.jacodb.testing.types
+
+import org.jacodb.impl.bytecode.JcCommonSuperClasses
+import org.jacodb.testing.BaseTest
+import org.jacodb.testing.WithGlobalDB
+import org.junit.jupiter.api.Assertions.assertEquals
+import org.junit.jupiter.api.Test
+
+class CommonSuperClassesTest : BaseTest() {
+
+    companion object : WithGlobalDB()
+
+    private val superClasses by lazy { JcCommonSuperClasses(cp) }
+
+    @Test
+    fun `common superclass of classes`() {
+        assertEquals("java/util/AbstractList", superClasses.commonSuperClass("java/util/ArrayList", "java/util/LinkedList"))
+        assertEquals("java/lang/Number", superClasses.commonSuperClass("java/lang/Long", "java/lang/Integer"))
+        assertEquals("java/lang/Object", superClasses.commonSuperClass("java/lang/String", "java/lang/Integer"))
+    }
+
+    @Test
+    fun `common superclass of class and its ancestor`() {
+        assertEquals("java/util/AbstractList", superClasses.commonSuperClass("java/util/AbstractList", "java/util/ArrayList"))
+        assertEquals("java/util/AbstractList", superClasses.commonSuperClass("java/util/ArrayList", "java/util/AbstractList"))
+        assertEquals("java/lang/Object", superClasses.commonSuperClass("java/lang/Object", "java/util/ArrayList"))
+        assertEquals(3, superClasses.depthOf("java/util/ArrayList"))
+    }
+
+    @Test
+    fun `interfaces and unknown classes have java lang Object as common superclass`() {
+        assertEquals("java/lang/Object", superClasses.commonSuperClass("java/lang/Runnable", "java/lang/Thread"))
+        assertEquals("java/lang/Object", superClasses.commonSuperClass("xxx/Yyy", "java/util/ArrayList"))
+    }
+}
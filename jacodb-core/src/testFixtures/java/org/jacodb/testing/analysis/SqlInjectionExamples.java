@@ -44,4 +44,17 @@ public class SqlInjectionExamples {
         }
     }
 
+    static class Holder {
+        String query;
+    }
+
+    void fieldOfTaintedObject() throws SQLException {
+        Object data = System.getenv("USER");
+        // the holder itself is tainted, but its field is not
+        Holder holder = (Holder) data;
+        Connection dbConnection = DriverManager.getConnection("", "", "");
+        Statement sqlStatement = dbConnection.createStatement();
+        sqlStatement.execute(holder.query);
+    }
+
 }
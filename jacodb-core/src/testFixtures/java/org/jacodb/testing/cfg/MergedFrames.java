@@ -0,0 +1,81 @@
+/*
+ *  Copyright 2022 UnitTestBot contributors (utbot.org)
+ * <p>
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ * <p>
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package org.jacodb.testing.cfg;
+
+public class MergedFrames {
+
+    static public int stackMerge(boolean flag) {
+        return sum(flag ? -1 : 5, flag ? 0 : 1);
+    }
+
+    static public String nullAndSmallIntsMerge(int x) {
+        String s = null;
+        int n = 0;
+        if (x > 2) {
+            s = "big";
+            n = 4;
+        } else if (x < 0) {
+            n = -1;
+        }
+        return s == null ? "null:" + n : s + n;
+    }
+
+    static public double wideLocalsLoop(int count) {
+        long total = 1L;
+        double half = 0.0;
+        for (int i = 0; i < count; i++) {
+            total += i;
+            half = total / 2.0;
+        }
+        return half + total;
+    }
+
+    static public int handlerMerge(String s) {
+        int result = 3;
+        try {
+            result = Integer.parseInt(s);
+        } catch (NumberFormatException e) {
+            result = -1;
+        } finally {
+            result += 1;
+        }
+        return result;
+    }
+
+    static public int switchMerge(int x) {
+        int r;
+        switch (x) {
+            case 0:
+                r = 1;
+                break;
+            case 1:
+                r = 2;
+                break;
+            case 2:
+                r = 3;
+                break;
+            default:
+                r = x;
+        }
+        Integer boxed = r > 2 ? null : Integer.valueOf(r);
+        return boxed == null ? r : boxed * 2;
+    }
+
+    static private int sum(int a, int b) {
+        return a + b;
+    }
+}
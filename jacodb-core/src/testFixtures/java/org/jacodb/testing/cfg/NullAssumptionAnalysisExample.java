@@ -29,4 +29,12 @@ public class NullAssumptionAnalysisExample {
         String x = (String) a;
         System.out.println(x.length());
     }
+
+    public void test3(String a, int n) {
+        int i = 0;
+        while (i < n) {
+            i++;
+        }
+        System.out.println(a.length());
+    }
 }
@@ -586,6 +586,17 @@ abstract class DatabaseEnvTest {
         assertNull(optional!!.clazz)
     }
 
+    @Test
+    fun `missed classes are not found in persistence`() {
+        val notExistedClass = "xxx.Yyy"
+        repeat(2) {
+            assertNull(cp.db.persistence.findClassSourceByName(cp, notExistedClass))
+            assertTrue(cp.findClasses(notExistedClass).isEmpty())
+        }
+        assertNotNull(cp.db.persistence.findClassSourceByName(cp, "java.lang.String"))
+        assertTrue(cp.findClasses("java.lang.String").isNotEmpty())
+    }
+
     @Test
     fun `class caching feature works for existed class`() {
         val existedClass = "java.lang.String"
@@ -26,6 +26,7 @@ import org.jacodb.api.ext.cfg.callExpr
 import org.jacodb.api.ext.hasAnnotation
 import org.jacodb.impl.fs.BuildFolderLocation
 import org.jacodb.impl.jacodb
+import org.jacodb.impl.metrics.InMemoryMetrics
 import soot.SootMethod
 import soot.jimple.Stmt
 import soot.tagkit.LineNumberTag
@@ -184,15 +185,18 @@ private val classpath: List<String>
     }
 
 fun main() {
+    val metrics = InMemoryMetrics()
     println("JacoDB tooks: " + measureTimeMillis {
         runBlocking {
             val db = jacodb {
                 loadByteCode(allClasspath)
+                withMetrics(metrics)
             }
             val cp = db.classpath(allClasspath)
             val checker = HighPerformanceChecker()
             cp.execute(checker)
         }
     } + "ms to finish")
-
-}
\ No newline at end of file
+    println("JacoDB metrics:")
+    metrics.dump(System.out)
+}